@@ -22,6 +22,7 @@
 
 package org.aluminati3555.dashboard;
 
+import org.aluminati3555.net.FramePublisher;
 import org.aluminati3555.net.NetworkManager;
 
 import javafx.application.Application;
@@ -42,10 +43,15 @@ public class AluminatiDashboard extends Application {
 
 	public static NetworkManager networkManager;
 	public static DashboardWindow dashboard;
+	public static FramePublisher framePublisher;
 
 	@Override
 	public void start(Stage window) {
 		networkManager = new NetworkManager();
+
+		// Shows the camera frames once per pulse
+		framePublisher = new FramePublisher();
+		framePublisher.start();
 		
 		// Setup window
 		window.setResizable(false);
@@ -83,33 +89,7 @@ public class AluminatiDashboard extends Application {
 		
 		window.show();
 		
-		Thread leftThread = new Thread(() -> {
-			while (!dashboard.setupLeft()) {
-				try {
-					Thread.sleep(THREAD_WAIT_TIME);
-				} catch (InterruptedException e) {
-					
-				}
-			}
-		});
-		leftThread.setName("Left Setup Thread");
-		leftThread.setDaemon(true);
-		leftThread.setPriority(Thread.MAX_PRIORITY);
-		leftThread.start();
-		
-		Thread rightThread = new Thread(() -> {
-			while (!dashboard.setupRight()) {
-				try {
-					Thread.sleep(THREAD_WAIT_TIME);
-				} catch (InterruptedException e) {
-					
-				}
-			}
-		});
-		rightThread.setName("Right Setup Thread");
-		rightThread.setDaemon(true);
-		rightThread.setPriority(Thread.MAX_PRIORITY);
-		rightThread.start();
+		dashboard.setupCameras();
 	}
 
 	public static void main(String[] args) {
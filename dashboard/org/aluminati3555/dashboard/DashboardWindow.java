@@ -23,11 +23,19 @@
 package org.aluminati3555.dashboard;
 
 import java.io.IOException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.function.Consumer;
 
 import org.aluminati3555.net.CameraView;
+import org.aluminati3555.net.LatencyView;
 
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import javafx.application.Platform;
+import javafx.geometry.Pos;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 
 /**
@@ -40,98 +48,149 @@ public class DashboardWindow extends BorderPane {
 	public static final String CAMERA_2 = "limelight";
 
 	/**
-	 * Gets the left side of the window
-	 * 
-	 * @throws IOException
+	 * Returns the mjpeg stream a camera publishes, or null if it has not published
+	 * one yet
 	 */
-	private VBox getLeftContent() {
-		String stream = null;
+	private static String getStream(String camera) {
 		try {
-			stream = AluminatiDashboard.networkManager.getNT().getTable("CameraPublisher").getSubTable(CAMERA_1)
+			return AluminatiDashboard.networkManager.getNT().getTable("CameraPublisher").getSubTable(camera)
 					.getEntry("streams").getStringArray(null)[1].replaceAll("mjpg:", "");
-		} catch (NullPointerException e) {
+		} catch (NullPointerException | ArrayIndexOutOfBoundsException e) {
 			return null;
 		}
+	}
 
+	/**
+	 * Builds the pane of a camera feed. This must be called on the application
+	 * thread.
+	 */
+	private VBox getContent(CameraView cameraView) {
 		VBox pane = new VBox();
 		pane.setStyle("-fx-background-color: grey;");
 		pane.minWidthProperty().bind(this.widthProperty().divide(2));
 
-		CameraView cameraView;
-		try {
-			cameraView = new CameraView(stream);
-		} catch (IOException | NullPointerException e) {
-			return null;
-		}
+		AluminatiDashboard.framePublisher.add(cameraView);
 
 		cameraView.fitWidthProperty().bind(pane.widthProperty());
 		cameraView.fitHeightProperty().bind(pane.heightProperty());
-		pane.getChildren().add(cameraView);
+
+		// Shows the latency of the stream over the frames
+		LatencyView latencyView = new LatencyView(cameraView);
+		AluminatiDashboard.framePublisher.add(latencyView);
+
+		StackPane stack = new StackPane(cameraView, latencyView);
+		StackPane.setAlignment(latencyView, Pos.TOP_LEFT);
+		pane.getChildren().add(stack);
 
 		return pane;
 	}
 
 	/**
-	 * Gets the right side of the window
+	 * Shows the left camera feed. This must be called on the application thread.
 	 */
-	private VBox getRightContent() {
-		String stream = null;
-		try {
-			stream = AluminatiDashboard.networkManager.getNT().getTable("CameraPublisher").getSubTable(CAMERA_2)
-					.getEntry("streams").getStringArray(null)[1].replaceAll("mjpg:", "");
-		} catch (NullPointerException e) {
-			return null;
-		}
-
-		stream = stream.replaceAll("mjpg:", "");
-
-		VBox pane = new VBox();
-		pane.setStyle("-fx-background-color: grey;");
-		pane.minWidthProperty().bind(this.widthProperty().divide(2));
-
-		CameraView cameraView;
-		try {
-			cameraView = new CameraView(stream);
-		} catch (IOException | NullPointerException e) {
-			return null;
-		}
+	public void setupLeft(CameraView cameraView) {
+		this.setLeft(getContent(cameraView));
+	}
 
-		cameraView.fitWidthProperty().bind(pane.widthProperty());
-		cameraView.fitHeightProperty().bind(pane.heightProperty());
-		pane.getChildren().add(cameraView);
+	/**
+	 * Shows the right camera feed. This must be called on the application thread.
+	 */
+	public void setupRight(CameraView cameraView) {
+		this.setRight(getContent(cameraView));
+	}
 
-		return pane;
+	/**
+	 * Sets up both camera feeds once the cameras publish their streams
+	 */
+	public void setupCameras() {
+		new CameraSetup(CAMERA_1, this::setupLeft).start();
+		new CameraSetup(CAMERA_2, this::setupRight).start();
 	}
 
 	/**
-	 * Initializes the left camera feed
+	 * This class opens the stream of a camera when the camera publishes it instead
+	 * of polling for it. Connecting blocks, so it is done on the camera's own timer
+	 * thread and only the finished view is handed to the application thread. If
+	 * the stream can not be opened yet it is tried again after THREAD_WAIT_TIME.
 	 */
-	public boolean setupLeft() {
-		Platform.runLater(() -> {
-			VBox pane = getLeftContent();
-			if (pane == null) {
+	private static class CameraSetup implements Runnable {
+		private NetworkTableInstance nt;
+		private String camera;
+		private Consumer<CameraView> show;
+		private Timer timer;
+
+		private int listener;
+		private boolean done;
+		private boolean retryScheduled;
+
+		/**
+		 * Listens for the streams of the camera
+		 */
+		public void start() {
+			listener = nt.addEntryListener("/CameraPublisher/" + camera + "/streams", notification -> {
+				schedule(0);
+			}, EntryListenerFlags.kImmediate | EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+		}
+
+		/**
+		 * Runs the setup on the timer thread after a delay
+		 */
+		private void schedule(long delay) {
+			try {
+				timer.schedule(new TimerTask() {
+					@Override
+					public void run() {
+						CameraSetup.this.run();
+					}
+				}, delay);
+			} catch (IllegalStateException e) {
+				// The timer was cancelled because the camera is already set up
+			}
+		}
+
+		/**
+		 * Opens the stream, called only on the timer thread
+		 */
+		@Override
+		public void run() {
+			if (done) {
 				return;
 			}
 
-			this.setLeft(pane);
-		});
+			String stream = getStream(camera);
+			if (stream != null) {
+				try {
+					CameraView cameraView = new CameraView(stream);
 
-		return !(this.getLeft() == null);
-	}
+					done = true;
+					nt.removeEntryListener(listener);
+					timer.cancel();
 
-	/**
-	 * Initializes the right camera feed
-	 */
-	public boolean setupRight() {
-		Platform.runLater(() -> {
-			VBox pane = getRightContent();
-			if (pane == null) {
-				return;
+					Platform.runLater(() -> show.accept(cameraView));
+					return;
+				} catch (IOException e) {
+					// The camera is not reachable yet
+				}
 			}
 
-			this.setRight(pane);
-		});
+			if (!retryScheduled) {
+				retryScheduled = true;
 
-		return !(this.getRight() == null);
+				timer.schedule(new TimerTask() {
+					@Override
+					public void run() {
+						retryScheduled = false;
+						CameraSetup.this.run();
+					}
+				}, AluminatiDashboard.THREAD_WAIT_TIME);
+			}
+		}
+
+		public CameraSetup(String camera, Consumer<CameraView> show) {
+			this.nt = AluminatiDashboard.networkManager.getNT();
+			this.camera = camera;
+			this.show = show;
+			this.timer = new Timer("Camera Setup Timer: " + camera, true);
+		}
 	}
 }
@@ -22,13 +22,16 @@
 
 package org.aluminati3555.net;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.IntBuffer;
 
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Stage;
+import javafx.stage.Window;
 
 /**
  * This is a special image view for the mjpeg format
@@ -36,13 +39,56 @@ import javafx.scene.image.ImageView;
  * @author Caleb Heydon
  */
 public class CameraView extends ImageView implements MjpegViewer {
+	private static final PixelFormat<IntBuffer> PIXEL_FORMAT = PixelFormat.getIntArgbInstance();
+
 	private MjpegRunner runner;
-	
+
+	// The image frames are written into, replaced only when the size changes
+	private WritableImage image;
+
+	// Updated every pulse so the stream thread can skip frames nobody sees
+	private volatile boolean showing;
+
+	/**
+	 * Returns true if the view was visible in a window that is not minimized at
+	 * the last pulse
+	 */
+	public boolean isShowing() {
+		return showing;
+	}
+
+	/**
+	 * Updates whether the view is showing and shows the newest frame, called once
+	 * per pulse on the javafx thread
+	 */
+	public void update() {
+		Window window = (this.getScene() == null) ? null : this.getScene().getWindow();
+
+		showing = this.isVisible() && window != null && window.isShowing()
+				&& !(window instanceof Stage && ((Stage) window).isIconified());
+
+		if (showing) {
+			runner.showFrame();
+		}
+	}
+
+	/**
+	 * Sets the current frame, must be called on the javafx thread
+	 */
+	public void setFrame(int[] pixels, int width, int height) {
+		if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+			image = new WritableImage(width, height);
+			this.setImage(image);
+		}
+
+		image.getPixelWriter().setPixels(0, 0, width, height, PIXEL_FORMAT, pixels, 0, width);
+	}
+
 	/**
-	 * Sets the current frame
+	 * Returns the latency of the frames shown, only used on the javafx thread
 	 */
-	public void setBufferedImage(BufferedImage frame) {
-		this.setImage(SwingFXUtils.toFXImage(frame, null));
+	public LatencyStats getLatencyStats() {
+		return runner.getLatencyStats();
 	}
 
 	/**
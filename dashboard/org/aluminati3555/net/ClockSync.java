@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class finds the offset between the clock of a camera server and the
+ * local clock, so the timestamps the server sends with each frame can be
+ * compared with local ones. It asks the server for its time a few times and
+ * keeps the answer with the shortest round trip, which is the one least
+ * affected by network delays. Both clocks are in microseconds.
+ * 
+ * @author Caleb Heydon
+ */
+public class ClockSync {
+	private static final String TIME_PATH = "/time";
+	private static final String RECEIVE_TIME_HEADER = "x-receive-time:";
+	private static final String TRANSMIT_TIME_HEADER = "x-transmit-time:";
+
+	private static final int SAMPLES = 8;
+	private static final int TIMEOUT = 1000;
+	private static final int MAX_RESPONSE_LENGTH = 4096;
+
+	// Clocks drift apart so the offset is measured again now and then
+	private static final long SYNC_INTERVAL = 10000;
+
+	// The thread shared by every clock
+	private static final ScheduledExecutorService SYNC_THREAD = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable);
+		thread.setName("Clock Sync Thread");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String host;
+	private final int port;
+	private ScheduledFuture<?> task;
+
+	private volatile boolean synced;
+	private volatile long offset;
+	private volatile long roundTrip;
+
+	/**
+	 * Returns the local time in microseconds
+	 * 
+	 * @return
+	 */
+	public static long now() {
+		return System.nanoTime() / 1000;
+	}
+
+	/**
+	 * Returns true once the offset has been measured
+	 * 
+	 * @return
+	 */
+	public boolean isSynced() {
+		return synced;
+	}
+
+	/**
+	 * Returns the server time minus the local time
+	 * 
+	 * @return
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the round trip of the best sample, the offset is within half of it
+	 * 
+	 * @return
+	 */
+	public long getRoundTrip() {
+		return roundTrip;
+	}
+
+	/**
+	 * Converts a server time to local time
+	 * 
+	 * @param serverTime
+	 * @return
+	 */
+	public long toLocalTime(long serverTime) {
+		return serverTime - offset;
+	}
+
+	/**
+	 * Returns a number header of a response
+	 * 
+	 * @param response The response in lowercase
+	 * @param name     The lowercase name with its colon
+	 * @return
+	 * @throws IOException
+	 */
+	private static long getHeader(String response, String name) throws IOException {
+		int index = response.indexOf(name);
+		if (index == -1) {
+			throw new IOException("The server did not send " + name);
+		}
+
+		int end = response.indexOf('\r', index);
+		try {
+			return Long.parseLong(response.substring(index + name.length(), end).trim());
+		} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+			throw new IOException("The server sent a bad " + name);
+		}
+	}
+
+	/**
+	 * Asks the server for its time once
+	 * 
+	 * @param result Filled with the offset and the round trip
+	 * @throws IOException
+	 */
+	private void sample(long[] result) throws IOException {
+		try (Socket socket = new Socket()) {
+			// Only the request and response are timed, not the connection
+			socket.connect(new InetSocketAddress(host, port), TIMEOUT);
+			socket.setSoTimeout(TIMEOUT);
+			socket.setTcpNoDelay(true);
+
+			OutputStream outputStream = socket.getOutputStream();
+			InputStream inputStream = socket.getInputStream();
+			byte[] request = ("GET " + TIME_PATH + " HTTP/1.0\r\nHost: " + host + "\r\n\r\n")
+					.getBytes(StandardCharsets.US_ASCII);
+
+			long sendTime = now();
+			outputStream.write(request);
+			outputStream.flush();
+
+			// Read up to the end of the headers
+			byte[] response = new byte[MAX_RESPONSE_LENGTH];
+			int length = 0;
+			while (length < 4 || response[length - 4] != '\r' || response[length - 3] != '\n'
+					|| response[length - 2] != '\r' || response[length - 1] != '\n') {
+				if (length == response.length) {
+					throw new IOException("The time response is too long");
+				}
+
+				int read = inputStream.read();
+				if (read == -1) {
+					throw new EOFException("The time response ended early");
+				}
+				response[length++] = (byte) read;
+			}
+			long receiveTime = now();
+
+			String headers = new String(response, 0, length, StandardCharsets.US_ASCII).toLowerCase();
+			long serverReceiveTime = getHeader(headers, RECEIVE_TIME_HEADER);
+			long serverTransmitTime = getHeader(headers, TRANSMIT_TIME_HEADER);
+
+			// The time spent on the network, not counting the server
+			result[1] = (receiveTime - sendTime) - (serverTransmitTime - serverReceiveTime);
+
+			// Assumes the request and the response took as long as each other
+			result[0] = ((serverReceiveTime - sendTime) + (serverTransmitTime - receiveTime)) / 2;
+		}
+	}
+
+	/**
+	 * Measures the offset now, keeping the old one if the server can not be
+	 * reached
+	 * 
+	 * @return True if the offset was measured
+	 */
+	public boolean sync() {
+		long[] result = new long[2];
+		long bestOffset = 0;
+		long bestRoundTrip = Long.MAX_VALUE;
+
+		for (int i = 0; i < SAMPLES; i++) {
+			try {
+				sample(result);
+			} catch (IOException e) {
+				return false;
+			}
+
+			if (result[1] < bestRoundTrip) {
+				bestRoundTrip = result[1];
+				bestOffset = result[0];
+			}
+		}
+
+		offset = bestOffset;
+		roundTrip = bestRoundTrip;
+		synced = true;
+
+		return true;
+	}
+
+	/**
+	 * Starts measuring the offset every SYNC_INTERVAL
+	 */
+	public synchronized void start() {
+		if (task == null) {
+			task = SYNC_THREAD.scheduleWithFixedDelay(this::sync, 0, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops measuring the offset
+	 */
+	public synchronized void stop() {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+	}
+
+	public ClockSync(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+}
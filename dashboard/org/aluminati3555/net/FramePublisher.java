@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.aluminati3555.net;
+
+import java.util.ArrayList;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * This timer shows the newest decoded frame of every camera view once per
+ * javafx pulse, so frames are never pushed faster than the window repaints. It
+ * also updates the latency views.
+ * 
+ * @author Caleb Heydon
+ */
+public class FramePublisher extends AnimationTimer {
+	private ArrayList<CameraView> views;
+	private ArrayList<LatencyView> latencyViews;
+
+	/**
+	 * Adds a camera view, must be called on the javafx thread
+	 * 
+	 * @param view
+	 */
+	public void add(CameraView view) {
+		views.add(view);
+	}
+
+	/**
+	 * Adds a latency view, must be called on the javafx thread
+	 * 
+	 * @param view
+	 */
+	public void add(LatencyView view) {
+		latencyViews.add(view);
+	}
+
+	@Override
+	public void handle(long now) {
+		for (int i = 0; i < views.size(); i++) {
+			views.get(i).update();
+		}
+
+		for (int i = 0; i < latencyViews.size(); i++) {
+			latencyViews.get(i).update(now);
+		}
+	}
+
+	public FramePublisher() {
+		views = new ArrayList<CameraView>();
+		latencyViews = new ArrayList<LatencyView>();
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.net;
+
+/**
+ * This class holds the timestamps of one frame on its way from the camera to
+ * the screen, in microseconds. The capture, encode and send times are from the
+ * clock of the camera server and are -1 if the server did not send them.
+ * 
+ * @author Caleb Heydon
+ */
+public class FrameTiming {
+	// Server clock
+	public long captureTime = -1;
+	public long encodeTime = -1;
+	public long sendTime = -1;
+
+	// Local clock
+	public long arrivalTime = -1;
+	public long decodeTime = -1;
+
+	/**
+	 * Returns true if the server sent its timestamps
+	 * 
+	 * @return
+	 */
+	public boolean hasServerTimes() {
+		return captureTime != -1 && encodeTime != -1 && sendTime != -1;
+	}
+
+	/**
+	 * Copies the timestamps of another frame
+	 * 
+	 * @param timing
+	 */
+	public void copy(FrameTiming timing) {
+		captureTime = timing.captureTime;
+		encodeTime = timing.encodeTime;
+		sendTime = timing.sendTime;
+		arrivalTime = timing.arrivalTime;
+		decodeTime = timing.decodeTime;
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.aluminati3555.net;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * This class decodes jpeg frames into one reused image. The reader, its input
+ * stream and the image are kept between frames, so decoding a frame of the
+ * same size does not create any objects of our own.
+ * 
+ * A decoder must only be used by one thread at a time.
+ * 
+ * @author Caleb Heydon
+ */
+public class JpegDecoder {
+	private ImageReader reader;
+	private ImageReadParam param;
+	private ByteArrayImageInputStream input;
+
+	// The decoded frame as opaque argb pixels
+	private BufferedImage image;
+	private int[] pixels;
+
+	public int getWidth() {
+		return image.getWidth();
+	}
+
+	public int getHeight() {
+		return image.getHeight();
+	}
+
+	/**
+	 * Returns the pixels of the last frame, valid until the next decode
+	 * 
+	 * @return
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Decodes a jpeg
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void decode(byte[] data, int offset, int length) throws IOException {
+		input.setData(data, offset, length);
+		reader.setInput(input, true, true);
+
+		int width = reader.getWidth(0);
+		int height = reader.getHeight(0);
+
+		// Only reallocate when the stream resolution changes
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
+
+		param.setDestination(image);
+		reader.read(0, param);
+
+		// The image has no alpha channel, make every pixel opaque for javafx
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] |= 0xFF000000;
+		}
+	}
+
+	/**
+	 * Frees the jpeg reader
+	 */
+	public void dispose() {
+		reader.dispose();
+	}
+
+	public JpegDecoder() {
+		Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+		if (!readers.hasNext()) {
+			throw new IllegalStateException("No jpeg reader available");
+		}
+
+		reader = readers.next();
+		param = reader.getDefaultReadParam();
+		input = new ByteArrayImageInputStream();
+	}
+
+	/**
+	 * An image input stream over part of a byte array that can be pointed at new
+	 * data without creating another stream
+	 * 
+	 * @author Caleb Heydon
+	 */
+	private static class ByteArrayImageInputStream extends ImageInputStreamImpl {
+		private byte[] data;
+		private int offset;
+		private int length;
+
+		public void setData(byte[] data, int offset, int length) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+
+			streamPos = 0;
+			flushedPos = 0;
+			bitOffset = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			bitOffset = 0;
+			if (streamPos >= length) {
+				return -1;
+			}
+
+			return data[offset + (int) streamPos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int bufferOffset, int count) throws IOException {
+			bitOffset = 0;
+			if (streamPos >= length) {
+				return -1;
+			}
+
+			int read = Math.min(count, length - (int) streamPos);
+			System.arraycopy(data, offset + (int) streamPos, buffer, bufferOffset, read);
+			streamPos += read;
+
+			return read;
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.net;
+
+/**
+ * This class averages the latency of each stage of a camera stream over the
+ * frames shown since the last reset. It is only used on the javafx thread.
+ * 
+ * @author Caleb Heydon
+ */
+public class LatencyStats {
+	// Capture to encode on the server, mostly vision processing
+	public static final int PROCESSING = 0;
+	public static final int ENCODE = 1;
+	public static final int NETWORK = 2;
+
+	// Arrival to decoded, including the wait for a decode thread
+	public static final int DECODE = 3;
+
+	// Decoded to shown at the next pulse
+	public static final int DISPLAY = 4;
+
+	// Capture to shown
+	public static final int TOTAL = 5;
+
+	public static final String[] STAGE_NAMES = { "processing", "encode", "network", "decode", "display", "total" };
+
+	private long[] sums;
+	private int[] counts;
+	private long maxTotal;
+
+	/**
+	 * Adds a stage time of one frame
+	 * 
+	 * @param stage
+	 * @param time
+	 */
+	private void add(int stage, long time) {
+		sums[stage] += time;
+		counts[stage]++;
+	}
+
+	/**
+	 * Records a frame when it is shown
+	 * 
+	 * @param timing        The timestamps of the frame
+	 * @param displayedTime The local time it was shown
+	 * @param clock         The offset from the server clock
+	 */
+	public void record(FrameTiming timing, long displayedTime, ClockSync clock) {
+		if (timing.arrivalTime != -1 && timing.decodeTime != -1) {
+			add(DECODE, timing.decodeTime - timing.arrivalTime);
+			add(DISPLAY, displayedTime - timing.decodeTime);
+		}
+
+		if (!timing.hasServerTimes()) {
+			return;
+		}
+
+		// Differences of server times do not need the offset
+		add(PROCESSING, timing.encodeTime - timing.captureTime);
+		add(ENCODE, timing.sendTime - timing.encodeTime);
+
+		if (clock.isSynced() && timing.arrivalTime != -1) {
+			add(NETWORK, timing.arrivalTime - clock.toLocalTime(timing.sendTime));
+
+			long total = displayedTime - clock.toLocalTime(timing.captureTime);
+			add(TOTAL, total);
+			maxTotal = Math.max(maxTotal, total);
+		}
+	}
+
+	/**
+	 * Returns the number of frames a stage was measured for
+	 * 
+	 * @param stage
+	 * @return
+	 */
+	public int getCount(int stage) {
+		return counts[stage];
+	}
+
+	/**
+	 * Returns the average time of a stage in milliseconds, or NaN if it was not
+	 * measured
+	 * 
+	 * @param stage
+	 * @return
+	 */
+	public double getAverage(int stage) {
+		if (counts[stage] == 0) {
+			return Double.NaN;
+		}
+
+		return sums[stage] / 1000.0 / counts[stage];
+	}
+
+	/**
+	 * Returns the longest total time in milliseconds
+	 * 
+	 * @return
+	 */
+	public double getMaxTotal() {
+		return maxTotal / 1000.0;
+	}
+
+	/**
+	 * Clears the averages
+	 */
+	public void reset() {
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = 0;
+			counts[i] = 0;
+		}
+		maxTotal = 0;
+	}
+
+	public LatencyStats() {
+		sums = new long[STAGE_NAMES.length];
+		counts = new int[STAGE_NAMES.length];
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.net;
+
+import javafx.scene.control.Label;
+import javafx.scene.paint.Color;
+
+/**
+ * This label shows the latency of each stage of a camera stream, averaged over
+ * the frames shown since it was last updated
+ * 
+ * @author Caleb Heydon
+ */
+public class LatencyView extends Label {
+	// Nanoseconds between updates of the text
+	private static final long UPDATE_INTERVAL = 500000000;
+
+	private CameraView cameraView;
+	private long lastUpdate;
+
+	/**
+	 * Formats the average of a stage
+	 * 
+	 * @param stats
+	 * @param stage
+	 * @return
+	 */
+	private static String format(LatencyStats stats, int stage) {
+		double average = stats.getAverage(stage);
+		if (Double.isNaN(average)) {
+			return LatencyStats.STAGE_NAMES[stage] + " -";
+		}
+
+		return LatencyStats.STAGE_NAMES[stage] + " " + String.format("%.1f", average);
+	}
+
+	/**
+	 * Updates the text if it is time to, called once per pulse on the javafx
+	 * thread
+	 * 
+	 * @param now The time of the pulse in nanoseconds
+	 */
+	public void update(long now) {
+		if (now - lastUpdate < UPDATE_INTERVAL) {
+			return;
+		}
+		lastUpdate = now;
+
+		LatencyStats stats = cameraView.getLatencyStats();
+		if (stats.getCount(LatencyStats.DISPLAY) == 0) {
+			this.setText("No frames");
+			return;
+		}
+
+		StringBuilder text = new StringBuilder();
+		text.append(format(stats, LatencyStats.TOTAL));
+		if (stats.getCount(LatencyStats.TOTAL) > 0) {
+			text.append(String.format(" (max %.1f)", stats.getMaxTotal()));
+		}
+		text.append(" ms\n");
+
+		for (int stage = LatencyStats.PROCESSING; stage < LatencyStats.TOTAL; stage++) {
+			if (stage != LatencyStats.PROCESSING) {
+				text.append(" > ");
+			}
+			text.append(format(stats, stage));
+		}
+
+		this.setText(text.toString());
+		stats.reset();
+	}
+
+	public LatencyView(CameraView cameraView) {
+		super("No frames");
+		this.cameraView = cameraView;
+
+		this.setTextFill(Color.LIME);
+		this.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5);");
+	}
+}
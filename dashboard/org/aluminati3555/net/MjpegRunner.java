@@ -1,47 +1,117 @@
 package org.aluminati3555.net;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
-import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
-
-import javax.imageio.ImageIO;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MjpegRunner implements Runnable {
-	private static final String CONTENT_LENGTH = "Content-Length: ";
+	// The decode threads shared by every stream
+	private static final ExecutorService DECODE_POOL = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable);
+				thread.setName("Decode Thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	// The timestamps the camera server adds to each part
+	private static final byte[] CAPTURE_TIME = MjpegStreamReader.getHeaderName("X-Capture-Time");
+	private static final byte[] ENCODE_TIME = MjpegStreamReader.getHeaderName("X-Encode-Time");
+	private static final byte[] SEND_TIME = MjpegStreamReader.getHeaderName("X-Send-Time");
+
 	private final URL url;
 	private MjpegViewer viewer;
-	private InputStream urlStream;
+	private ReadableByteChannel channel;
+	private MjpegStreamReader streamReader;
 	private boolean isRunning = true;
 
+	// The newest jpeg waiting to be decoded, older ones are replaced
+	private byte[] pendingFrame;
+	private int pendingLength;
+	private boolean framePending;
+	private byte[] decodingFrame;
+	private FrameTiming pendingTiming;
+	private FrameTiming decodingTiming;
+	private final Object pendingLock = new Object();
+
+	// True while a decode of this stream is queued or running
+	private final AtomicBoolean decodeScheduled = new AtomicBoolean();
+	private final Runnable decodeTask = this::decodeFrames;
+
+	// Frames are decoded into one decoder while the other is shown
+	private JpegDecoder decodeDecoder;
+	private JpegDecoder readyDecoder;
+	private FrameTiming decodeTiming;
+	private FrameTiming readyTiming;
+	private boolean frameReady;
+	private final Object frameLock = new Object();
+
+	// The latency of the frames shown
+	private ClockSync clock;
+	private LatencyStats latencyStats;
+
 	public MjpegRunner(MjpegViewer viewer, URL url) throws IOException {
 		this.viewer = viewer;
 		this.url = url;
 
+		pendingFrame = new byte[0];
+		decodingFrame = new byte[0];
+
+		decodeDecoder = new JpegDecoder();
+		readyDecoder = new JpegDecoder();
+
+		pendingTiming = new FrameTiming();
+		decodingTiming = new FrameTiming();
+		decodeTiming = new FrameTiming();
+		readyTiming = new FrameTiming();
+
+		latencyStats = new LatencyStats();
+		clock = new ClockSync(url.getHost(), (url.getPort() == -1) ? url.getDefaultPort() : url.getPort());
+
+		// The clock is only synced once the camera can be reached
 		start();
+		clock.start();
 	}
 
 	private synchronized void start() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+
 		URLConnection urlConn = url.openConnection();
 		// change the timeout to taste, I like 1 second
 		urlConn.setReadTimeout(5000);
+		urlConn.setConnectTimeout(5000);
 		urlConn.connect();
-		urlStream = urlConn.getInputStream();
+
+		channel = Channels.newChannel(urlConn.getInputStream());
+		streamReader = new MjpegStreamReader(channel, urlConn.getContentType());
 	}
 
 	public synchronized void stop() {
 		isRunning = false;
+		clock.stop();
+	}
+
+	/**
+	 * Returns the latency of the frames shown, only used on the javafx thread
+	 * 
+	 * @return
+	 */
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
 	}
 
 	/**
 	 * Keeps running while process() returns true
 	 * <p>
-	 * Each loop asks for the next JPEG image and then sends it to our JPanel to
-	 * draw
+	 * Each loop reads the next JPEG image and, if the viewer is showing, hands it
+	 * to the decode pool. Frames of hidden viewers are never decoded.
 	 *
 	 * @see java.lang.Runnable#run()
 	 */
@@ -49,82 +119,121 @@ public class MjpegRunner implements Runnable {
 		while (isRunning) {
 			boolean error = false;
 			try {
-				byte[] imageBytes = retrieveNextImage();
-				ByteArrayInputStream bais = new ByteArrayInputStream(imageBytes);
+				streamReader.readFrame();
+				long arrivalTime = ClockSync.now();
 
-				BufferedImage frame = ImageIO.read(bais);
-				viewer.setBufferedImage(frame);
-			} catch (SocketTimeoutException ste) {
-				System.err.println("Failed stream read: " + ste);
-				error = true;
+				if (viewer.isShowing()) {
+					queueFrame(arrivalTime);
+				}
 			} catch (IOException e) {
 				System.err.println("Failed stream read: " + e);
 				error = true;
 			}
-			
+
 			if (error) {
 				try {
 					start();
 				} catch (IOException e) {
-					
+
 				}
 			}
 		}
 	}
 
 	/**
-	 * Using the urlStream get the next JPEG image as a byte[]
-	 *
-	 * @return byte[] of the JPEG
-	 * @throws IOException
+	 * Replaces the pending frame with the one just read and schedules a decode if
+	 * none is queued
+	 * 
+	 * @param arrivalTime The time the frame was read
 	 */
-	private byte[] retrieveNextImage() throws IOException {
-		int currByte = -1;
+	private void queueFrame(long arrivalTime) {
+		synchronized (pendingLock) {
+			int length = streamReader.getFrameLength();
+			if (pendingFrame.length < length) {
+				pendingFrame = new byte[length * 2];
+			}
 
-		// build headers
-		// the DCS-930L stops it's headers
+			System.arraycopy(streamReader.getFrameData(), streamReader.getFrameOffset(), pendingFrame, 0, length);
+			pendingLength = length;
+			framePending = true;
 
-		boolean captureContentLength = false;
-		StringWriter contentLengthStringWriter = new StringWriter(128);
-		StringWriter headerWriter = new StringWriter(128);
+			pendingTiming.captureTime = streamReader.getNumberHeader(CAPTURE_TIME, -1);
+			pendingTiming.encodeTime = streamReader.getNumberHeader(ENCODE_TIME, -1);
+			pendingTiming.sendTime = streamReader.getNumberHeader(SEND_TIME, -1);
+			pendingTiming.arrivalTime = arrivalTime;
+		}
 
-		int contentLength = 0;
+		if (!decodeScheduled.getAndSet(true)) {
+			DECODE_POOL.execute(decodeTask);
+		}
+	}
 
-		while ((currByte = urlStream.read()) > -1) {
-			if (captureContentLength) {
-				if (currByte == 10 || currByte == 13) {
-					contentLength = Integer.parseInt(contentLengthStringWriter.toString());
-					break;
-				}
-				contentLengthStringWriter.write(currByte);
-
-			} else {
-				headerWriter.write(currByte);
-				String tempString = headerWriter.toString();
-				int indexOf = tempString.indexOf(CONTENT_LENGTH);
-				if (indexOf > 0) {
-					captureContentLength = true;
+	/**
+	 * Decodes the newest pending frame until there is none left, runs on the
+	 * decode pool
+	 */
+	private void decodeFrames() {
+		while (true) {
+			int length;
+			synchronized (pendingLock) {
+				if (!framePending) {
+					decodeScheduled.set(false);
+					return;
 				}
+
+				byte[] frame = decodingFrame;
+				decodingFrame = pendingFrame;
+				pendingFrame = frame;
+
+				FrameTiming timing = decodingTiming;
+				decodingTiming = pendingTiming;
+				pendingTiming = timing;
+
+				length = pendingLength;
+				framePending = false;
 			}
-		}
 
-		// 255 indicates the start of the jpeg image
-		while ((urlStream.read()) != 255) {
-			// just skip extras
-		}
+			// Corrupt or truncated frames make the jpeg reader throw runtime exceptions
+			// too, and the frame is skipped so the stream keeps decoding
+			try {
+				decodeDecoder.decode(decodingFrame, 0, length);
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Failed frame decode: " + e);
+				continue;
+			}
 
-		// rest is the buffer
-		byte[] imageBytes = new byte[contentLength + 1];
-		// since we ate the original 255 , shove it back in
-		imageBytes[0] = (byte) 255;
-		int offset = 1;
-		int numRead = 0;
-		while (offset < imageBytes.length
-				&& (numRead = urlStream.read(imageBytes, offset, imageBytes.length - offset)) >= 0) {
-			offset += numRead;
+			decodeTiming.copy(decodingTiming);
+			decodeTiming.decodeTime = ClockSync.now();
+
+			synchronized (frameLock) {
+				JpegDecoder decoder = readyDecoder;
+				readyDecoder = decodeDecoder;
+				decodeDecoder = decoder;
+
+				FrameTiming timing = readyTiming;
+				readyTiming = decodeTiming;
+				decodeTiming = timing;
+
+				frameReady = true;
+			}
 		}
+	}
 
-		return imageBytes;
+	/**
+	 * Shows the newest decoded frame if there is one that has not been shown, runs
+	 * on the javafx thread
+	 */
+	public void showFrame() {
+		synchronized (frameLock) {
+			if (!frameReady) {
+				return;
+			}
+
+			viewer.setFrame(readyDecoder.getPixels(), readyDecoder.getWidth(), readyDecoder.getHeight());
+			frameReady = false;
+
+			latencyStats.record(readyTiming, ClockSync.now(), clock);
+		}
 	}
 
 	/**
@@ -135,4 +244,4 @@ public class MjpegRunner implements Runnable {
 	public boolean isRunning() {
 		return isRunning;
 	}
-}
\ No newline at end of file
+}
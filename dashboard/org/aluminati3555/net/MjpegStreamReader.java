@@ -0,0 +1,332 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class splits a multipart mjpeg stream into jpeg frames. It reads the
+ * channel in large blocks into one reused buffer and finds the end of the part
+ * headers and the part boundaries with a Boyer-Moore-Horspool search. When a
+ * part has a Content-Length the frame is taken without scanning it at all.
+ * 
+ * A frame and its headers stay valid until the next call to readFrame().
+ * 
+ * @author Caleb Heydon
+ */
+public class MjpegStreamReader {
+	private static final int INITIAL_CAPACITY = 256 * 1024;
+	private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+	private static final byte[] JPEG_END = { (byte) 0xFF, (byte) 0xD9 };
+	private static final int[] JPEG_END_SHIFT = getShiftTable(JPEG_END);
+	private static final byte[] CONTENT_LENGTH = getHeaderName("Content-Length");
+
+	private ReadableByteChannel channel;
+
+	// The bytes from start to end have been read but not used
+	private byte[] buffer;
+	private ByteBuffer view;
+	private int start;
+	private int end;
+
+	// The patterns and their skip tables
+	private byte[] boundary;
+	private int[] boundaryShift;
+	private int[] headerEndShift;
+
+	// The last frame found and its part headers
+	private int frameOffset;
+	private int frameLength;
+	private int frameHeaderStart;
+	private int frameHeaderEnd;
+
+	public byte[] getFrameData() {
+		return buffer;
+	}
+
+	public int getFrameOffset() {
+		return frameOffset;
+	}
+
+	public int getFrameLength() {
+		return frameLength;
+	}
+
+	/**
+	 * Builds the Horspool skip table of a pattern
+	 * 
+	 * @param pattern
+	 * @return
+	 */
+	private static int[] getShiftTable(byte[] pattern) {
+		int[] shift = new int[256];
+		Arrays.fill(shift, pattern.length);
+
+		for (int i = 0; i < pattern.length - 1; i++) {
+			shift[pattern[i] & 0xFF] = pattern.length - 1 - i;
+		}
+
+		return shift;
+	}
+
+	/**
+	 * Returns the boundary from a multipart content type, with the leading dashes
+	 * every part starts with
+	 * 
+	 * @param contentType
+	 * @return The boundary or null
+	 */
+	private static byte[] getBoundary(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+
+		int index = contentType.indexOf("boundary=");
+		if (index == -1) {
+			return null;
+		}
+
+		String boundary = contentType.substring(index + "boundary=".length()).trim();
+		int parameterEnd = boundary.indexOf(';');
+		if (parameterEnd != -1) {
+			boundary = boundary.substring(0, parameterEnd).trim();
+		}
+
+		boundary = boundary.replace("\"", "");
+		if (boundary.isEmpty()) {
+			return null;
+		}
+
+		// Some servers already include the dashes in the header
+		if (!boundary.startsWith("--")) {
+			boundary = "--" + boundary;
+		}
+
+		return boundary.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Reads more of the stream into the buffer, growing it if it is full
+	 * 
+	 * @throws IOException
+	 */
+	private void fill() throws IOException {
+		if (end == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			view = ByteBuffer.wrap(buffer);
+		}
+
+		view.limit(buffer.length);
+		view.position(end);
+
+		int read = channel.read(view);
+		if (read == -1) {
+			throw new EOFException("The mjpeg stream ended");
+		}
+
+		end += read;
+	}
+
+	/**
+	 * Makes sure a number of bytes after start are in the buffer
+	 * 
+	 * @param length
+	 * @throws IOException
+	 */
+	private void require(int length) throws IOException {
+		while (end - start < length) {
+			fill();
+		}
+	}
+
+	/**
+	 * Finds a pattern after an index, reading more of the stream until it is found
+	 * 
+	 * @param pattern
+	 * @param shift   The skip table of the pattern
+	 * @param from    The first index to search
+	 * @return The index of the pattern
+	 * @throws IOException
+	 */
+	private int find(byte[] pattern, int[] shift, int from) throws IOException {
+		int last = pattern.length - 1;
+
+		while (true) {
+			int index = from;
+
+			while (index + last < end) {
+				int i = last;
+				while (buffer[index + i] == pattern[i]) {
+					if (i == 0) {
+						return index;
+					}
+					i--;
+				}
+
+				index += shift[buffer[index + last] & 0xFF];
+			}
+
+			// Only the bytes that could start a match need to be searched again
+			from = Math.max(from, end - last);
+			fill();
+		}
+	}
+
+	/**
+	 * Returns the lowercase form of a header name with its colon, as used by
+	 * getNumberHeader()
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static byte[] getHeaderName(String name) {
+		return (name.toLowerCase() + ":").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns a number header of the part headers, or a default value if there is
+	 * none
+	 * 
+	 * @param name         The name from getHeaderName()
+	 * @param headerStart
+	 * @param headerEnd
+	 * @param defaultValue
+	 * @return
+	 */
+	private long getNumberHeader(byte[] name, int headerStart, int headerEnd, long defaultValue) {
+		for (int i = headerStart; i + name.length <= headerEnd; i++) {
+			int j = 0;
+			while (j < name.length && Character.toLowerCase(buffer[i + j]) == name[j]) {
+				j++;
+			}
+
+			if (j < name.length) {
+				continue;
+			}
+
+			int index = i + name.length;
+			while (index < headerEnd && buffer[index] == ' ') {
+				index++;
+			}
+
+			boolean negative = index < headerEnd && buffer[index] == '-';
+			if (negative) {
+				index++;
+			}
+
+			long value = 0;
+			boolean digits = false;
+			while (index < headerEnd && buffer[index] >= '0' && buffer[index] <= '9') {
+				value = value * 10 + (buffer[index] - '0');
+				digits = true;
+				index++;
+			}
+
+			if (!digits) {
+				return defaultValue;
+			}
+
+			return negative ? -value : value;
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * Returns a number header of the last frame, or a default value if it did not
+	 * have one
+	 * 
+	 * @param name         The name from getHeaderName()
+	 * @param defaultValue
+	 * @return
+	 */
+	public long getNumberHeader(byte[] name, long defaultValue) {
+		return getNumberHeader(name, frameHeaderStart, frameHeaderEnd, defaultValue);
+	}
+
+	/**
+	 * Reads the next jpeg frame from the stream
+	 * 
+	 * @throws IOException
+	 */
+	public void readFrame() throws IOException {
+		// Move what is left of the last read to the front
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+
+		int headerEnd = find(HEADER_END, headerEndShift, start);
+		int dataStart = headerEnd + HEADER_END.length;
+		int contentLength = (int) getNumberHeader(CONTENT_LENGTH, start, headerEnd, -1);
+
+		// The headers stay in the buffer until the next call
+		frameHeaderStart = start;
+		frameHeaderEnd = headerEnd;
+
+		int dataEnd;
+		if (contentLength >= 0) {
+			start = dataStart;
+			require(contentLength);
+			dataEnd = dataStart + contentLength;
+		} else if (boundary != null) {
+			dataEnd = find(boundary, boundaryShift, dataStart);
+		} else {
+			dataEnd = find(JPEG_END, JPEG_END_SHIFT, dataStart) + JPEG_END.length;
+		}
+		start = dataEnd;
+
+		// Skip anything before the jpeg start marker
+		while (dataStart < dataEnd && buffer[dataStart] != (byte) 0xFF) {
+			dataStart++;
+		}
+
+		frameOffset = dataStart;
+		frameLength = dataEnd - dataStart;
+	}
+
+	/**
+	 * Creates a reader for a multipart stream
+	 * 
+	 * @param channel     The stream
+	 * @param contentType The content type of the response, used for the boundary
+	 */
+	public MjpegStreamReader(ReadableByteChannel channel, String contentType) {
+		this.channel = channel;
+
+		buffer = new byte[INITIAL_CAPACITY];
+		view = ByteBuffer.wrap(buffer);
+
+		boundary = getBoundary(contentType);
+		if (boundary != null) {
+			boundaryShift = getShiftTable(boundary);
+		}
+		headerEndShift = getShiftTable(HEADER_END);
+	}
+}
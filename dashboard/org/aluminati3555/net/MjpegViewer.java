@@ -1,7 +1,15 @@
 package org.aluminati3555.net;
 
-import java.awt.image.BufferedImage;
-
 public interface MjpegViewer {
-	void setBufferedImage(BufferedImage image);
+	/**
+	 * Shows a frame of opaque argb pixels. This is called on the javafx thread and
+	 * the pixels are only valid during the call.
+	 */
+	void setFrame(int[] pixels, int width, int height);
+
+	/**
+	 * Returns true if frames would be seen. This is called by the stream thread so
+	 * it must be cheap and thread safe.
+	 */
+	boolean isShowing();
 }
@@ -22,6 +22,9 @@
 
 package org.aluminati3555.net;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.JOptionPane;
 
 import org.aluminati3555.dashboard.AluminatiDashboard;
@@ -43,19 +46,41 @@ public class NetworkManager {
 		return instance;
 	}
 	
+	/**
+	 * Blocks until network tables connects without using the processor while it
+	 * waits
+	 * 
+	 * @param timeout The time to wait in milliseconds
+	 * @return True if connected
+	 */
+	private boolean waitForConnection(long timeout) {
+		CountDownLatch connected = new CountDownLatch(1);
+		int listener = instance.addConnectionListener(notification -> {
+			if (notification.connected) {
+				connected.countDown();
+			}
+		}, true);
+
+		try {
+			connected.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+
+		} finally {
+			instance.removeConnectionListener(listener);
+		}
+
+		return instance.isConnected();
+	}
+	
 	public NetworkManager() {
 		instance = NetworkTableInstance.getDefault();
 		instance.startClientTeam(AluminatiDashboard.TEAM);
 		instance.startDSClient();
 
-		long start = System.currentTimeMillis();
-
-		while (!instance.isConnected()) {
-			if ((System.currentTimeMillis() - start) >= AluminatiDashboard.WAIT_TIME) {
-				JOptionPane.showMessageDialog(null, "Unable to connect to robot", "Unable to connect to robot",
-						JOptionPane.ERROR_MESSAGE);
-				System.exit(1);
-			}
+		if (!waitForConnection(AluminatiDashboard.WAIT_TIME)) {
+			JOptionPane.showMessageDialog(null, "Unable to connect to robot", "Unable to connect to robot",
+					JOptionPane.ERROR_MESSAGE);
+			System.exit(1);
 		}
 	}
 }
@@ -0,0 +1,203 @@
+import java.util.Random;
+
+import math.BatchFunction;
+import math.CompiledFunction;
+import math.MathAdd;
+import math.MathCos;
+import math.MathFunction;
+import math.MathInput;
+import math.MathMultiply;
+import math.MathNumber;
+import math.MathPower;
+import math.MathSec;
+import math.MathSin;
+import math.MathSubtract;
+
+/**
+ * Compares computing a function one point at a time with computing it over
+ * columns with BatchFunction
+ * 
+ * @author Caleb Heydon
+ */
+public class BatchBenchmark {
+	private static final int RUNS = 10;
+
+	/**
+	 * Returns the largest difference between two columns
+	 * 
+	 * @param expected
+	 * @param actual
+	 * @return
+	 */
+	private static double maxError(double[] expected, double[] actual) {
+		double error = 0;
+		for (int i = 0; i < expected.length; i++) {
+			error = Math.max(error, Math.abs(expected[i] - actual[i]));
+		}
+
+		return error;
+	}
+
+	/**
+	 * Times a function over a number of points
+	 * 
+	 * @param name
+	 * @param points
+	 * @param tree
+	 * @param inputs
+	 */
+	private static void benchmark(String name, int points, MathNumber tree, MathInput... inputs) {
+		MathFunction function = new MathFunction(tree, inputs);
+
+		double[][] columns = new double[inputs.length][points];
+		for (int i = 0; i < inputs.length; i++) {
+			for (int j = 0; j < points; j++) {
+				columns[i][j] = (j + i * 0.5) / points;
+			}
+		}
+
+		double[] interpreted = new double[points];
+		double[] compiled = new double[points];
+		double[] batch = new double[points];
+
+		CompiledFunction compiledFunction = function.compile();
+		BatchFunction batchFunction = new BatchFunction(tree, inputs);
+		double[] point = new double[inputs.length];
+
+		double interpretedTime = Double.MAX_VALUE;
+		double compiledTime = Double.MAX_VALUE;
+		double batchTime = Double.MAX_VALUE;
+		double serialTime = Double.MAX_VALUE;
+
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (int j = 0; j < points; j++) {
+				for (int i = 0; i < inputs.length; i++) {
+					point[i] = columns[i][j];
+				}
+				interpreted[j] = function.compute(point);
+			}
+			interpretedTime = Math.min(interpretedTime, (System.nanoTime() - start) / 1e6);
+
+			start = System.nanoTime();
+			for (int j = 0; j < points; j++) {
+				for (int i = 0; i < inputs.length; i++) {
+					point[i] = columns[i][j];
+				}
+				compiled[j] = compiledFunction.eval(point);
+			}
+			compiledTime = Math.min(compiledTime, (System.nanoTime() - start) / 1e6);
+
+			// Ranges below the parallel threshold run on this thread
+			start = System.nanoTime();
+			for (int j = 0; j < points; j += 8192) {
+				batchFunction.compute(columns, batch, j, Math.min(points, j + 8192));
+			}
+			serialTime = Math.min(serialTime, (System.nanoTime() - start) / 1e6);
+
+			start = System.nanoTime();
+			function.compute(columns, batch);
+			batchTime = Math.min(batchTime, (System.nanoTime() - start) / 1e6);
+		}
+
+		System.out.println(name + " (" + points + " points): interpreted " + String.format("%.2f", interpretedTime)
+				+ " ms, compiled " + String.format("%.2f", compiledTime) + " ms, batch "
+				+ String.format("%.2f", serialTime) + " ms, parallel batch " + String.format("%.2f", batchTime)
+				+ " ms, max error " + maxError(interpreted, batch) + ", compiled max error "
+				+ maxError(interpreted, compiled));
+	}
+
+	/**
+	 * Returns a random tree over x where every leaf that is not x is its own
+	 * constant
+	 * 
+	 * @param random
+	 * @param x
+	 * @param depth
+	 * @return
+	 */
+	private static MathNumber randomTree(Random random, MathInput x, int depth) {
+		if (depth == 0 || random.nextInt(4) == 0) {
+			return (random.nextInt(3) == 0) ? x : new MathInput(random.nextInt(19) - 9);
+		}
+
+		switch (random.nextInt(5)) {
+		case 0:
+			return new MathAdd(randomTree(random, x, depth - 1), randomTree(random, x, depth - 1));
+		case 1:
+			return new MathSubtract(randomTree(random, x, depth - 1), randomTree(random, x, depth - 1));
+		case 2:
+			return new MathMultiply(randomTree(random, x, depth - 1), randomTree(random, x, depth - 1));
+		case 3:
+			return new MathSin(randomTree(random, x, depth - 1));
+		default:
+			return new MathCos(randomTree(random, x, depth - 1));
+		}
+	}
+
+	/**
+	 * Checks the batch result of random trees with many constants against the
+	 * interpreter
+	 * 
+	 * @param trees
+	 */
+	private static void checkConstants(int trees) {
+		Random random = new Random(3555);
+		MathInput x = new MathInput();
+
+		double[][] columns = { { -2, -0.5, 0, 1, 3 } };
+		double[] batch = new double[columns[0].length];
+		double[] point = new double[1];
+
+		int mismatches = 0;
+		for (int i = 0; i < trees; i++) {
+			MathFunction function = new MathFunction(randomTree(random, x, 8), x);
+			function.compute(columns, batch);
+
+			for (int j = 0; j < batch.length; j++) {
+				point[0] = columns[0][j];
+				double expected = function.compute(point);
+
+				if (Math.abs(expected - batch[j]) > 1e-9 * Math.max(1, Math.abs(expected))
+						&& !(Double.isNaN(expected) && Double.isNaN(batch[j]))) {
+					mismatches++;
+					break;
+				}
+			}
+		}
+
+		System.out.println("Random trees with many constants: " + trees + " trees, " + mismatches + " mismatches");
+	}
+
+	public static void main(String[] args) {
+		int points = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+		MathInput x = new MathInput();
+		benchmark("sec(x)^3", points, new MathPower(new MathSec(x), new MathInput(3)), x);
+
+		MathInput y = new MathInput();
+		MathNumber xy = new MathMultiply(x, y);
+		MathNumber tree = new MathAdd(new MathSubtract(new MathMultiply(xy, xy), new MathMultiply(new MathInput(3), x)),
+				new MathMultiply(new MathSin(xy), new MathCos(new MathAdd(y, new MathInput(1)))));
+		benchmark("(xy)^2 - 3x + sin(xy)cos(y + 1)", points, tree, x, y);
+
+		tree = new MathAdd(new MathMultiply(new MathAdd(x, y), new MathSubtract(x, y)),
+				new MathMultiply(new MathInput(0.5), new MathMultiply(x, new MathAdd(y, new MathInput(2)))));
+		benchmark("(x + y)(x - y) + 0.5x(y + 2)", points, tree, x, y);
+
+		// More constants than scratch columns
+		tree = x;
+		for (int i = 1; i <= 12; i++) {
+			tree = new MathAdd(new MathMultiply(tree, x), new MathInput(i));
+		}
+		benchmark("12 coefficient polynomial", points, tree, x);
+
+		tree = new MathInput(1);
+		for (int i = 2; i <= 12; i++) {
+			tree = new MathAdd(tree, new MathInput(i));
+		}
+		benchmark("1 + 2 + ... + 12 + x", points, new MathAdd(tree, x), x);
+
+		checkConstants(3000);
+	}
+}
@@ -0,0 +1,133 @@
+import java.util.Random;
+
+import math.CompiledFunction;
+import math.MathAdd;
+import math.MathCos;
+import math.MathCot;
+import math.MathCsc;
+import math.MathDivide;
+import math.MathFunction;
+import math.MathInput;
+import math.MathMultiply;
+import math.MathNumber;
+import math.MathPower;
+import math.MathSec;
+import math.MathSin;
+import math.MathSubtract;
+import math.MathTan;
+
+/**
+ * Compares the interpreted trees with the ones compiled by MathCompiler
+ * 
+ * @author Caleb Heydon
+ */
+public class CompilerBenchmark {
+	private static final int WARMUP = 200000;
+
+	// Keeps the results so the loops are not removed
+	private static volatile double sink;
+
+	/**
+	 * Builds a random tree of a depth
+	 * 
+	 * @param random
+	 * @param depth
+	 * @param x
+	 * @return
+	 */
+	private static MathNumber createTree(Random random, int depth, MathInput x) {
+		if (depth == 0) {
+			return (random.nextInt(3) == 0) ? new MathInput(1 + random.nextDouble()) : x;
+		}
+
+		switch (random.nextInt(10)) {
+		case 0:
+			return new MathSubtract(createTree(random, depth - 1, x), createTree(random, depth - 1, x));
+		case 1:
+			return new MathMultiply(createTree(random, depth - 1, x), createTree(random, depth - 1, x));
+		case 2:
+			return new MathDivide(createTree(random, depth - 1, x), new MathAdd(new MathInput(2),
+					new MathMultiply(createTree(random, depth - 1, x), createTree(random, depth - 1, x))));
+		case 3:
+			return new MathSin(createTree(random, depth - 1, x));
+		case 4:
+			return new MathCos(createTree(random, depth - 1, x));
+		case 5:
+			return new MathTan(new MathMultiply(new MathInput(0.1), createTree(random, depth - 1, x)));
+		case 6:
+			return new MathSec(new MathMultiply(new MathInput(0.1), createTree(random, depth - 1, x)));
+		case 7:
+			return new MathCsc(new MathAdd(new MathInput(1), new MathSin(createTree(random, depth - 1, x))));
+		case 8:
+			return new MathCot(new MathAdd(new MathInput(1), new MathSin(createTree(random, depth - 1, x))));
+		default:
+			return new MathAdd(createTree(random, depth - 1, x), createTree(random, depth - 1, x));
+		}
+	}
+
+	/**
+	 * Checks the compiled function gives the same results and times both
+	 * 
+	 * @param name
+	 * @param function
+	 * @param calls
+	 */
+	private static void benchmark(String name, MathFunction function, int calls) {
+		CompiledFunction compiled = function.compile();
+		double[] input = new double[1];
+
+		int mismatches = 0;
+		for (int i = 0; i < 1000; i++) {
+			input[0] = i / 1000.0;
+			if (Double.compare(function.compute(input[0]), compiled.eval(input)) != 0) {
+				mismatches++;
+			}
+		}
+
+		double sum = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			sum += function.compute(i / (double) WARMUP);
+			input[0] = i / (double) WARMUP;
+			sum += compiled.eval(input);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			sum += function.compute(i / (double) calls);
+		}
+		double interpretedTime = (System.nanoTime() - start) / (double) calls;
+
+		start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			input[0] = i / (double) calls;
+			sum += compiled.eval(input);
+		}
+		double compiledTime = (System.nanoTime() - start) / (double) calls;
+
+		sink = sum;
+
+		System.out.println(name + ": interpreted " + String.format("%.1f", interpretedTime) + " ns, compiled "
+				+ String.format("%.1f", compiledTime) + " ns, speedup "
+				+ String.format("%.2f", interpretedTime / compiledTime) + ", mismatches " + mismatches);
+	}
+
+	public static void main(String[] args) {
+		int calls = (args.length > 0) ? Integer.parseInt(args[0]) : 5000000;
+
+		MathInput x = new MathInput();
+		benchmark("sec(x)^3", new MathFunction(new MathPower(new MathSec(x), new MathInput(3)), x), calls);
+
+		// x^4 - 3x^2 + cot(x + 1) with x^2 used twice
+		MathNumber square = new MathPower(x, new MathInput(2));
+		benchmark("x^4 - 3x^2 + cot(x + 1)",
+				new MathFunction(new MathAdd(new MathSubtract(new MathMultiply(square, square),
+						new MathMultiply(new MathInput(3), square)), new MathCot(new MathAdd(x, new MathInput(1)))), x),
+				calls);
+
+		Random random = new Random(3555);
+		for (int depth : new int[] { 6, 10, 14 }) {
+			benchmark("random depth " + depth, new MathFunction(createTree(random, depth, x), x),
+					Math.max(1000, calls >> depth));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+import math.CompiledFunction;
+import math.MathAdd;
+import math.MathDivide;
+import math.MathFunction;
+import math.MathInput;
+import math.MathMultiply;
+import math.MathNumber;
+import math.MathPower;
+import math.MathSec;
+import math.MathSin;
+import math.MathUtil;
+
+/**
+ * Compares the function evaluations the trapezoid method and adaptive
+ * Gauss-Kronrod quadrature need for the same accuracy
+ * 
+ * @author Caleb Heydon
+ */
+public class IntegrationBenchmark {
+	private static final int MAX_TRAPEZOIDS = 1 << 24;
+
+	/**
+	 * Integrates a function both ways
+	 * 
+	 * @param name
+	 * @param tree
+	 * @param x
+	 * @param min
+	 * @param max
+	 * @param exact     The exact integral
+	 * @param tolerance
+	 */
+	private static void benchmark(String name, MathNumber tree, MathInput x, double min, double max, double exact,
+			double tolerance) {
+		MathFunction function = new MathFunction(tree, x);
+
+		// The trapezoid count is doubled until it is accurate enough
+		int n = 1;
+		double trapezoid = MathUtil.computeTrapezoidArea(function, min, max, n);
+		long start = System.nanoTime();
+		while (Math.abs(trapezoid - exact) > tolerance && n < MAX_TRAPEZOIDS) {
+			n *= 2;
+			trapezoid = MathUtil.computeTrapezoidArea(function, min, max, n);
+		}
+		double trapezoidTime = (System.nanoTime() - start) / 1e6;
+
+		AtomicLong evaluations = new AtomicLong();
+		CompiledFunction compiled = function.compile();
+		CompiledFunction counted = inputs -> {
+			evaluations.incrementAndGet();
+			return compiled.eval(inputs);
+		};
+
+		start = System.nanoTime();
+		double adaptive = MathUtil.computeIntegral(counted, min, max, tolerance);
+		double adaptiveTime = (System.nanoTime() - start) / 1e6;
+
+		System.out.println(name + " (tolerance " + tolerance + "): trapezoid " + (n + 1) + " evaluations, error "
+				+ Math.abs(trapezoid - exact) + ", " + String.format("%.2f", trapezoidTime) + " ms; adaptive "
+				+ evaluations.get() + " evaluations, error " + Math.abs(adaptive - exact) + ", "
+				+ String.format("%.2f", adaptiveTime) + " ms");
+	}
+
+	public static void main(String[] args) {
+		double tolerance = (args.length > 0) ? Double.parseDouble(args[0]) : 1e-8;
+
+		MathInput x = new MathInput();
+		benchmark("sin(x) from 0 to pi", new MathSin(x), x, 0, Math.PI, 2, tolerance);
+
+		benchmark("sec(x)^3 from 0 to pi/4", new MathPower(new MathSec(x), new MathInput(3)), x, 0, Math.PI / 4,
+				(Math.sqrt(2) + Math.log(Math.sqrt(2) + 1)) / 2, tolerance);
+
+		// A sharp peak at 0 that a fixed step wastes most of its points around
+		MathNumber peak = new MathDivide(new MathInput(1),
+				new MathAdd(new MathMultiply(x, x), new MathInput(0.0001)));
+		benchmark("1 / (x^2 + 0.0001) from -1 to 1", peak, x, -1, 1, 200 * Math.atan(100), tolerance);
+	}
+}
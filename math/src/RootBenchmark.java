@@ -0,0 +1,114 @@
+import math.CompiledFunction;
+import math.MathAdd;
+import math.MathFunction;
+import math.MathInput;
+import math.MathMultiply;
+import math.MathNumber;
+import math.MathPower;
+import math.MathRoot;
+import math.MathSin;
+import math.MathSubtract;
+import math.MathUtil;
+
+/**
+ * Compares the cost of Brent's method with and without Newton steps and of
+ * refining many roots serially and in parallel
+ * 
+ * @author Caleb Heydon
+ */
+public class RootBenchmark {
+	private static final double TOLERANCE = 1e-12;
+	private static final int MAX_ITERATIONS = 100;
+
+	/**
+	 * Prints the cost of a set of roots
+	 * 
+	 * @param name
+	 * @param roots
+	 * @param time  The time in ms
+	 */
+	private static void print(String name, MathRoot[] roots, double time) {
+		long iterations = 0;
+		long evaluations = 0;
+		int converged = 0;
+		for (MathRoot root : roots) {
+			iterations += root.getIterations();
+			evaluations += root.getEvaluations();
+			converged += root.isConverged() ? 1 : 0;
+		}
+
+		System.out.println(name + ": " + roots.length + " roots, " + converged + " converged, "
+				+ String.format("%.2f", (double) iterations / roots.length) + " iterations and "
+				+ String.format("%.2f", (double) evaluations / roots.length) + " evaluations per root, "
+				+ String.format("%.2f", time) + " ms");
+	}
+
+	public static void main(String[] args) {
+		int problems = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+		// sin(x^2) has roots at sqrt(k pi) that get closer together as x grows
+		MathInput x = new MathInput();
+		MathFunction function = new MathFunction(new MathSin(new MathMultiply(x, x)), x);
+		MathRoot[] roots = MathUtil.computeRoots(function, 0.5, 20, 20000, TOLERANCE);
+
+		double error = 0;
+		for (MathRoot root : roots) {
+			double k = Math.rint(root.getValue() * root.getValue() / Math.PI);
+			error = Math.max(error, Math.abs(root.getValue() - Math.sqrt(k * Math.PI)));
+		}
+		System.out.println("sin(x^2) from 0.5 to 20: " + roots.length + " roots, expected "
+				+ (long) (400 / Math.PI) + ", max error " + error);
+
+		// (x - 1)(x - 2)(x - 3) expanded, so the scan evaluates several constants
+		MathNumber polynomial = new MathSubtract(
+				new MathAdd(new MathSubtract(new MathPower(x, new MathInput(3)),
+						new MathMultiply(new MathInput(6), new MathPower(x, new MathInput(2)))),
+						new MathMultiply(new MathInput(11), x)),
+				new MathInput(6));
+		roots = MathUtil.computeRoots(new MathFunction(polynomial, x), 0.5, 3.7, 1000, TOLERANCE);
+
+		error = 0;
+		for (MathRoot root : roots) {
+			error = Math.max(error, Math.abs(root.getValue() - Math.rint(root.getValue())));
+		}
+		System.out.println("x^3 - 6x^2 + 11x - 6 from 0.5 to 3.7: " + roots.length + " roots, expected 3, max error "
+				+ error);
+
+		// x^3 - c for many values of c
+		MathNumber cube = new MathSubtract(new MathPower(x, new MathInput(3)), new MathInput(2));
+		MathFunction cubeFunction = new MathFunction(cube, x);
+		CompiledFunction compiled = cubeFunction.compile();
+		CompiledFunction derivative = cubeFunction.getDerivative(0).compile();
+
+		double[] mins = new double[problems];
+		double[] maxes = new double[problems];
+		for (int i = 0; i < problems; i++) {
+			mins[i] = -i % 7 - 1;
+			maxes[i] = i % 5 + 3;
+		}
+
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			MathRoot[] brent = MathUtil.computeRoots(compiled, null, mins, maxes, TOLERANCE, MAX_ITERATIONS);
+			double brentTime = (System.nanoTime() - start) / 1e6;
+
+			start = System.nanoTime();
+			MathRoot[] newton = MathUtil.computeRoots(compiled, derivative, mins, maxes, TOLERANCE, MAX_ITERATIONS);
+			double newtonTime = (System.nanoTime() - start) / 1e6;
+
+			start = System.nanoTime();
+			MathRoot[] serial = new MathRoot[problems];
+			for (int i = 0; i < problems; i++) {
+				serial[i] = MathUtil.computeRoot(compiled, derivative, mins[i], maxes[i], TOLERANCE, MAX_ITERATIONS);
+			}
+			double serialTime = (System.nanoTime() - start) / 1e6;
+
+			if (run == 2) {
+				print("x^3 - 2 Brent", brent, brentTime);
+				print("x^3 - 2 Brent with Newton steps", newton, newtonTime);
+				print("x^3 - 2 serial Brent with Newton steps", serial, serialTime);
+				System.out.println("Root error: " + Math.abs(newton[0].getValue() - Math.cbrt(2)));
+			}
+		}
+	}
+}
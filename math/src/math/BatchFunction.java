@@ -0,0 +1,516 @@
+/**
+ * Copyright (c) 2019 Caleb Heydon
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class evaluates a function over columns of inputs. The tree is flattened
+ * into a list of operations that each run over a whole chunk of points, so each
+ * loop is a simple array loop the JIT can vectorize instead of a tree walk per
+ * point. Large batches are split across the fork join pool.
+ * 
+ * The function is only read, so one batch function can be used by any number
+ * of threads at once. MathInputs that are not inputs of the function are read
+ * once at the start of each call.
+ * 
+ * @author Caleb Heydon
+ */
+public class BatchFunction {
+	// Points computed by each operation at a time, small enough to stay in cache
+	private static final int CHUNK_SIZE = 512;
+
+	// Batches at least this large are split across threads
+	private static final int PARALLEL_THRESHOLD = 16384;
+
+	// Operations
+	private static final int CONSTANT = 0;
+	private static final int ADD = 1;
+	private static final int SUBTRACT = 2;
+	private static final int MULTIPLY = 3;
+	private static final int DIVIDE = 4;
+	private static final int POWER = 5;
+	private static final int SIN = 6;
+	private static final int COS = 7;
+	private static final int TAN = 8;
+	private static final int CSC = 9;
+	private static final int SEC = 10;
+	private static final int COT = 11;
+	private static final int LOG = 12;
+
+	private final int inputCount;
+
+	// Operands are scratch columns, or input columns if negative (-1 is input 0),
+	// except that the operand of a constant is its index in constants
+	private final int[] operations;
+	private final int[] operands1;
+	private final int[] operands2;
+	private final int[] results;
+	private final int result;
+	private final int scratchCount;
+
+	// The inputs read by the constant operations
+	private final MathInput[] constants;
+
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	/**
+	 * Evaluates the function at every point. Column i holds the values of input i
+	 * and all of them must be at least as long as the output.
+	 * 
+	 * @param inputs
+	 * @param output
+	 */
+	public void compute(double[][] inputs, double[] output) {
+		compute(inputs, output, 0, output.length);
+	}
+
+	/**
+	 * Evaluates the function at the points from start to end
+	 * 
+	 * @param inputs
+	 * @param output
+	 * @param start
+	 * @param end
+	 */
+	public void compute(double[][] inputs, double[] output, int start, int end) {
+		if (inputs.length != inputCount) {
+			throw new MathException("Invalid number of inputs");
+		}
+
+		if (start < 0 || end > output.length || start > end) {
+			throw new MathException("Invalid range");
+		}
+
+		for (double[] input : inputs) {
+			if (input.length < end) {
+				throw new MathException("Input column is too short");
+			}
+		}
+
+		double[] constantValues = new double[constants.length];
+		for (int i = 0; i < constants.length; i++) {
+			constantValues[i] = constants[i].getValue();
+		}
+
+		if (end - start >= PARALLEL_THRESHOLD) {
+			ForkJoinPool.commonPool().invoke(new BatchTask(inputs, output, constantValues, start, end));
+		} else {
+			computeRange(inputs, output, constantValues, start, end);
+		}
+	}
+
+	/**
+	 * Evaluates a range one chunk at a time on this thread
+	 * 
+	 * @param inputs
+	 * @param output
+	 * @param constantValues
+	 * @param start
+	 * @param end
+	 */
+	private void computeRange(double[][] inputs, double[] output, double[] constantValues, int start, int end) {
+		double[][] scratch = new double[scratchCount][Math.min(CHUNK_SIZE, end - start)];
+
+		for (int chunk = start; chunk < end; chunk += CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, end - chunk);
+
+			for (int i = 0; i < operations.length; i++) {
+				// The operand of a constant is its index in constantValues, not a column
+				if (operations[i] == CONSTANT) {
+					Arrays.fill(scratch[results[i]], 0, length, constantValues[operands1[i]]);
+					continue;
+				}
+
+				double[] a = (operands1[i] < 0) ? inputs[-operands1[i] - 1] : scratch[operands1[i]];
+				int aOffset = (operands1[i] < 0) ? chunk : 0;
+				double[] b = (operands2[i] < 0) ? inputs[-operands2[i] - 1] : scratch[operands2[i]];
+				int bOffset = (operands2[i] < 0) ? chunk : 0;
+
+				run(operations[i], a, aOffset, b, bOffset, scratch[results[i]], length);
+			}
+
+			if (result < 0) {
+				System.arraycopy(inputs[-result - 1], chunk, output, chunk, length);
+			} else {
+				System.arraycopy(scratch[result], 0, output, chunk, length);
+			}
+		}
+	}
+
+	/**
+	 * Runs one operation other than CONSTANT over a chunk
+	 * 
+	 * @param operation
+	 * @param a
+	 * @param aOffset
+	 * @param b
+	 * @param bOffset
+	 * @param out
+	 * @param length
+	 */
+	private static void run(int operation, double[] a, int aOffset, double[] b, int bOffset, double[] out,
+			int length) {
+		switch (operation) {
+		case ADD:
+			for (int j = 0; j < length; j++) {
+				out[j] = a[aOffset + j] + b[bOffset + j];
+			}
+			break;
+		case SUBTRACT:
+			for (int j = 0; j < length; j++) {
+				out[j] = a[aOffset + j] - b[bOffset + j];
+			}
+			break;
+		case MULTIPLY:
+			for (int j = 0; j < length; j++) {
+				out[j] = a[aOffset + j] * b[bOffset + j];
+			}
+			break;
+		case DIVIDE:
+			for (int j = 0; j < length; j++) {
+				out[j] = a[aOffset + j] / b[bOffset + j];
+			}
+			break;
+		case POWER:
+			for (int j = 0; j < length; j++) {
+				out[j] = Math.pow(a[aOffset + j], b[bOffset + j]);
+			}
+			break;
+		case SIN:
+			for (int j = 0; j < length; j++) {
+				out[j] = Math.sin(a[aOffset + j]);
+			}
+			break;
+		case COS:
+			for (int j = 0; j < length; j++) {
+				out[j] = Math.cos(a[aOffset + j]);
+			}
+			break;
+		case TAN:
+			for (int j = 0; j < length; j++) {
+				out[j] = Math.tan(a[aOffset + j]);
+			}
+			break;
+		case CSC:
+			for (int j = 0; j < length; j++) {
+				out[j] = 1 / Math.sin(a[aOffset + j]);
+			}
+			break;
+		case SEC:
+			for (int j = 0; j < length; j++) {
+				out[j] = 1 / Math.cos(a[aOffset + j]);
+			}
+			break;
+		case COT:
+			for (int j = 0; j < length; j++) {
+				double x = a[aOffset + j];
+				out[j] = Math.cos(x) / Math.sin(x);
+			}
+			break;
+		case LOG:
+			for (int j = 0; j < length; j++) {
+				out[j] = Math.log(a[aOffset + j]);
+			}
+			break;
+		default:
+			throw new MathException("Unknown operation " + operation);
+		}
+	}
+
+	/**
+	 * Creates a batch function
+	 * 
+	 * @param function
+	 * @param inputs   The inputs in the order of the columns
+	 */
+	public BatchFunction(MathNumber function, MathInput... inputs) {
+		Builder builder = new Builder(inputs);
+		builder.countUses(function);
+		int root = builder.add(function);
+
+		inputCount = inputs.length;
+		operations = builder.toArray(builder.operations);
+		operands1 = builder.toArray(builder.operands1);
+		operands2 = builder.toArray(builder.operands2);
+		results = builder.toArray(builder.results);
+		result = root;
+		scratchCount = builder.scratchCount;
+		constants = builder.constants.toArray(new MathInput[builder.constants.size()]);
+	}
+
+	/**
+	 * This class flattens the tree and gives each result a scratch column. A
+	 * column is reused once the last operation that reads it has run.
+	 */
+	private static class Builder {
+		private IdentityHashMap<MathInput, Integer> inputIndices;
+		private ArrayList<MathInput> constants;
+
+		// The number of operations that read each node and the column it is in
+		private IdentityHashMap<MathNumber, Integer> useCounts;
+		private IdentityHashMap<MathNumber, Integer> columns;
+		private int[] readsLeft;
+
+		private ArrayList<Integer> freeColumns;
+		private int scratchCount;
+
+		private ArrayList<Integer> operations;
+		private ArrayList<Integer> operands1;
+		private ArrayList<Integer> operands2;
+		private ArrayList<Integer> results;
+
+		private int[] toArray(ArrayList<Integer> list) {
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = list.get(i);
+			}
+
+			return array;
+		}
+
+		/**
+		 * Returns the children of a node
+		 * 
+		 * @param number
+		 * @return
+		 */
+		private static MathNumber[] getChildren(MathNumber number) {
+			if (number instanceof MathAdd) {
+				return new MathNumber[] { ((MathAdd) number).getNumber1(), ((MathAdd) number).getNumber2() };
+			} else if (number instanceof MathSubtract) {
+				return new MathNumber[] { ((MathSubtract) number).getNumber1(), ((MathSubtract) number).getNumber2() };
+			} else if (number instanceof MathMultiply) {
+				return new MathNumber[] { ((MathMultiply) number).getNumber1(), ((MathMultiply) number).getNumber2() };
+			} else if (number instanceof MathDivide) {
+				return new MathNumber[] { ((MathDivide) number).getNumber1(), ((MathDivide) number).getNumber2() };
+			} else if (number instanceof MathPower) {
+				return new MathNumber[] { ((MathPower) number).getNumber1(), ((MathPower) number).getNumber2() };
+			} else if (number instanceof MathSin) {
+				return new MathNumber[] { ((MathSin) number).getNumber1() };
+			} else if (number instanceof MathCos) {
+				return new MathNumber[] { ((MathCos) number).getNumber1() };
+			} else if (number instanceof MathTan) {
+				return new MathNumber[] { ((MathTan) number).getNumber1() };
+			} else if (number instanceof MathCsc) {
+				return new MathNumber[] { ((MathCsc) number).getNumber1() };
+			} else if (number instanceof MathSec) {
+				return new MathNumber[] { ((MathSec) number).getNumber1() };
+			} else if (number instanceof MathCot) {
+				return new MathNumber[] { ((MathCot) number).getNumber1() };
+			} else if (number instanceof MathLog) {
+				return new MathNumber[] { ((MathLog) number).getNumber1() };
+			} else if (number instanceof MathInput) {
+				return new MathNumber[0];
+			}
+
+			throw new MathException("Unable to evaluate " + number.getClass().getName() + " in a batch");
+		}
+
+		/**
+		 * Returns the operation of a node
+		 * 
+		 * @param number
+		 * @return
+		 */
+		private static int getOperation(MathNumber number) {
+			if (number instanceof MathAdd) {
+				return ADD;
+			} else if (number instanceof MathSubtract) {
+				return SUBTRACT;
+			} else if (number instanceof MathMultiply) {
+				return MULTIPLY;
+			} else if (number instanceof MathDivide) {
+				return DIVIDE;
+			} else if (number instanceof MathPower) {
+				return POWER;
+			} else if (number instanceof MathSin) {
+				return SIN;
+			} else if (number instanceof MathCos) {
+				return COS;
+			} else if (number instanceof MathTan) {
+				return TAN;
+			} else if (number instanceof MathCsc) {
+				return CSC;
+			} else if (number instanceof MathSec) {
+				return SEC;
+			} else if (number instanceof MathCot) {
+				return COT;
+			} else {
+				return LOG;
+			}
+		}
+
+		/**
+		 * Counts how many operations read each node
+		 * 
+		 * @param number
+		 */
+		public void countUses(MathNumber number) {
+			Integer count = useCounts.get(number);
+			useCounts.put(number, (count == null) ? 1 : count + 1);
+
+			// A shared node is only computed once
+			if (count == null) {
+				for (MathNumber child : getChildren(number)) {
+					countUses(child);
+				}
+			}
+		}
+
+		/**
+		 * Frees a column if this was the last read of the node in it
+		 * 
+		 * @param column
+		 */
+		private void read(int column) {
+			if (column < 0) {
+				return;
+			}
+
+			readsLeft[column]--;
+			if (readsLeft[column] == 0) {
+				freeColumns.add(column);
+			}
+		}
+
+		/**
+		 * Adds the operations of a node after the ones of its children
+		 * 
+		 * @param number
+		 * @return The column of the result
+		 */
+		public int add(MathNumber number) {
+			Integer column = columns.get(number);
+			if (column != null) {
+				return column;
+			}
+
+			if (number instanceof MathInput && inputIndices.containsKey(number)) {
+				column = -inputIndices.get(number) - 1;
+				columns.put(number, column);
+				return column;
+			}
+
+			int operation;
+			int operand1;
+			int operand2 = 0;
+
+			if (number instanceof MathInput) {
+				// Other inputs are constants read at the start of each call
+				operation = CONSTANT;
+				operand1 = constants.size();
+				constants.add((MathInput) number);
+			} else {
+				MathNumber[] children = getChildren(number);
+				operation = getOperation(number);
+
+				operand1 = add(children[0]);
+				operand2 = (children.length > 1) ? add(children[1]) : operand1;
+
+				// Both operands are computed before either column can be reused
+				read(operand1);
+				if (children.length > 1) {
+					read(operand2);
+				}
+			}
+
+			// Results can go in a column freed by their own operands
+			if (freeColumns.isEmpty()) {
+				column = scratchCount++;
+				if (readsLeft.length < scratchCount) {
+					readsLeft = Arrays.copyOf(readsLeft, scratchCount * 2);
+				}
+			} else {
+				column = freeColumns.remove(freeColumns.size() - 1);
+			}
+			readsLeft[column] = useCounts.get(number);
+
+			operations.add(operation);
+			operands1.add(operand1);
+			operands2.add(operand2);
+			results.add(column);
+
+			columns.put(number, column);
+			return column;
+		}
+
+		public Builder(MathInput[] inputs) {
+			inputIndices = new IdentityHashMap<MathInput, Integer>();
+			for (int i = 0; i < inputs.length; i++) {
+				inputIndices.put(inputs[i], i);
+			}
+
+			constants = new ArrayList<MathInput>();
+			useCounts = new IdentityHashMap<MathNumber, Integer>();
+			columns = new IdentityHashMap<MathNumber, Integer>();
+			readsLeft = new int[16];
+			freeColumns = new ArrayList<Integer>();
+
+			operations = new ArrayList<Integer>();
+			operands1 = new ArrayList<Integer>();
+			operands2 = new ArrayList<Integer>();
+			results = new ArrayList<Integer>();
+		}
+	}
+
+	/**
+	 * This task splits a range in half until it is small enough for one thread
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private double[][] inputs;
+		private double[] output;
+		private double[] constantValues;
+		private int start;
+		private int end;
+
+		@Override
+		protected void compute() {
+			if (end - start < PARALLEL_THRESHOLD) {
+				computeRange(inputs, output, constantValues, start, end);
+				return;
+			}
+
+			// Split on a chunk boundary
+			int middle = start + ((end - start) / 2 / CHUNK_SIZE) * CHUNK_SIZE;
+			invokeAll(new BatchTask(inputs, output, constantValues, start, middle),
+					new BatchTask(inputs, output, constantValues, middle, end));
+		}
+
+		public BatchTask(double[][] inputs, double[] output, double[] constantValues, int start, int end) {
+			this.inputs = inputs;
+			this.output = output;
+			this.constantValues = constantValues;
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
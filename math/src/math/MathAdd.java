@@ -31,6 +31,14 @@ public class MathAdd implements MathNumber {
 	private MathNumber number1;
 	private MathNumber number2;
 	
+	MathNumber getNumber1() {
+		return number1;
+	}
+	
+	MathNumber getNumber2() {
+		return number2;
+	}
+	
 	/**
 	 * Returns the result
 	 */
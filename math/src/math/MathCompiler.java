@@ -0,0 +1,596 @@
+/**
+ * Copyright (c) 2019 Caleb Heydon
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package math;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class compiles a tree of math numbers to a class with a straight line
+ * eval method, so the JIT can inline and optimize the whole expression instead
+ * of calling getValue() on every node.
+ * 
+ * The inputs of the function are read from the array passed to eval(). Any
+ * other MathInput is read each time eval() runs, so changing its value still
+ * changes the result. A node used in more than one place is computed once and
+ * kept in a local.
+ * 
+ * Each function is defined by its own class loader so it can be unloaded once
+ * it is no longer used.
+ * 
+ * @author Caleb Heydon
+ */
+public class MathCompiler {
+	private static final String CLASS_NAME = "math/GeneratedFunction";
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	private static final int MAX_CODE_LENGTH = 65535;
+
+	// Opcodes
+	private static final int ICONST_0 = 0x03;
+	private static final int DCONST_1 = 0x0f;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int DLOAD = 0x18;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int DALOAD = 0x31;
+	private static final int AALOAD = 0x32;
+	private static final int DSTORE = 0x39;
+	private static final int POP2 = 0x58;
+	private static final int DUP2 = 0x5c;
+	private static final int DUP2_X2 = 0x5e;
+	private static final int DADD = 0x63;
+	private static final int DSUB = 0x67;
+	private static final int DMUL = 0x6b;
+	private static final int DDIV = 0x6f;
+	private static final int DRETURN = 0xaf;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int PUTFIELD = 0xb5;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int WIDE = 0xc4;
+
+	private final String className;
+	private ConstantPool pool;
+
+	// The eval method being written
+	private ByteArrayOutputStream code;
+	private int stack;
+	private int maxStack;
+	private int maxLocals;
+
+	private IdentityHashMap<MathInput, Integer> inputIndices;
+	private IdentityHashMap<MathInput, Integer> constantIndices;
+	private ArrayList<MathInput> constants;
+
+	// Nodes used more than once and the locals they are kept in
+	private IdentityHashMap<MathNumber, Integer> useCounts;
+	private IdentityHashMap<MathNumber, Integer> locals;
+
+	/**
+	 * Compiles a function
+	 * 
+	 * @param function
+	 * @param inputs   The inputs in the order eval() takes them
+	 * @return
+	 * @throws MathException If the function has a number the compiler does not
+	 *                       know
+	 */
+	public static CompiledFunction compile(MathNumber function, MathInput... inputs) {
+		return new MathCompiler().compileFunction(function, inputs);
+	}
+
+	/**
+	 * Counts how many times each node is used
+	 * 
+	 * @param number
+	 */
+	private void countUses(MathNumber number) {
+		Integer count = useCounts.get(number);
+		useCounts.put(number, (count == null) ? 1 : count + 1);
+
+		// The children of a node that is kept are only computed once
+		if (count != null) {
+			return;
+		}
+
+		if (number instanceof MathAdd) {
+			countUses(((MathAdd) number).getNumber1());
+			countUses(((MathAdd) number).getNumber2());
+		} else if (number instanceof MathSubtract) {
+			countUses(((MathSubtract) number).getNumber1());
+			countUses(((MathSubtract) number).getNumber2());
+		} else if (number instanceof MathMultiply) {
+			countUses(((MathMultiply) number).getNumber1());
+			countUses(((MathMultiply) number).getNumber2());
+		} else if (number instanceof MathDivide) {
+			countUses(((MathDivide) number).getNumber1());
+			countUses(((MathDivide) number).getNumber2());
+		} else if (number instanceof MathPower) {
+			countUses(((MathPower) number).getNumber1());
+			countUses(((MathPower) number).getNumber2());
+		} else if (number instanceof MathSin) {
+			countUses(((MathSin) number).getNumber1());
+		} else if (number instanceof MathCos) {
+			countUses(((MathCos) number).getNumber1());
+		} else if (number instanceof MathTan) {
+			countUses(((MathTan) number).getNumber1());
+		} else if (number instanceof MathCsc) {
+			countUses(((MathCsc) number).getNumber1());
+		} else if (number instanceof MathSec) {
+			countUses(((MathSec) number).getNumber1());
+		} else if (number instanceof MathCot) {
+			countUses(((MathCot) number).getNumber1());
+		} else if (number instanceof MathLog) {
+			countUses(((MathLog) number).getNumber1());
+		} else if (!(number instanceof MathInput)) {
+			throw new MathException("Unable to compile " + number.getClass().getName());
+		}
+	}
+
+	/**
+	 * Writes an instruction and updates the stack size
+	 * 
+	 * @param opcode
+	 * @param stackChange The number of stack slots it pushes minus the number it
+	 *                    pops
+	 */
+	private void op(int opcode, int stackChange) {
+		code.write(opcode);
+
+		stack += stackChange;
+		maxStack = Math.max(maxStack, stack);
+	}
+
+	private void writeShort(int value) {
+		code.write(value >> 8);
+		code.write(value);
+	}
+
+	/**
+	 * Pushes an int constant
+	 * 
+	 * @param value
+	 */
+	private void pushInt(int value) {
+		if (value <= 5) {
+			op(ICONST_0 + value, 1);
+		} else if (value <= Byte.MAX_VALUE) {
+			op(BIPUSH, 1);
+			code.write(value);
+		} else if (value <= Short.MAX_VALUE) {
+			op(SIPUSH, 1);
+			writeShort(value);
+		} else {
+			throw new MathException("The function has too many inputs to compile");
+		}
+	}
+
+	/**
+	 * Calls a method of java.lang.Math
+	 * 
+	 * @param name
+	 * @param arguments The number of double arguments
+	 */
+	private void callMath(String name, int arguments) {
+		String descriptor = (arguments == 1) ? "(D)D" : "(DD)D";
+
+		op(INVOKESTATIC, 2 - 2 * arguments);
+		writeShort(pool.methodRef("java/lang/Math", name, descriptor));
+	}
+
+	/**
+	 * Pushes the value of a MathInput
+	 * 
+	 * @param input
+	 */
+	private void emitInput(MathInput input) {
+		Integer index = inputIndices.get(input);
+		if (index != null) {
+			op(ALOAD_1, 1);
+			pushInt(index);
+			op(DALOAD, 0);
+			return;
+		}
+
+		// Other inputs are constants that can still be changed
+		index = constantIndices.get(input);
+		if (index == null) {
+			index = constants.size();
+			constants.add(input);
+			constantIndices.put(input, index);
+		}
+
+		op(ALOAD_0, 1);
+		op(GETFIELD, 0);
+		writeShort(pool.fieldRef(className, "constants", "[Lmath/MathInput;"));
+		pushInt(index);
+		op(AALOAD, -1);
+		op(INVOKEVIRTUAL, 1);
+		writeShort(pool.methodRef("math/MathInput", "getValue", "()D"));
+	}
+
+	/**
+	 * Pushes two numbers and combines them
+	 * 
+	 * @param number1
+	 * @param number2
+	 * @param opcode
+	 */
+	private void emitBinary(MathNumber number1, MathNumber number2, int opcode) {
+		emit(number1);
+		emit(number2);
+		op(opcode, -2);
+	}
+
+	/**
+	 * Pushes the value of a node
+	 * 
+	 * @param number
+	 */
+	private void emit(MathNumber number) {
+		Integer local = locals.get(number);
+		if (local != null) {
+			loadLocal(local);
+			return;
+		}
+
+		if (number instanceof MathInput) {
+			emitInput((MathInput) number);
+			return;
+		} else if (number instanceof MathAdd) {
+			emitBinary(((MathAdd) number).getNumber1(), ((MathAdd) number).getNumber2(), DADD);
+		} else if (number instanceof MathSubtract) {
+			emitBinary(((MathSubtract) number).getNumber1(), ((MathSubtract) number).getNumber2(), DSUB);
+		} else if (number instanceof MathMultiply) {
+			emitBinary(((MathMultiply) number).getNumber1(), ((MathMultiply) number).getNumber2(), DMUL);
+		} else if (number instanceof MathDivide) {
+			emitBinary(((MathDivide) number).getNumber1(), ((MathDivide) number).getNumber2(), DDIV);
+		} else if (number instanceof MathPower) {
+			emit(((MathPower) number).getNumber1());
+			emit(((MathPower) number).getNumber2());
+			callMath("pow", 2);
+		} else if (number instanceof MathSin) {
+			emit(((MathSin) number).getNumber1());
+			callMath("sin", 1);
+		} else if (number instanceof MathCos) {
+			emit(((MathCos) number).getNumber1());
+			callMath("cos", 1);
+		} else if (number instanceof MathTan) {
+			emit(((MathTan) number).getNumber1());
+			callMath("tan", 1);
+		} else if (number instanceof MathCsc) {
+			op(DCONST_1, 2);
+			emit(((MathCsc) number).getNumber1());
+			callMath("sin", 1);
+			op(DDIV, -2);
+		} else if (number instanceof MathSec) {
+			op(DCONST_1, 2);
+			emit(((MathSec) number).getNumber1());
+			callMath("cos", 1);
+			op(DDIV, -2);
+		} else if (number instanceof MathCot) {
+			// x -> x, cos(x) -> cos(x), x -> cos(x), sin(x) -> cos(x) / sin(x)
+			emit(((MathCot) number).getNumber1());
+			op(DUP2, 2);
+			callMath("cos", 1);
+			op(DUP2_X2, 2);
+			op(POP2, -2);
+			callMath("sin", 1);
+			op(DDIV, -2);
+		} else if (number instanceof MathLog) {
+			emit(((MathLog) number).getNumber1());
+			callMath("log", 1);
+		} else {
+			throw new MathException("Unable to compile " + number.getClass().getName());
+		}
+
+		// Keep the value if it is needed again
+		if (useCounts.get(number) > 1) {
+			local = maxLocals;
+			maxLocals += 2;
+
+			op(DUP2, 2);
+			storeLocal(local);
+			locals.put(number, local);
+		}
+	}
+
+	private void loadLocal(int local) {
+		if (local <= 255) {
+			op(DLOAD, 2);
+			code.write(local);
+		} else {
+			op(WIDE, 0);
+			op(DLOAD, 2);
+			writeShort(local);
+		}
+	}
+
+	private void storeLocal(int local) {
+		if (local <= 255) {
+			op(DSTORE, -2);
+			code.write(local);
+		} else {
+			op(WIDE, 0);
+			op(DSTORE, -2);
+			writeShort(local);
+		}
+	}
+
+	/**
+	 * Writes a method with a code attribute
+	 * 
+	 * @param output
+	 * @param name
+	 * @param descriptor
+	 * @param code
+	 * @param maxStack
+	 * @param maxLocals
+	 * @throws IOException
+	 */
+	private void writeMethod(DataOutputStream output, String name, String descriptor, byte[] code, int maxStack,
+			int maxLocals) throws IOException {
+		output.writeShort(0x0001); // public
+		output.writeShort(pool.utf8(name));
+		output.writeShort(pool.utf8(descriptor));
+
+		output.writeShort(1);
+		output.writeShort(pool.utf8("Code"));
+		output.writeInt(12 + code.length);
+		output.writeShort(maxStack);
+		output.writeShort(maxLocals);
+		output.writeInt(code.length);
+		output.write(code);
+		output.writeShort(0); // exceptions
+		output.writeShort(0); // attributes
+	}
+
+	/**
+	 * Writes the class file
+	 * 
+	 * @param evalCode
+	 * @return
+	 */
+	private byte[] writeClass(byte[] evalCode) {
+		// super(); this.constants = constants;
+		ByteArrayOutputStream constructor = new ByteArrayOutputStream();
+		constructor.write(ALOAD_0);
+		constructor.write(INVOKESPECIAL);
+		int objectConstructor = pool.methodRef("java/lang/Object", "<init>", "()V");
+		constructor.write(objectConstructor >> 8);
+		constructor.write(objectConstructor);
+		constructor.write(ALOAD_0);
+		constructor.write(ALOAD_1);
+		constructor.write(PUTFIELD);
+		int field = pool.fieldRef(className, "constants", "[Lmath/MathInput;");
+		constructor.write(field >> 8);
+		constructor.write(field);
+		constructor.write(RETURN);
+
+		// Everything the class refers to must be in the pool before it is written
+		int thisClass = pool.classRef(className);
+		int superClass = pool.classRef("java/lang/Object");
+		int interfaceClass = pool.classRef("math/CompiledFunction");
+		int fieldName = pool.utf8("constants");
+		int fieldDescriptor = pool.utf8("[Lmath/MathInput;");
+		pool.utf8("<init>");
+		pool.utf8("([Lmath/MathInput;)V");
+		pool.utf8("eval");
+		pool.utf8("([D)D");
+		pool.utf8("Code");
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bytes);
+
+			output.writeInt(0xCAFEBABE);
+			output.writeShort(0);
+			output.writeShort(52); // Java 8, so no stack map frames are needed
+			pool.write(output);
+
+			output.writeShort(0x0031); // public final super
+			output.writeShort(thisClass);
+			output.writeShort(superClass);
+			output.writeShort(1);
+			output.writeShort(interfaceClass);
+
+			output.writeShort(1);
+			output.writeShort(0x0012); // private final
+			output.writeShort(fieldName);
+			output.writeShort(fieldDescriptor);
+			output.writeShort(0);
+
+			output.writeShort(2);
+			writeMethod(output, "<init>", "([Lmath/MathInput;)V", constructor.toByteArray(), 2, 2);
+			writeMethod(output, "eval", "([D)D", evalCode, maxStack, maxLocals);
+
+			output.writeShort(0);
+			output.close();
+
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new MathException("Unable to write the compiled function", e);
+		}
+	}
+
+	/**
+	 * Compiles a function
+	 * 
+	 * @param function
+	 * @param inputs
+	 * @return
+	 */
+	private CompiledFunction compileFunction(MathNumber function, MathInput[] inputs) {
+		for (int i = 0; i < inputs.length; i++) {
+			inputIndices.put(inputs[i], i);
+		}
+
+		countUses(function);
+		emit(function);
+		op(DRETURN, -2);
+
+		if (code.size() > MAX_CODE_LENGTH) {
+			throw new MathException("The function is too large to compile");
+		}
+
+		byte[] classFile = writeClass(code.toByteArray());
+
+		try {
+			Class<?> functionClass = new FunctionLoader().define(className.replace('/', '.'), classFile);
+			return (CompiledFunction) functionClass.getConstructor(MathInput[].class)
+					.newInstance((Object) constants.toArray(new MathInput[constants.size()]));
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException
+				| NoSuchMethodException e) {
+			throw new MathException("Unable to load the compiled function", e);
+		}
+	}
+
+	private MathCompiler() {
+		className = CLASS_NAME + classCount.incrementAndGet();
+		pool = new ConstantPool();
+
+		code = new ByteArrayOutputStream();
+		maxLocals = 2; // this and the inputs
+
+		inputIndices = new IdentityHashMap<MathInput, Integer>();
+		constantIndices = new IdentityHashMap<MathInput, Integer>();
+		constants = new ArrayList<MathInput>();
+
+		useCounts = new IdentityHashMap<MathNumber, Integer>();
+		locals = new IdentityHashMap<MathNumber, Integer>();
+	}
+
+	/**
+	 * This class builds the constant pool of the class file
+	 */
+	private static class ConstantPool {
+		private static final int UTF8 = 1;
+		private static final int CLASS = 7;
+		private static final int FIELD_REF = 9;
+		private static final int METHOD_REF = 10;
+		private static final int NAME_AND_TYPE = 12;
+
+		private ByteArrayOutputStream bytes;
+		private DataOutputStream output;
+		private HashMap<String, Integer> indices;
+		private int count;
+
+		/**
+		 * Returns the index of an entry, adding it if it is new
+		 * 
+		 * @param key   A key that is the same for equal entries
+		 * @param tag
+		 * @param value The contents after the tag, a string or an array of indices
+		 * @return
+		 */
+		private int add(String key, int tag, Object value) {
+			Integer index = indices.get(key);
+			if (index != null) {
+				return index;
+			}
+
+			try {
+				output.writeByte(tag);
+				if (value instanceof String) {
+					output.writeUTF((String) value);
+				} else {
+					for (int entry : (int[]) value) {
+						output.writeShort(entry);
+					}
+				}
+			} catch (IOException e) {
+				throw new MathException("Unable to write the constant pool", e);
+			}
+
+			index = count++;
+			indices.put(key, index);
+			return index;
+		}
+
+		public int utf8(String value) {
+			return add("U" + value, UTF8, value);
+		}
+
+		public int classRef(String name) {
+			int nameIndex = utf8(name);
+			return add("C" + name, CLASS, new int[] { nameIndex });
+		}
+
+		public int nameAndType(String name, String descriptor) {
+			return add("N" + name + " " + descriptor, NAME_AND_TYPE,
+					new int[] { utf8(name), utf8(descriptor) });
+		}
+
+		public int fieldRef(String owner, String name, String descriptor) {
+			return add("F" + owner + " " + name + " " + descriptor, FIELD_REF,
+					new int[] { classRef(owner), nameAndType(name, descriptor) });
+		}
+
+		public int methodRef(String owner, String name, String descriptor) {
+			return add("M" + owner + " " + name + " " + descriptor, METHOD_REF,
+					new int[] { classRef(owner), nameAndType(name, descriptor) });
+		}
+
+		/**
+		 * Writes the number of entries and the entries
+		 * 
+		 * @param classOutput
+		 * @throws IOException
+		 */
+		public void write(DataOutputStream classOutput) throws IOException {
+			classOutput.writeShort(count);
+			output.flush();
+			bytes.writeTo(classOutput);
+		}
+
+		public ConstantPool() {
+			bytes = new ByteArrayOutputStream();
+			output = new DataOutputStream(bytes);
+			indices = new HashMap<String, Integer>();
+			count = 1;
+		}
+	}
+
+	/**
+	 * This class loader defines one compiled function
+	 */
+	private static class FunctionLoader extends ClassLoader {
+		public Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+
+		public FunctionLoader() {
+			super(MathCompiler.class.getClassLoader());
+		}
+	}
+}
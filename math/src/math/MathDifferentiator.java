@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2019 Caleb Heydon
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package math;
+
+import java.util.IdentityHashMap;
+
+/**
+ * This class differentiates a tree of math numbers with respect to one input.
+ * Every other MathInput is treated as a constant. The derivative reuses the
+ * nodes of the function where it can, so after MathSimplifier a node used by
+ * both is only computed once.
+ * 
+ * @author Caleb Heydon
+ */
+public class MathDifferentiator {
+	private MathInput input;
+
+	// The constants the derivative is built with
+	private MathInput zero;
+	private MathInput one;
+	private MathInput minusOne;
+
+	// The derivative of each node already seen
+	private IdentityHashMap<MathNumber, MathNumber> derivatives;
+
+	/**
+	 * Differentiates a function. The derivative is not simplified.
+	 * 
+	 * @param function
+	 * @param input    The input to differentiate with respect to
+	 * @return
+	 * @throws MathException If the function has a number that can not be
+	 *                       differentiated
+	 */
+	public static MathNumber differentiate(MathNumber function, MathInput input) {
+		return new MathDifferentiator(input).derivative(function);
+	}
+
+	private MathNumber add(MathNumber number1, MathNumber number2) {
+		if (number1 == zero) {
+			return number2;
+		} else if (number2 == zero) {
+			return number1;
+		}
+
+		return new MathAdd(number1, number2);
+	}
+
+	private MathNumber subtract(MathNumber number1, MathNumber number2) {
+		if (number2 == zero) {
+			return number1;
+		}
+
+		return new MathSubtract(number1, number2);
+	}
+
+	private MathNumber multiply(MathNumber number1, MathNumber number2) {
+		if (number1 == zero || number2 == zero) {
+			return zero;
+		} else if (number1 == one) {
+			return number2;
+		} else if (number2 == one) {
+			return number1;
+		}
+
+		return new MathMultiply(number1, number2);
+	}
+
+	private MathNumber divide(MathNumber number1, MathNumber number2) {
+		if (number1 == zero) {
+			return zero;
+		}
+
+		return new MathDivide(number1, number2);
+	}
+
+	/**
+	 * Returns the derivative of a node
+	 * 
+	 * @param number
+	 * @return
+	 */
+	private MathNumber derivative(MathNumber number) {
+		MathNumber result = derivatives.get(number);
+		if (result != null) {
+			return result;
+		}
+
+		if (number instanceof MathInput) {
+			result = (number == input) ? one : zero;
+		} else if (number instanceof MathAdd) {
+			MathAdd add = (MathAdd) number;
+			result = add(derivative(add.getNumber1()), derivative(add.getNumber2()));
+		} else if (number instanceof MathSubtract) {
+			MathSubtract subtract = (MathSubtract) number;
+			result = subtract(derivative(subtract.getNumber1()), derivative(subtract.getNumber2()));
+		} else if (number instanceof MathMultiply) {
+			// (uv)' = u'v + uv'
+			MathMultiply multiply = (MathMultiply) number;
+			MathNumber u = multiply.getNumber1();
+			MathNumber v = multiply.getNumber2();
+			result = add(multiply(derivative(u), v), multiply(u, derivative(v)));
+		} else if (number instanceof MathDivide) {
+			// (u/v)' = (u'v - uv') / v^2
+			MathDivide divide = (MathDivide) number;
+			MathNumber u = divide.getNumber1();
+			MathNumber v = divide.getNumber2();
+			MathNumber derivativeV = derivative(v);
+
+			if (derivativeV == zero) {
+				result = divide(derivative(u), v);
+			} else {
+				result = divide(subtract(multiply(derivative(u), v), multiply(u, derivativeV)), multiply(v, v));
+			}
+		} else if (number instanceof MathPower) {
+			MathPower power = (MathPower) number;
+			MathNumber u = power.getNumber1();
+			MathNumber v = power.getNumber2();
+			MathNumber derivativeU = derivative(u);
+			MathNumber derivativeV = derivative(v);
+
+			if (derivativeV == zero) {
+				// (u^c)' = c u^(c - 1) u'
+				result = multiply(multiply(v, new MathPower(u, subtract(v, one))), derivativeU);
+			} else if (derivativeU == zero) {
+				// (c^v)' = c^v ln(c) v'
+				result = multiply(multiply(number, new MathLog(u)), derivativeV);
+			} else {
+				// (u^v)' = u^v (v' ln(u) + v u' / u)
+				result = multiply(number,
+						add(multiply(derivativeV, new MathLog(u)), divide(multiply(v, derivativeU), u)));
+			}
+		} else if (number instanceof MathSin) {
+			MathNumber u = ((MathSin) number).getNumber1();
+			result = multiply(new MathCos(u), derivative(u));
+		} else if (number instanceof MathCos) {
+			MathNumber u = ((MathCos) number).getNumber1();
+			result = multiply(multiply(minusOne, new MathSin(u)), derivative(u));
+		} else if (number instanceof MathTan) {
+			// tan(u)' = (1 + tan(u)^2) u'
+			MathNumber u = ((MathTan) number).getNumber1();
+			result = multiply(add(one, multiply(number, number)), derivative(u));
+		} else if (number instanceof MathCsc) {
+			// csc(u)' = -csc(u) cot(u) u'
+			MathNumber u = ((MathCsc) number).getNumber1();
+			result = multiply(multiply(minusOne, multiply(number, new MathCot(u))), derivative(u));
+		} else if (number instanceof MathSec) {
+			// sec(u)' = sec(u) tan(u) u'
+			MathNumber u = ((MathSec) number).getNumber1();
+			result = multiply(multiply(number, new MathTan(u)), derivative(u));
+		} else if (number instanceof MathCot) {
+			// cot(u)' = -(1 + cot(u)^2) u'
+			MathNumber u = ((MathCot) number).getNumber1();
+			result = multiply(multiply(minusOne, add(one, multiply(number, number))), derivative(u));
+		} else if (number instanceof MathLog) {
+			MathNumber u = ((MathLog) number).getNumber1();
+			result = divide(derivative(u), u);
+		} else {
+			throw new MathException("Unable to differentiate " + number.getClass().getName());
+		}
+
+		derivatives.put(number, result);
+		return result;
+	}
+
+	private MathDifferentiator(MathInput input) {
+		this.input = input;
+
+		zero = new MathInput(0);
+		one = new MathInput(1);
+		minusOne = new MathInput(-1);
+
+		derivatives = new IdentityHashMap<MathNumber, MathNumber>();
+	}
+}
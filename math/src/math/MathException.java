@@ -33,4 +33,8 @@ public class MathException extends RuntimeException {
 	public MathException(String message) {
 		super(message);
 	}
+
+	public MathException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
@@ -30,6 +30,8 @@ package math;
 public class MathFunction {
 	private MathNumber function;
 	private MathInput[] inputs;
+	private CompiledFunction compiled;
+	private volatile BatchFunction batch;
 
 	/**
 	 * Configures the function
@@ -40,6 +42,66 @@ public class MathFunction {
 	public void set(MathNumber function, MathInput... inputs) {
 		this.function = function;
 		this.inputs = inputs;
+		this.compiled = null;
+		this.batch = null;
+	}
+
+	/**
+	 * Returns the number of inputs
+	 * 
+	 * @return
+	 */
+	public int getInputCount() {
+		return inputs.length;
+	}
+
+	/**
+	 * Returns the function compiled by MathCompiler. The compiled function does not
+	 * set the values of the inputs. If the function can not be compiled the
+	 * returned function calls compute() instead, one thread at a time.
+	 * 
+	 * @return
+	 */
+	public CompiledFunction compile() {
+		if (compiled == null) {
+			try {
+				compiled = MathCompiler.compile(function, inputs);
+			} catch (MathException e) {
+				compiled = values -> {
+					synchronized (this) {
+						return compute(values);
+					}
+				};
+			}
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * Returns the function with its constants folded and its repeated operations
+	 * shared, see MathSimplifier
+	 * 
+	 * @return
+	 */
+	public MathFunction getSimplified() {
+		return new MathFunction(MathSimplifier.simplify(function, inputs), inputs);
+	}
+
+	/**
+	 * Returns the simplified derivative of the function with respect to one of its
+	 * inputs. The derivative takes the same inputs as the function.
+	 * 
+	 * @param input The index of the input
+	 * @return
+	 */
+	public MathFunction getDerivative(int input) {
+		if (input < 0 || input >= inputs.length) {
+			throw new MathException("Invalid input");
+		}
+
+		MathNumber derivative = MathDifferentiator.differentiate(function, inputs[input]);
+		return new MathFunction(MathSimplifier.simplify(derivative, inputs), inputs);
 	}
 
 	/**
@@ -69,6 +131,24 @@ public class MathFunction {
 		return function.getValue();
 	}
 
+	/**
+	 * Computes the function at many points. Column i holds the values of input i.
+	 * The inputs are not set, so this can be called from any number of threads
+	 * while nothing calls set().
+	 * 
+	 * @param inputs
+	 * @param output
+	 */
+	public void compute(double[][] inputs, double[] output) {
+		BatchFunction batch = this.batch;
+		if (batch == null) {
+			batch = new BatchFunction(function, this.inputs);
+			this.batch = batch;
+		}
+
+		batch.compute(inputs, output);
+	}
+
 	public MathFunction(MathNumber function, MathInput... inputs) {
 		set(function, inputs);
 	}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2019 Caleb Heydon
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package math;
+
+/**
+ * Computes the natural log of a number
+ * 
+ * @author Caleb Heydon
+ */
+public class MathLog implements MathNumber {
+	private MathNumber number1;
+	
+	MathNumber getNumber1() {
+		return number1;
+	}
+	
+	/**
+	 * Returns the result
+	 */
+	public double getValue() {
+		return Math.log(number1.getValue());
+	}
+	
+	@Override
+	public String toString() {
+		return "[" + getValue() + "]";
+	}
+	
+	public MathLog(MathNumber number1) {
+		this.number1 = number1;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2019 Caleb Heydon
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package math;
+
+/**
+ * This class holds a root found by MathUtil and what it cost to find it
+ * 
+ * @author Caleb Heydon
+ */
+public class MathRoot {
+	private double value;
+	private int iterations;
+	private int evaluations;
+	private boolean converged;
+
+	/**
+	 * Returns the root
+	 * 
+	 * @return
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the number of iterations used to find the root
+	 * 
+	 * @return
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns the number of times the function and its derivative were computed
+	 * 
+	 * @return
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Returns true if the root is within the tolerance, false if the iterations ran
+	 * out first
+	 * 
+	 * @return
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + value + "]";
+	}
+
+	public MathRoot(double value, int iterations, int evaluations, boolean converged) {
+		this.value = value;
+		this.iterations = iterations;
+		this.evaluations = evaluations;
+		this.converged = converged;
+	}
+}
@@ -30,6 +30,10 @@ package math;
 public class MathSec implements MathNumber {
 	private MathNumber number1;
 	
+	MathNumber getNumber1() {
+		return number1;
+	}
+	
 	/**
 	 * Returns the result
 	 */
@@ -0,0 +1,460 @@
+/**
+ * Copyright (c) 2019 Caleb Heydon
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package math;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * This class simplifies a tree of math numbers. It folds the operations on
+ * constants, removes identities like x + 0, x * 1 and x ^ 1, and makes every
+ * operation that appears more than once a single shared node so MathCompiler
+ * and BatchFunction only compute it once.
+ * 
+ * The inputs of the function are kept. Any other MathInput is a constant and is
+ * folded with its value at the time of the call, so the tree must be
+ * simplified again if one of them changes. Identities like x - x = 0 and x * 0
+ * = 0 assume the values are finite.
+ * 
+ * @author Caleb Heydon
+ */
+public class MathSimplifier {
+	// Operations
+	private static final int CONSTANT = 0;
+	private static final int ADD = 1;
+	private static final int SUBTRACT = 2;
+	private static final int MULTIPLY = 3;
+	private static final int DIVIDE = 4;
+	private static final int POWER = 5;
+	private static final int SIN = 6;
+	private static final int COS = 7;
+	private static final int TAN = 8;
+	private static final int CSC = 9;
+	private static final int SEC = 10;
+	private static final int COT = 11;
+	private static final int LOG = 12;
+	private static final int INPUT = 13;
+
+	private IdentityHashMap<MathNumber, Boolean> inputs;
+
+	// The simplified form of each node already seen
+	private IdentityHashMap<MathNumber, MathNumber> simplified;
+
+	// The nodes of the simplified tree, one for each distinct operation
+	private HashMap<Key, MathNumber> nodes;
+	private IdentityHashMap<MathNumber, Integer> ids;
+
+	/**
+	 * Simplifies a function
+	 * 
+	 * @param function
+	 * @param inputs   The inputs of the function
+	 * @return
+	 * @throws MathException If the function has a number the simplifier does not
+	 *                       know
+	 */
+	public static MathNumber simplify(MathNumber function, MathInput... inputs) {
+		return new MathSimplifier(inputs).simplify(function);
+	}
+
+	/**
+	 * Returns the operation of a node
+	 * 
+	 * @param number
+	 * @return
+	 */
+	private int getOperation(MathNumber number) {
+		if (number instanceof MathInput) {
+			return inputs.containsKey(number) ? INPUT : CONSTANT;
+		} else if (number instanceof MathAdd) {
+			return ADD;
+		} else if (number instanceof MathSubtract) {
+			return SUBTRACT;
+		} else if (number instanceof MathMultiply) {
+			return MULTIPLY;
+		} else if (number instanceof MathDivide) {
+			return DIVIDE;
+		} else if (number instanceof MathPower) {
+			return POWER;
+		} else if (number instanceof MathSin) {
+			return SIN;
+		} else if (number instanceof MathCos) {
+			return COS;
+		} else if (number instanceof MathTan) {
+			return TAN;
+		} else if (number instanceof MathCsc) {
+			return CSC;
+		} else if (number instanceof MathSec) {
+			return SEC;
+		} else if (number instanceof MathCot) {
+			return COT;
+		} else if (number instanceof MathLog) {
+			return LOG;
+		}
+
+		throw new MathException("Unable to simplify " + number.getClass().getName());
+	}
+
+	/**
+	 * Returns the first child of a node
+	 * 
+	 * @param number
+	 * @return
+	 */
+	private static MathNumber getNumber1(MathNumber number) {
+		if (number instanceof MathAdd) {
+			return ((MathAdd) number).getNumber1();
+		} else if (number instanceof MathSubtract) {
+			return ((MathSubtract) number).getNumber1();
+		} else if (number instanceof MathMultiply) {
+			return ((MathMultiply) number).getNumber1();
+		} else if (number instanceof MathDivide) {
+			return ((MathDivide) number).getNumber1();
+		} else if (number instanceof MathPower) {
+			return ((MathPower) number).getNumber1();
+		} else if (number instanceof MathSin) {
+			return ((MathSin) number).getNumber1();
+		} else if (number instanceof MathCos) {
+			return ((MathCos) number).getNumber1();
+		} else if (number instanceof MathTan) {
+			return ((MathTan) number).getNumber1();
+		} else if (number instanceof MathCsc) {
+			return ((MathCsc) number).getNumber1();
+		} else if (number instanceof MathSec) {
+			return ((MathSec) number).getNumber1();
+		} else if (number instanceof MathCot) {
+			return ((MathCot) number).getNumber1();
+		} else if (number instanceof MathLog) {
+			return ((MathLog) number).getNumber1();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the second child of a node, or null if it only has one
+	 * 
+	 * @param number
+	 * @return
+	 */
+	private static MathNumber getNumber2(MathNumber number) {
+		if (number instanceof MathAdd) {
+			return ((MathAdd) number).getNumber2();
+		} else if (number instanceof MathSubtract) {
+			return ((MathSubtract) number).getNumber2();
+		} else if (number instanceof MathMultiply) {
+			return ((MathMultiply) number).getNumber2();
+		} else if (number instanceof MathDivide) {
+			return ((MathDivide) number).getNumber2();
+		} else if (number instanceof MathPower) {
+			return ((MathPower) number).getNumber2();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Creates a node
+	 * 
+	 * @param operation
+	 * @param number1
+	 * @param number2
+	 * @return
+	 */
+	private static MathNumber create(int operation, MathNumber number1, MathNumber number2) {
+		switch (operation) {
+		case ADD:
+			return new MathAdd(number1, number2);
+		case SUBTRACT:
+			return new MathSubtract(number1, number2);
+		case MULTIPLY:
+			return new MathMultiply(number1, number2);
+		case DIVIDE:
+			return new MathDivide(number1, number2);
+		case POWER:
+			return new MathPower(number1, number2);
+		case SIN:
+			return new MathSin(number1);
+		case COS:
+			return new MathCos(number1);
+		case TAN:
+			return new MathTan(number1);
+		case CSC:
+			return new MathCsc(number1);
+		case SEC:
+			return new MathSec(number1);
+		case COT:
+			return new MathCot(number1);
+		case LOG:
+			return new MathLog(number1);
+		default:
+			throw new MathException("Unknown operation " + operation);
+		}
+	}
+
+	/**
+	 * Returns true if a simplified node is a constant
+	 * 
+	 * @param number
+	 * @return
+	 */
+	private boolean isConstant(MathNumber number) {
+		return number instanceof MathInput && !inputs.containsKey(number);
+	}
+
+	/**
+	 * Returns true if a simplified node is a constant with a value
+	 * 
+	 * @param number
+	 * @param value
+	 * @return
+	 */
+	private boolean isValue(MathNumber number, double value) {
+		return isConstant(number) && number.getValue() == value;
+	}
+
+	/**
+	 * Returns the node of an operation, creating it if it is new
+	 * 
+	 * @param key
+	 * @param operation
+	 * @param number1
+	 * @param number2
+	 * @return
+	 */
+	private MathNumber intern(Key key, int operation, MathNumber number1, MathNumber number2) {
+		MathNumber node = nodes.get(key);
+		if (node == null) {
+			if (operation == CONSTANT) {
+				node = new MathInput(Double.longBitsToDouble(key.number1));
+			} else {
+				node = create(operation, number1, number2);
+			}
+
+			nodes.put(key, node);
+			ids.put(node, ids.size());
+		}
+
+		return node;
+	}
+
+	/**
+	 * Returns the constant with a value
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private MathNumber constant(double value) {
+		return intern(new Key(CONSTANT, Double.doubleToLongBits(value), 0), CONSTANT, null, null);
+	}
+
+	/**
+	 * Returns the node of an operation on simplified nodes
+	 * 
+	 * @param operation
+	 * @param number1
+	 * @param number2   The second child or null
+	 * @return
+	 */
+	private MathNumber node(int operation, MathNumber number1, MathNumber number2) {
+		// The operands of these can be in any order, so both orders are one node
+		if ((operation == ADD || operation == MULTIPLY) && ids.get(number1) > ids.get(number2)) {
+			MathNumber number = number1;
+			number1 = number2;
+			number2 = number;
+		}
+
+		Key key = new Key(operation, ids.get(number1), (number2 == null) ? -1 : ids.get(number2));
+		return intern(key, operation, number1, number2);
+	}
+
+	/**
+	 * Simplifies an operation on simplified nodes
+	 * 
+	 * @param operation
+	 * @param number1
+	 * @param number2   The second child or null
+	 * @return
+	 */
+	private MathNumber combine(int operation, MathNumber number1, MathNumber number2) {
+		if (isConstant(number1) && (number2 == null || isConstant(number2))) {
+			return constant(create(operation, number1, number2).getValue());
+		}
+
+		switch (operation) {
+		case ADD:
+			if (isValue(number1, 0)) {
+				return number2;
+			} else if (isValue(number2, 0)) {
+				return number1;
+			}
+
+			return reassociate(ADD, number1, number2);
+		case SUBTRACT:
+			if (isValue(number2, 0)) {
+				return number1;
+			} else if (number1 == number2) {
+				return constant(0);
+			} else if (isConstant(number2)) {
+				return reassociate(ADD, constant(-number2.getValue()), number1);
+			}
+			break;
+		case MULTIPLY:
+			if (isValue(number1, 0) || isValue(number2, 0)) {
+				return constant(0);
+			} else if (isValue(number1, 1)) {
+				return number2;
+			} else if (isValue(number2, 1)) {
+				return number1;
+			}
+
+			return reassociate(MULTIPLY, number1, number2);
+		case DIVIDE:
+			if (isValue(number2, 1)) {
+				return number1;
+			} else if (isValue(number1, 0)) {
+				return constant(0);
+			} else if (number1 == number2) {
+				return constant(1);
+			}
+			break;
+		case POWER:
+			// Small whole powers are cheaper as multiplications than Math.pow()
+			if (isValue(number2, 0) || isValue(number1, 1)) {
+				return constant(1);
+			} else if (isValue(number2, 1)) {
+				return number1;
+			} else if (isValue(number2, 2)) {
+				return node(MULTIPLY, number1, number1);
+			} else if (isValue(number2, -1)) {
+				return node(DIVIDE, constant(1), number1);
+			}
+			break;
+		}
+
+		return node(operation, number1, number2);
+	}
+
+	/**
+	 * Merges a constant into an addition or multiplication that already has one,
+	 * so c1 * (c2 * x) becomes (c1 * c2) * x
+	 * 
+	 * @param operation ADD or MULTIPLY
+	 * @param number1
+	 * @param number2
+	 * @return
+	 */
+	private MathNumber reassociate(int operation, MathNumber number1, MathNumber number2) {
+		if (isConstant(number2)) {
+			MathNumber number = number1;
+			number1 = number2;
+			number2 = number;
+		}
+
+		if (isConstant(number1) && getOperation(number2) == operation) {
+			MathNumber child1 = getNumber1(number2);
+			MathNumber child2 = getNumber2(number2);
+			if (isConstant(child1)) {
+				return combine(operation, combine(operation, number1, child1), child2);
+			} else if (isConstant(child2)) {
+				return combine(operation, combine(operation, number1, child2), child1);
+			}
+		}
+
+		return node(operation, number1, number2);
+	}
+
+	/**
+	 * Simplifies a node
+	 * 
+	 * @param number
+	 * @return
+	 */
+	private MathNumber simplify(MathNumber number) {
+		MathNumber result = simplified.get(number);
+		if (result != null) {
+			return result;
+		}
+
+		int operation = getOperation(number);
+		if (operation == CONSTANT) {
+			result = constant(number.getValue());
+		} else if (operation == INPUT) {
+			result = number;
+			ids.put(number, ids.size());
+		} else {
+			MathNumber number1 = simplify(getNumber1(number));
+			MathNumber number2 = getNumber2(number);
+			if (number2 != null) {
+				number2 = simplify(number2);
+			}
+
+			result = combine(operation, number1, number2);
+		}
+
+		simplified.put(number, result);
+		return result;
+	}
+
+	/**
+	 * This class identifies an operation by the ids of its operands
+	 */
+	private static class Key {
+		private int operation;
+		private long number1;
+		private long number2;
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+
+			Key key = (Key) object;
+			return operation == key.operation && number1 == key.number1 && number2 == key.number2;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = (operation * 31 + number1) * 31 + number2;
+			return (int) (hash ^ (hash >>> 32));
+		}
+
+		public Key(int operation, long number1, long number2) {
+			this.operation = operation;
+			this.number1 = number1;
+			this.number2 = number2;
+		}
+	}
+
+	private MathSimplifier(MathInput... inputs) {
+		this.inputs = new IdentityHashMap<MathNumber, Boolean>();
+		for (MathInput input : inputs) {
+			this.inputs.put(input, true);
+		}
+
+		simplified = new IdentityHashMap<MathNumber, MathNumber>();
+		nodes = new HashMap<Key, MathNumber>();
+		ids = new IdentityHashMap<MathNumber, Integer>();
+	}
+}
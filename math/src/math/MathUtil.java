@@ -23,6 +23,10 @@
 package math;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Utility methods for the math library
@@ -30,6 +34,33 @@ import java.util.ArrayList;
  * @author Caleb Heydon
  */
 public class MathUtil {
+	// The 15 point Kronrod nodes, the odd ones are also the 7 point Gauss nodes
+	private static final double[] KRONROD_NODES = { 0.991455371120812639206854697526329,
+			0.949107912342758524526189684047851, 0.864864423359769072789712788640926,
+			0.741531185599394439863864773280788, 0.586087235467691130294144845693013,
+			0.405845151377397166906606412076961, 0.207784955007898467600689403773245, 0 };
+	private static final double[] KRONROD_WEIGHTS = { 0.022935322010529224963732008058970,
+			0.063092092629978553290700663189204, 0.104790010322250183839876322541518,
+			0.140653259715525918745189590510238, 0.169004726639267902826583426598550,
+			0.190350578064785409913256402421014, 0.204432940075298892414161999234649,
+			0.209482141084727828012999174891714 };
+	private static final double[] GAUSS_WEIGHTS = { 0.129484966168869693270611432679082,
+			0.279705391489276667901467771423780, 0.381830050505118944950369775488975,
+			0.417959183673469387755102040816327 };
+
+	// Intervals are not split more than this many times
+	private static final int MAX_DEPTH = 50;
+
+	// Intervals this many splits deep or deeper are refined on the thread that
+	// found them
+	private static final int PARALLEL_DEPTH = 8;
+
+	// The most iterations used to refine a root found by a scan
+	private static final int MAX_ROOT_ITERATIONS = 100;
+
+	// Root problems are split across threads until there are this many in a task
+	private static final int ROOT_BATCH_SIZE = 8;
+
 	/**
 	 * Finds the points for use in the trapezoid method
 	 * 
@@ -47,22 +78,29 @@ public class MathUtil {
 			throw new MathException("n less than 1");
 		}
 
-		ArrayList<Double> points = new ArrayList<Double>();
-
-		points.add(min);
-		double step = (max - min) / n;
-		for (double i = min + step; i < max; i += step) {
-			points.add(i);
+		// Each point is computed from its index so the error does not grow with range
+		double[] points = new double[n + 1];
+		double range = max - min;
+		for (int i = 0; i < n; i++) {
+			points[i] = min + range * i / n;
 		}
 
-		points.add(max);
+		points[n] = max;
+		return points;
+	}
 
-		double[] pointsArray = new double[points.size()];
-		for (int i = 0; i < points.size(); i++) {
-			pointsArray[i] = points.get(i);
+	/**
+	 * Compiles a function of one input
+	 * 
+	 * @param function
+	 * @return
+	 */
+	private static CompiledFunction compile(MathFunction function) {
+		if (function.getInputCount() != 1) {
+			throw new MathException("Invalid number of inputs");
 		}
 
-		return pointsArray;
+		return function.compile();
 	}
 
 	/**
@@ -76,13 +114,18 @@ public class MathUtil {
 	 */
 	public static double computeTrapezoidArea(MathFunction function, double min, double max, int n) {
 		double[] points = MathUtil.computeTrapezoidPoints(min, max, n);
+		CompiledFunction compiled = compile(function);
+		double[] input = new double[1];
 
 		double sum = 0;
-		sum += function.compute(points[0]);
-		sum += function.compute(points[points.length - 1]);
+		input[0] = points[0];
+		sum += compiled.eval(input);
+		input[0] = points[points.length - 1];
+		sum += compiled.eval(input);
 
 		for (int i = 1; i < points.length - 1; i++) {
-			sum += 2 * function.compute(points[i]);
+			input[0] = points[i];
+			sum += 2 * compiled.eval(input);
 		}
 
 		double area = ((max - min) / (2 * n)) * sum;
@@ -99,12 +142,440 @@ public class MathUtil {
 	 * @return
 	 */
 	public static double computeZero(MathFunction function, MathFunction derivative, double seed, int iterations) {
+		CompiledFunction compiledFunction = compile(function);
+		CompiledFunction compiledDerivative = compile(derivative);
+		double[] input = new double[1];
+
 		double x = seed;
 
 		for (int i = 0; i < iterations; i++) {
-			x -= function.compute(x) / derivative.compute(x);
+			input[0] = x;
+			x -= compiledFunction.eval(input) / compiledDerivative.eval(input);
 		}
 
 		return x;
 	}
+
+	/**
+	 * Computes a zero using Newton's Method with the symbolic derivative of the
+	 * function
+	 * 
+	 * @param function
+	 * @param seed
+	 * @param iterations
+	 * @return
+	 */
+	public static double computeZero(MathFunction function, double seed, int iterations) {
+		if (function.getInputCount() != 1) {
+			throw new MathException("Invalid number of inputs");
+		}
+
+		return computeZero(function, function.getDerivative(0), seed, iterations);
+	}
+
+	/**
+	 * Applies the 15 point Gauss-Kronrod rule to an interval. The first element of
+	 * the result is the integral and the second is the estimated error, the
+	 * difference to the embedded 7 point Gauss rule.
+	 * 
+	 * @param function
+	 * @param min
+	 * @param max
+	 * @param input    The array used to call the function
+	 * @param result
+	 */
+	private static void computeKronrod(CompiledFunction function, double min, double max, double[] input,
+			double[] result) {
+		double center = (min + max) / 2;
+		double halfLength = (max - min) / 2;
+
+		input[0] = center;
+		double centerValue = function.eval(input);
+		double gauss = centerValue * GAUSS_WEIGHTS[3];
+		double kronrod = centerValue * KRONROD_WEIGHTS[7];
+
+		for (int i = 0; i < 7; i++) {
+			double offset = halfLength * KRONROD_NODES[i];
+			input[0] = center - offset;
+			double sum = function.eval(input);
+			input[0] = center + offset;
+			sum += function.eval(input);
+
+			kronrod += KRONROD_WEIGHTS[i] * sum;
+			if (i % 2 == 1) {
+				gauss += GAUSS_WEIGHTS[i / 2] * sum;
+			}
+		}
+
+		result[0] = kronrod * halfLength;
+		result[1] = Math.abs((kronrod - gauss) * halfLength);
+	}
+
+	/**
+	 * This class refines an interval until its error is within its tolerance.
+	 * Both halves of a split interval get half of the tolerance, and the halves of
+	 * shallow intervals are refined in parallel.
+	 */
+	private static class IntegralTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		private CompiledFunction function;
+		private double min;
+		private double max;
+		private double tolerance;
+		private int depth;
+
+		// The rule applied to the whole interval, computed by the parent
+		private double integral;
+		private double error;
+
+		@Override
+		protected Double compute() {
+			return refine(new double[1], new double[2]);
+		}
+
+		/**
+		 * Refines the interval
+		 * 
+		 * @param input  The array used to call the function
+		 * @param result The array used for the rule
+		 * @return
+		 */
+		private double refine(double[] input, double[] result) {
+			if (error <= tolerance || depth >= MAX_DEPTH || Double.isNaN(integral)) {
+				return integral;
+			}
+
+			double middle = (min + max) / 2;
+			if (middle <= min || middle >= max) {
+				// The interval can not be split any further
+				return integral;
+			}
+
+			computeKronrod(function, min, middle, input, result);
+			IntegralTask left = new IntegralTask(function, min, middle, tolerance / 2, depth + 1, result[0],
+					result[1]);
+			computeKronrod(function, middle, max, input, result);
+			IntegralTask right = new IntegralTask(function, middle, max, tolerance / 2, depth + 1, result[0],
+					result[1]);
+
+			// The halves together may already be within the tolerance
+			if (left.error + right.error <= tolerance) {
+				return left.integral + right.integral;
+			}
+
+			if (depth < PARALLEL_DEPTH) {
+				right.fork();
+				double sum = left.refine(input, result);
+				return sum + right.join();
+			}
+
+			double sum = left.refine(input, result);
+			return sum + right.refine(input, result);
+		}
+
+		public IntegralTask(CompiledFunction function, double min, double max, double tolerance, int depth,
+				double integral, double error) {
+			this.function = function;
+			this.min = min;
+			this.max = max;
+			this.tolerance = tolerance;
+			this.depth = depth;
+			this.integral = integral;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Computes the integral of a function with adaptive Gauss-Kronrod quadrature.
+	 * The interval is split where the function needs more points until the
+	 * estimated error is within the tolerance. The function is called from more
+	 * than one thread so it must not share state between calls.
+	 * 
+	 * @param function
+	 * @param min
+	 * @param max
+	 * @param tolerance The largest absolute error wanted
+	 * @return
+	 */
+	public static double computeIntegral(CompiledFunction function, double min, double max, double tolerance) {
+		if (min > max) {
+			throw new MathException("Invalid min/max");
+		}
+
+		if (!(tolerance > 0)) {
+			throw new MathException("Tolerance not greater than 0");
+		}
+
+		if (min == max) {
+			return 0;
+		}
+
+		double[] result = new double[2];
+		computeKronrod(function, min, max, new double[1], result);
+
+		IntegralTask task = new IntegralTask(function, min, max, tolerance, 0, result[0], result[1]);
+		if (result[1] <= tolerance) {
+			return result[0];
+		}
+
+		return ForkJoinPool.commonPool().invoke(task);
+	}
+
+	/**
+	 * Computes the integral of a function with adaptive Gauss-Kronrod quadrature
+	 * 
+	 * @param function
+	 * @param min
+	 * @param max
+	 * @param tolerance The largest absolute error wanted
+	 * @return
+	 */
+	public static double computeIntegral(MathFunction function, double min, double max, double tolerance) {
+		return computeIntegral(compile(function), min, max, tolerance);
+	}
+
+	/**
+	 * Finds a root in an interval where the function changes sign with Brent's
+	 * method. Each iteration takes an inverse quadratic or secant step, or a Newton
+	 * step if there is a derivative, and falls back to bisection when the step
+	 * would leave the interval or not shrink it fast enough, so it always
+	 * converges.
+	 * 
+	 * @param function
+	 * @param derivative    The derivative of the function or null
+	 * @param min
+	 * @param max
+	 * @param tolerance     The largest error of the root wanted
+	 * @param maxIterations
+	 * @return
+	 */
+	public static MathRoot computeRoot(CompiledFunction function, CompiledFunction derivative, double min,
+			double max, double tolerance, int maxIterations) {
+		if (min > max) {
+			throw new MathException("Invalid min/max");
+		}
+
+		double[] input = new double[1];
+		input[0] = min;
+		double fa = function.eval(input);
+		input[0] = max;
+		double fb = function.eval(input);
+		int evaluations = 2;
+
+		if (fa == 0) {
+			return new MathRoot(min, 0, evaluations, true);
+		} else if (fb == 0) {
+			return new MathRoot(max, 0, evaluations, true);
+		} else if (!((fa < 0) ^ (fb < 0))) {
+			throw new MathException("The function does not change sign between min and max");
+		}
+
+		// b is the best guess, a is the last one and the root is between b and c
+		double a = min;
+		double b = max;
+		double c = a;
+		double fc = fa;
+		double d = b - a;
+		double e = d;
+
+		for (int iteration = 1; iteration <= maxIterations; iteration++) {
+			if ((fb < 0) == (fc < 0)) {
+				c = a;
+				fc = fa;
+				d = b - a;
+				e = d;
+			}
+
+			if (Math.abs(fc) < Math.abs(fb)) {
+				a = b;
+				b = c;
+				c = a;
+				fa = fb;
+				fb = fc;
+				fc = fa;
+			}
+
+			double tolerance1 = 2 * Math.ulp(1.0) * Math.abs(b) + tolerance / 2;
+			double middle = (c - b) / 2;
+			if (Math.abs(middle) <= tolerance1 || fb == 0) {
+				return new MathRoot(b, iteration, evaluations, true);
+			}
+
+			if (Math.abs(e) >= tolerance1 && Math.abs(fa) > Math.abs(fb)) {
+				double step;
+				if (derivative != null) {
+					input[0] = b;
+					step = -fb / derivative.eval(input);
+					evaluations++;
+				} else if (a == c) {
+					step = -fb * (b - a) / (fb - fa);
+				} else {
+					double q = fa / fc;
+					double r = fb / fc;
+					double s = fb / fa;
+					step = -s * (2 * middle * q * (q - r) - (b - a) * (r - 1)) / ((q - 1) * (r - 1) * (s - 1));
+				}
+
+				// The step must stay inside the interval and be less than half the one before
+				if (step * middle > 0 && 2 * Math.abs(step) < Math.min(3 * Math.abs(middle) - tolerance1,
+						Math.abs(e))) {
+					e = d;
+					d = step;
+				} else {
+					d = middle;
+					e = d;
+				}
+			} else {
+				d = middle;
+				e = d;
+			}
+
+			a = b;
+			fa = fb;
+			b += (Math.abs(d) > tolerance1) ? d : Math.copySign(tolerance1, middle);
+
+			input[0] = b;
+			fb = function.eval(input);
+			evaluations++;
+		}
+
+		return new MathRoot(b, maxIterations, evaluations, false);
+	}
+
+	/**
+	 * This class refines a range of root problems, splitting it across the fork
+	 * join pool
+	 */
+	private static class RootTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private CompiledFunction function;
+		private CompiledFunction derivative;
+		private double[] mins;
+		private double[] maxes;
+		private double tolerance;
+		private int maxIterations;
+		private MathRoot[] roots;
+		private int start;
+		private int end;
+
+		@Override
+		protected void compute() {
+			if (end - start <= ROOT_BATCH_SIZE) {
+				for (int i = start; i < end; i++) {
+					roots[i] = computeRoot(function, derivative, mins[i], maxes[i], tolerance, maxIterations);
+				}
+				return;
+			}
+
+			int middle = (start + end) >>> 1;
+			invokeAll(new RootTask(function, derivative, mins, maxes, tolerance, maxIterations, roots, start, middle),
+					new RootTask(function, derivative, mins, maxes, tolerance, maxIterations, roots, middle, end));
+		}
+
+		public RootTask(CompiledFunction function, CompiledFunction derivative, double[] mins, double[] maxes,
+				double tolerance, int maxIterations, MathRoot[] roots, int start, int end) {
+			this.function = function;
+			this.derivative = derivative;
+			this.mins = mins;
+			this.maxes = maxes;
+			this.tolerance = tolerance;
+			this.maxIterations = maxIterations;
+			this.roots = roots;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Finds a root in each of many intervals in parallel with computeRoot(). The
+	 * functions are called from more than one thread so they must not share state
+	 * between calls.
+	 * 
+	 * @param function
+	 * @param derivative    The derivative of the function or null
+	 * @param mins
+	 * @param maxes
+	 * @param tolerance
+	 * @param maxIterations
+	 * @return The root of each interval
+	 */
+	public static MathRoot[] computeRoots(CompiledFunction function, CompiledFunction derivative, double[] mins,
+			double[] maxes, double tolerance, int maxIterations) {
+		if (mins.length != maxes.length) {
+			throw new MathException("Invalid number of intervals");
+		}
+
+		MathRoot[] roots = new MathRoot[mins.length];
+		RootTask task = new RootTask(function, derivative, mins, maxes, tolerance, maxIterations, roots, 0,
+				mins.length);
+
+		if (mins.length <= ROOT_BATCH_SIZE) {
+			task.compute();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+
+		return roots;
+	}
+
+	/**
+	 * Finds the roots of a function in an interval. The function is computed at
+	 * evenly spaced points and each sign change is refined in parallel with
+	 * computeRoot(), using the symbolic derivative if the function has one. Roots
+	 * closer together than the spacing of the points can be missed.
+	 * 
+	 * @param function
+	 * @param min
+	 * @param max
+	 * @param n         The number of intervals to scan
+	 * @param tolerance
+	 * @return The roots in increasing order
+	 */
+	public static MathRoot[] computeRoots(MathFunction function, double min, double max, int n, double tolerance) {
+		if (function.getInputCount() != 1) {
+			throw new MathException("Invalid number of inputs");
+		}
+
+		double[] points = computeTrapezoidPoints(min, max, n);
+		double[] values = new double[points.length];
+		function.compute(new double[][] { points }, values);
+
+		CompiledFunction derivative;
+		try {
+			derivative = function.getDerivative(0).compile();
+		} catch (MathException e) {
+			derivative = null;
+		}
+
+		// Points where the function is 0 are roots already, the others are found
+		// after the scan
+		ArrayList<MathRoot> roots = new ArrayList<MathRoot>();
+		int[] slots = new int[n];
+		double[] mins = new double[n];
+		double[] maxes = new double[n];
+		int intervals = 0;
+
+		for (int i = 0; i < points.length; i++) {
+			if (values[i] == 0) {
+				roots.add(new MathRoot(points[i], 0, 0, true));
+			} else if (i < n && values[i + 1] != 0 && (values[i] < 0) != (values[i + 1] < 0)
+					&& !Double.isNaN(values[i]) && !Double.isNaN(values[i + 1])) {
+				slots[intervals] = roots.size();
+				roots.add(null);
+				mins[intervals] = points[i];
+				maxes[intervals] = points[i + 1];
+				intervals++;
+			}
+		}
+
+		MathRoot[] refinedRoots = computeRoots(function.compile(), derivative, Arrays.copyOf(mins, intervals),
+				Arrays.copyOf(maxes, intervals), tolerance, MAX_ROOT_ITERATIONS);
+		for (int i = 0; i < intervals; i++) {
+			roots.set(slots[i], refinedRoots[i]);
+		}
+
+		return roots.toArray(new MathRoot[roots.size()]);
+	}
 }
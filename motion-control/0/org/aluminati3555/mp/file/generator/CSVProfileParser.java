@@ -0,0 +1,254 @@
+/**
+ * FRC Team 3555
+ */
+
+package org.aluminati3555.mp.file.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class parses a csv motion profile in one pass over a buffer, usually a
+ * memory mapped file. Each line has the position, velocity, duration and
+ * heading separated by commas, spaces or tabs. Anything after the fourth value
+ * is ignored, as are empty lines.
+ * 
+ * The position and velocity are converted to rotations and the heading is
+ * unwrapped into degrees as each line is read.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class CSVProfileParser {
+	// Powers of ten that are exact doubles
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	// A long holds any number with this many digits
+	private static final int MAX_DIGITS = 18;
+
+	// Numbers with at most this many digits are exact doubles
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	private ByteBuffer buffer;
+	private int position;
+	private int line;
+
+	// The rows read so far, 4 doubles each
+	private double[] profile;
+	private int length;
+
+	// The state of the heading unwrap
+	private double angle;
+	private double lastAbsolute;
+
+	private static boolean isSeparator(byte b) {
+		return b == ',' || b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**
+	 * Parses a number the slow way
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws IOException
+	 */
+	private double parseSlow(int start, int end) throws IOException {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+
+		String number = new String(bytes, StandardCharsets.US_ASCII);
+		try {
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid number on line " + line + ": " + number);
+		}
+	}
+
+	/**
+	 * Parses a number. Numbers with at most 15 digits and a small exponent are
+	 * built from a long and an exact power of ten, which gives the same double as
+	 * Double.parseDouble(). Anything else is passed to Double.parseDouble().
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws IOException
+	 */
+	private double parseNumber(int start, int end) throws IOException {
+		int i = start;
+		boolean negative = false;
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean hasDigits = false;
+
+		while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+			hasDigits = true;
+			if (digits < MAX_DIGITS) {
+				mantissa = mantissa * 10 + (buffer.get(i) - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+			} else {
+				exponent++;
+			}
+			i++;
+		}
+
+		if (i < end && buffer.get(i) == '.') {
+			i++;
+			while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+				hasDigits = true;
+				if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (buffer.get(i) - '0');
+					if (mantissa != 0) {
+						digits++;
+					}
+					exponent--;
+				}
+				i++;
+			}
+		}
+
+		if (hasDigits && i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+				negativeExponent = buffer.get(i) == '-';
+				i++;
+			}
+
+			int value = 0;
+			boolean hasExponentDigits = false;
+			while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+				hasExponentDigits = true;
+				value = Math.min(value * 10 + (buffer.get(i) - '0'), 100000);
+				i++;
+			}
+
+			if (!hasExponentDigits) {
+				return parseSlow(start, end);
+			}
+
+			exponent += negativeExponent ? -value : value;
+		}
+
+		if (!hasDigits || i != end || digits > MAX_EXACT_DIGITS || exponent < -22 || exponent > 22) {
+			return parseSlow(start, end);
+		}
+
+		double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Unwraps a heading in radians into degrees that keep counting past a full
+	 * turn, like MPFileGenerator has always done
+	 * 
+	 * @param absoluteRadians
+	 * @return
+	 */
+	private double unwrapHeading(double absoluteRadians) {
+		double absoluteDegrees = absoluteRadians * 180 / Math.PI;
+
+		boolean negative = false;
+		double delta = 0;
+		if ((lastAbsolute >= 350) && (absoluteDegrees <= 10)) {
+			delta = (360 - lastAbsolute) + absoluteDegrees;
+		} else if ((lastAbsolute <= 10) && (absoluteDegrees >= 350)) {
+			negative = true;
+			delta = lastAbsolute + (360 - absoluteDegrees);
+		} else {
+			delta = absoluteDegrees - lastAbsolute;
+
+			if (delta < 0) {
+				delta = -delta;
+			} else {
+				negative = true;
+			}
+		}
+
+		if (negative) {
+			angle -= delta;
+		} else {
+			angle += delta;
+		}
+
+		lastAbsolute = absoluteDegrees;
+		return angle;
+	}
+
+	/**
+	 * Parses the profile
+	 * 
+	 * @param wheelDiameter The diameter used to convert to rotations, or 0 to
+	 *                      leave the units alone
+	 * @return The rows of the profile, 4 doubles each
+	 * @throws IOException If the file is not a valid profile
+	 */
+	public double[] parse(double wheelDiameter) throws IOException {
+		double circumference = Math.PI * wheelDiameter;
+		int end = buffer.limit();
+		double[] row = new double[4];
+
+		while (position < end) {
+			line++;
+			int values = 0;
+
+			while (position < end && buffer.get(position) != '\n') {
+				byte b = buffer.get(position);
+				if (isSeparator(b)) {
+					position++;
+					continue;
+				}
+
+				int start = position;
+				while (position < end && buffer.get(position) != '\n' && !isSeparator(buffer.get(position))) {
+					position++;
+				}
+
+				if (values < row.length) {
+					row[values] = parseNumber(start, position);
+				}
+				values++;
+			}
+			position++;
+
+			if (values == 0) {
+				continue;
+			} else if (values < row.length) {
+				throw new IOException("Invalid file: line " + line + " has " + values + " values");
+			}
+
+			if (length * 4 == profile.length) {
+				profile = Arrays.copyOf(profile, profile.length * 2);
+			}
+
+			int index = length * 4;
+			profile[index] = (wheelDiameter > 0) ? row[0] / circumference : row[0];
+			profile[index + 1] = (wheelDiameter > 0) ? row[1] / circumference : row[1];
+			profile[index + 2] = row[2];
+			profile[index + 3] = unwrapHeading(row[3]);
+			length++;
+		}
+
+		return Arrays.copyOf(profile, length * 4);
+	}
+
+	public CSVProfileParser(ByteBuffer buffer) {
+		this.buffer = buffer;
+
+		profile = new double[1024 * 4];
+	}
+}
@@ -4,91 +4,269 @@
 
 package org.aluminati3555.mp.file.generator;
 
-import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * This program takes a csv file with a motion profile and converts it into an
- * mp file
+ * mp file. Given directories it converts every csv file in parallel.
+ * 
+ * Next to each mp file is a .sha256 file with the hash of the csv and the
+ * settings it was made from, followed by the size and hash of the mp file
+ * itself. A csv whose hash matches is not converted again unless the mp file
+ * was changed since it was written.
  * 
  * @author Caleb Heydon
  */
 
 public class MPFileGenerator {
+	// Changing this makes every mp file out of date
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String HASH_EXTENSION = ".sha256";
+
 	private static Scanner scanner;
 
 	private static String csv;
 	private static String mp;
 	private static double wheelDiameter;
 
-	private static double[][] readCSV() throws FileNotFoundException {
-		// Get number of lines
-		scanner = new Scanner(new File(csv));
-
-		int i = 0;
-		while (scanner.hasNextLine()) {
-			if (!scanner.nextLine().equals("")) {
-				i++;
-			}
+	/**
+	 * Maps a file into memory
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static ByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
 		}
+	}
 
-		scanner.close();
-		scanner = new Scanner(new File(csv));
+	/**
+	 * Returns the hash of a csv file and the settings used to convert it
+	 * 
+	 * @param data
+	 * @param wheelDiameter
+	 * @return
+	 */
+	private static String hash(ByteBuffer data, double wheelDiameter) {
+		MessageDigest digest = createDigest();
+		digest.update(data.duplicate());
+
+		ByteBuffer settings = ByteBuffer.allocate(Integer.BYTES + Double.BYTES);
+		settings.putInt(FORMAT_VERSION);
+		settings.putDouble(wheelDiameter);
+		settings.flip();
+		digest.update(settings);
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the hash of an mp file
+	 * 
+	 * @param mp
+	 * @return
+	 * @throws IOException
+	 */
+	private static String hash(File mp) throws IOException {
+		MessageDigest digest = createDigest();
+		digest.update(map(mp));
+
+		return toHex(digest.digest());
+	}
 
-		String[] lines = new String[i];
-		for (int j = 0; j < i; j++) {
-			lines[j] = scanner.nextLine().replaceAll(",", "");
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
+	}
 
-		double[][] profile = new double[i][4];
-		for (int j = 0; j < profile.length; j++) {
-			String[] numbers = null;
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
 
-			if (lines[j].contains("\t")) {
-				numbers = lines[j].split("\t");
-			} else if (lines[j].contains(" ")) {
-				numbers = lines[j].split(" ");
-			} else {
-				System.err.println("Invalid file");
-				System.exit(-1);
+		return hex.toString();
+	}
+
+	/**
+	 * Returns the file the hash of an mp file is kept in
+	 * 
+	 * @param mp
+	 * @return
+	 */
+	private static File getHashFile(File mp) {
+		return new File(mp.getPath() + HASH_EXTENSION);
+	}
+
+	/**
+	 * Returns true if an mp file was made from a csv with a hash and has not been
+	 * changed since
+	 * 
+	 * @param mp
+	 * @param hash
+	 * @return
+	 */
+	private static boolean isUpToDate(File mp, String hash) {
+		File hashFile = getHashFile(mp);
+		if (!mp.exists() || !hashFile.exists()) {
+			return false;
+		}
+
+		try {
+			// The csv hash, the mp size and the mp hash, one per line
+			String[] lines = new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.US_ASCII).trim()
+					.split("\\s+");
+			if (lines.length != 3 || !lines[0].equals(hash)) {
+				return false;
 			}
 
-			profile[j][0] = Double.parseDouble(numbers[0]);
-			profile[j][1] = Double.parseDouble(numbers[1]);
-			profile[j][2] = Double.parseDouble(numbers[2]);
-			profile[j][3] = Double.parseDouble(numbers[3]);
+			// The size is checked first so most changes are found without reading the file
+			return mp.length() == Long.parseLong(lines[1]) && hash(mp).equals(lines[2]);
+		} catch (IOException | NumberFormatException e) {
+			return false;
 		}
-		scanner.close();
+	}
 
-		return profile;
+	/**
+	 * Writes the hash file of an mp file that was just made from a csv with a
+	 * hash
+	 * 
+	 * @param mp
+	 * @param hash
+	 * @throws IOException
+	 */
+	private static void writeHashFile(File mp, String hash) throws IOException {
+		String contents = hash + "\n" + mp.length() + "\n" + hash(mp) + "\n";
+		Files.write(getHashFile(mp).toPath(), contents.getBytes(StandardCharsets.US_ASCII));
 	}
 
-	private static void writeMP(double[][] profile) throws IOException {
-		DataOutputStream output = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(new File(mp))));
+	/**
+	 * Writes an mp file. The file is written next to the mp file and then moved
+	 * over it, so a failed write never leaves a partial profile.
+	 * 
+	 * @param profile The rows of the profile, 4 doubles each
+	 * @param mp
+	 * @throws IOException
+	 */
+	private static void writeMP(double[] profile, File mp) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(Integer.BYTES + profile.length * Double.BYTES);
 
 		// Write length
-		output.writeInt(profile.length);
+		data.putInt(profile.length / 4);
 
 		// Write profile
-		for (int i = 0; i < profile.length; i++) {
-			output.writeDouble(profile[i][0]);
-			output.writeDouble(profile[i][1]);
-			output.writeDouble(profile[i][2]);
-			output.writeDouble(profile[i][3]);
+		data.asDoubleBuffer().put(profile);
+
+		File temp = new File(mp.getPath() + ".tmp");
+		try (OutputStream output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)),
+				64 * 1024)) {
+			output.write(data.array());
 		}
 
-		output.close();
+		Files.move(temp.toPath(), mp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Converts a csv file unless the mp file is already up to date
+	 * 
+	 * @param csv
+	 * @param mp
+	 * @param wheelDiameter
+	 * @return False if the mp file was up to date
+	 * @throws IOException
+	 */
+	public static boolean convert(File csv, File mp, double wheelDiameter) throws IOException {
+		ByteBuffer data = map(csv);
+		String hash = hash(data, wheelDiameter);
+		if (isUpToDate(mp, hash)) {
+			return false;
+		}
+
+		double[] profile = new CSVProfileParser(data).parse(wheelDiameter);
+		writeMP(profile, mp);
+		writeHashFile(mp, hash);
+
+		return true;
+	}
+
+	/**
+	 * Converts every csv file in a directory in parallel
+	 * 
+	 * @param csvDirectory
+	 * @param mpDirectory
+	 * @param wheelDiameter
+	 * @return The number of files that could not be converted
+	 */
+	private static int convertDirectory(File csvDirectory, File mpDirectory, double wheelDiameter) {
+		File[] files = csvDirectory.listFiles((directory, name) -> name.toLowerCase().endsWith(".csv"));
+		if (files == null) {
+			System.err.println("Unable to list " + csvDirectory);
+			return 1;
+		}
+
+		mpDirectory.mkdirs();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (File file : files) {
+			String name = file.getName().substring(0, file.getName().length() - ".csv".length()) + ".mp";
+			File mpFile = new File(mpDirectory, name);
+
+			results.add(executor.submit(() -> convert(file, mpFile, wheelDiameter)));
+		}
+		executor.shutdown();
+
+		int converted = 0;
+		int errors = 0;
+		for (int i = 0; i < files.length; i++) {
+			try {
+				if (results.get(i).get()) {
+					converted++;
+				}
+			} catch (ExecutionException e) {
+				System.err.println(files[i].getName() + ": " + e.getCause().getMessage());
+				errors++;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return errors + 1;
+			}
+		}
+
+		System.out.println("Converted " + converted + ", up to date " + (files.length - converted - errors)
+				+ ", failed " + errors);
+		return errors;
 	}
 
 	public static void main(String[] args) throws IOException {
 		// Check arguments
 		if (args.length < 2) {
 			System.err.println("Usage: java -jar mp_file_generator.jar <csv>.csv <mp>.mp <optional_wheel_diameter>");
+			System.err.println("       java -jar mp_file_generator.jar <csv_dir> <mp_dir> <optional_wheel_diameter>");
 			System.exit(-1);
 		}
 
@@ -113,61 +291,28 @@ public class MPFileGenerator {
 			}
 		}
 
+		if (new File(csv).isDirectory()) {
+			System.exit((convertDirectory(new File(csv), new File(mp), wheelDiameter) == 0) ? 0 : -1);
+		}
+
 		// Setup console
 		scanner = new Scanner(System.in);
 
-		if (new File(mp).exists()) {
+		if (new File(mp).exists() && !isUpToDate(new File(mp), hash(map(new File(csv)), wheelDiameter))) {
 			System.out.println("MP file already exists.  Press enter to continue or Ctrl+C to exit....");
 			scanner.nextLine();
 		}
 
 		scanner.close();
 
-		// Read CSV
-		double[][] profile = readCSV();
-
-		// Convert
-		double circ = Math.PI * wheelDiameter;
-		for (int i = 0; i < profile.length && wheelDiameter > 0; i++) {
-			profile[i][0] = profile[i][0] / circ;
-			profile[i][1] = profile[i][1] / circ;
-		}
-
-		double angle = 0;
-		double lastAbsolute = 0;
-		for (int i = 0; i < profile.length; i++) {
-			double absoluteRadians = profile[i][3];
-			double absoluteDegrees = absoluteRadians * 180 / Math.PI;
-			
-			boolean negative = false;
-			double delta = 0;
-			if ((lastAbsolute >= 350) && (absoluteDegrees <= 10)) {
-				delta = (360 - lastAbsolute) + absoluteDegrees;
-			} else if ((lastAbsolute <= 10) && (absoluteDegrees >= 350)) {
-				negative = true;
-				delta = lastAbsolute + (360 - absoluteDegrees);
-			} else {
-				delta = absoluteDegrees - lastAbsolute;
-				
-				if (delta < 0) {
-					delta = -delta;
-				} else {
-					negative = true;
-				}
-			}
-			
-			if (negative) {
-				angle -= delta;
-			} else {
-				angle += delta;
+		// Convert and write mp
+		try {
+			if (!convert(new File(csv), new File(mp), wheelDiameter)) {
+				System.out.println("MP file is up to date");
 			}
-			
-			profile[i][3] = angle;
-			
-			lastAbsolute = absoluteDegrees;
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(-1);
 		}
-
-		// Write mp
-		writeMP(profile);
 	}
 }
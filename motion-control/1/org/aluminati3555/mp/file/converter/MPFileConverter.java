@@ -0,0 +1,114 @@
+/**
+ * FRC Team 3555
+ */
+
+package org.aluminati3555.mp.file.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import org.aluminati3555.mp.file.reader.MappedMPReader;
+
+/**
+ * This program converts a gzip mp file into a columnar profile that can be
+ * memory mapped by MappedMPReader
+ * 
+ * @author Caleb Heydon
+ *
+ */
+
+public class MPFileConverter {
+	/**
+	 * Inflates a gzip mp file
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] inflate(String file) throws IOException {
+		try (InputStream input = new GZIPInputStream(new FileInputStream(new File(file)), 64 * 1024)) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+
+			return output.toByteArray();
+		}
+	}
+
+	/**
+	 * Reads the columns of a gzip mp file. The old files have 3 doubles per point
+	 * and the new ones 4, which is found from the length of the file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static double[][] readColumns(String file) throws IOException {
+		ByteBuffer data = ByteBuffer.wrap(inflate(file));
+		if (data.remaining() < Integer.BYTES) {
+			throw new IOException("The file is too short");
+		}
+
+		int length = data.getInt();
+		int size = data.remaining();
+		if (length <= 0 || size % (length * Double.BYTES) != 0) {
+			throw new IOException("The file has a partial point");
+		}
+
+		int columnCount = size / (length * Double.BYTES);
+		if (columnCount < 3 || columnCount > 4) {
+			throw new IOException("The file has " + columnCount + " doubles per point");
+		}
+
+		double[][] columns = new double[columnCount][length];
+		for (int i = 0; i < length; i++) {
+			for (int j = 0; j < columnCount; j++) {
+				columns[j][i] = data.getDouble();
+			}
+		}
+
+		return columns;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java -jar mp_file_converter.jar <mp_file>.mp <mapped_file>.mpc");
+			System.exit(-1);
+		}
+
+		if (!new File(args[0]).exists()) {
+			System.err.println(args[0] + " does not exist");
+			System.exit(-1);
+		}
+
+		double[][] columns;
+		try {
+			columns = readColumns(args[0]);
+		} catch (IOException e) {
+			System.err.println("Unable to read file: " + e.getMessage());
+			System.exit(-1);
+			return;
+		}
+
+		MappedMPWriter.write(args[1], columns);
+
+		// Make sure the new file reads back
+		MappedMPReader reader = new MappedMPReader(args[1]);
+		if (reader.getError()) {
+			System.err.println("Unable to verify " + args[1]);
+			System.exit(-1);
+		}
+
+		System.out.println("Converted " + reader.getLength() + " points with " + reader.getColumnCount()
+				+ " columns");
+	}
+}
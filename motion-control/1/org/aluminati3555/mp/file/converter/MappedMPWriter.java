@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.mp.file.converter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.aluminati3555.mp.file.reader.MappedMPReader;
+
+/**
+ * This class writes a columnar motion profile that MappedMPReader can map
+ * 
+ * @author Caleb Heydon
+ */
+
+public class MappedMPWriter {
+	/**
+	 * Writes a motion profile
+	 * 
+	 * @param file
+	 * @param columns The position, velocity, duration and optionally heading
+	 *                columns
+	 * @throws IOException
+	 */
+	public static void write(String file, double[][] columns) throws IOException {
+		if (columns.length < 3 || columns.length > 4) {
+			throw new IllegalArgumentException("A motion profile has 3 or 4 columns");
+		}
+
+		int length = columns[0].length;
+		for (int i = 1; i < columns.length; i++) {
+			if (columns[i].length != length) {
+				throw new IllegalArgumentException("The columns have different lengths");
+			}
+		}
+
+		long stride = MappedMPReader.getColumnStride(length);
+		long size = MappedMPReader.HEADER_SIZE + stride * columns.length;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The motion profile is too long");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < columns.length; i++) {
+			buffer.position((int) (MappedMPReader.HEADER_SIZE + stride * i));
+			buffer.asDoubleBuffer().put(columns[i]);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), MappedMPReader.HEADER_SIZE, (int) size - MappedMPReader.HEADER_SIZE);
+
+		buffer.position(0);
+		buffer.put(MappedMPReader.MAGIC);
+		buffer.putInt(MappedMPReader.VERSION);
+		buffer.putInt(length);
+		buffer.putInt(columns.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.position(0);
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+}
@@ -28,17 +28,33 @@ public class MPFileReader {
 		}
 
 		System.out.println("Position\tVelocity\tDuration\tHeading");
-		mpReader = new AluminatiMPReader(args[0]);
-		if (mpReader.getError()) {
-			System.err.println("Unable to read file");
-			System.exit(-1);
-		}
 
-		double[][] profile = mpReader.getProfile();
+		double[][] profile;
+		if (MappedMPReader.isMappedProfile(args[0])) {
+			MappedMPReader mappedReader = new MappedMPReader(args[0]);
+			if (mappedReader.getError()) {
+				System.err.println("Unable to read file");
+				System.exit(-1);
+			}
+
+			profile = mappedReader.getProfile();
+		} else {
+			mpReader = new AluminatiMPReader(args[0]);
+			if (mpReader.getError()) {
+				System.err.println("Unable to read file");
+				System.exit(-1);
+			}
+
+			profile = mpReader.getProfile();
+		}
 
 		for (int i = 0; i < profile.length; i++) {
-			System.out.println(
-					profile[i][0] + ",\t" + profile[i][1] + ",\t" + profile[i][2] + ",\t" + profile[i][3] + ",\t");
+			StringBuilder line = new StringBuilder();
+			for (int j = 0; j < profile[i].length; j++) {
+				line.append(profile[i][j]).append(",\t");
+			}
+
+			System.out.println(line);
 		}
 	}
 }
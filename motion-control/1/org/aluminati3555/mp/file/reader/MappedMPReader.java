@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.mp.file.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class memory maps a columnar motion profile and reads it in place, so
+ * nothing has to be inflated or parsed before the profile can start.
+ * 
+ * The file is little endian. It starts with a 64 byte header:
+ * 
+ * <pre>
+ * 0  "AMPC"
+ * 4  int version
+ * 8  int number of points
+ * 12 int number of columns
+ * 16 int CRC32 of everything after the header
+ * 20 reserved, 0
+ * </pre>
+ * 
+ * The columns follow the header. Each column holds one double per point and
+ * starts on a 64 byte boundary. The columns are position, velocity, duration
+ * and heading, in the order of the rows of AluminatiMPReader. Profiles without
+ * a heading have only the first 3.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class MappedMPReader {
+	public static final byte[] MAGIC = { 'A', 'M', 'P', 'C' };
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int ALIGNMENT = 64;
+
+	// Columns
+	public static final int POSITION = 0;
+	public static final int VELOCITY = 1;
+	public static final int DURATION = 2;
+	public static final int HEADING = 3;
+
+	// Name of the file
+	private String file;
+
+	// Was there an error loading the file?
+	private boolean error;
+
+	// The mapped file and a view of each column
+	private MappedByteBuffer buffer;
+	private DoubleBuffer[] columns;
+	private int length;
+
+	/**
+	 * Returns the number of bytes from the start of one column to the next
+	 * 
+	 * @param length The number of points
+	 * @return
+	 */
+	public static long getColumnStride(int length) {
+		long size = (long) length * Double.BYTES;
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * Returns true if a file starts with the magic of a columnar profile
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static boolean isMappedProfile(String file) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			while (magic.hasRemaining()) {
+				if (channel.read(magic) == -1) {
+					return false;
+				}
+			}
+
+			magic.flip();
+			return ByteBuffer.wrap(MAGIC).equals(magic);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the path of the file
+	 * 
+	 * @return
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns true if an error was encountered
+	 * 
+	 * @return
+	 */
+	public boolean getError() {
+		return error;
+	}
+
+	/**
+	 * Returns the number of points
+	 * 
+	 * @return
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of columns
+	 * 
+	 * @return
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Returns a read only view of a column. Each call returns a new view, so
+	 * views can be used by different threads.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public DoubleBuffer getColumn(int column) {
+		return columns[column].duplicate();
+	}
+
+	public double getPosition(int point) {
+		return columns[POSITION].get(point);
+	}
+
+	public double getVelocity(int point) {
+		return columns[VELOCITY].get(point);
+	}
+
+	public double getDuration(int point) {
+		return columns[DURATION].get(point);
+	}
+
+	/**
+	 * Returns the heading of a point, or 0 if the profile has no heading
+	 * 
+	 * @param point
+	 * @return
+	 */
+	public double getHeading(int point) {
+		return (columns.length > HEADING) ? columns[HEADING].get(point) : 0;
+	}
+
+	/**
+	 * Copies the motion profile into rows like AluminatiMPReader.getProfile()
+	 * 
+	 * @return
+	 */
+	public double[][] getProfile() {
+		double[][] profile = new double[length][columns.length];
+		for (int j = 0; j < columns.length; j++) {
+			DoubleBuffer column = getColumn(j);
+			for (int i = 0; i < length; i++) {
+				profile[i][j] = column.get(i);
+			}
+		}
+
+		return profile;
+	}
+
+	/**
+	 * Maps the motion profile and checks its header and checksum
+	 */
+	private boolean loadMP() {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			return true;
+		}
+
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_SIZE) {
+			return true;
+		}
+
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (buffer.get(i) != MAGIC[i]) {
+				return true;
+			}
+		}
+
+		int version = buffer.getInt(4);
+		length = buffer.getInt(8);
+		int columnCount = buffer.getInt(12);
+		int checksum = buffer.getInt(16);
+
+		long stride = getColumnStride(length);
+		if (version != VERSION || length < 0 || columnCount < 3 || columnCount > 4
+				|| buffer.capacity() != HEADER_SIZE + stride * columnCount) {
+			return true;
+		}
+
+		ByteBuffer data = buffer.duplicate();
+		data.position(HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		if ((int) crc.getValue() != checksum) {
+			return true;
+		}
+
+		columns = new DoubleBuffer[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			ByteBuffer column = buffer.duplicate();
+			column.position((int) (HEADER_SIZE + stride * i));
+			column.limit((int) (HEADER_SIZE + stride * i + (long) length * Double.BYTES));
+			columns[i] = column.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+
+		return false;
+	}
+
+	public MappedMPReader(String file) {
+		this.file = file;
+		this.error = loadMP();
+	}
+}
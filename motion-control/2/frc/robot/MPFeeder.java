@@ -0,0 +1,274 @@
+/**
+ * FRC Team 3555
+ */
+
+package frc.robot;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class streams an encoded motion profile from the filesystem in chunks
+ * instead of loading all of it. There are two chunk buffers: the control loop
+ * takes points from one while the next chunk is read into the other in the
+ * background. Motion can start as soon as the first chunk is read and the
+ * memory used does not depend on the length of the profile.
+ * 
+ * next() is meant to be called from one thread.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class MPFeeder {
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+
+	// The thread chunks are read on, shared by every feeder
+	private static final ExecutorService READ_THREAD = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable);
+		thread.setName("Profile Feeder Thread");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Name of the file
+	private String file;
+
+	private DataInputStream input;
+	private int length;
+	private int columns;
+	private int chunkSize;
+
+	// The raw bytes of a chunk and a view of them as doubles, used by the reader
+	private byte[] bytes;
+	private DoubleBuffer doubles;
+	private int pointsRead;
+
+	// The chunk buffers, chunk i is in buffer i % 2
+	private double[][] chunks;
+	private int[] chunkLengths;
+	private int chunksRead;
+	private int chunksReleased;
+	private boolean readScheduled;
+	private boolean finished;
+	private boolean closed;
+	private IOException error;
+	private final Runnable readTask = this::readChunks;
+
+	// The chunk the control loop is using
+	private boolean hasChunk;
+	private double[] chunk;
+	private int chunkLength;
+	private int index;
+
+	// The number of times the control loop had to wait for a chunk
+	private int underruns;
+
+	/**
+	 * Returns the path of the file
+	 * 
+	 * @return
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of points in the profile
+	 * 
+	 * @return
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of doubles in each point
+	 * 
+	 * @return
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the number of times next() had to wait for a chunk after the first
+	 * one. If this is not 0 the chunks are too small.
+	 * 
+	 * @return
+	 */
+	public synchronized int getUnderruns() {
+		return underruns;
+	}
+
+	/**
+	 * Reads chunks until both buffers are full or the profile ends, runs on the
+	 * read thread
+	 */
+	private void readChunks() {
+		while (true) {
+			int buffer;
+			synchronized (this) {
+				if (chunksRead - chunksReleased >= 2 || finished || closed || error != null) {
+					readScheduled = false;
+					return;
+				}
+
+				buffer = chunksRead % 2;
+			}
+
+			// The control loop is not using this buffer
+			int count = Math.min(chunkSize, length - pointsRead);
+			try {
+				input.readFully(bytes, 0, count * columns * Double.BYTES);
+			} catch (IOException e) {
+				synchronized (this) {
+					error = e;
+					readScheduled = false;
+					notifyAll();
+				}
+				return;
+			}
+
+			doubles.clear();
+			doubles.get(chunks[buffer], 0, count * columns);
+			pointsRead += count;
+
+			synchronized (this) {
+				chunkLengths[buffer] = count;
+				chunksRead++;
+				finished = pointsRead == length;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Gives back the current chunk and waits for the next one
+	 * 
+	 * @return False if the profile has ended
+	 * @throws IOException
+	 */
+	private synchronized boolean nextChunk() throws IOException {
+		if (hasChunk) {
+			hasChunk = false;
+			chunksReleased++;
+
+			if (!readScheduled && !finished) {
+				readScheduled = true;
+				READ_THREAD.execute(readTask);
+			}
+		}
+
+		if (chunksRead == chunksReleased && !finished && error == null && chunksReleased > 0) {
+			underruns++;
+		}
+
+		while (chunksRead == chunksReleased && !finished && error == null && !closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a chunk");
+			}
+		}
+
+		if (chunksRead == chunksReleased) {
+			if (error != null) {
+				throw error;
+			}
+
+			return false;
+		}
+
+		int buffer = chunksReleased % 2;
+		chunk = chunks[buffer];
+		chunkLength = chunkLengths[buffer];
+		index = 0;
+		hasChunk = true;
+		return true;
+	}
+
+	/**
+	 * Copies the next point of the profile. Blocks only if the next chunk has not
+	 * been read yet.
+	 * 
+	 * @param point An array of at least getColumns() doubles
+	 * @return False if the profile has ended
+	 * @throws IOException If the file could not be read
+	 */
+	public boolean next(double[] point) throws IOException {
+		if (!hasChunk || index == chunkLength) {
+			if (!nextChunk()) {
+				return false;
+			}
+		}
+
+		System.arraycopy(chunk, index * columns, point, 0, columns);
+		index++;
+		return true;
+	}
+
+	/**
+	 * Stops reading and closes the file
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+
+		try {
+			input.close();
+		} catch (IOException e) {
+
+		}
+	}
+
+	/**
+	 * Opens a profile and starts reading the first chunks
+	 * 
+	 * @param file
+	 * @param columns   The number of doubles in each point
+	 * @param chunkSize The number of points in each chunk
+	 * @throws IOException
+	 */
+	public MPFeeder(String file, int columns, int chunkSize) throws IOException {
+		if (columns < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException("Invalid columns or chunk size");
+		}
+
+		this.file = file;
+		this.columns = columns;
+		this.chunkSize = chunkSize;
+
+		input = new DataInputStream(new GZIPInputStream(new FileInputStream(new File(file)), 64 * 1024));
+		length = input.readInt();
+		if (length < 0) {
+			input.close();
+			throw new IOException("Invalid length " + length);
+		}
+
+		bytes = new byte[chunkSize * columns * Double.BYTES];
+		doubles = ByteBuffer.wrap(bytes).asDoubleBuffer();
+		chunks = new double[][] { new double[chunkSize * columns], new double[chunkSize * columns] };
+		chunkLengths = new int[2];
+
+		finished = length == 0;
+		readScheduled = !finished;
+		if (readScheduled) {
+			READ_THREAD.execute(readTask);
+		}
+	}
+
+	public MPFeeder(String file, int columns) throws IOException {
+		this(file, columns, DEFAULT_CHUNK_SIZE);
+	}
+}
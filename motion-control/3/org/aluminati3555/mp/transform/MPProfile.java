@@ -0,0 +1,162 @@
+/**
+ * FRC Team 3555
+ */
+
+package org.aluminati3555.mp.transform;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class holds a motion profile as one array of rows. Each row has the
+ * position, velocity and duration of a point, and the heading if the profile
+ * has one. It reads and writes the gzip mp files made by MPFileGenerator.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class MPProfile {
+	// Columns
+	public static final int POSITION = 0;
+	public static final int VELOCITY = 1;
+	public static final int DURATION = 2;
+	public static final int HEADING = 3;
+
+	private double[] data;
+	private int columns;
+
+	/**
+	 * Returns the number of points
+	 * 
+	 * @return
+	 */
+	public int getLength() {
+		return data.length / columns;
+	}
+
+	/**
+	 * Returns the number of doubles in each point, 3 or 4
+	 * 
+	 * @return
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns true if the profile has a heading column
+	 * 
+	 * @return
+	 */
+	public boolean hasHeading() {
+		return columns > HEADING;
+	}
+
+	/**
+	 * Returns one value of a point
+	 * 
+	 * @param point
+	 * @param column
+	 * @return
+	 */
+	public double get(int point, int column) {
+		return data[point * columns + column];
+	}
+
+	/**
+	 * Returns the rows of the profile. The array is not copied.
+	 * 
+	 * @return
+	 */
+	public double[] getData() {
+		return data;
+	}
+
+	/**
+	 * Reads an mp file. Old files have 3 doubles per point and new ones 4, which
+	 * is found from the length of the file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static MPProfile read(String file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream input = new GZIPInputStream(new FileInputStream(new File(file)), 64 * 1024)) {
+			byte[] buffer = new byte[64 * 1024];
+
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+
+		ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+		if (data.remaining() < Integer.BYTES) {
+			throw new IOException(file + " is too short");
+		}
+
+		int length = data.getInt();
+		int size = data.remaining() / Double.BYTES;
+		if (length <= 0 || data.remaining() % Double.BYTES != 0 || size % length != 0
+				|| (size / length != 3 && size / length != 4)) {
+			throw new IOException(file + " is not a motion profile");
+		}
+
+		double[] rows = new double[size];
+		data.asDoubleBuffer().get(rows);
+
+		return new MPProfile(rows, size / length);
+	}
+
+	/**
+	 * Writes the profile as an mp file. The file is written next to the mp file
+	 * and then moved over it, so it can replace the file it was read from.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(String file) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES + data.length * Double.BYTES);
+		bytes.putInt(getLength());
+		bytes.asDoubleBuffer().put(data);
+
+		File temp = new File(file + ".tmp");
+		try (OutputStream output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)),
+				64 * 1024)) {
+			output.write(bytes.array());
+		}
+
+		Files.move(temp.toPath(), new File(file).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Creates a profile from rows
+	 * 
+	 * @param data    The rows, columns doubles each
+	 * @param columns 3, or 4 with a heading
+	 */
+	public MPProfile(double[] data, int columns) {
+		if (columns != 3 && columns != 4) {
+			throw new IllegalArgumentException("A motion profile has 3 or 4 columns");
+		}
+
+		if (data.length % columns != 0) {
+			throw new IllegalArgumentException("The profile has a partial point");
+		}
+
+		this.data = data;
+		this.columns = columns;
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * FRC Team 3555
+ */
+
+package org.aluminati3555.mp.transform;
+
+/**
+ * This class changes motion profiles without going back to the waypoints. Each
+ * transform is one pass over the rows and returns a new profile.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class MPTransform {
+	/**
+	 * Reverses the direction of a profile so the robot drives the same path
+	 * backwards. The position and velocity are negated.
+	 * 
+	 * @param profile
+	 * @return
+	 */
+	public static MPProfile reverse(MPProfile profile) {
+		double[] data = profile.getData().clone();
+		int columns = profile.getColumns();
+
+		for (int i = 0; i < data.length; i += columns) {
+			data[i + MPProfile.POSITION] = -data[i + MPProfile.POSITION];
+			data[i + MPProfile.VELOCITY] = -data[i + MPProfile.VELOCITY];
+		}
+
+		return new MPProfile(data, columns);
+	}
+
+	/**
+	 * Negates the heading of a profile
+	 * 
+	 * @param profile
+	 * @return
+	 */
+	private static MPProfile negateHeading(MPProfile profile) {
+		double[] data = profile.getData().clone();
+		int columns = profile.getColumns();
+
+		if (profile.hasHeading()) {
+			for (int i = 0; i < data.length; i += columns) {
+				data[i + MPProfile.HEADING] = -data[i + MPProfile.HEADING];
+			}
+		}
+
+		return new MPProfile(data, columns);
+	}
+
+	/**
+	 * Mirrors a path left to right. The sides are swapped and their headings are
+	 * negated.
+	 * 
+	 * @param left
+	 * @param right
+	 * @return The new left and right profiles
+	 */
+	public static MPProfile[] mirror(MPProfile left, MPProfile right) {
+		return new MPProfile[] { negateHeading(right), negateHeading(left) };
+	}
+
+	/**
+	 * Scales the time of a profile. The durations are multiplied and the
+	 * velocities divided by the factor, so the path stays the same. The motor
+	 * controller only accepts some durations, so the factor should keep them
+	 * valid.
+	 * 
+	 * @param profile
+	 * @param factor  More than 1 to slow down, less than 1 to speed up
+	 * @return
+	 */
+	public static MPProfile scaleTime(MPProfile profile, double factor) {
+		if (!(factor > 0) || Double.isInfinite(factor)) {
+			throw new IllegalArgumentException("Invalid factor: " + factor);
+		}
+
+		double[] data = profile.getData().clone();
+		int columns = profile.getColumns();
+
+		for (int i = 0; i < data.length; i += columns) {
+			data[i + MPProfile.VELOCITY] /= factor;
+			data[i + MPProfile.DURATION] *= factor;
+		}
+
+		return new MPProfile(data, columns);
+	}
+
+	/**
+	 * Scales the velocity of a profile, see scaleTime()
+	 * 
+	 * @param profile
+	 * @param factor  More than 1 to speed up, less than 1 to slow down
+	 * @return
+	 */
+	public static MPProfile scaleVelocity(MPProfile profile, double factor) {
+		if (!(factor > 0) || Double.isInfinite(factor)) {
+			throw new IllegalArgumentException("Invalid factor: " + factor);
+		}
+
+		return scaleTime(profile, 1 / factor);
+	}
+
+	/**
+	 * Joins profiles one after another. Each profile is assumed to start from a
+	 * position and heading of 0 like the ones MPFileGenerator makes, so they are
+	 * offset to continue from the end of the one before. A jump in velocity
+	 * between them that is more than the tolerance is an error.
+	 * 
+	 * @param velocityTolerance The largest change in velocity allowed at a join
+	 * @param profiles
+	 * @return
+	 */
+	public static MPProfile concatenate(double velocityTolerance, MPProfile... profiles) {
+		if (profiles.length == 0) {
+			throw new IllegalArgumentException("No profiles to join");
+		}
+
+		int columns = profiles[0].getColumns();
+		int size = 0;
+		for (int i = 0; i < profiles.length; i++) {
+			if (profiles[i].getColumns() != columns) {
+				throw new IllegalArgumentException("Profile " + i + " has " + profiles[i].getColumns()
+						+ " columns instead of " + columns);
+			}
+
+			size += profiles[i].getData().length;
+		}
+
+		double[] data = new double[size];
+		int index = 0;
+		double positionOffset = 0;
+		double headingOffset = 0;
+
+		for (int i = 0; i < profiles.length; i++) {
+			double[] rows = profiles[i].getData();
+
+			if (index > 0 && rows.length > 0) {
+				double lastVelocity = data[index - columns + MPProfile.VELOCITY];
+				double jump = Math.abs(rows[MPProfile.VELOCITY] - lastVelocity);
+				if (jump > velocityTolerance) {
+					throw new IllegalArgumentException(
+							"The velocity jumps by " + jump + " at the start of profile " + i);
+				}
+
+				positionOffset = data[index - columns + MPProfile.POSITION];
+				if (columns > MPProfile.HEADING) {
+					headingOffset = data[index - columns + MPProfile.HEADING];
+				}
+			}
+
+			for (int j = 0; j < rows.length; j += columns) {
+				data[index + MPProfile.POSITION] = rows[j + MPProfile.POSITION] + positionOffset;
+				data[index + MPProfile.VELOCITY] = rows[j + MPProfile.VELOCITY];
+				data[index + MPProfile.DURATION] = rows[j + MPProfile.DURATION];
+				if (columns > MPProfile.HEADING) {
+					data[index + MPProfile.HEADING] = rows[j + MPProfile.HEADING] + headingOffset;
+				}
+
+				index += columns;
+			}
+		}
+
+		return new MPProfile(data, columns);
+	}
+}
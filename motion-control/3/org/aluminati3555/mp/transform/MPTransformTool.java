@@ -0,0 +1,93 @@
+/**
+ * FRC Team 3555
+ */
+
+package org.aluminati3555.mp.transform;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This program reverses, mirrors, scales and joins mp files
+ * 
+ * @author Caleb Heydon
+ */
+
+public class MPTransformTool {
+	private static void printUsage() {
+		System.err.println("Usage: java -jar mp_transform.jar reverse <in>.mp <out>.mp");
+		System.err.println("       java -jar mp_transform.jar mirror <left>.mp <right>.mp <out_left>.mp <out_right>.mp");
+		System.err.println("       java -jar mp_transform.jar scale-time <factor> <in>.mp <out>.mp");
+		System.err.println("       java -jar mp_transform.jar scale-velocity <factor> <in>.mp <out>.mp");
+		System.err.println("       java -jar mp_transform.jar concat <velocity_tolerance> <out>.mp <in>.mp...");
+		System.exit(-1);
+	}
+
+	private static double parseNumber(String number) {
+		try {
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid number: " + number);
+			System.exit(-1);
+			return 0;
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			printUsage();
+		}
+
+		try {
+			switch (args[0]) {
+			case "reverse":
+				if (args.length != 3) {
+					printUsage();
+				}
+
+				MPTransform.reverse(MPProfile.read(args[1])).write(args[2]);
+				break;
+			case "mirror":
+				if (args.length != 5) {
+					printUsage();
+				}
+
+				MPProfile[] sides = MPTransform.mirror(MPProfile.read(args[1]), MPProfile.read(args[2]));
+				sides[0].write(args[3]);
+				sides[1].write(args[4]);
+				break;
+			case "scale-time":
+			case "scale-velocity":
+				if (args.length != 4) {
+					printUsage();
+				}
+
+				double factor = parseNumber(args[1]);
+				MPProfile profile = MPProfile.read(args[2]);
+				profile = args[0].equals("scale-time") ? MPTransform.scaleTime(profile, factor)
+						: MPTransform.scaleVelocity(profile, factor);
+				profile.write(args[3]);
+				break;
+			case "concat":
+				if (args.length < 4) {
+					printUsage();
+				}
+
+				double tolerance = parseNumber(args[1]);
+				String[] files = Arrays.copyOfRange(args, 3, args.length);
+				MPProfile[] profiles = new MPProfile[files.length];
+				for (int i = 0; i < files.length; i++) {
+					profiles[i] = MPProfile.read(files[i]);
+				}
+
+				MPTransform.concatenate(tolerance, profiles).write(args[2]);
+				break;
+			default:
+				printUsage();
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
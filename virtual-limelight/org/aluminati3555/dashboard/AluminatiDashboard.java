@@ -38,7 +38,7 @@ import javafx.stage.Stage;
 public class AluminatiDashboard extends Application {
 	public static final int TEAM = 3555;
 	public static final long WAIT_TIME = 5000;
-	public static final long THREAD_WAIT_TIME = 1000;
+	public static final double PUBLISH_RATE = 50;
 
 	public static NetworkManager networkManager;
 	public static DashboardWindow dashboard;
@@ -83,33 +83,8 @@ public class AluminatiDashboard extends Application {
 		
 		window.show();
 		
-		Thread leftThread = new Thread(() -> {
-			while (!dashboard.setupLeft()) {
-				try {
-					Thread.sleep(THREAD_WAIT_TIME);
-				} catch (InterruptedException e) {
-					
-				}
-			}
-		});
-		leftThread.setName("Left Setup Thread");
-		leftThread.setDaemon(true);
-		leftThread.setPriority(Thread.MAX_PRIORITY);
-		leftThread.start();
-		
-		Thread rightThread = new Thread(() -> {
-			while (!dashboard.setupRight()) {
-				try {
-					Thread.sleep(THREAD_WAIT_TIME);
-				} catch (InterruptedException e) {
-					
-				}
-			}
-		});
-		rightThread.setName("Right Setup Thread");
-		rightThread.setDaemon(true);
-		rightThread.setPriority(Thread.MAX_PRIORITY);
-		rightThread.start();
+		dashboard.setupLeft();
+		dashboard.setupRight();
 	}
 
 	public static void main(String[] args) {
@@ -24,6 +24,8 @@ package org.aluminati3555.dashboard;
 
 import java.io.IOException;
 
+import org.aluminati3555.net.CoalescingPublisher;
+
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import javafx.application.Platform;
@@ -53,6 +55,8 @@ public class DashboardWindow extends BorderPane {
 	
 	private SimpleIntegerProperty tv = new SimpleIntegerProperty(0);
 	
+	private CoalescingPublisher publisher;
+	
 	/**
 	 * Gets the left side of the window
 	 * 
@@ -186,25 +190,28 @@ public class DashboardWindow extends BorderPane {
 		NetworkTableInstance nt = AluminatiDashboard.networkManager.getNT();
 		NetworkTable table = nt.getTable("limelight");
 		
-		table.getEntry("tx").setNumber(tx.get());
-		table.getEntry("ty").setNumber(ty.get());
-		table.getEntry("ta").setNumber(ta.get());
-		table.getEntry("tv").setNumber(tv.get());
+		// Dragging a slider changes the values far faster than the robot reads them
+		publisher = new CoalescingPublisher(nt, table, AluminatiDashboard.PUBLISH_RATE);
+		
+		publisher.set("tx", tx.get());
+		publisher.set("ty", ty.get());
+		publisher.set("ta", ta.get());
+		publisher.set("tv", tv.get());
 		
 		tx.addListener((e, oldValue, newValue) -> {
-			table.getEntry("tx").setNumber(newValue);
+			publisher.set("tx", newValue.doubleValue());
 		});
 		
 		ty.addListener((e, oldValue, newValue) -> {
-			table.getEntry("ty").setNumber(newValue);
+			publisher.set("ty", newValue.doubleValue());
 		});
 		
 		ta.addListener((e, oldValue, newValue) -> {
-			table.getEntry("ta").setNumber(newValue);
+			publisher.set("ta", newValue.doubleValue());
 		});
 		
 		tv.addListener((e, oldValue, newValue) -> {
-			table.getEntry("tv").setNumber(newValue);
+			publisher.set("tv", newValue.doubleValue());
 		});
 	}
 }
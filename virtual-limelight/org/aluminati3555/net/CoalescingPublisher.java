@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.net;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * This class publishes numbers to a network table at a fixed rate. Setting a
+ * key only stores the newest value, so a slider that changes hundreds of times
+ * a second is sent at most once per flush. Every key that changed is written
+ * together and then flushed to the robot as one update.
+ * 
+ * @author Caleb Heydon
+ */
+public class CoalescingPublisher {
+	private static final int INITIAL_CAPACITY = 8;
+
+	private NetworkTableInstance instance;
+	private NetworkTable table;
+
+	// The index of each key in the arrays below
+	private HashMap<String, Integer> indices;
+	private NetworkTableEntry[] entries;
+	private double[] values;
+	private boolean[] dirty;
+	private int size;
+	private boolean changed;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Sets the newest value of a key. It is sent on the next flush.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void set(String key, double value) {
+		Integer index = indices.get(key);
+
+		if (index == null) {
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+				dirty = Arrays.copyOf(dirty, size * 2);
+			}
+
+			index = size++;
+			indices.put(key, index);
+			entries[index] = table.getEntry(key);
+		}
+
+		values[index] = value;
+		dirty[index] = true;
+		changed = true;
+	}
+
+	/**
+	 * Writes every key that changed since the last flush and sends them
+	 */
+	public synchronized void flush() {
+		if (!changed) {
+			return;
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (dirty[i]) {
+				entries[i].setDouble(values[i]);
+				dirty[i] = false;
+			}
+		}
+		changed = false;
+
+		instance.flush();
+	}
+
+	/**
+	 * Stops publishing after sending what is left
+	 */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+		flush();
+	}
+
+	/**
+	 * Creates a publisher that only sends when flush() is called
+	 * 
+	 * @param instance The network tables instance
+	 * @param table    The table to publish to
+	 */
+	public CoalescingPublisher(NetworkTableInstance instance, NetworkTable table) {
+		this.instance = instance;
+		this.table = table;
+
+		indices = new HashMap<String, Integer>();
+		entries = new NetworkTableEntry[INITIAL_CAPACITY];
+		values = new double[INITIAL_CAPACITY];
+		dirty = new boolean[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Creates a publisher
+	 * 
+	 * @param instance The network tables instance
+	 * @param table    The table to publish to
+	 * @param rate     The number of flushes per second
+	 */
+	public CoalescingPublisher(NetworkTableInstance instance, NetworkTable table, double rate) {
+		this(instance, table);
+
+		if (rate <= 0) {
+			throw new IllegalArgumentException("The rate must be positive");
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setName("Network Publisher Thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long period = Math.max(1, (long) (1e6 / rate));
+		executor.scheduleAtFixedRate(this::flush, period, period, TimeUnit.MICROSECONDS);
+	}
+}
@@ -22,6 +22,10 @@
 
 package org.aluminati3555.net;
 
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.JOptionPane;
 
 import org.aluminati3555.dashboard.AluminatiDashboard;
@@ -43,19 +47,60 @@ public class NetworkManager {
 		return instance;
 	}
 	
+	/**
+	 * Blocks until network tables connects without using the processor while it
+	 * waits
+	 * 
+	 * @param timeout The time to wait in milliseconds
+	 * @return True if connected
+	 */
+	private boolean waitForConnection(long timeout) {
+		CountDownLatch connected = new CountDownLatch(1);
+		int listener = instance.addConnectionListener(notification -> {
+			if (notification.connected) {
+				connected.countDown();
+			}
+		}, true);
+
+		try {
+			connected.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+
+		} finally {
+			instance.removeConnectionListener(listener);
+		}
+
+		return instance.isConnected();
+	}
+	
+	/**
+	 * Connects without showing any windows, for the headless tools
+	 * 
+	 * @param server The address of the robot, or null to use the team number
+	 * @throws IOException If it could not connect in WAIT_TIME
+	 */
+	public NetworkManager(String server) throws IOException {
+		instance = NetworkTableInstance.getDefault();
+		if (server == null) {
+			instance.startClientTeam(AluminatiDashboard.TEAM);
+		} else {
+			instance.startClient(server);
+		}
+
+		if (!waitForConnection(AluminatiDashboard.WAIT_TIME)) {
+			throw new IOException("Unable to connect to robot");
+		}
+	}
+
 	public NetworkManager() {
 		instance = NetworkTableInstance.getDefault();
 		instance.startClientTeam(AluminatiDashboard.TEAM);
 		instance.startDSClient();
 
-		long start = System.currentTimeMillis();
-
-		while (!instance.isConnected()) {
-			if ((System.currentTimeMillis() - start) >= AluminatiDashboard.WAIT_TIME) {
-				JOptionPane.showMessageDialog(null, "Unable to connect to robot", "Unable to connect to robot",
-						JOptionPane.ERROR_MESSAGE);
-				System.exit(1);
-			}
+		if (!waitForConnection(AluminatiDashboard.WAIT_TIME)) {
+			JOptionPane.showMessageDialog(null, "Unable to connect to robot", "Unable to connect to robot",
+					JOptionPane.ERROR_MESSAGE);
+			System.exit(1);
 		}
 	}
 }
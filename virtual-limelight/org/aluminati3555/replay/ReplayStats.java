@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.replay;
+
+/**
+ * This class keeps the publish rate and timing of a replay. Jitter is how late
+ * each publish ran after its scheduled time.
+ * 
+ * @author Caleb Heydon
+ */
+public class ReplayStats {
+	private long start;
+	private long end;
+
+	private long count;
+	private long missed;
+
+	// Lateness in nanoseconds
+	private double sum;
+	private double sumSquares;
+	private long max;
+
+	/**
+	 * Records one publish
+	 * 
+	 * @param time     When it ran
+	 * @param lateness How long after its scheduled time it ran
+	 */
+	public void add(long time, long lateness) {
+		if (count == 0 && missed == 0) {
+			start = time;
+		}
+		end = time;
+
+		count++;
+		sum += lateness;
+		sumSquares += (double) lateness * lateness;
+		max = Math.max(max, lateness);
+	}
+
+	/**
+	 * Records ticks that were skipped because the replay fell behind
+	 * 
+	 * @param ticks
+	 */
+	public void addMissed(long ticks) {
+		missed += ticks;
+	}
+
+	/**
+	 * Adds the publishes of another window
+	 * 
+	 * @param stats
+	 */
+	public void add(ReplayStats stats) {
+		if (stats.count == 0) {
+			missed += stats.missed;
+			return;
+		}
+
+		if (count == 0) {
+			start = stats.start;
+		}
+		end = stats.end;
+
+		count += stats.count;
+		missed += stats.missed;
+		sum += stats.sum;
+		sumSquares += stats.sumSquares;
+		max = Math.max(max, stats.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMissed() {
+		return missed;
+	}
+
+	/**
+	 * Returns the publishes per second between the first and last publish
+	 * 
+	 * @return
+	 */
+	public double getRate() {
+		if (count < 2) {
+			return 0;
+		}
+
+		return (count - 1) / ((end - start) / 1e9);
+	}
+
+	/**
+	 * Returns the average lateness in milliseconds
+	 * 
+	 * @return
+	 */
+	public double getMeanLateness() {
+		return (count == 0) ? 0 : sum / count / 1e6;
+	}
+
+	/**
+	 * Returns the standard deviation of the lateness in milliseconds
+	 * 
+	 * @return
+	 */
+	public double getJitter() {
+		if (count == 0) {
+			return 0;
+		}
+
+		double mean = sum / count;
+		return Math.sqrt(Math.max(0, sumSquares / count - mean * mean)) / 1e6;
+	}
+
+	/**
+	 * Returns the longest lateness in milliseconds
+	 * 
+	 * @return
+	 */
+	public double getMaxLateness() {
+		return max / 1e6;
+	}
+
+	/**
+	 * Clears the stats
+	 */
+	public void reset() {
+		count = 0;
+		missed = 0;
+		sum = 0;
+		sumSquares = 0;
+		max = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.1f Hz, late %.3f ms (jitter %.3f ms, max %.3f ms), %d published, %d missed",
+				getRate(), getMeanLateness(), getJitter(), getMaxLateness(), count, missed);
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.aluminati3555.net.CoalescingPublisher;
+import org.aluminati3555.net.NetworkManager;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * This is a headless mode of the virtual limelight that replays a target
+ * timeline to network tables at a fixed rate. Publishes are scheduled on a
+ * fixed grid of the monotonic clock, so a late publish never moves the ones
+ * after it and the replay does not drift. The values published are the ones of
+ * the scheduled time, not of the time the publish ran.
+ * 
+ * Network tables will not send more than one flush every 10 ms, so above 100
+ * Hz the entries are still set at the full rate but some updates are combined
+ * on the wire.
+ * 
+ * @author Caleb Heydon
+ */
+public class TargetReplay {
+	public static final double DEFAULT_RATE = 100;
+	public static final double MAX_RATE = 1000;
+
+	// The end of each wait yields instead of parking, parking wakes up late
+	private static final long SPIN_TIME = 200000;
+	private static final long REPORT_INTERVAL = 1000000000;
+
+	private TargetTimeline timeline;
+	private CoalescingPublisher publisher;
+
+	private double rate;
+	private double timeScale;
+	private boolean loop;
+
+	private volatile boolean wantsExit;
+	private ReplayStats totalStats;
+
+	public ReplayStats getTotalStats() {
+		return totalStats;
+	}
+
+	/**
+	 * Signals the replay to stop
+	 */
+	public void stop() {
+		wantsExit = true;
+	}
+
+	/**
+	 * Waits for a time of System.nanoTime()
+	 * 
+	 * @param deadline
+	 */
+	private static void waitUntil(long deadline) {
+		while (true) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return;
+			}
+
+			if (remaining > SPIN_TIME) {
+				LockSupport.parkNanos(remaining - SPIN_TIME);
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Publishes the target at a time of the timeline
+	 * 
+	 * @param keyframe The keyframe from TargetTimeline.find()
+	 * @param time
+	 */
+	private void publish(int keyframe, double time) {
+		publisher.set("tx", timeline.getX(keyframe, time));
+		publisher.set("ty", timeline.getY(keyframe, time));
+		publisher.set("ta", timeline.getArea(keyframe, time));
+		publisher.set("tv", timeline.isVisible(keyframe) ? 1 : 0);
+		publisher.flush();
+	}
+
+	/**
+	 * Replays the timeline until it ends, the duration is over or stop() is
+	 * called. The rate and jitter are printed every second.
+	 * 
+	 * @param duration The number of seconds to run, or 0 to run until the timeline
+	 *                 ends
+	 */
+	public void run(double duration) {
+		long period = Math.round(1e9 / rate);
+		long limit = (duration > 0) ? Math.round(duration * 1e9) : Long.MAX_VALUE;
+		double timelineDuration = timeline.getDuration();
+
+		ReplayStats stats = new ReplayStats();
+		totalStats.reset();
+
+		long start = System.nanoTime();
+		long nextReport = start + REPORT_INTERVAL;
+		long tick = 0;
+		int keyframe = 0;
+
+		while (!wantsExit) {
+			long offset = tick * period;
+			if (offset >= limit) {
+				break;
+			}
+
+			long deadline = start + offset;
+			waitUntil(deadline);
+			long now = System.nanoTime();
+
+			double time = offset / 1e9 * timeScale;
+			if (time > timelineDuration) {
+				if (!loop) {
+					break;
+				}
+
+				time = (timelineDuration > 0) ? time % timelineDuration : 0;
+			}
+
+			keyframe = timeline.find(time, keyframe);
+			publish(keyframe, time);
+			stats.add(now, now - deadline);
+			tick++;
+
+			// Skip the ticks that are already over instead of publishing them in a burst
+			long current = (System.nanoTime() - start) / period;
+			if (current > tick) {
+				stats.addMissed(current - tick);
+				tick = current;
+			}
+
+			if (now >= nextReport) {
+				System.out.println(stats);
+				totalStats.add(stats);
+				stats.reset();
+				nextReport += REPORT_INTERVAL;
+			}
+		}
+
+		totalStats.add(stats);
+	}
+
+	/**
+	 * Creates a replay
+	 * 
+	 * @param timeline
+	 * @param publisher The publisher for the limelight table, flushed by the replay
+	 * @param rate      Publishes per second
+	 * @param timeScale How fast the timeline is played, 2 plays it twice as fast
+	 * @param loop      True to start over at the end of the timeline
+	 */
+	public TargetReplay(TargetTimeline timeline, CoalescingPublisher publisher, double rate, double timeScale,
+			boolean loop) {
+		if (rate <= 0 || rate > MAX_RATE) {
+			throw new IllegalArgumentException("The rate must be between 0 and " + MAX_RATE + " Hz");
+		}
+
+		if (timeScale <= 0) {
+			throw new IllegalArgumentException("The time scale must be positive");
+		}
+
+		this.timeline = timeline;
+		this.publisher = publisher;
+		this.rate = rate;
+		this.timeScale = timeScale;
+		this.loop = loop;
+
+		totalStats = new ReplayStats();
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: TargetReplay <timeline> [--rate hz] [--scale factor] [--loop] [--duration seconds]");
+		System.err.println("                    [--robot address | --serve] [--save timeline]");
+		System.err.println("The timeline is a csv file with time,tx,ty,ta,tv or a binary timeline.");
+		System.err.println("--save writes the timeline in the binary format and exits.");
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			printUsage();
+			System.exit(-1);
+		}
+
+		double rate = DEFAULT_RATE;
+		double timeScale = 1;
+		double duration = 0;
+		boolean loop = false;
+		boolean serve = false;
+		String robot = null;
+		String save = null;
+
+		try {
+			for (int i = 1; i < args.length; i++) {
+				switch (args[i]) {
+				case "--rate":
+					rate = Double.parseDouble(args[++i]);
+					break;
+				case "--scale":
+					timeScale = Double.parseDouble(args[++i]);
+					break;
+				case "--duration":
+					duration = Double.parseDouble(args[++i]);
+					break;
+				case "--loop":
+					loop = true;
+					break;
+				case "--robot":
+					robot = args[++i];
+					break;
+				case "--serve":
+					serve = true;
+					break;
+				case "--save":
+					save = args[++i];
+					break;
+				default:
+					System.err.println("Unknown option: " + args[i]);
+					printUsage();
+					System.exit(-1);
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			printUsage();
+			System.exit(-1);
+		}
+
+		TargetTimeline timeline = TargetTimeline.load(new File(args[0]));
+		System.out.println("Loaded " + timeline.size() + " keyframes, " + timeline.getDuration() + " s");
+
+		if (save != null) {
+			timeline.save(new File(save));
+			System.out.println("Wrote " + save);
+			return;
+		}
+
+		NetworkTableInstance instance;
+		if (serve) {
+			// Lets robot code running on this computer connect to the replay
+			instance = NetworkTableInstance.getDefault();
+			instance.startServer();
+		} else {
+			instance = new NetworkManager(robot).getNT();
+		}
+
+		CoalescingPublisher publisher = new CoalescingPublisher(instance, instance.getTable("limelight"));
+		TargetReplay replay = new TargetReplay(timeline, publisher, rate, timeScale, loop);
+
+		// Print the totals when stopped with Ctrl+C
+		Thread replayThread = Thread.currentThread();
+		replayThread.setPriority(Thread.MAX_PRIORITY);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			replay.stop();
+			try {
+				replayThread.join(1000);
+			} catch (InterruptedException e) {
+
+			}
+		}));
+
+		replay.run(duration);
+		System.out.println("Total: " + replay.getTotalStats());
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class is a list of target keyframes to replay. Each keyframe has a time
+ * in seconds and the tx, ty, ta and tv values the limelight would publish.
+ * Values between keyframes are interpolated, except tv which keeps the value of
+ * the last keyframe.
+ * 
+ * A timeline is read from a csv file with the columns time,tx,ty,ta,tv or from
+ * the binary format written by save().
+ * 
+ * @author Caleb Heydon
+ */
+public class TargetTimeline {
+	// "TGT1" at the start of binary timelines
+	private static final int MAGIC = 0x54475431;
+
+	private int size;
+	private double[] times;
+	private double[] tx;
+	private double[] ty;
+	private double[] ta;
+	private boolean[] tv;
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the time of the last keyframe
+	 * 
+	 * @return
+	 */
+	public double getDuration() {
+		return times[size - 1];
+	}
+
+	/**
+	 * Returns the keyframe that applies at a time, the last one at or before it
+	 * 
+	 * @param time
+	 * @param hint The index returned for an earlier time, or 0. Times only go
+	 *             forward while replaying so the search starts there.
+	 * @return
+	 */
+	public int find(double time, int hint) {
+		int index = (hint < 0 || hint >= size || times[hint] > time) ? 0 : hint;
+
+		while (index + 1 < size && times[index + 1] <= time) {
+			index++;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Interpolates a column between a keyframe and the next
+	 * 
+	 * @param column
+	 * @param index  The keyframe from find()
+	 * @param time
+	 * @return
+	 */
+	private double interpolate(double[] column, int index, double time) {
+		if (index + 1 >= size || time <= times[index]) {
+			return column[index];
+		}
+
+		double t = (time - times[index]) / (times[index + 1] - times[index]);
+		return column[index] + t * (column[index + 1] - column[index]);
+	}
+
+	public double getX(int index, double time) {
+		return interpolate(tx, index, time);
+	}
+
+	public double getY(int index, double time) {
+		return interpolate(ty, index, time);
+	}
+
+	public double getArea(int index, double time) {
+		return interpolate(ta, index, time);
+	}
+
+	public boolean isVisible(int index) {
+		return tv[index];
+	}
+
+	/**
+	 * Adds a keyframe after the last one
+	 * 
+	 * @param time
+	 * @param x
+	 * @param y
+	 * @param area
+	 * @param visible
+	 */
+	public void add(double time, double x, double y, double area, boolean visible) {
+		if (size > 0 && time < times[size - 1]) {
+			throw new IllegalArgumentException("Keyframe at " + time + " is before the last one");
+		}
+
+		if (size == times.length) {
+			int capacity = Math.max(16, size * 2);
+			times = Arrays.copyOf(times, capacity);
+			tx = Arrays.copyOf(tx, capacity);
+			ty = Arrays.copyOf(ty, capacity);
+			ta = Arrays.copyOf(ta, capacity);
+			tv = Arrays.copyOf(tv, capacity);
+		}
+
+		times[size] = time;
+		tx[size] = x;
+		ty[size] = y;
+		ta[size] = area;
+		tv[size] = visible;
+		size++;
+	}
+
+	/**
+	 * Reads a csv timeline. A first row that is not numbers is taken as the header
+	 * and lines starting with # are skipped.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static TargetTimeline readCSV(File file) throws IOException {
+		TargetTimeline timeline = new TargetTimeline();
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			int lineNumber = 0;
+			boolean firstRow = true;
+
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				boolean header = firstRow;
+				firstRow = false;
+
+				String[] columns = line.split(",");
+				if (columns.length < 5) {
+					throw new IOException(file + ":" + lineNumber + ": expected time,tx,ty,ta,tv");
+				}
+
+				try {
+					double tv = Double.parseDouble(columns[4].trim());
+					timeline.add(Double.parseDouble(columns[0].trim()), Double.parseDouble(columns[1].trim()),
+							Double.parseDouble(columns[2].trim()), Double.parseDouble(columns[3].trim()), tv != 0);
+				} catch (NumberFormatException e) {
+					if (header) {
+						continue;
+					}
+
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				} catch (IllegalArgumentException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+
+		return timeline;
+	}
+
+	/**
+	 * Reads a binary timeline
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static TargetTimeline readBinary(File file) throws IOException {
+		TargetTimeline timeline = new TargetTimeline();
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC) {
+				throw new IOException(file + " is not a target timeline");
+			}
+
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				double time = input.readDouble();
+				double x = input.readDouble();
+				double y = input.readDouble();
+				double area = input.readDouble();
+				boolean visible = input.readBoolean();
+
+				try {
+					timeline.add(time, x, y, area, visible);
+				} catch (IllegalArgumentException e) {
+					throw new IOException(file + ": " + e.getMessage());
+				}
+			}
+		}
+
+		return timeline;
+	}
+
+	/**
+	 * Reads a timeline, files ending in .csv are read as csv and everything else
+	 * as binary
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static TargetTimeline load(File file) throws IOException {
+		TargetTimeline timeline;
+		if (file.getName().toLowerCase().endsWith(".csv")) {
+			timeline = readCSV(file);
+		} else {
+			timeline = readBinary(file);
+		}
+
+		if (timeline.size == 0) {
+			throw new IOException(file + " has no keyframes");
+		}
+
+		return timeline;
+	}
+
+	/**
+	 * Writes the timeline in the binary format
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(size);
+
+			for (int i = 0; i < size; i++) {
+				output.writeDouble(times[i]);
+				output.writeDouble(tx[i]);
+				output.writeDouble(ty[i]);
+				output.writeDouble(ta[i]);
+				output.writeBoolean(tv[i]);
+			}
+		}
+	}
+
+	public TargetTimeline() {
+		times = new double[0];
+		tx = new double[0];
+		ty = new double[0];
+		ta = new double[0];
+		tv = new boolean[0];
+	}
+}
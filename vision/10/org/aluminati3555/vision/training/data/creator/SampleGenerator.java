@@ -0,0 +1,154 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.training.data.creator;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.SplittableRandom;
+
+/**
+ * This class generates training samples straight into a byte array. It produces
+ * the same pixels as TrainingDataCreator.getTrainingImage but reuses one
+ * drawing surface and works on the pixel array directly, so no images are
+ * created per sample. Each thread needs its own generator.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class SampleGenerator {
+	// The creator used for the random shapes
+	private TrainingDataCreator trainingDataCreator;
+
+	// The reused drawing surface
+	private BufferedImage image;
+	private Graphics graphics;
+	private int[] pixels;
+
+	// The size of the original and output images
+	private int originalWidth;
+	private int originalHeight;
+	private int width;
+	private int height;
+
+	/**
+	 * This method returns the number of bytes in one sample.
+	 * 
+	 * @return The sample size.
+	 */
+	public int getSampleSize() {
+		return width * height;
+	}
+
+	/**
+	 * This method generates one sample. Each byte is the green value of one pixel
+	 * of the 16x16 training image.
+	 * 
+	 * @param side      The side the sample is for.
+	 * @param generator The random number generator.
+	 * @param output    The array to write to.
+	 * @param offset    The position of the sample in the array.
+	 */
+	public void generate(Side side, SplittableRandom generator, byte[] output, int offset) {
+		Polygon shape = trainingDataCreator.getTrainingShape(side, generator);
+
+		// Clear and draw the shape
+		graphics.setColor(Color.BLACK);
+		graphics.fillRect(0, 0, originalWidth, originalHeight);
+		graphics.setColor(Color.GREEN);
+		graphics.fillPolygon(shape);
+
+		// Add static
+		for (int i = 0; i < pixels.length; i++) {
+			if (generator.nextDouble() >= 0.98) {
+				pixels[i] = 0;
+			}
+		}
+
+		// Find the crop bounds the same way as cropImage
+		int minY = originalHeight;
+		int maxY = 0;
+
+		for (int y = 0; y < originalHeight; y++) {
+			int row = y * originalWidth;
+
+			for (int x = 0; x < originalWidth; x++) {
+				if (((pixels[row + x] >> 8) & 0xFF) >= 255) {
+					if (y < minY) {
+						minY = y;
+					} else if (y > maxY) {
+						maxY = y;
+					}
+				}
+			}
+		}
+
+		maxY += 1;
+
+		int minX = minY;
+		int cropSize = maxY - minY;
+		if (cropSize <= 0) {
+			throw new IllegalStateException("The generated shape has no height");
+		}
+
+		// Scale by picking the center pixel of each cell like SCALE_FAST
+		for (int y = 0; y < height; y++) {
+			int row = (minY + (2 * y + 1) * cropSize / (2 * height)) * originalWidth;
+
+			for (int x = 0; x < width; x++) {
+				int column = minX + (2 * x + 1) * cropSize / (2 * width);
+
+				output[offset++] = (byte) (pixels[row + column] >> 8);
+			}
+		}
+	}
+
+	/**
+	 * This method frees the drawing surface.
+	 */
+	public void dispose() {
+		graphics.dispose();
+	}
+
+	/**
+	 * This method converts a sample back into an image for previews.
+	 * 
+	 * @param sample The samples.
+	 * @param offset The position of the sample.
+	 * @return The image.
+	 */
+	public BufferedImage toImage(byte[] sample, int offset) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, (sample[offset++] & 0xFF) << 8);
+			}
+		}
+
+		return image;
+	}
+
+	/**
+	 * This constructor creates the drawing surface.
+	 * 
+	 * @param trainingDataCreator The creator used for the random shapes.
+	 */
+	public SampleGenerator(TrainingDataCreator trainingDataCreator) {
+		this.trainingDataCreator = trainingDataCreator;
+
+		originalWidth = (int) TrainingDataCreator.ORIGINAL_WIDTH;
+		originalHeight = (int) TrainingDataCreator.ORIGINAL_HEIGHT;
+		width = (int) TrainingDataCreator.WIDTH;
+		height = (int) TrainingDataCreator.HEIGHT;
+
+		image = new BufferedImage(originalWidth, originalHeight, BufferedImage.TYPE_INT_RGB);
+		graphics = image.getGraphics();
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+}
@@ -10,9 +10,18 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Polygon;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
@@ -56,6 +65,20 @@ public class TrainingDataCreator {
 	// The maximum width variation in either direction of the reflective tape.
 	public static final double MAX_WIDTH_VARIATION = 5;
 
+	// The header of a shard file
+	public static final int SHARD_MAGIC = 0x41565344;
+	public static final int SHARD_VERSION = 1;
+
+	// The number of samples in each shard
+	public static final int SHARD_SIZE = 65536;
+
+	// The labels stored in the shards
+	public static final byte LEFT_LABEL = 0;
+	public static final byte RIGHT_LABEL = 1;
+
+	// The random number generator for the methods without one
+	private SplittableRandom generator;
+
 	/**
 	 * This method returns a random angle for the reflective tape in the training
 	 * data. It will return a value of NOMINAL_ANGLE +/- MAX_ANGLE_VARIATION.
@@ -63,8 +86,18 @@ public class TrainingDataCreator {
 	 * @return The angle for the reflective tape.
 	 */
 	public double getRandomTrainingAngle() {
+		return getRandomTrainingAngle(generator);
+	}
+
+	/**
+	 * This method returns a random angle using a random number generator.
+	 * 
+	 * @param generator The random number generator.
+	 * @return The angle.
+	 */
+	public double getRandomTrainingAngle(SplittableRandom generator) {
 		// Get a random number between -1 and 1.
-		double random = 2 * Math.random() - 0.5;
+		double random = 2 * generator.nextDouble() - 0.5;
 
 		// Find the difference in the angle
 		double angleDifference = MAX_ANGLE_VARIATION * random;
@@ -80,8 +113,18 @@ public class TrainingDataCreator {
 	 * @return The length of the reflective tape.
 	 */
 	public double getRandomTrainingLength() {
+		return getRandomTrainingLength(generator);
+	}
+
+	/**
+	 * This method returns a random length using a random number generator.
+	 * 
+	 * @param generator The random number generator.
+	 * @return The length.
+	 */
+	public double getRandomTrainingLength(SplittableRandom generator) {
 		// Get a random number between -1 and 1.
-		double random = 2 * Math.random() - 0.5;
+		double random = 2 * generator.nextDouble() - 0.5;
 
 		// Find the difference in the length
 		double lengthDifference = MAX_LENGTH_VARIATION * random;
@@ -97,8 +140,18 @@ public class TrainingDataCreator {
 	 * @return The width of the reflective tape.
 	 */
 	public double getRandomTrainingWidth() {
+		return getRandomTrainingWidth(generator);
+	}
+
+	/**
+	 * This method returns a random width using a random number generator.
+	 * 
+	 * @param generator The random number generator.
+	 * @return The width.
+	 */
+	public double getRandomTrainingWidth(SplittableRandom generator) {
 		// Get a random number between -1 and 1.
-		double random = 2 * Math.random() - 0.5;
+		double random = 2 * generator.nextDouble() - 0.5;
 
 		// Find the difference in the width
 		double widthDifference = MAX_WIDTH_VARIATION * random;
@@ -138,12 +191,24 @@ public class TrainingDataCreator {
 	 * @return The strip of reflective tape.
 	 */
 	public ReflectiveTapeStrip getNewReflectiveTapeStrip(double angle) {
+		return getNewReflectiveTapeStrip(angle, generator);
+	}
+
+	/**
+	 * This method generates a new strip of reflective tape using a random number
+	 * generator.
+	 * 
+	 * @param angle     The angle of the reflective tape.
+	 * @param generator The random number generator.
+	 * @return The strip of reflective tape.
+	 */
+	public ReflectiveTapeStrip getNewReflectiveTapeStrip(double angle, SplittableRandom generator) {
 		// Adjust angle
 		angle = 90 - angle;
 
 		// Get random values
-		double length = getRandomTrainingLength();
-		double width = getRandomTrainingWidth();
+		double length = getRandomTrainingLength(generator);
+		double width = getRandomTrainingWidth(generator);
 
 		double centerX = ORIGINAL_WIDTH / 2;
 		double centerY = ORIGINAL_HEIGHT / 2;
@@ -193,12 +258,22 @@ public class TrainingDataCreator {
 	 * @param image The image.
 	 */
 	public void addNoise(BufferedImage image) {
+		addNoise(image, generator);
+	}
+
+	/**
+	 * This method adds static to the image using a random number generator.
+	 * 
+	 * @param image     The image.
+	 * @param generator The random number generator.
+	 */
+	public void addNoise(BufferedImage image, SplittableRandom generator) {
 		// Generate static in the image by going through every pixel
 		int[] black = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
 
 		for (int y = 0; y < image.getRaster().getHeight(); y++) {
 			for (int x = 0; x < image.getRaster().getWidth(); x++) {
-				double random = Math.random();
+				double random = generator.nextDouble();
 
 				if (random >= 0.98) {
 					image.getRaster().setPixel(x, y, black);
@@ -278,15 +353,27 @@ public class TrainingDataCreator {
 	 * @return The training image.
 	 */
 	public BufferedImage getTrainingImage(Side side) {
+		return getTrainingImage(side, generator);
+	}
+
+	/**
+	 * This method randomly generates the polygon of a strip of reflective tape in
+	 * the original image.
+	 * 
+	 * @param side      The side the strip is for.
+	 * @param generator The random number generator.
+	 * @return The polygon.
+	 */
+	public Polygon getTrainingShape(Side side, SplittableRandom generator) {
 		// Generate angle
-		double angle = getRandomTrainingAngle();
+		double angle = getRandomTrainingAngle(generator);
 
 		if (side == Side.RIGHT) {
 			angle = -angle;
 		}
 
 		// Generate reflective tape strip
-		ReflectiveTapeStrip reflectiveTapeStrip = getNewReflectiveTapeStrip(angle);
+		ReflectiveTapeStrip reflectiveTapeStrip = getNewReflectiveTapeStrip(angle, generator);
 
 		// Create polygon
 		Polygon shape = new Polygon();
@@ -298,6 +385,20 @@ public class TrainingDataCreator {
 			shape.addPoint((int) Math.round(x), (int) Math.round(y));
 		}
 
+		return shape;
+	}
+
+	/**
+	 * This method generates a new training image using a random number generator.
+	 * 
+	 * @param side      The side the image is for.
+	 * @param generator The random number generator.
+	 * @return The training image.
+	 */
+	public BufferedImage getTrainingImage(Side side, SplittableRandom generator) {
+		// Generate the shape
+		Polygon shape = getTrainingShape(side, generator);
+
 		// Generate a new image
 		BufferedImage image = getNewBlankImage((int) ORIGINAL_WIDTH, (int) ORIGINAL_HEIGHT);
 
@@ -310,7 +411,7 @@ public class TrainingDataCreator {
 		graphics.dispose();
 
 		// Add static
-		addNoise(image);
+		addNoise(image, generator);
 
 		// Crop image
 		image = cropImage(image);
@@ -367,17 +468,207 @@ public class TrainingDataCreator {
 		}
 	}
 
+	/**
+	 * This method generates a set of training samples in parallel and writes them
+	 * as binary shard files instead of images. Every shard has its own random
+	 * stream split from the seed, so the output only depends on the seed and not
+	 * on the number of threads.
+	 * 
+	 * Each shard starts with a header (magic, version, sample count, width,
+	 * height, shard index and seed) followed by every sample as one label byte
+	 * (0 for left, 1 for right) and width * height green values. Left and right
+	 * samples alternate. VisionTraining imports the shards in the directory it is
+	 * given along with any images, so shards from an earlier run are deleted
+	 * first.
+	 * 
+	 * @param amount          The number of samples of each side to be generated.
+	 * @param outputDirectory The directory that the shards will be put in.
+	 * @param seed            The seed for the random numbers.
+	 * @param previewCount    The number of samples to also write as images.
+	 * @param showOutput      If progress is printed.
+	 * @throws IOException
+	 */
+	public void generateTrainingShards(int amount, String outputDirectory, long seed, int previewCount,
+			boolean showOutput) throws IOException {
+		// Correct outputDirectory
+		if (!outputDirectory.endsWith("/") && !outputDirectory.endsWith("\\")) {
+			outputDirectory += "/";
+		}
+
+		new File(outputDirectory).mkdirs();
+
+		// VisionTraining imports every shard in the directory, so old ones must go
+		deleteShards(outputDirectory);
+
+		long sampleCount = 2L * amount;
+		int shardCount = (int) ((sampleCount + SHARD_SIZE - 1) / SHARD_SIZE);
+
+		// Split the streams in order so they do not depend on the scheduling
+		SplittableRandom root = new SplittableRandom(seed);
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(Math.max(1, Math.min(shardCount, Runtime.getRuntime().availableProcessors())));
+
+		ArrayList<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < shardCount; i++) {
+			int count = (int) Math.min(SHARD_SIZE, sampleCount - (long) i * SHARD_SIZE);
+			String path = outputDirectory + String.format("shard_%05d.bin", i);
+
+			futures.add(executorService.submit(new ShardTask(path, i, count, seed, root.split())));
+		}
+
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				String path = futures.get(i).get();
+
+				if (showOutput) {
+					System.out.println("Generated " + path);
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while generating shards", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+
+			throw new IOException("Unable to generate shards", e.getCause());
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		if (previewCount > 0) {
+			writePreview(outputDirectory, seed, previewCount);
+		}
+	}
+
+	/**
+	 * This method deletes the shards left in a directory by an earlier run.
+	 * 
+	 * @param outputDirectory The directory.
+	 * @throws IOException
+	 */
+	private static void deleteShards(String outputDirectory) throws IOException {
+		File[] files = new File(outputDirectory).listFiles();
+		if (files == null) {
+			return;
+		}
+
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+
+			if (files[i].isFile() && name.startsWith("shard_") && name.endsWith(".bin") && !files[i].delete()) {
+				throw new IOException("Unable to delete the old shard " + files[i]);
+			}
+		}
+	}
+
+	/**
+	 * This method writes the first samples of the first shard as images so the
+	 * data can be checked by eye. The samples are generated again from the same
+	 * stream instead of reading the shard.
+	 * 
+	 * @param outputDirectory The directory with the shards.
+	 * @param seed            The seed the shards were generated with.
+	 * @param previewCount    The number of samples.
+	 * @throws IOException
+	 */
+	private void writePreview(String outputDirectory, long seed, int previewCount) throws IOException {
+		String previewDirectory = outputDirectory + "preview/";
+		new File(previewDirectory).mkdirs();
+
+		SplittableRandom random = new SplittableRandom(seed).split();
+		SampleGenerator sampleGenerator = new SampleGenerator(this);
+		byte[] sample = new byte[sampleGenerator.getSampleSize()];
+
+		for (int i = 0; i < previewCount; i++) {
+			Side side = (i % 2 == 0) ? Side.LEFT : Side.RIGHT;
+			sampleGenerator.generate(side, random, sample, 0);
+
+			String name = ((side == Side.LEFT) ? "left_" : "right_") + i + ".png";
+			ImageIO.write(sampleGenerator.toImage(sample, 0), "png", new File(previewDirectory + name));
+		}
+
+		sampleGenerator.dispose();
+	}
+
+	/**
+	 * This constructor creates a creator with an unseeded random number generator.
+	 */
+	public TrainingDataCreator() {
+		generator = new SplittableRandom();
+	}
+
 	public static void main(String[] args) throws IOException {
 		// Get arguments
 		if (args.length < 2) {
-			System.err.println("Usage: java -jar <jarname> <output_directory> <amount>");
+			System.err.println("Usage: java -jar <jarname> <output_directory> <amount> [seed] [preview_count] [png]");
 			System.exit(1);
 		}
 
 		String outputDirectory = args[0];
 		int amount = Integer.parseInt(args[1]);
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : 3555;
+		int previewCount = (args.length > 3) ? Integer.parseInt(args[3]) : 16;
+		boolean png = args.length > 4 && args[4].equalsIgnoreCase("png");
 
 		TrainingDataCreator trainingDataCreator = new TrainingDataCreator();
-		trainingDataCreator.generateTrainingData(amount, outputDirectory, true);
+		if (png) {
+			// The old layout of one image per sample
+			trainingDataCreator.generateTrainingData(amount, outputDirectory, true);
+		} else {
+			trainingDataCreator.generateTrainingShards(amount, outputDirectory, seed, previewCount, true);
+		}
+	}
+
+	/**
+	 * This task generates and writes one shard.
+	 */
+	private class ShardTask implements Callable<String> {
+		private String path;
+		private int shardIndex;
+		private int sampleCount;
+		private long seed;
+		private SplittableRandom random;
+
+		@Override
+		public String call() throws IOException {
+			SampleGenerator sampleGenerator = new SampleGenerator(TrainingDataCreator.this);
+			int sampleSize = sampleGenerator.getSampleSize();
+			byte[] samples = new byte[sampleCount * (sampleSize + 1)];
+
+			// Generate every sample, left and right alternate
+			int offset = 0;
+			for (int i = 0; i < sampleCount; i++) {
+				Side side = (i % 2 == 0) ? Side.LEFT : Side.RIGHT;
+
+				samples[offset] = (side == Side.LEFT) ? LEFT_LABEL : RIGHT_LABEL;
+				sampleGenerator.generate(side, random, samples, offset + 1);
+				offset += sampleSize + 1;
+			}
+
+			sampleGenerator.dispose();
+
+			try (DataOutputStream outputStream = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(path)))) {
+				outputStream.writeInt(SHARD_MAGIC);
+				outputStream.writeInt(SHARD_VERSION);
+				outputStream.writeInt(sampleCount);
+				outputStream.writeInt((int) WIDTH);
+				outputStream.writeInt((int) HEIGHT);
+				outputStream.writeInt(shardIndex);
+				outputStream.writeLong(seed);
+				outputStream.write(samples);
+			}
+
+			return path;
+		}
+
+		public ShardTask(String path, int shardIndex, int sampleCount, long seed, SplittableRandom random) {
+			this.path = path;
+			this.shardIndex = shardIndex;
+			this.sampleCount = sampleCount;
+			this.seed = seed;
+			this.random = random;
+		}
 	}
 }
\ No newline at end of file
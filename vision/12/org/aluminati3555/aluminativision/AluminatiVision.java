@@ -50,6 +50,8 @@ public class AluminatiVision {
 	private static final String CONFIG_FILE = "/etc/server-config.dat";
 	private static final String HOSTNAME_FILE = "/etc/hostname";
 	private static final String WEB_ROOT = "/home/pi/AluminatiVision/web";
+	private static final String DEBUG_PROPERTY = "aluminativision.debug";
+	private static final String WORKERS_PROPERTY = "aluminativision.workers";
 
 	static {
 		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
@@ -103,6 +105,9 @@ public class AluminatiVision {
 			if (camera.isOpened()) {
 				numberOfCameras++;
 			}
+
+			// Free the device and its native buffers before the real camera opens it
+			camera.release();
 		}
 		config.numberOfCameras = numberOfCameras;
 		if (numberOfCameras < 1) {
@@ -197,13 +202,18 @@ public class AluminatiVision {
 		VisionLoop loop0 = new VisionLoop(camera0, new DefaultPipeline(), null);
 		VisionLoop loop1 = null;
 
+		// Frame workers per camera (1 processes every frame on the loop thread)
+		int workerCount = Integer.getInteger(WORKERS_PROPERTY, 1);
+
 		loop0.setName("camera0");
 		loop0.setPriority(Thread.MAX_PRIORITY);
+		loop0.setWorkerCount(workerCount);
 
 		if (HardwareConfig.getConfig().numberOfCameras > 1) {
 			loop1 = new VisionLoop(camera1, new DefaultPipeline(), null);
 			loop1.setName("camera1");
 			loop1.setPriority(Thread.MAX_PRIORITY);
+			loop1.setWorkerCount(workerCount);
 		}
 
 		VisionLoopManager visionLoopManager = new VisionLoopManager();
@@ -277,6 +287,9 @@ public class AluminatiVision {
 		// Print the banner
 		printBanner();
 
+		// Count outstanding native memory per allocation site if requested
+		MatArena.setDebug(Boolean.getBoolean(DEBUG_PROPERTY));
+
 		// Load the configuration file
 		loadConfig();
 
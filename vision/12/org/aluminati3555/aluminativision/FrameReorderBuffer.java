@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.aluminativision;
+
+import java.util.ArrayDeque;
+
+/**
+ * This class puts frames finished by several workers back into capture order.
+ * When too many newer frames are waiting on a missing one, the buffer stops
+ * waiting and the missing frame is dropped when it finally arrives.
+ * 
+ * The sink is called outside the lock so slow output does not stall workers
+ * that are finishing frames. Frames in order are queued and one worker at a
+ * time delivers the queue, which keeps them in order.
+ * 
+ * @author Caleb Heydon
+ */
+public class FrameReorderBuffer {
+	// What the thread that completed a frame does next
+	private static final int DROP = 0;
+	private static final int QUEUED = 1;
+	private static final int DELIVER = 2;
+
+	private FrameSlot[] pending;
+	private int pendingCount;
+	private int maxPending;
+	private long nextSequence;
+	private IFrameSink sink;
+
+	// Frames in order that have not been handed to the sink yet
+	private ArrayDeque<FrameSlot> ready;
+	private boolean delivering;
+
+	private long delivered;
+	private long dropped;
+
+	/**
+	 * Returns the number of frames delivered in order
+	 * 
+	 * @return
+	 */
+	public synchronized long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * Returns the number of frames dropped because a newer frame was already
+	 * delivered
+	 * 
+	 * @return
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Accepts a finished frame and delivers every frame that is now in order
+	 * 
+	 * @param slot
+	 */
+	public void complete(FrameSlot slot) {
+		int action = accept(slot);
+
+		if (action == DROP) {
+			// A newer frame has already been delivered
+			sink.drop(slot);
+			return;
+		} else if (action == QUEUED) {
+			return;
+		}
+
+		boolean finished = false;
+		try {
+			while (true) {
+				FrameSlot next;
+				synchronized (this) {
+					next = ready.poll();
+					if (next == null) {
+						delivering = false;
+						finished = true;
+						return;
+					}
+				}
+
+				sink.deliver(next);
+			}
+		} finally {
+			if (!finished) {
+				// Let the next worker deliver the rest if the sink threw
+				synchronized (this) {
+					delivering = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a finished frame and queues every frame that is now in order. Returns
+	 * DELIVER if the caller should deliver the queue.
+	 * 
+	 * @param slot
+	 * @return
+	 */
+	private synchronized int accept(FrameSlot slot) {
+		if (slot.sequence < nextSequence) {
+			dropped++;
+			return DROP;
+		}
+
+		pending[getIndex(slot.sequence)] = slot;
+		pendingCount++;
+
+		if (pendingCount > maxPending && pending[getIndex(nextSequence)] == null) {
+			// Stop waiting for the missing frames and skip to the oldest finished one
+			long oldest = Long.MAX_VALUE;
+			for (int i = 0; i < pending.length; i++) {
+				if (pending[i] != null && pending[i].sequence < oldest) {
+					oldest = pending[i].sequence;
+				}
+			}
+
+			nextSequence = oldest;
+		}
+
+		while (pendingCount > 0) {
+			int index = getIndex(nextSequence);
+			FrameSlot next = pending[index];
+			if (next == null) {
+				break;
+			}
+
+			pending[index] = null;
+			pendingCount--;
+			nextSequence++;
+
+			delivered++;
+			ready.add(next);
+		}
+
+		// Only one thread delivers at a time, the others leave their frames queued
+		if (delivering || ready.isEmpty()) {
+			return QUEUED;
+		}
+
+		delivering = true;
+		return DELIVER;
+	}
+
+	/**
+	 * Releases the slots still held by the buffer. This must only be called once
+	 * no more frames will be completed.
+	 */
+	public synchronized void release() {
+		for (int i = 0; i < pending.length; i++) {
+			if (pending[i] != null) {
+				pending[i].release();
+				pending[i] = null;
+			}
+		}
+		pendingCount = 0;
+
+		for (FrameSlot slot : ready) {
+			slot.release();
+		}
+		ready.clear();
+	}
+
+	/**
+	 * Returns the index for a sequence number
+	 * 
+	 * @param sequence
+	 * @return
+	 */
+	private int getIndex(long sequence) {
+		return (int) (sequence % pending.length);
+	}
+
+	/**
+	 * Creates a reorder buffer. The slot count must be at least the number of
+	 * frames that can be in flight at once.
+	 * 
+	 * @param slotCount
+	 * @param maxPending
+	 * @param sink
+	 */
+	public FrameReorderBuffer(int slotCount, int maxPending, IFrameSink sink) {
+		this.pending = new FrameSlot[slotCount];
+		this.pendingCount = 0;
+		this.maxPending = maxPending;
+		this.nextSequence = 0;
+		this.sink = sink;
+		this.ready = new ArrayDeque<FrameSlot>(slotCount);
+		this.delivering = false;
+	}
+
+	/**
+	 * This interface receives frames from the reorder buffer
+	 */
+	public interface IFrameSink {
+		public void deliver(FrameSlot slot);
+
+		public void drop(FrameSlot slot);
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.aluminativision;
+
+import org.aluminati3555.aluminativision.net.VisionData;
+import org.opencv.core.Mat;
+
+/**
+ * This class carries one captured frame and its results between the capture
+ * thread, the frame workers and the reorder buffer. Slots are allocated once
+ * and reused.
+ * 
+ * @author Caleb Heydon
+ */
+public class FrameSlot {
+	// Capture order of the frame
+	public long sequence;
+	public double fps;
+
+	// Filled by the capture thread
+	public Mat frame;
+	public long captureTime;
+
+	// Filled by a frame worker
+	public boolean valid;
+	public boolean hasStream;
+	public Mat streamFrame;
+	public VisionData data;
+
+	/**
+	 * Releases the native buffers
+	 */
+	public void release() {
+		frame.release();
+		streamFrame.release();
+	}
+
+	public FrameSlot() {
+		frame = new Mat();
+		streamFrame = new Mat();
+		data = new VisionData();
+	}
+}
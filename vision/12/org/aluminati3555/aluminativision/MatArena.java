@@ -0,0 +1,453 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.aluminativision;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * This class hands out reusable native buffers for a single frame. Every mat
+ * acquired or tracked during a frame is recycled (or released) when the frame
+ * ends, so native memory does not depend on the garbage collector. An arena
+ * must only be used by one thread.
+ * 
+ * @author Caleb Heydon
+ */
+public class MatArena {
+	// Free mats that have not been used for this many frames are released
+	private static final int MAX_IDLE_FRAMES = 30;
+
+	// Debug accounting shared by every arena
+	private static volatile boolean debug = false;
+	private static final ConcurrentHashMap<String, AtomicLong> outstandingBytes = new ConcurrentHashMap<String, AtomicLong>();
+	private static final AtomicLong pooledBytes = new AtomicLong();
+	private static final AtomicLong nativeAllocations = new AtomicLong();
+
+	/**
+	 * Enables or disables per allocation site accounting
+	 * 
+	 * @param debug
+	 */
+	public static void setDebug(boolean debug) {
+		MatArena.debug = debug;
+	}
+
+	/**
+	 * Returns true if debug accounting is enabled
+	 * 
+	 * @return
+	 */
+	public static boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Returns the native size of a mat in bytes
+	 * 
+	 * @param mat
+	 * @return
+	 */
+	public static long getBytes(Mat mat) {
+		return mat.total() * mat.elemSize();
+	}
+
+	/**
+	 * Returns a report of the arena metrics
+	 * 
+	 * @return
+	 */
+	public static String getMetrics() {
+		String string = "";
+
+		string += "debug = " + debug + "\n";
+		string += "nativeAllocations = " + nativeAllocations.get() + "\n";
+		string += "pooledBytes = " + pooledBytes.get() + "\n";
+
+		// Sort the sites so the report is stable
+		TreeMap<String, AtomicLong> sites = new TreeMap<String, AtomicLong>(outstandingBytes);
+		for (Map.Entry<String, AtomicLong> site : sites.entrySet()) {
+			string += "outstandingBytes[" + site.getKey() + "] = " + site.getValue().get() + "\n";
+		}
+
+		return string;
+	}
+
+	/**
+	 * Adds bytes to the outstanding count of an allocation site
+	 * 
+	 * @param site
+	 * @param bytes
+	 */
+	private static void account(String site, long bytes) {
+		AtomicLong counter = outstandingBytes.get(site);
+		if (counter == null) {
+			counter = outstandingBytes.computeIfAbsent(site, key -> new AtomicLong());
+		}
+
+		counter.addAndGet(bytes);
+	}
+
+	/**
+	 * Builds the pool key from the shape and type of a mat
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @param type
+	 * @return
+	 */
+	private static long getKey(int rows, int cols, int type) {
+		return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+	}
+
+	private FreeLists freeEntries;
+	private ArrayList<Entry> usedEntries;
+	private ArrayList<Entry> trackedEntries;
+	private ArrayList<Entry> spareEntries;
+
+	private long frame;
+
+	/**
+	 * Returns the number of frames this arena has finished
+	 * 
+	 * @return
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Returns a mat with the requested shape. The mat belongs to the arena and is
+	 * recycled when the frame ends.
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @param type
+	 * @param site
+	 * @return
+	 */
+	public Mat acquire(int rows, int cols, int type, String site) {
+		ArrayList<Entry> list = freeEntries.get(getKey(rows, cols, type));
+
+		Entry entry;
+		if (list != null && list.size() > 0) {
+			entry = list.remove(list.size() - 1);
+			pooledBytes.addAndGet(-entry.bytes);
+		} else {
+			entry = getSpareEntry();
+			entry.mat = new Mat(rows, cols, type);
+			nativeAllocations.incrementAndGet();
+		}
+
+		entry.bytes = getBytes(entry.mat);
+		entry.site = site;
+		entry.accounted = debug;
+		usedEntries.add(entry);
+
+		if (entry.accounted) {
+			account(site, entry.bytes);
+		}
+
+		return entry.mat;
+	}
+
+	/**
+	 * Returns a mat with the same shape and type as another mat
+	 * 
+	 * @param like
+	 * @param site
+	 * @return
+	 */
+	public Mat acquire(Mat like, String site) {
+		return acquire(like.rows(), like.cols(), like.type(), site);
+	}
+
+	/**
+	 * Returns a single channel byte mask with the same shape as another mat
+	 * 
+	 * @param like
+	 * @param site
+	 * @return
+	 */
+	public Mat acquireMask(Mat like, String site) {
+		return acquire(like.rows(), like.cols(), CvType.CV_8UC1, site);
+	}
+
+	/**
+	 * Registers a mat that was allocated elsewhere (such as a contour from
+	 * findContours). It is released when the frame ends.
+	 * 
+	 * @param mat
+	 * @param site
+	 * @return
+	 */
+	public <T extends Mat> T track(T mat, String site) {
+		Entry entry = getSpareEntry();
+		entry.mat = mat;
+		entry.bytes = getBytes(mat);
+		entry.site = site;
+		entry.accounted = debug;
+		trackedEntries.add(entry);
+
+		if (entry.accounted) {
+			account(site, entry.bytes);
+		}
+
+		return mat;
+	}
+
+	/**
+	 * Recycles the mats used during the frame and releases tracked mats
+	 */
+	public void endFrame() {
+		frame++;
+
+		for (int i = 0; i < usedEntries.size(); i++) {
+			Entry entry = usedEntries.get(i);
+
+			if (entry.accounted) {
+				account(entry.site, -entry.bytes);
+			}
+
+			// OpenCV may have reallocated the mat, so key it by its current shape
+			Mat mat = entry.mat;
+			long key = getKey(mat.rows(), mat.cols(), mat.type());
+
+			ArrayList<Entry> list = freeEntries.getOrCreate(key);
+
+			entry.bytes = getBytes(mat);
+			entry.site = null;
+			entry.lastFrame = frame;
+			list.add(entry);
+			pooledBytes.addAndGet(entry.bytes);
+		}
+		usedEntries.clear();
+
+		for (int i = 0; i < trackedEntries.size(); i++) {
+			Entry entry = trackedEntries.get(i);
+
+			if (entry.accounted) {
+				account(entry.site, -entry.bytes);
+			}
+
+			entry.mat.release();
+			recycleEntry(entry);
+		}
+		trackedEntries.clear();
+
+		// Release buffers that are no longer being requested
+		for (int j = 0; j < freeEntries.capacity(); j++) {
+			ArrayList<Entry> list = freeEntries.getList(j);
+			if (list == null) {
+				continue;
+			}
+
+			for (int i = 0; i < list.size(); i++) {
+				Entry entry = list.get(i);
+
+				if (frame - entry.lastFrame > MAX_IDLE_FRAMES) {
+					pooledBytes.addAndGet(-entry.bytes);
+					entry.mat.release();
+					recycleEntry(entry);
+
+					list.remove(i);
+					i--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases every mat owned by the arena
+	 */
+	public void release() {
+		endFrame();
+
+		for (int j = 0; j < freeEntries.capacity(); j++) {
+			ArrayList<Entry> list = freeEntries.getList(j);
+			if (list == null) {
+				continue;
+			}
+
+			for (int i = 0; i < list.size(); i++) {
+				Entry entry = list.get(i);
+
+				pooledBytes.addAndGet(-entry.bytes);
+				entry.mat.release();
+				recycleEntry(entry);
+			}
+			list.clear();
+		}
+	}
+
+	/**
+	 * Returns an unused entry
+	 * 
+	 * @return
+	 */
+	private Entry getSpareEntry() {
+		if (spareEntries.size() > 0) {
+			return spareEntries.remove(spareEntries.size() - 1);
+		}
+
+		return new Entry();
+	}
+
+	/**
+	 * Returns an entry to the spare list
+	 * 
+	 * @param entry
+	 */
+	private void recycleEntry(Entry entry) {
+		entry.mat = null;
+		entry.site = null;
+		entry.bytes = 0;
+		spareEntries.add(entry);
+	}
+
+	public MatArena() {
+		freeEntries = new FreeLists();
+		usedEntries = new ArrayList<Entry>();
+		trackedEntries = new ArrayList<Entry>();
+		spareEntries = new ArrayList<Entry>();
+
+		frame = 0;
+	}
+
+	private static class Entry {
+		private Mat mat;
+		private String site;
+		private long bytes;
+		private long lastFrame;
+		private boolean accounted;
+	}
+
+	/**
+	 * This class maps pool keys to free lists with open addressing on primitive
+	 * keys, so looking up a list does not box the key
+	 */
+	private static class FreeLists {
+		private long[] keys;
+		private ArrayList<Entry>[] lists;
+		private int size;
+
+		/**
+		 * Returns the slot of a key, or the empty slot it would go in
+		 * 
+		 * @param key
+		 * @return
+		 */
+		private int find(long key) {
+			int mask = keys.length - 1;
+			int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+
+			while (lists[slot] != null && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+
+			return slot;
+		}
+
+		/**
+		 * Returns the free list of a key or null
+		 * 
+		 * @param key
+		 * @return
+		 */
+		public ArrayList<Entry> get(long key) {
+			return lists[find(key)];
+		}
+
+		/**
+		 * Returns the free list of a key, creating it if there is none
+		 * 
+		 * @param key
+		 * @return
+		 */
+		public ArrayList<Entry> getOrCreate(long key) {
+			int slot = find(key);
+			if (lists[slot] == null) {
+				if ((size + 1) * 2 > keys.length) {
+					grow();
+					slot = find(key);
+				}
+
+				keys[slot] = key;
+				lists[slot] = new ArrayList<Entry>();
+				size++;
+			}
+
+			return lists[slot];
+		}
+
+		/**
+		 * Returns the number of slots
+		 * 
+		 * @return
+		 */
+		public int capacity() {
+			return lists.length;
+		}
+
+		/**
+		 * Returns the free list in a slot or null
+		 * 
+		 * @param slot
+		 * @return
+		 */
+		public ArrayList<Entry> getList(int slot) {
+			return lists[slot];
+		}
+
+		/**
+		 * Doubles the number of slots
+		 */
+		@SuppressWarnings("unchecked")
+		private void grow() {
+			long[] oldKeys = keys;
+			ArrayList<Entry>[] oldLists = lists;
+
+			keys = new long[oldKeys.length * 2];
+			lists = new ArrayList[oldKeys.length * 2];
+
+			for (int i = 0; i < oldLists.length; i++) {
+				if (oldLists[i] != null) {
+					int slot = find(oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					lists[slot] = oldLists[i];
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		public FreeLists() {
+			keys = new long[16];
+			lists = new ArrayList[16];
+		}
+	}
+}
@@ -23,6 +23,7 @@
 package org.aluminati3555.aluminativision;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import org.aluminati3555.aluminativision.camera.VisionCamera;
 import org.aluminati3555.aluminativision.net.IVisionOutput;
@@ -42,13 +43,20 @@ public class VisionLoop extends Thread {
 
 	private VisionCamera camera;
 	private MJPEGServer cameraServer;
-	private IVisionPipeline visionPipeline;
+	private volatile IVisionPipeline visionPipeline;
 	private IVisionOutput visionOutput;
+	private MatArena arena;
 
 	private double lastTime;
-	private double currentFPS;
+	private volatile double currentFPS;
 
-	private boolean wantsExit;
+	private volatile boolean wantsExit;
+
+	// Frame parallel mode
+	private int workerCount;
+	private ArrayBlockingQueue<FrameSlot> freeSlots;
+	private ArrayBlockingQueue<FrameSlot> workQueue;
+	private FrameReorderBuffer reorderBuffer;
 
 	/**
 	 * Returns the camera
@@ -77,6 +85,26 @@ public class VisionLoop extends Thread {
 		this.visionPipeline = visionPipeline;
 	}
 
+	/**
+	 * Returns the number of frame workers
+	 * 
+	 * @return
+	 */
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * Sets the number of threads that process consecutive frames at the same time
+	 * (1 processes every frame on the vision loop thread). This must be called
+	 * before the loop is started.
+	 * 
+	 * @param workerCount
+	 */
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = Math.max(1, workerCount);
+	}
+
 	/**
 	 * Signals the vision loop to stop
 	 * 
@@ -92,22 +120,39 @@ public class VisionLoop extends Thread {
 	@Override
 	public void run() {
 		lastTime = VisionUtil.getTime();
+
+		if (workerCount > 1) {
+			runWorkers();
+			return;
+		}
+
 		Mat frame = new Mat();
+		IVisionPipeline pipeline = visionPipeline;
 
 		while (!wantsExit) {
+			// Release the strips this thread used in a pipeline that was replaced
+			if (visionPipeline != pipeline) {
+				pipeline.release();
+				pipeline = visionPipeline;
+			}
+
 			// Update the camera settings
-			visionPipeline.updateCamera(camera);
+			pipeline.updateCamera(camera);
 			
 			camera.grabFrame(frame);
+			long captureTime = VisionUtil.getMicros();
+
+			Mat outputFrame;
 			try {
-				frame = visionPipeline.process(frame, currentFPS);
+				outputFrame = pipeline.process(frame, currentFPS, arena);
 			} catch (CvException e) {
 				System.err.println("Error: Unable to read from " + camera.getName());
+				arena.endFrame();
 				continue;
 			}
 			
 			// Get vision output
-			VisionData output = visionPipeline.getOutput();
+			VisionData output = pipeline.getOutput();
 			if (visionOutput != null) {
 				try {
 					visionOutput.send(output);
@@ -117,17 +162,93 @@ public class VisionLoop extends Thread {
 			}
 
 			if (cameraServer != null) {
-				VisionUtil.resize(frame, ServerConfig.getConfig().streamFrameWidth,
+				Mat streamFrame = arena.acquire(ServerConfig.getConfig().streamFrameHeight,
+						ServerConfig.getConfig().streamFrameWidth, outputFrame.type(), "VisionLoop.stream");
+				VisionUtil.resize(outputFrame, streamFrame, ServerConfig.getConfig().streamFrameWidth,
 						ServerConfig.getConfig().streamFrameHeight);
-				cameraServer.sendFrame(frame, currentFPS);
+				cameraServer.sendFrame(streamFrame, currentFPS, captureTime);
 			}
 
+			// Recycle the buffers used for this frame
+			arena.endFrame();
+
 			double endTime = VisionUtil.getTime();
 			currentFPS = 1 / (endTime - lastTime);
 			lastTime = endTime;
 		}
 
+		pipeline.release();
 		frame.release();
+		arena.release();
+	}
+
+	/**
+	 * Captures frames and hands them to the frame workers. The workers finish them
+	 * in any order and the reorder buffer sends them out in capture order.
+	 */
+	private void runWorkers() {
+		// Enough slots for every worker, the work queue and the reorder buffer
+		int slotCount = 2 * workerCount + 2;
+
+		freeSlots = new ArrayBlockingQueue<FrameSlot>(slotCount);
+		workQueue = new ArrayBlockingQueue<FrameSlot>(slotCount);
+		reorderBuffer = new FrameReorderBuffer(slotCount, workerCount, new FrameSink());
+
+		for (int i = 0; i < slotCount; i++) {
+			freeSlots.add(new FrameSlot());
+		}
+
+		// Split the cores between the workers
+		int threadsPerWorker = Math.max(1, Runtime.getRuntime().availableProcessors() / workerCount);
+
+		FrameWorker[] workers = new FrameWorker[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = new FrameWorker(threadsPerWorker);
+			workers[i].setName(getName() + "-Worker-" + i);
+			workers[i].setPriority(getPriority());
+			workers[i].start();
+		}
+
+		long sequence = 0;
+		while (!wantsExit) {
+			// Update the camera settings
+			visionPipeline.updateCamera(camera);
+
+			FrameSlot slot;
+			try {
+				slot = freeSlots.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			camera.grabFrame(slot.frame);
+			slot.captureTime = VisionUtil.getMicros();
+			slot.sequence = sequence++;
+			slot.fps = currentFPS;
+
+			// There is always room since the queue can hold every slot
+			workQueue.add(slot);
+		}
+
+		for (int i = 0; i < workerCount; i++) {
+			workers[i].interrupt();
+		}
+
+		for (int i = 0; i < workerCount; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+
+			}
+		}
+
+		for (FrameSlot slot : freeSlots) {
+			slot.release();
+		}
+		for (FrameSlot slot : workQueue) {
+			slot.release();
+		}
+		reorderBuffer.release();
 	}
 
 	/**
@@ -147,9 +268,109 @@ public class VisionLoop extends Thread {
 		this.camera = camera;
 		this.visionPipeline = visionPipeline;
 		this.visionOutput = visionOutput;
+		this.arena = new MatArena();
+		this.workerCount = 1;
 		
 		currentFPS = camera.getFPS();
 
 		this.wantsExit = false;
 	}
+
+	/**
+	 * This class processes captured frames with its own copy of the pipeline
+	 */
+	private class FrameWorker extends Thread {
+		private int threads;
+		private MatArena workerArena;
+
+		private IVisionPipeline source;
+		private IVisionPipeline pipeline;
+
+		@Override
+		public void run() {
+			while (!wantsExit) {
+				FrameSlot slot;
+				try {
+					slot = workQueue.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+
+				// Make a new copy if the pipeline was changed
+				IVisionPipeline current = visionPipeline;
+				if (current != source) {
+					if (pipeline != null) {
+						pipeline.release();
+					}
+
+					source = current;
+					pipeline = current.createWorker(threads);
+				}
+
+				slot.valid = true;
+				slot.hasStream = false;
+				try {
+					Mat outputFrame = pipeline.process(slot.frame, slot.fps, workerArena);
+
+					slot.data.copy(pipeline.getOutput());
+					slot.data.camera = camera.getID();
+
+					if (cameraServer != null) {
+						VisionUtil.resize(outputFrame, slot.streamFrame, ServerConfig.getConfig().streamFrameWidth,
+								ServerConfig.getConfig().streamFrameHeight);
+						slot.hasStream = true;
+					}
+				} catch (CvException e) {
+					System.err.println("Error: Unable to read from " + camera.getName());
+					slot.valid = false;
+				}
+
+				// The results were copied into the slot
+				workerArena.endFrame();
+
+				reorderBuffer.complete(slot);
+			}
+
+			if (pipeline != null) {
+				pipeline.release();
+			}
+			workerArena.release();
+		}
+
+		public FrameWorker(int threads) {
+			this.threads = threads;
+			this.workerArena = new MatArena();
+		}
+	}
+
+	/**
+	 * This class sends frames once they are back in capture order
+	 */
+	private class FrameSink implements FrameReorderBuffer.IFrameSink {
+		public void deliver(FrameSlot slot) {
+			if (slot.valid) {
+				if (visionOutput != null) {
+					try {
+						visionOutput.send(slot.data);
+					} catch (IOException e) {
+						System.err.println("Error: Unable to send vision data");
+					}
+				}
+
+				if (cameraServer != null && slot.hasStream) {
+					cameraServer.sendFrame(slot.streamFrame, currentFPS, slot.captureTime);
+				}
+
+				double endTime = VisionUtil.getTime();
+				currentFPS = 1 / (endTime - lastTime);
+				lastTime = endTime;
+			}
+
+			freeSlots.add(slot);
+		}
+
+		public void drop(FrameSlot slot) {
+			freeSlots.add(slot);
+		}
+	}
 }
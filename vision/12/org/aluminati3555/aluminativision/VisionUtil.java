@@ -71,6 +71,17 @@ public class VisionUtil {
 		return (System.nanoTime() / 1000000000.0);
 	}
 
+	/**
+	 * Gets the current time in microseconds for the stream timestamps. The clock
+	 * only counts up at a steady rate, clients find its offset from their own
+	 * clock with the /time request of the mjpeg server.
+	 * 
+	 * @return
+	 */
+	public static long getMicros() {
+		return System.nanoTime() / 1000;
+	}
+
 	/**
 	 * Computes the width of the quadrilateral
 	 * 
@@ -146,6 +157,18 @@ public class VisionUtil {
 		Imgproc.resize(mat, mat, new Size(width, height));
 	}
 
+	/**
+	 * Resizes a frame into another mat
+	 * 
+	 * @param src
+	 * @param dst
+	 * @param width
+	 * @param height
+	 */
+	public static void resize(Mat src, Mat dst, int width, int height) {
+		Imgproc.resize(src, dst, new Size(width, height));
+	}
+
 	/**
 	 * Sleeps for seconds
 	 * 
@@ -41,4 +41,23 @@ public class VisionData {
 	public double targetWidth;
 	public double targetHeight;
 	public double targetArea;
+
+	/**
+	 * Copies the values from another vision data object
+	 * 
+	 * @param data
+	 */
+	public void copy(VisionData data) {
+		camera = data.camera;
+		fps = data.fps;
+
+		hasTarget = data.hasTarget;
+
+		x = data.x;
+		y = data.y;
+
+		targetWidth = data.targetWidth;
+		targetHeight = data.targetHeight;
+		targetArea = data.targetArea;
+	}
 }
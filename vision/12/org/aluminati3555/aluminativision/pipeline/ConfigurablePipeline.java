@@ -26,10 +26,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 
+import org.aluminati3555.aluminativision.MatArena;
 import org.aluminati3555.aluminativision.VisionUtil;
 import org.aluminati3555.aluminativision.camera.VisionCamera;
 import org.aluminati3555.aluminativision.net.VisionData;
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
@@ -47,12 +49,10 @@ public class ConfigurablePipeline implements IVisionPipeline {
 	private VisionData visionData;
 	private PipelineConfig pipelineConfig;
 
-	private Mat blurFrame;
-	private Mat thresholdFrame;
-
 	private ArrayList<MatOfPoint> contours;
-
-	private Mat outputFrame;
+	// Each vision loop that runs this pipeline gets its own strips
+	private ThreadLocal<StripProcessor> stripProcessors;
+	private int maxProcessingThreads;
 
 	/**
 	 * Returns the pipeline configuration
@@ -70,6 +70,16 @@ public class ConfigurablePipeline implements IVisionPipeline {
 		return visionData;
 	}
 
+	/**
+	 * Limits the number of strips this pipeline uses regardless of the
+	 * configuration
+	 * 
+	 * @param maxProcessingThreads
+	 */
+	public void setMaxProcessingThreads(int maxProcessingThreads) {
+		this.maxProcessingThreads = maxProcessingThreads;
+	}
+
 	/**
 	 * Sets the configuration
 	 * 
@@ -119,7 +129,7 @@ public class ConfigurablePipeline implements IVisionPipeline {
 	/**
 	 * Processes a frame
 	 */
-	public Mat process(Mat frame, double fps) {
+	public Mat process(Mat frame, double fps, MatArena arena) {
 		visionData.fps = fps;
 		visionData.hasTarget = false;
 		visionData.targetWidth = 0;
@@ -132,18 +142,42 @@ public class ConfigurablePipeline implements IVisionPipeline {
 			return frame;
 		}
 
-		// Blur
-		double kernel = 2 * pipelineConfig.blurRadius + 1;
-		Imgproc.blur(frame, blurFrame, new Size(kernel, kernel));
+		Mat thresholdFrame = arena.acquireMask(frame, "ConfigurablePipeline.threshold");
+		Mat outputFrame = arena.acquire(frame.rows(), frame.cols(), CvType.CV_8UC3, "ConfigurablePipeline.output");
+
+		Scalar lower = new Scalar(pipelineConfig.thresholdHueMin, pipelineConfig.thresholdLuminenceMin,
+				pipelineConfig.thresholdSaturationMin);
+		Scalar upper = new Scalar(pipelineConfig.thresholdHueMax, pipelineConfig.thresholdLuminenceMax,
+				pipelineConfig.thresholdSaturationMax);
+
+		int threads = Math.min(pipelineConfig.processingThreads, maxProcessingThreads);
+		if (threads > 1) {
+			// Blur and threshold horizontal strips in parallel
+			StripProcessor stripProcessor = stripProcessors.get();
+			if (stripProcessor == null || stripProcessor.getStripCount() != threads) {
+				if (stripProcessor != null) {
+					stripProcessor.release();
+				}
 
-		// Thresholding
-		Imgproc.cvtColor(blurFrame, thresholdFrame, Imgproc.COLOR_BGR2HLS);
-		Core.inRange(thresholdFrame,
-				new Scalar(pipelineConfig.thresholdHueMin, pipelineConfig.thresholdLuminenceMin,
-						pipelineConfig.thresholdSaturationMin),
-				new Scalar(pipelineConfig.thresholdHueMax, pipelineConfig.thresholdLuminenceMax,
-						pipelineConfig.thresholdSaturationMax),
-				thresholdFrame);
+				stripProcessor = new StripProcessor(Thread.currentThread().getName(), threads);
+				stripProcessors.set(stripProcessor);
+			}
+
+			stripProcessor.process(frame, thresholdFrame, outputFrame, pipelineConfig.blurRadius, lower, upper);
+		} else {
+			Mat blurFrame = arena.acquire(frame, "ConfigurablePipeline.blur");
+			Mat hlsFrame = arena.acquire(frame, "ConfigurablePipeline.hls");
+
+			// Blur
+			double kernel = 2 * pipelineConfig.blurRadius + 1;
+			Imgproc.blur(frame, blurFrame, new Size(kernel, kernel));
+
+			// Thresholding
+			Imgproc.cvtColor(blurFrame, hlsFrame, Imgproc.COLOR_BGR2HLS);
+			Core.inRange(hlsFrame, lower, upper, thresholdFrame);
+
+			Imgproc.cvtColor(thresholdFrame, outputFrame, Imgproc.COLOR_GRAY2RGB);
+		}
 
 		// Contours
 		contours.clear();
@@ -152,6 +186,11 @@ public class ConfigurablePipeline implements IVisionPipeline {
 		Imgproc.findContours(thresholdFrame, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
 		hierarchy.release();
 
+		// The contours are released with the rest of the frame
+		for (int i = 0; i < contours.size(); i++) {
+			arena.track(contours.get(i), "ConfigurablePipeline.contour");
+		}
+
 		// Filter contours
 		for (int i = 0; i < contours.size(); i++) {
 			double area = Imgproc.contourArea(contours.get(i)) / (double) (frame.width() * frame.height());
@@ -169,8 +208,6 @@ public class ConfigurablePipeline implements IVisionPipeline {
 			}
 		}
 
-		Imgproc.cvtColor(thresholdFrame, outputFrame, Imgproc.COLOR_GRAY2RGB);
-
 		if (contours.size() > 0) {
 			Imgproc.drawContours(outputFrame, contours, -1, new Scalar(0, 0, 255), 3);
 			sortContours(contours);
@@ -236,17 +273,32 @@ public class ConfigurablePipeline implements IVisionPipeline {
 		return outputFrame;
 	}
 
+	public IVisionPipeline createWorker(int threads) {
+		ConfigurablePipeline worker = new ConfigurablePipeline(pipelineConfig);
+		worker.setMaxProcessingThreads(threads);
+
+		return worker;
+	}
+
+	/**
+	 * Stops the strip threads of the calling thread and releases their buffers
+	 */
+	public void release() {
+		StripProcessor stripProcessor = stripProcessors.get();
+		if (stripProcessor != null) {
+			stripProcessor.release();
+			stripProcessors.remove();
+		}
+	}
+
 	public ConfigurablePipeline(PipelineConfig pipelineConfig) {
 		setPipelineConfig(pipelineConfig);
 
 		visionData = new VisionData();
 
-		blurFrame = new Mat();
-		thresholdFrame = new Mat();
-
 		contours = new ArrayList<MatOfPoint>();
-
-		outputFrame = new Mat();
+		stripProcessors = new ThreadLocal<StripProcessor>();
+		maxProcessingThreads = Integer.MAX_VALUE;
 	}
 
 	public static class PipelineConfig {
@@ -260,6 +312,9 @@ public class ConfigurablePipeline implements IVisionPipeline {
 
 		// Processing
 
+		// Number of strips the blur and threshold stages are split into
+		public int processingThreads = Runtime.getRuntime().availableProcessors();
+
 		// Blur
 		public double blurRadius = 5;
 
@@ -22,6 +22,7 @@
 
 package org.aluminati3555.aluminativision.pipeline;
 
+import org.aluminati3555.aluminativision.MatArena;
 import org.aluminati3555.aluminativision.camera.VisionCamera;
 import org.aluminati3555.aluminativision.net.VisionData;
 import org.opencv.core.Mat;
@@ -37,7 +38,7 @@ public class DefaultPipeline implements IVisionPipeline {
 	/**
 	 * Does nothing
 	 */
-	public Mat process(Mat frame, double fps) {
+	public Mat process(Mat frame, double fps, MatArena arena) {
 		return frame;
 	}
 
@@ -55,6 +56,17 @@ public class DefaultPipeline implements IVisionPipeline {
 		
 	}
 
+	public IVisionPipeline createWorker(int threads) {
+		return new DefaultPipeline();
+	}
+
+	/**
+	 * Does nothing
+	 */
+	public void release() {
+		
+	}
+
 	public DefaultPipeline() {
 		visionData = new VisionData();
 	}
@@ -22,6 +22,7 @@
 
 package org.aluminati3555.aluminativision.pipeline;
 
+import org.aluminati3555.aluminativision.MatArena;
 import org.aluminati3555.aluminativision.camera.VisionCamera;
 import org.aluminati3555.aluminativision.net.VisionData;
 import org.opencv.core.Mat;
@@ -34,12 +35,12 @@ import org.opencv.imgproc.Imgproc;
  */
 public class GrayscalePipeline implements IVisionPipeline {
 	private VisionData visionData;
-	private Mat outputFrame;
 
 	/**
 	 * Does nothing
 	 */
-	public Mat process(Mat frame, double fps) {
+	public Mat process(Mat frame, double fps, MatArena arena) {
+		Mat outputFrame = arena.acquireMask(frame, "GrayscalePipeline.output");
 		Imgproc.cvtColor(frame, outputFrame, Imgproc.COLOR_BGR2GRAY);
 		
 		return outputFrame;
@@ -59,8 +60,18 @@ public class GrayscalePipeline implements IVisionPipeline {
 		
 	}
 
+	public IVisionPipeline createWorker(int threads) {
+		return new GrayscalePipeline();
+	}
+
+	/**
+	 * Does nothing
+	 */
+	public void release() {
+		
+	}
+
 	public GrayscalePipeline() {
 		visionData = new VisionData();
-		outputFrame = new Mat();
 	}
 }
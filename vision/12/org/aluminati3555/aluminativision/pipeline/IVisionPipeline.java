@@ -22,6 +22,7 @@
 
 package org.aluminati3555.aluminativision.pipeline;
 
+import org.aluminati3555.aluminativision.MatArena;
 import org.aluminati3555.aluminativision.camera.VisionCamera;
 import org.aluminati3555.aluminativision.net.VisionData;
 import org.opencv.core.Mat;
@@ -32,9 +33,24 @@ import org.opencv.core.Mat;
  * @author Caleb Heydon
  */
 public interface IVisionPipeline {
-	public Mat process(Mat frame, double fps);
+	public Mat process(Mat frame, double fps, MatArena arena);
 	
 	public VisionData getOutput();
 	
 	public void updateCamera(VisionCamera camera);
+
+	/**
+	 * Returns a copy that shares this pipeline's configuration but has its own
+	 * scratch state so it can run on a frame worker
+	 * 
+	 * @param threads
+	 * @return
+	 */
+	public IVisionPipeline createWorker(int threads);
+
+	/**
+	 * Releases the threads and native buffers held for the calling thread. The
+	 * pipeline can still be used afterwards.
+	 */
+	public void release();
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.aluminativision.pipeline;
+
+import org.aluminati3555.aluminativision.MatArena;
+import org.aluminati3555.aluminativision.VisionUtil;
+import org.aluminati3555.aluminativision.pipeline.ConfigurablePipeline.PipelineConfig;
+import org.aluminati3555.aluminativision.pipeline.ConfigurablePipeline.PipelineMode;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Compares the single threaded and strip parallel configurable pipeline at the
+ * common processing resolutions
+ * 
+ * @author Caleb Heydon
+ */
+public class StripBenchmark {
+	private static final int[][] RESOLUTIONS = { { 320, 240 }, { 640, 480 }, { 1280, 720 } };
+	private static final int WARMUP_FRAMES = 50;
+	private static final int FRAMES = 300;
+
+	// A green that only the targets in the benchmark frame have
+	private static final Scalar TARGET_COLOR = new Scalar(40, 220, 40);
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * Returns the average time per frame in milliseconds
+	 * 
+	 * @param pipeline
+	 * @param frame
+	 * @param arena
+	 * @return
+	 */
+	private static double time(ConfigurablePipeline pipeline, Mat frame, MatArena arena) {
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			pipeline.process(frame, 0, arena);
+			arena.endFrame();
+		}
+
+		double start = VisionUtil.getTime();
+		for (int i = 0; i < FRAMES; i++) {
+			pipeline.process(frame, 0, arena);
+			arena.endFrame();
+		}
+
+		return (VisionUtil.getTime() - start) * 1000 / FRAMES;
+	}
+
+	/**
+	 * Creates a noisy frame with green bars whose edges are at and around the
+	 * strip boundaries, where a missing halo row would change the blur
+	 * 
+	 * @param width
+	 * @param height
+	 * @param strips
+	 * @param blurRadius
+	 * @return
+	 */
+	private static Mat createFrame(int width, int height, int strips, double blurRadius) {
+		Mat frame = new Mat(height, width, CvType.CV_8UC3);
+		Core.randu(frame, 0, 160);
+
+		int halo = (int) Math.ceil(blurRadius + 0.5);
+		int barWidth = Math.max(4, width / (4 * halo + 2));
+
+		for (int i = 1; i < strips; i++) {
+			int boundary = height * i / strips;
+
+			// One bar per offset from the boundary, from well outside to well inside the halo
+			for (int offset = -2 * halo; offset <= 2 * halo; offset++) {
+				int x = (offset + 2 * halo) * width / (4 * halo + 1);
+				int top = boundary + offset;
+
+				Imgproc.rectangle(frame, new Point(x, top), new Point(x + barWidth - 2, top + halo), TARGET_COLOR, -1);
+			}
+		}
+
+		return frame;
+	}
+
+	/**
+	 * Returns the number of mask pixels that differ between both pipelines for a
+	 * frame
+	 * 
+	 * @param sequential
+	 * @param parallel
+	 * @param frame
+	 * @param arena
+	 * @return
+	 */
+	private static int compare(ConfigurablePipeline sequential, ConfigurablePipeline parallel, Mat frame,
+			MatArena arena) {
+		// The output is the thresholded mask in every channel
+		Mat expected = arena.acquireMask(frame, "StripBenchmark.expected");
+		Core.extractChannel(sequential.process(frame, 0, arena), expected, 0);
+
+		Mat actual = arena.acquireMask(frame, "StripBenchmark.actual");
+		Core.extractChannel(parallel.process(frame, 0, arena), actual, 0);
+
+		int targetPixels = Core.countNonZero(expected);
+		if (targetPixels == 0 || targetPixels == frame.rows() * frame.cols()) {
+			throw new IllegalStateException("The mask is " + ((targetPixels == 0) ? "empty" : "full")
+					+ ", so the comparison would not test anything");
+		}
+
+		Mat difference = arena.acquireMask(frame, "StripBenchmark.difference");
+		Core.absdiff(expected, actual, difference);
+		int different = Core.countNonZero(difference);
+
+		arena.endFrame();
+		return different;
+	}
+
+	/**
+	 * Narrows the thresholds to the green of the benchmark targets
+	 * 
+	 * @param config
+	 */
+	private static void setTargetThresholds(PipelineConfig config) {
+		config.thresholdHueMin = 50;
+		config.thresholdHueMax = 70;
+		config.thresholdLuminenceMin = 70;
+		config.thresholdLuminenceMax = 200;
+		config.thresholdSaturationMin = 120;
+		config.thresholdSaturationMax = 255;
+	}
+
+	public static void main(String[] args) {
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		MatArena arena = new MatArena();
+
+		PipelineConfig sequentialConfig = new PipelineConfig();
+		sequentialConfig.pipelineMode = PipelineMode.PROCESSING;
+		sequentialConfig.processingThreads = 1;
+		setTargetThresholds(sequentialConfig);
+
+		PipelineConfig parallelConfig = new PipelineConfig();
+		parallelConfig.pipelineMode = PipelineMode.PROCESSING;
+		parallelConfig.processingThreads = threads;
+		setTargetThresholds(parallelConfig);
+
+		ConfigurablePipeline sequential = new ConfigurablePipeline(sequentialConfig);
+		ConfigurablePipeline parallel = new ConfigurablePipeline(parallelConfig);
+
+		System.out.println("Strips: " + threads);
+		for (int i = 0; i < RESOLUTIONS.length; i++) {
+			int width = RESOLUTIONS[i][0];
+			int height = RESOLUTIONS[i][1];
+
+			Mat frame = createFrame(width, height, threads, sequentialConfig.blurRadius);
+
+			int different = compare(sequential, parallel, frame, arena);
+			double sequentialTime = time(sequential, frame, arena);
+			double parallelTime = time(parallel, frame, arena);
+
+			System.out.println(width + "x" + height + ": sequential = " + sequentialTime + " ms, strips = "
+					+ parallelTime + " ms, speedup = " + (sequentialTime / parallelTime) + ", different mask pixels = " + different);
+
+			frame.release();
+		}
+
+		sequential.release();
+		parallel.release();
+		arena.release();
+	}
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2019 Team 3555
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.aluminati3555.aluminativision.pipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * This class runs the pixel-wise stages of the configurable pipeline (blur,
+ * color conversion and thresholding) on horizontal strips of the frame. Each
+ * strip is blurred with extra halo rows so the combined mask matches a full
+ * frame pass exactly. The workers are started once and reused for every frame.
+ * 
+ * Frames are processed one at a time, a second caller waits for the first.
+ * 
+ * @author Caleb Heydon
+ */
+public class StripProcessor {
+	// Blur borders are reflected inside each haloed strip only
+	private static final int BORDER_TYPE = Core.BORDER_DEFAULT | Core.BORDER_ISOLATED;
+	private static final Point ANCHOR = new Point(-1, -1);
+
+	private StripWorker[] workers;
+	private Thread[] threads;
+
+	// Per-frame parameters shared by the workers
+	private Mat frame;
+	private Mat mask;
+	private Mat outputFrame;
+	private double blurRadius;
+	private int haloRows;
+	private Size kernelSize;
+	private Scalar lower;
+	private Scalar upper;
+
+	// Held for the whole of process() so only one frame uses the strips
+	private final Object processLock = new Object();
+
+	private int generation;
+	private int remaining;
+	private RuntimeException error;
+
+	/**
+	 * Returns the number of strips each frame is split into
+	 * 
+	 * @return
+	 */
+	public int getStripCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Blurs, converts and thresholds a frame into mask and draws the mask into
+	 * outputFrame. The mask and output frame must already have the frame's size.
+	 * 
+	 * @param frame
+	 * @param mask
+	 * @param outputFrame
+	 * @param blurRadius
+	 * @param lower
+	 * @param upper
+	 */
+	public void process(Mat frame, Mat mask, Mat outputFrame, double blurRadius, Scalar lower, Scalar upper) {
+		synchronized (processLock) {
+			processFrame(frame, mask, outputFrame, blurRadius, lower, upper);
+		}
+	}
+
+	private void processFrame(Mat frame, Mat mask, Mat outputFrame, double blurRadius, Scalar lower,
+			Scalar upper) {
+		synchronized (this) {
+			if (kernelSize == null || blurRadius != this.blurRadius) {
+				double kernel = 2 * blurRadius + 1;
+				kernelSize = new Size(kernel, kernel);
+				haloRows = (int) Math.ceil(kernel / 2);
+			}
+
+			this.frame = frame;
+			this.mask = mask;
+			this.outputFrame = outputFrame;
+			this.blurRadius = blurRadius;
+			this.lower = lower;
+			this.upper = upper;
+
+			error = null;
+			remaining = workers.length - 1;
+			generation++;
+			notifyAll();
+		}
+
+		// The calling thread handles the first strip
+		RuntimeException callerError = null;
+		try {
+			workers[0].run();
+		} catch (RuntimeException e) {
+			callerError = e;
+		}
+
+		boolean interrupted = false;
+		RuntimeException frameError;
+		synchronized (this) {
+			if (callerError != null) {
+				error = callerError;
+			}
+
+			// The workers are still using the frames, so this waits even if interrupted
+			while (remaining > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			this.frame = null;
+			this.mask = null;
+			this.outputFrame = null;
+			frameError = error;
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (frameError != null) {
+			throw frameError;
+		}
+	}
+
+	/**
+	 * Stops the worker threads and releases the strip buffers
+	 */
+	public void release() {
+		for (int i = 1; i < threads.length; i++) {
+			threads[i].interrupt();
+		}
+
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].release();
+		}
+	}
+
+	/**
+	 * The loop run by each worker thread
+	 * 
+	 * @param worker
+	 */
+	private void runWorker(StripWorker worker) {
+		int seen = 0;
+
+		while (true) {
+			synchronized (this) {
+				while (generation == seen) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				seen = generation;
+			}
+
+			RuntimeException workerError = null;
+			try {
+				worker.run();
+			} catch (RuntimeException e) {
+				workerError = e;
+			} finally {
+				synchronized (this) {
+					// The first error is passed back to the caller of process()
+					if (workerError != null && error == null) {
+						error = workerError;
+					}
+
+					remaining--;
+					if (remaining == 0) {
+						notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	public StripProcessor(String name, int stripCount) {
+		stripCount = Math.max(1, stripCount);
+
+		workers = new StripWorker[stripCount];
+		threads = new Thread[stripCount];
+
+		for (int i = 0; i < stripCount; i++) {
+			workers[i] = new StripWorker(i, stripCount);
+		}
+
+		for (int i = 1; i < stripCount; i++) {
+			StripWorker worker = workers[i];
+
+			threads[i] = new Thread(() -> runWorker(worker));
+			threads[i].setName(name + "-Strip-" + i);
+			threads[i].setDaemon(true);
+			threads[i].setPriority(Thread.MAX_PRIORITY);
+			threads[i].start();
+		}
+
+		generation = 0;
+	}
+
+	private class StripWorker implements Runnable {
+		private int index;
+		private int stripCount;
+
+		// Strip buffers that are kept between frames
+		private Mat blurStrip;
+		private Mat hlsStrip;
+
+		// Cached views into the shared frames
+		private StripView sourceView;
+		private StripView blurView;
+		private StripView maskView;
+		private StripView outputView;
+
+		public void run() {
+			int rows = frame.rows();
+			int start = rows * index / stripCount;
+			int end = rows * (index + 1) / stripCount;
+			if (start >= end) {
+				return;
+			}
+
+			// Include enough rows above and below for the blur kernel
+			int haloStart = Math.max(0, start - haloRows);
+			int haloEnd = Math.min(rows, end + haloRows);
+
+			Mat source = sourceView.get(frame, haloStart, haloEnd);
+			Imgproc.blur(source, blurStrip, kernelSize, ANCHOR, BORDER_TYPE);
+
+			Mat blurred = blurView.get(blurStrip, start - haloStart, end - haloStart);
+			Imgproc.cvtColor(blurred, hlsStrip, Imgproc.COLOR_BGR2HLS);
+
+			Mat maskStrip = maskView.get(mask, start, end);
+			Core.inRange(hlsStrip, lower, upper, maskStrip);
+
+			Imgproc.cvtColor(maskStrip, outputView.get(outputFrame, start, end), Imgproc.COLOR_GRAY2RGB);
+		}
+
+		public void release() {
+			blurStrip.release();
+			hlsStrip.release();
+
+			sourceView.release();
+			blurView.release();
+			maskView.release();
+			outputView.release();
+		}
+
+		public StripWorker(int index, int stripCount) {
+			this.index = index;
+			this.stripCount = stripCount;
+
+			blurStrip = new Mat();
+			hlsStrip = new Mat();
+
+			sourceView = new StripView();
+			blurView = new StripView();
+			maskView = new StripView();
+			outputView = new StripView();
+		}
+	}
+
+	/**
+	 * This class keeps a row range header so it is only rebuilt when the parent
+	 * changes
+	 */
+	private static class StripView {
+		private Mat parent;
+		private long parentAddress;
+		private int parentRows;
+		private int parentCols;
+		private int start;
+		private int end;
+		private Mat view;
+
+		public Mat get(Mat parent, int start, int end) {
+			if (view == null || parent != this.parent || parent.dataAddr() != parentAddress
+					|| parent.rows() != parentRows || parent.cols() != parentCols || start != this.start
+					|| end != this.end) {
+				release();
+
+				this.parent = parent;
+				parentAddress = parent.dataAddr();
+				parentRows = parent.rows();
+				parentCols = parent.cols();
+				this.start = start;
+				this.end = end;
+				view = parent.rowRange(start, end);
+			}
+
+			return view;
+		}
+
+		public void release() {
+			if (view != null) {
+				view.release();
+				view = null;
+			}
+
+			parent = null;
+		}
+	}
+}
@@ -22,6 +22,7 @@
 
 package org.aluminati3555.aluminativision.pipeline;
 
+import org.aluminati3555.aluminativision.MatArena;
 import org.opencv.core.Mat;
 import org.opencv.imgcodecs.Imgcodecs;
 
@@ -34,12 +35,25 @@ public class TestPipeline extends ConfigurablePipeline {
 	private Mat testFrame;
 	
 	@Override
-	public Mat process(Mat frame, double fps) {
-		return super.process(testFrame, fps);
+	public Mat process(Mat frame, double fps, MatArena arena) {
+		return super.process(testFrame, fps, arena);
+	}
+	
+	@Override
+	public IVisionPipeline createWorker(int threads) {
+		// The test frame is only read, so the copies can share it
+		TestPipeline worker = new TestPipeline(getPipelineConfig(), testFrame);
+		worker.setMaxProcessingThreads(threads);
+
+		return worker;
 	}
 	
 	public TestPipeline(PipelineConfig pipelineConfig, String image) {
+		this(pipelineConfig, Imgcodecs.imread(image));
+	}
+
+	private TestPipeline(PipelineConfig pipelineConfig, Mat testFrame) {
 		super(pipelineConfig);
-		testFrame = Imgcodecs.imread(image);
+		this.testFrame = testFrame;
 	}
 }
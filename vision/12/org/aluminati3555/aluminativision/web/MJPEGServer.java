@@ -22,7 +22,9 @@
 
 package org.aluminati3555.aluminativision.web;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -30,6 +32,7 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 
 import org.aluminati3555.aluminativision.ServerConfig;
+import org.aluminati3555.aluminativision.VisionUtil;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
 import org.opencv.core.MatOfInt;
@@ -45,87 +48,167 @@ import org.opencv.imgproc.Imgproc;
  */
 public class MJPEGServer extends Thread {
 	private static final String SERVER_NAME = "MJPEGServer";
+	private static final int REQUEST_TIMEOUT = 1000;
+	private static final int MAX_LINE_LENGTH = 1024;
+
+	// Timestamps sent with each frame, in microseconds of the server clock
+	public static final String CAPTURE_TIME_HEADER = "X-Capture-Time";
+	public static final String ENCODE_TIME_HEADER = "X-Encode-Time";
+	public static final String SEND_TIME_HEADER = "X-Send-Time";
+
+	// The clock offset handshake
+	public static final String TIME_PATH = "/time";
+	public static final String RECEIVE_TIME_HEADER = "X-Receive-Time";
+	public static final String TRANSMIT_TIME_HEADER = "X-Transmit-Time";
+
+	private ServerSocket serverSocket;
+	private ArrayList<ClientHandler> clients;
+	private DecimalFormat decimalFormat;
+
+	// Native buffers reused for every frame
+	private MatOfByte jpegBuffer;
+	private MatOfInt jpegParams;
+	private int jpegQuality;
 
 	/**
-	 * Compresses an image
+	 * Converts a mat to a compressed jpeg
 	 * 
 	 * @param mat
+	 * @return
 	 */
-	private static void compress(Mat mat) {
-		MatOfByte matOfByte = new MatOfByte();
-		MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, ServerConfig.getConfig().streamCompression);
-		Imgcodecs.imencode(".jpg", mat, matOfByte, params);
-		params.release();
-
-		Mat output = Imgcodecs.imdecode(matOfByte, Imgcodecs.IMREAD_COLOR);
-		output.copyTo(mat);
-		output.release();
+	private byte[] getJPEGBytes(Mat mat) {
+		int quality = ServerConfig.getConfig().streamCompression;
+		if (quality != jpegQuality) {
+			jpegParams.fromArray(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+			jpegQuality = quality;
+		}
+
+		Imgcodecs.imencode(".jpg", mat, jpegBuffer, jpegParams);
+
+		return jpegBuffer.toArray();
 	}
 
 	/**
-	 * Converts a mat to a compressed jpeg
+	 * Reads the request line and skips the rest of the request headers
 	 * 
-	 * @param mat
-	 * @return
+	 * @param inputStream
+	 * @return The request line
+	 * @throws IOException
 	 */
-	private static byte[] getJPEGBytes(Mat mat) {
-		MatOfByte matOfByte = new MatOfByte();
-		Imgcodecs.imencode(".jpg", mat, matOfByte);
+	private String readRequest(InputStream inputStream) throws IOException {
+		StringBuilder line = new StringBuilder();
+		String requestLine = null;
 
-		byte[] buffer = matOfByte.toArray();
-		matOfByte.release();
+		while (true) {
+			int read = inputStream.read();
+			if (read == -1) {
+				throw new EOFException("The request ended early");
+			}
 
-		return buffer;
+			if (read == '\n') {
+				if (line.length() == 0) {
+					// The blank line after the headers
+					return (requestLine == null) ? "" : requestLine;
+				}
+
+				if (requestLine == null) {
+					requestLine = line.toString();
+				}
+				line.setLength(0);
+			} else if (read != '\r' && line.length() < MAX_LINE_LENGTH) {
+				line.append((char) read);
+			}
+		}
 	}
 
-	private ServerSocket serverSocket;
-	private ArrayList<ClientHandler> clients;
-	private DecimalFormat decimalFormat;
+	/**
+	 * Answers a clock request. The client notes when it sent the request and got
+	 * the answer, which with these two times gives the offset between the clocks.
+	 * 
+	 * @param socket
+	 * @param receiveTime The time the request was read
+	 * @throws IOException
+	 */
+	private void sendTime(Socket socket, long receiveTime) throws IOException {
+		OutputStream outputStream = socket.getOutputStream();
+		outputStream.write(("HTTP/1.0 200 OK\r\nServer: " + SERVER_NAME + "\r\n" + RECEIVE_TIME_HEADER + ": "
+				+ receiveTime + "\r\n" + TRANSMIT_TIME_HEADER + ": " + VisionUtil.getMicros()
+				+ "\r\nContent-Length: 0\r\n\r\n").getBytes());
+		outputStream.flush();
+		socket.close();
+	}
 
 	@Override
 	public void run() {
 		while (true) {
+			Socket socket = null;
 			try {
-				Socket socket = serverSocket.accept();
+				socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+
+				// Do not let a silent client hold up the server
+				socket.setSoTimeout(REQUEST_TIMEOUT);
+				String request = readRequest(socket.getInputStream());
+				long receiveTime = VisionUtil.getMicros();
+				socket.setSoTimeout(0);
+
+				if (request.startsWith("GET " + TIME_PATH)) {
+					sendTime(socket, receiveTime);
+					continue;
+				}
+
 				ClientHandler client = new ClientHandler(socket);
 				client.start();
 				clients.add(client);
 			} catch (IOException e) {
 				System.err.println("Warning: Socket error");
+
+				if (socket != null) {
+					try {
+						socket.close();
+					} catch (IOException e1) {
+
+					}
+				}
 				continue;
 			}
 		}
 	}
 
 	/**
-	 * Sends a frame to the clients
+	 * Sends a frame to the clients. Each part carries the capture, encode and send
+	 * times so the driver station can measure the latency of the stream.
 	 * 
 	 * @param frame
+	 * @param fps
+	 * @param captureTime The time from VisionUtil.getMicros() the frame was
+	 *                    captured
 	 */
-	public synchronized void sendFrame(Mat frame, double fps) {
+	public synchronized void sendFrame(Mat frame, double fps, long captureTime) {
 		fps = Double.parseDouble(decimalFormat.format(fps));
 		Imgproc.putText(frame, fps + " FPS", new Point(5, 10), 0, 0.25, new Scalar(0, 255, 0));
 
-		compress(frame);
-
+		long encodeTime = VisionUtil.getMicros();
 		byte[] buffer = getJPEGBytes(frame);
 
 		for (int i = 0; i < clients.size(); i++) {
 			try {
-				clients.get(i).sendFrame(buffer);
+				clients.get(i).sendFrame(buffer, captureTime, encodeTime);
 			} catch (IOException e) {
 				clients.remove(i);
 				i--;
 			}
 		}
-
-		frame.release();
 	}
 
 	public MJPEGServer(int port) throws IOException {
 		serverSocket = new ServerSocket(port);
 		clients = new ArrayList<ClientHandler>();
 		decimalFormat = new DecimalFormat("###.#");
+
+		jpegBuffer = new MatOfByte();
+		jpegQuality = ServerConfig.getConfig().streamCompression;
+		jpegParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, jpegQuality);
 	}
 
 	private class ClientHandler {
@@ -137,9 +220,10 @@ public class MJPEGServer extends Thread {
 			outputStream.flush();
 		}
 
-		public void sendFrame(byte[] frame) throws IOException {
-			outputStream.write(
-					("--BoundaryString\r\nContent-Type: image/jpeg\r\nContent-Length: " + frame.length + "\r\n\r\n")
+		public void sendFrame(byte[] frame, long captureTime, long encodeTime) throws IOException {
+			outputStream.write(("--BoundaryString\r\nContent-Type: image/jpeg\r\nContent-Length: " + frame.length
+					+ "\r\n" + CAPTURE_TIME_HEADER + ": " + captureTime + "\r\n" + ENCODE_TIME_HEADER + ": "
+					+ encodeTime + "\r\n" + SEND_TIME_HEADER + ": " + VisionUtil.getMicros() + "\r\n\r\n")
 							.getBytes());
 			outputStream.write(frame);
 
@@ -30,6 +30,7 @@ import java.net.Socket;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 
+import org.aluminati3555.aluminativision.MatArena;
 import org.aluminati3555.aluminativision.VisionUtil;
 import org.aluminati3555.aluminativision.net.NetworkConfig;
 import org.aluminati3555.aluminativision.pipeline.ConfigurablePipeline.PipelineMode;
@@ -195,6 +196,8 @@ public class WebServer extends Thread {
 					} catch (NumberFormatException e) {
 						throw new IOException();
 					}
+				} else if (command[1].equals("metrics")) {
+					response = MatArena.getMetrics();
 				} else if (command[1].equals("pipeline")) {
 					if (command.length < 4) {
 						throw new IOException();
@@ -1,61 +1,111 @@
-private class DispatchThread extends Thread {
-		private Vector<Mat> frames;
-		private Hashtable<Mat, Double> fpsList;
+/**
+	 * This thread encodes and streams the newest frame. Frames are handed over
+	 * through a lock-free single producer, single consumer triple buffer, so the
+	 * vision thread never blocks and frames the stream cannot keep up with are
+	 * overwritten instead of queued. The thread parks while there is no new frame.
+	 *
+	 * Requires java.util.concurrent.atomic.AtomicInteger and
+	 * java.util.concurrent.locks.LockSupport in the enclosing file.
+	 */
+	private class DispatchThread extends Thread {
+		// The shared index has this bit set when it holds a frame that was not read
+		private static final int NEW_FRAME = 4;
+		private static final int INDEX_MASK = 3;
 
-		public synchronized void addFrame(Mat frame, double fps) {
-			frames.add(frame);
-			fpsList.put(frame, fps);
+		// Three slots that carry a frame and its fps together
+		private Mat[] frames;
+		private double[] fpsList;
+
+		// Owned by the producer, shared and owned by the consumer
+		private int writeIndex;
+		private AtomicInteger sharedIndex;
+		private int readIndex;
+
+		private Mat streamFrame;
+		private volatile long overwrittenFrames;
+
+		/**
+		 * Returns the number of frames that were replaced before they were streamed
+		 *
+		 * @return
+		 */
+		public long getOverwrittenFrames() {
+			return overwrittenFrames;
+		}
+
+		/**
+		 * Publishes a frame. This must only be called from one thread.
+		 *
+		 * @param frame
+		 * @param fps
+		 */
+		public void addFrame(Mat frame, double fps) {
+			frame.copyTo(frames[writeIndex]);
+			fpsList[writeIndex] = fps;
+
+			int previous = sharedIndex.getAndSet(writeIndex | NEW_FRAME);
+			writeIndex = previous & INDEX_MASK;
+
+			if ((previous & NEW_FRAME) != 0) {
+				overwrittenFrames++;
+			}
+
+			LockSupport.unpark(this);
 		}
 
 		@Override
 		public void run() {
 			while (true) {
-				if (frames.size() > 0) {
-					Mat workingFrame;
-					double fps;
-					synchronized (this) {
-						workingFrame = frames.get(0);
-						fps = fpsList.get(workingFrame);
-					}
+				// Park until the producer publishes a frame
+				while ((sharedIndex.get() & NEW_FRAME) == 0) {
+					LockSupport.park(this);
+				}
 
-					VisionUtil.resize(workingFrame, STREAMING_WIDTH, STREAMING_HEIGHT);
+				readIndex = sharedIndex.getAndSet(readIndex) & INDEX_MASK;
 
-					double outputFPS = Double.parseDouble(decimalFormat.format(fps));
-					Imgproc.putText(workingFrame, outputFPS + " FPS", new Point(5, 10), 0, 0.25, new Scalar(0, 255, 0));
+				Mat workingFrame = frames[readIndex];
+				double fps = fpsList[readIndex];
 
-					// See this link for crosshair
-					// https://answers.opencv.org/question/22960/how-to-draw-crosshairsmarked-axes/
+				Imgproc.resize(workingFrame, streamFrame, new Size(STREAMING_WIDTH, STREAMING_HEIGHT));
 
-					Imgproc.line(workingFrame, new Point(workingFrame.width() / 2.0, workingFrame.height() / 2.0 - 8),
-							new Point(workingFrame.width() / 2.0, workingFrame.height() / 2.0 + 8),
-							new Scalar(0, 255, 0), 2);
+				double outputFPS = Double.parseDouble(decimalFormat.format(fps));
+				Imgproc.putText(streamFrame, outputFPS + " FPS", new Point(5, 10), 0, 0.25, new Scalar(0, 255, 0));
 
-					Imgproc.line(workingFrame, new Point(workingFrame.width() / 2.0 - 8, workingFrame.height() / 2.0),
-							new Point(workingFrame.width() / 2.0 + 8, workingFrame.height() / 2.0),
-							new Scalar(0, 255, 0), 2);
+				// See this link for crosshair
+				// https://answers.opencv.org/question/22960/how-to-draw-crosshairsmarked-axes/
 
-					compress(workingFrame);
+				Imgproc.line(streamFrame, new Point(streamFrame.width() / 2.0, streamFrame.height() / 2.0 - 8),
+						new Point(streamFrame.width() / 2.0, streamFrame.height() / 2.0 + 8),
+						new Scalar(0, 255, 0), 2);
 
-					byte[] buffer = getJPEGBytes(workingFrame);
-					workingFrame.release();
+				Imgproc.line(streamFrame, new Point(streamFrame.width() / 2.0 - 8, streamFrame.height() / 2.0),
+						new Point(streamFrame.width() / 2.0 + 8, streamFrame.height() / 2.0),
+						new Scalar(0, 255, 0), 2);
 
-					for (int i = 0; i < clients.size(); i++) {
-						try {
-							clients.get(i).sendFrame(buffer);
-						} catch (IOException e) {
-							clients.remove(i);
-							i--;
-						}
-					}
+				compress(streamFrame);
 
-					frames.remove(0);
-					fpsList.remove(workingFrame);
+				byte[] buffer = getJPEGBytes(streamFrame);
+
+				for (int i = 0; i < clients.size(); i++) {
+					try {
+						clients.get(i).sendFrame(buffer);
+					} catch (IOException e) {
+						clients.remove(i);
+						i--;
+					}
 				}
 			}
 		}
 
 		public DispatchThread() {
-			frames = new Vector<Mat>();
-			fpsList = new Hashtable<Mat, Double>();
+			frames = new Mat[] { new Mat(), new Mat(), new Mat() };
+			fpsList = new double[3];
+
+			writeIndex = 0;
+			sharedIndex = new AtomicInteger(1);
+			readIndex = 2;
+
+			streamFrame = new Mat();
+			overwrittenFrames = 0;
 		}
 	}
\ No newline at end of file
@@ -0,0 +1,42 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.training;
+
+import java.io.IOException;
+
+/**
+ * This program reports how the parallel trainer's throughput scales from one
+ * thread to every core.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class TrainingBenchmark {
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println(
+					"Usage: java -jar <jarname> <resource_directory> <hidden_layers> <neurons_per_layer> [epochs]");
+			System.exit(1);
+		}
+		String resourcePath = args[0];
+		int hiddenLayers = Integer.parseInt(args[1]);
+		int neuronsPerLayer = Integer.parseInt(args[2]);
+		int epochs = (args.length > 3) ? Integer.parseInt(args[3]) : 3;
+
+		// Correct input
+		if (!resourcePath.endsWith("/") && !resourcePath.endsWith("\\")) {
+			resourcePath += "/";
+		}
+
+		VisionTraining visionTraining = new VisionTraining(resourcePath, hiddenLayers, neuronsPerLayer);
+		visionTraining.constructNewNeuralNetwork();
+
+		DatasetCache datasetCache = visionTraining.loadDataset();
+		System.out.println(datasetCache.getSampleCount() + " samples");
+
+		visionTraining.reportScaling(datasetCache, Runtime.getRuntime().availableProcessors(), epochs);
+	}
+}
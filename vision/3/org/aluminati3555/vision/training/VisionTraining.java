@@ -39,6 +39,9 @@ public class VisionTraining {
 	// The maximum error for the neural network
 	public static final double MAX_ERROR = 0.0001;
 
+	// The compiled dataset in the resource directory
+	public static final String DATASET_FILENAME = "dataset.bin";
+
 	// The working directory for the training images
 	String resourcePath;
 
@@ -215,12 +218,28 @@ public class VisionTraining {
 		// Create rows for the right images
 		double[] rightOutput = { 0, 1 };
 		for (int i = 0; i < rightImages.size(); i++) {
-			inputs[leftImages.size() - 1 + i] = getImageAsArray(rightImages.get(i));
-			outputs[leftImages.size() - 1 + i] = rightOutput;
+			inputs[leftImages.size() + i] = getImageAsArray(rightImages.get(i));
+			outputs[leftImages.size() + i] = rightOutput;
 		}
 
-		MLDataSet dataSet = new BasicMLDataSet(inputs, outputs);
+		trainNetwork(new BasicMLDataSet(inputs, outputs));
+	}
+
+	/**
+	 * This method trains the network using a compiled dataset.
+	 * 
+	 * @param datasetCache The dataset.
+	 */
+	public void trainNetwork(DatasetCache datasetCache) {
+		trainNetwork(new BasicMLDataSet(datasetCache.getInputArrays(), datasetCache.getOutputArrays()));
+	}
 
+	/**
+	 * This method trains the network until the error is below the maximum.
+	 * 
+	 * @param dataSet The dataset.
+	 */
+	public void trainNetwork(MLDataSet dataSet) {
 		// Train network
 		ResilientPropagation resilientPropagation = new ResilientPropagation(neuralNetwork, dataSet);
 
@@ -234,6 +253,127 @@ public class VisionTraining {
 		resilientPropagation.finishTraining();
 	}
 
+	/**
+	 * This method creates a parallel trainer with a copy of the network's weights.
+	 * The network must use sigmoid activations after the input layer.
+	 * 
+	 * @param threads The number of threads to train on.
+	 * @return The trainer.
+	 */
+	public ParallelTrainer createTrainer(int threads) {
+		int layerCount = neuralNetwork.getLayerCount();
+
+		int[] layerSizes = new int[layerCount];
+		boolean[] biased = new boolean[layerCount];
+		for (int i = 0; i < layerCount; i++) {
+			layerSizes[i] = neuralNetwork.getLayerNeuronCount(i);
+			biased[i] = neuralNetwork.isLayerBiased(i);
+
+			if (i > 0 && !(neuralNetwork.getActivation(i) instanceof ActivationSigmoid)) {
+				throw new IllegalStateException("Layer " + i + " does not use a sigmoid activation");
+			}
+		}
+
+		ParallelTrainer parallelTrainer = new ParallelTrainer(layerSizes, biased, threads);
+
+		// Copy the weights, the bias neuron comes after the other neurons
+		for (int layer = 1; layer < layerCount; layer++) {
+			int fromCount = biased[layer - 1] ? layerSizes[layer - 1] + 1 : layerSizes[layer - 1];
+
+			for (int to = 0; to < layerSizes[layer]; to++) {
+				for (int from = 0; from < fromCount; from++) {
+					parallelTrainer.setWeight(layer, to, from, neuralNetwork.getWeight(layer - 1, from, to));
+				}
+			}
+		}
+
+		return parallelTrainer;
+	}
+
+	/**
+	 * This method copies the weights of a parallel trainer into the network.
+	 * 
+	 * @param parallelTrainer The trainer.
+	 */
+	public void applyTrainer(ParallelTrainer parallelTrainer) {
+		for (int layer = 1; layer < parallelTrainer.getLayerCount(); layer++) {
+			int fromCount = parallelTrainer.getLayerSize(layer - 1);
+			if (neuralNetwork.isLayerBiased(layer - 1)) {
+				fromCount++;
+			}
+
+			for (int to = 0; to < parallelTrainer.getLayerSize(layer); to++) {
+				for (int from = 0; from < fromCount; from++) {
+					neuralNetwork.setWeight(layer - 1, from, to, parallelTrainer.getWeight(layer, to, from));
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method trains the network with mini-batch gradient descent on several
+	 * threads, stopping when the validation error stops improving.
+	 * 
+	 * @param datasetCache The dataset.
+	 * @param threads      The number of threads to train on.
+	 */
+	public void trainNetworkParallel(DatasetCache datasetCache, int threads) {
+		ParallelTrainer parallelTrainer = createTrainer(threads);
+		parallelTrainer.setVerbose(true);
+		parallelTrainer.train(datasetCache);
+		applyTrainer(parallelTrainer);
+
+		System.out.println("Trained " + parallelTrainer.getEpochs() + " epochs on " + threads + " threads at "
+				+ (int) parallelTrainer.getSamplesPerSecond() + " samples/sec, validation error "
+				+ parallelTrainer.getBestValidationError());
+	}
+
+	/**
+	 * This method prints the training throughput from 1 to maxThreads threads.
+	 * Every run starts from the network's current weights, which are not changed.
+	 * 
+	 * @param datasetCache The dataset.
+	 * @param maxThreads   The largest number of threads.
+	 * @param epochs       The number of epochs per run.
+	 */
+	public void reportScaling(DatasetCache datasetCache, int maxThreads, int epochs) {
+		double baseline = 0;
+
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			ParallelTrainer parallelTrainer = createTrainer(threads);
+			parallelTrainer.setMaxEpochs(epochs);
+			parallelTrainer.setPatience(epochs);
+			parallelTrainer.train(datasetCache);
+
+			double samplesPerSecond = parallelTrainer.getSamplesPerSecond();
+			if (threads == 1) {
+				baseline = samplesPerSecond;
+			}
+
+			System.out.println(threads + " threads: " + (int) samplesPerSecond + " samples/sec, speedup "
+					+ (samplesPerSecond / baseline));
+		}
+	}
+
+	/**
+	 * This method opens the compiled dataset, compiling it from the images and
+	 * shards first if it is missing or they have changed.
+	 * 
+	 * @return The dataset.
+	 * @throws IOException
+	 */
+	public DatasetCache loadDataset() throws IOException {
+		File file = new File(resourcePath + DATASET_FILENAME);
+
+		DatasetCache datasetCache = DatasetCache.open(file, resourcePath);
+		if (datasetCache == null) {
+			System.out.println("Compiling dataset...");
+			datasetCache = DatasetCache.compile(this, file);
+		}
+
+		return datasetCache;
+	}
+
 	/**
 	 * This default constructor allows a value for the resource location to be set.
 	 * 
@@ -249,13 +389,14 @@ public class VisionTraining {
 		// Read arguments
 		if (args.length < 4) {
 			System.err.println(
-					"Usage: java -jar <jarname> <resource_directory> <output_filename> <hidden_layers> <neurons_per_layer>");
+					"Usage: java -jar <jarname> <resource_directory> <output_filename> <hidden_layers> <neurons_per_layer> [threads]");
 			System.exit(1);
 		}
 		String resourcePath = args[0];
 		String fileName = args[1];
 		int hiddenLayers = Integer.parseInt(args[2]);
 		int neuronsPerLayer = Integer.parseInt(args[3]);
+		int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
 
 		// Correct input
 		if (!resourcePath.endsWith("/") && !resourcePath.endsWith("\\")) {
@@ -268,19 +409,16 @@ public class VisionTraining {
 		System.out.println("Creating new neural network...");
 		visionTraining.constructNewNeuralNetwork();
 
-		// Load left training images
-		System.out.println("Loading left training images...");
-		ArrayList<BufferedImage> leftImages = visionTraining.loadLeftImages();
-		System.out.println(leftImages.size() + " images loaded");
-
-		// Load right training images
-		System.out.println("Loading right training images...");
-		ArrayList<BufferedImage> rightImages = visionTraining.loadRightImages();
-		System.out.println(rightImages.size() + " images loaded");
+		// Load the compiled dataset
+		System.out.println("Loading dataset...");
+		long start = System.nanoTime();
+		DatasetCache datasetCache = visionTraining.loadDataset();
+		System.out.println(datasetCache.getSampleCount() + " samples loaded in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
 
 		// Train network
 		System.out.println("Training neural network...");
-		visionTraining.trainNetwork(leftImages, rightImages);
+		visionTraining.trainNetworkParallel(datasetCache, threads);
 
 		// Save network
 		System.out.println("Saving neural network...");
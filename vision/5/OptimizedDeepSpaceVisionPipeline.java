@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * OptimizedDeepSpaceVisionPipeline class.
+ *
+ * <p>
+ * An OpenCV pipeline compiled from DeepSpaceVision.grip by PipelineCompiler.
+ * Removed steps nothing reads: Mask0.
+ * Fused steps: Blur0, HSL_Threshold0.
+ *
+ * @author GRIP
+ */
+public class OptimizedDeepSpaceVisionPipeline {
+	// The number of rows processed at a time by fused steps
+	private static final int STRIP_HEIGHT = 32;
+
+	// Constants
+	private static final Size BLUR_SIZE = new Size(5, 5);
+	private static final Scalar HSL_THRESHOLD_LOWER = new Scalar(0.0, 197.21223021582733, 0.0);
+	private static final Scalar HSL_THRESHOLD_UPPER = new Scalar(180.0, 255.0, 255.0);
+
+	// Outputs
+	private Mat hslThresholdOutput = new Mat();
+	private ArrayList<MatOfPoint> findContoursOutput = new ArrayList<MatOfPoint>();
+	private ArrayList<MatOfPoint> filterContoursOutput = new ArrayList<MatOfPoint>();
+
+	// Reused buffers
+	private Mat blurStrip = new Mat();
+	private Mat hslThresholdConverted = new Mat();
+	private Mat findContoursHierarchy = new Mat();
+	private int[] filterContoursPoints = new int[0];
+	private MatOfInt filterContoursHull = new MatOfInt();
+	private int[] filterContoursHullIndices = new int[0];
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * This is the primary method that runs the entire pipeline and updates the
+	 * outputs.
+	 */
+	public void process(Mat source0) {
+		int rows = source0.rows();
+		int cols = source0.cols();
+
+		// Steps Blur0 and HSL_Threshold0 run together on strips of rows
+		blurStrip.create(STRIP_HEIGHT, cols, source0.type());
+		hslThresholdOutput.create(rows, cols, CvType.CV_8UC1);
+		hslThresholdConverted.create(STRIP_HEIGHT, cols, CvType.makeType(blurStrip.depth(), 3));
+		for (int row = 0; row < rows; row += STRIP_HEIGHT) {
+			int stripRows = Math.min(STRIP_HEIGHT, rows - row);
+
+			// Step Blur0:
+			Mat source0Rows = source0.rowRange(row, row + stripRows);
+			Mat blurRows = blurStrip.rowRange(0, stripRows);
+			Imgproc.blur(source0Rows, blurRows, BLUR_SIZE);
+
+			// Step HSL_Threshold0:
+			Mat hslThresholdRows = hslThresholdOutput.rowRange(row, row + stripRows);
+			Mat hslThresholdConvertedRows = hslThresholdConverted.rowRange(0, stripRows);
+			Imgproc.cvtColor(blurRows, hslThresholdConvertedRows, Imgproc.COLOR_BGR2HLS);
+			Core.inRange(hslThresholdConvertedRows, HSL_THRESHOLD_LOWER, HSL_THRESHOLD_UPPER, hslThresholdRows);
+
+			source0Rows.release();
+			blurRows.release();
+			hslThresholdRows.release();
+			hslThresholdConvertedRows.release();
+		}
+
+		// Step Find_Contours0:
+		findContoursOutput.clear();
+		Imgproc.findContours(hslThresholdOutput, findContoursOutput, findContoursHierarchy, Imgproc.RETR_LIST,
+				Imgproc.CHAIN_APPROX_SIMPLE);
+
+		// Step Filter_Contours0:
+		filterContours(findContoursOutput, filterContoursOutput);
+	}
+
+	/**
+	 * This method is a generated getter for the output of a Filter_Contours.
+	 * 
+	 * @return ArrayList<MatOfPoint> output from Filter_Contours.
+	 */
+	public ArrayList<MatOfPoint> filterContoursOutput() {
+		return filterContoursOutput;
+	}
+
+	/**
+	 * Filters out contours that do not meet the criteria of Filter_Contours0.
+	 * 
+	 * @param inputContours is the input list of contours
+	 * @param output        is the the output list of contours
+	 */
+	private void filterContours(List<MatOfPoint> inputContours, List<MatOfPoint> output) {
+		output.clear();
+		for (int i = 0; i < inputContours.size(); i++) {
+			final MatOfPoint contour = inputContours.get(i);
+			final int vertexCount = contour.rows();
+			if (vertexCount < 4.0 || vertexCount > 1000.0)
+				continue;
+
+			// Read the points once
+			if (filterContoursPoints.length < vertexCount * 2) {
+				filterContoursPoints = new int[vertexCount * 4];
+			}
+			final int[] points = filterContoursPoints;
+			if (vertexCount > 0) {
+				contour.get(0, 0, points);
+			}
+
+			final int width = getWidth(points, vertexCount);
+			if (width > 1000.0)
+				continue;
+			final int height = getHeight(points, vertexCount);
+			if (height > 1000.0)
+				continue;
+			final double ratio = width / (double) height;
+			if (ratio < 0.5 || ratio > 1.0)
+				continue;
+			final double area = getArea(points, null, vertexCount);
+			if (area < 50.0)
+				continue;
+
+			// The hull is read as indices into the points already read
+			Imgproc.convexHull(contour, filterContoursHull);
+			final int hullCount = filterContoursHull.rows();
+			if (filterContoursHullIndices.length < hullCount) {
+				filterContoursHullIndices = new int[hullCount * 2];
+			}
+			if (hullCount > 0) {
+				filterContoursHull.get(0, 0, filterContoursHullIndices);
+			}
+			final double solid = 100 * area / getArea(points, filterContoursHullIndices, hullCount);
+			if (solid > 100.0)
+				continue;
+			output.add(contour);
+		}
+	}
+
+	/**
+	 * Returns the width of the bounding box of interleaved x, y points.
+	 */
+	private static int getWidth(int[] points, int count) {
+		return getExtent(points, count, 0);
+	}
+
+	/**
+	 * Returns the height of the bounding box of interleaved x, y points.
+	 */
+	private static int getHeight(int[] points, int count) {
+		return getExtent(points, count, 1);
+	}
+
+	private static int getExtent(int[] points, int count, int axis) {
+		if (count == 0) {
+			return 0;
+		}
+
+		int min = points[axis];
+		int max = min;
+		for (int i = 1; i < count; i++) {
+			int value = points[2 * i + axis];
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		return max - min + 1;
+	}
+
+	/**
+	 * Returns the area of a polygon of interleaved x, y points, visiting the points
+	 * in the order of indices if it is not null. The sum is exact for integer
+	 * points, so it matches Imgproc.contourArea.
+	 */
+	private static double getArea(int[] points, int[] indices, int count) {
+		if (count == 0) {
+			return 0;
+		}
+
+		int last = (indices == null) ? count - 1 : indices[count - 1];
+		long previousX = points[2 * last];
+		long previousY = points[2 * last + 1];
+
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			int index = (indices == null) ? i : indices[i];
+			long x = points[2 * index];
+			long y = points[2 * index + 1];
+
+			sum += previousX * y - previousY * x;
+			previousX = x;
+			previousY = y;
+		}
+
+		return Math.abs(sum * 0.5);
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * 
+ * This class compares the GRIP pipeline with the one generated by
+ * PipelineCompiler from DeepSpaceVision.grip
+ * 
+ * @author Caleb Heydon
+ * 
+ */
+
+public class PipelineBenchmark {
+	private static final int WARMUP_FRAMES = 50;
+
+	// Load native library
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * This method creates a frame with a few bright targets on a noisy background
+	 * 
+	 * @param width  The width
+	 * @param height The height
+	 * @return The frame
+	 */
+	public static Mat createFrame(int width, int height) {
+		Mat frame = new Mat(height, width, CvType.CV_8UC3);
+		Core.randu(frame, 0, 160);
+
+		for (int i = 0; i < 4; i++) {
+			int x = width / 8 + i * width / 5;
+			int y = height / 3;
+
+			Imgproc.rectangle(frame, new Point(x, y), new Point(x + width / 14, y + height / 5),
+					new Scalar(220, 255, 220), -1);
+		}
+
+		return frame;
+	}
+
+	/**
+	 * This method returns true if two lists of contours have the same points
+	 * 
+	 * @param expected The expected contours
+	 * @param actual   The actual contours
+	 * @return True if they are the same
+	 */
+	public static boolean compare(ArrayList<MatOfPoint> expected, ArrayList<MatOfPoint> actual) {
+		if (expected.size() != actual.size()) {
+			return false;
+		}
+
+		for (int i = 0; i < expected.size(); i++) {
+			if (!Arrays.equals(expected.get(i).toArray(), actual.get(i).toArray())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) {
+		Mat frame = (args.length > 0) ? Imgcodecs.imread(args[0]) : createFrame(640, 480);
+		int frames = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+
+		DeepSpaceVisionPipeline gripPipeline = new DeepSpaceVisionPipeline();
+		OptimizedDeepSpaceVisionPipeline optimizedPipeline = new OptimizedDeepSpaceVisionPipeline();
+
+		gripPipeline.process(frame);
+		optimizedPipeline.process(frame);
+		boolean equal = compare(gripPipeline.filterContoursOutput(), optimizedPipeline.filterContoursOutput());
+
+		System.out.println("Frame: " + frame.cols() + "x" + frame.rows() + ", contours: "
+				+ gripPipeline.filterContoursOutput().size() + ", identical: " + equal);
+
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			gripPipeline.process(frame);
+			optimizedPipeline.process(frame);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			gripPipeline.process(frame);
+		}
+		double gripTime = (System.nanoTime() - start) / 1e6 / frames;
+
+		start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			optimizedPipeline.process(frame);
+		}
+		double optimizedTime = (System.nanoTime() - start) / 1e6 / frames;
+
+		System.out.println("GRIP: " + gripTime + " ms, optimized: " + optimizedTime + " ms, speedup: "
+				+ (gripTime / optimizedTime));
+	}
+}
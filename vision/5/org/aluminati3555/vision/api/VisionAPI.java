@@ -10,10 +10,6 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 
-import org.encog.ml.data.MLData;
-import org.encog.ml.data.MLDataPair;
-import org.encog.ml.data.MLDataSet;
-import org.encog.ml.data.basic.BasicMLDataSet;
 import org.encog.neural.networks.BasicNetwork;
 import org.encog.persist.EncogDirectoryPersistence;
 
@@ -37,6 +33,18 @@ public class VisionAPI {
 	// This is the neural network that the program is using
 	BasicNetwork neuralNetwork;
 
+	// The flattened copy of the network used to run it
+	CompiledNetwork compiledNetwork;
+
+	// Filters and scales images straight into the reused input vectors
+	ImagePreprocessor imagePreprocessor;
+	double[] input;
+	float[] output;
+
+	// Reused buffers for batches of images
+	float[] batchInputs;
+	float[] batchOutputs;
+
 	/**
 	 * This method returns the neural network that is currently in use.
 	 * 
@@ -46,6 +54,15 @@ public class VisionAPI {
 		return neuralNetwork;
 	}
 
+	/**
+	 * This method returns the flattened copy of the neural network.
+	 * 
+	 * @return The compiled network.
+	 */
+	public CompiledNetwork getCompiledNetwork() {
+		return compiledNetwork;
+	}
+
 	/**
 	 * This method loads a previously saved neural network.
 	 * 
@@ -53,6 +70,7 @@ public class VisionAPI {
 	 */
 	public void loadNeuralNetwork(String path) {
 		neuralNetwork = (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(path));
+		compiledNetwork = CompiledNetwork.fromEncog(neuralNetwork);
 	}
 
 	/**
@@ -145,38 +163,69 @@ public class VisionAPI {
 
 	/**
 	 * This method runs the neural network on the image that is given. It will
-	 * filter the image and then scale it to 16x16.
+	 * filter the image and then scale it to 16x16. The image is not modified.
 	 * 
 	 * @param image The original image.
 	 * @return The side that the target belongs to.
 	 */
 	public Side runNetwork(BufferedImage image) {
-		// Filter the image
-		filterGreen(image);
-
-		// Scale the image
-		BufferedImage scaledImage = scaleImage(image);
+		// Filter and scale the image in one pass
+		imagePreprocessor.process(image, input);
 
 		// Run the network
+		compiledNetwork.compute(input, output);
+
+		return getSide(output, 0);
+	}
+
+	/**
+	 * This method runs the neural network on several images at once, such as
+	 * every candidate target in a frame.
+	 * 
+	 * @param images The images (they are not modified).
+	 * @param count  The number of images.
+	 * @param sides  The array the sides are written to (null for a network
+	 *               error).
+	 */
+	public void runNetwork(BufferedImage[] images, int count, Side[] sides) {
+		int inputCount = WIDTH * HEIGHT;
+		int outputCount = compiledNetwork.getOutputCount();
+
+		// The buffers only grow
+		if (batchInputs.length < count * inputCount) {
+			batchInputs = new float[count * inputCount];
+			batchOutputs = new float[count * outputCount];
+		}
+
+		for (int i = 0; i < count; i++) {
+			imagePreprocessor.process(images[i], batchInputs, i * inputCount);
+		}
 
-		double[][] inputs = new double[1][WIDTH * HEIGHT];
-		inputs[0] = getImageAsArray(scaledImage);
+		compiledNetwork.computeBatch(batchInputs, count, batchOutputs);
+
+		for (int i = 0; i < count; i++) {
+			sides[i] = getSide(batchOutputs, i * outputCount);
+		}
+	}
 
-		MLDataSet dataSet = new BasicMLDataSet(inputs, new double[][] { { 0, 0 } });
-		MLDataPair dataPair = dataSet.get(0);
-		
-		MLData outputData = neuralNetwork.compute(dataPair.getInput());
-		
-		if (outputData.getData()[0] > outputData.getData()[1]) {
+	/**
+	 * This method returns the side for the outputs of the network.
+	 * 
+	 * @param outputs The outputs.
+	 * @param offset  The position of the first output.
+	 * @return The side or null for a network error.
+	 */
+	private static Side getSide(float[] outputs, int offset) {
+		if (outputs[offset] > outputs[offset + 1]) {
 			// Left
 			return Side.LEFT;
 		}
-		
-		if (outputData.getData()[0] < outputData.getData()[1]) {
+
+		if (outputs[offset] < outputs[offset + 1]) {
 			// Right
 			return Side.RIGHT;
 		}
-		
+
 		// Network error
 		return null;
 	}
@@ -189,5 +238,12 @@ public class VisionAPI {
 	public VisionAPI(String neuralNetworkFilePath) {
 		// Load the neural network
 		loadNeuralNetwork(neuralNetworkFilePath);
+
+		imagePreprocessor = new ImagePreprocessor(WIDTH, HEIGHT, MIN_GREEN);
+		input = new double[WIDTH * HEIGHT];
+		output = new float[compiledNetwork.getOutputCount()];
+
+		batchInputs = new float[0];
+		batchOutputs = new float[0];
 	}
 }
\ No newline at end of file
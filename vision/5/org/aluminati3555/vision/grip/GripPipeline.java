@@ -0,0 +1,212 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.grip;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * This class is the stage graph of a pipeline saved by GRIP. Steps are kept in
+ * the order GRIP runs them, so every step comes after the steps it reads.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class GripPipeline {
+	private int sourceCount;
+	private ArrayList<GripStep> steps;
+
+	public int getSourceCount() {
+		return sourceCount;
+	}
+
+	public ArrayList<GripStep> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * This method finds a step by the name of its output.
+	 * 
+	 * @param outputName The output name, for example filterContoursOutput.
+	 * @return The step or null.
+	 */
+	public GripStep getStep(String outputName) {
+		for (GripStep step : steps) {
+			if (step.getOutputName().equals(outputName)) {
+				return step;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * This method returns the direct child elements with a tag name.
+	 * 
+	 * @param parent  The parent element.
+	 * @param tagName The tag name.
+	 * @return The children.
+	 */
+	private static ArrayList<Element> getChildren(Element parent, String tagName) {
+		ArrayList<Element> children = new ArrayList<Element>();
+
+		NodeList nodes = parent.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Node node = nodes.item(i);
+
+			if (node instanceof Element && (tagName == null || node.getNodeName().equals(tagName))) {
+				children.add((Element) node);
+			}
+		}
+
+		return children;
+	}
+
+	/**
+	 * This method returns the only child element with a tag name.
+	 * 
+	 * @param parent  The parent element.
+	 * @param tagName The tag name.
+	 * @return The child.
+	 */
+	private static Element getChild(Element parent, String tagName) {
+		ArrayList<Element> children = getChildren(parent, tagName);
+		if (children.size() != 1) {
+			throw new IllegalArgumentException("Expected one " + tagName + " in " + parent.getNodeName());
+		}
+
+		return children.get(0);
+	}
+
+	/**
+	 * This method reads the value saved for an input socket. Ranges are saved as a
+	 * list of doubles, everything else as text.
+	 * 
+	 * @param value The value element.
+	 * @return A double[] or a string.
+	 */
+	private static Object readValue(Element value) {
+		ArrayList<Element> numbers = getChildren(value, "double");
+		if (numbers.isEmpty()) {
+			return value.getTextContent().trim();
+		}
+
+		double[] range = new double[numbers.size()];
+		for (int i = 0; i < range.length; i++) {
+			range[i] = Double.parseDouble(numbers.get(i).getTextContent().trim());
+		}
+
+		return range;
+	}
+
+	/**
+	 * This method reads the steps of the pipeline.
+	 * 
+	 * @param root The pipeline element.
+	 */
+	private void readSteps(Element root) {
+		EnumMap<StepType, Integer> typeCounts = new EnumMap<StepType, Integer>(StepType.class);
+
+		for (Element element : getChildren(getChild(root, "steps"), "grip:Step")) {
+			StepType type = StepType.get(element.getAttribute("name"));
+
+			// GRIP numbers repeated steps of the same type
+			Integer count = typeCounts.get(type);
+			if (count == null) {
+				count = 0;
+			}
+			typeCounts.put(type, count + 1);
+
+			String name = (count == 0) ? type.getJavaName() : type.getJavaName() + count;
+			String label = type.getGripName().replace(' ', '_') + count;
+
+			ArrayList<Element> inputs = getChildren(element, "grip:Input");
+			GripStep step = new GripStep(steps.size(), type, name, label, inputs.size());
+
+			for (Element input : inputs) {
+				int socket = Integer.parseInt(input.getAttribute("socket"));
+
+				ArrayList<Element> value = getChildren(input, "value");
+				if (!value.isEmpty()) {
+					step.setValue(socket, readValue(value.get(0)));
+				}
+			}
+
+			steps.add(step);
+		}
+	}
+
+	/**
+	 * This method reads the connections between sources and steps.
+	 * 
+	 * @param root The pipeline element.
+	 */
+	private void readConnections(Element root) {
+		for (Element connection : getChildren(getChild(root, "connections"), "grip:Connection")) {
+			Element output = getChild(connection, "grip:Output");
+			Element input = getChild(connection, "grip:Input");
+
+			GripStep step = steps.get(Integer.parseInt(input.getAttribute("step")));
+			int socket = Integer.parseInt(input.getAttribute("socket"));
+
+			if (!output.getAttribute("socket").equals("0")) {
+				throw new IllegalArgumentException("Only the first output of a step can be connected");
+			}
+
+			if (output.hasAttribute("source")) {
+				step.connectSource(socket, Integer.parseInt(output.getAttribute("source")));
+			} else {
+				GripStep producer = steps.get(Integer.parseInt(output.getAttribute("step")));
+				if (producer.getIndex() >= step.getIndex()) {
+					throw new IllegalArgumentException(step + " reads " + producer + " which runs after it");
+				}
+
+				step.connectStep(socket, producer.getIndex());
+				producer.getConsumers().add(step);
+			}
+		}
+	}
+
+	/**
+	 * This method loads a pipeline saved by GRIP.
+	 * 
+	 * @param file The .grip file.
+	 * @return The pipeline.
+	 * @throws IOException If the file could not be read.
+	 */
+	public static GripPipeline load(File file) throws IOException {
+		Document document;
+		try {
+			document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Unable to parse " + file, e);
+		}
+
+		Element root = document.getDocumentElement();
+
+		GripPipeline pipeline = new GripPipeline();
+		pipeline.sourceCount = getChildren(getChild(root, "sources"), null).size();
+		pipeline.readSteps(root);
+		pipeline.readConnections(root);
+
+		return pipeline;
+	}
+
+	private GripPipeline() {
+		steps = new ArrayList<GripStep>();
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.grip;
+
+import java.util.ArrayList;
+
+/**
+ * This class is one step of a GRIP pipeline. It stores the constant value of
+ * each input socket and where each connected input comes from.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class GripStep {
+	// The position of the step in the pipeline
+	private int index;
+	private StepType type;
+
+	// The name of the output in generated code, for example blurOutput
+	private String name;
+
+	// The label used in comments, for example Blur0
+	private String label;
+
+	// The constant value of each input socket, or null if it is connected
+	private Object[] values;
+
+	// The step or source connected to each input socket, or -1
+	private int[] inputSteps;
+	private int[] inputSources;
+
+	// The steps that read the output
+	private ArrayList<GripStep> consumers;
+
+	public int getIndex() {
+		return index;
+	}
+
+	public StepType getType() {
+		return type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getOutputName() {
+		return name + "Output";
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public int getInputCount() {
+		return values.length;
+	}
+
+	public int getInputStep(int socket) {
+		return inputSteps[socket];
+	}
+
+	public int getInputSource(int socket) {
+		return inputSources[socket];
+	}
+
+	public ArrayList<GripStep> getConsumers() {
+		return consumers;
+	}
+
+	/**
+	 * This method returns the constant value of a socket.
+	 * 
+	 * @param socket The socket.
+	 * @return The value.
+	 */
+	public Object getValue(int socket) {
+		if (values[socket] == null) {
+			throw new IllegalStateException(label + " socket " + socket + " has no value");
+		}
+
+		return values[socket];
+	}
+
+	public double getDouble(int socket) {
+		Object value = getValue(socket);
+		if (value instanceof double[]) {
+			throw new IllegalStateException(label + " socket " + socket + " is a range");
+		}
+
+		return Double.parseDouble(value.toString());
+	}
+
+	public double[] getRange(int socket) {
+		Object value = getValue(socket);
+		if (!(value instanceof double[])) {
+			throw new IllegalStateException(label + " socket " + socket + " is not a range");
+		}
+
+		return (double[]) value;
+	}
+
+	public boolean getBoolean(int socket) {
+		return Boolean.parseBoolean(getValue(socket).toString());
+	}
+
+	public String getString(int socket) {
+		return getValue(socket).toString();
+	}
+
+	void setValue(int socket, Object value) {
+		values[socket] = value;
+	}
+
+	void connectStep(int socket, int step) {
+		inputSteps[socket] = step;
+	}
+
+	void connectSource(int socket, int source) {
+		inputSources[socket] = source;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+	/**
+	 * This constructor creates a step with nothing connected.
+	 * 
+	 * @param index      The position of the step.
+	 * @param type       The operation.
+	 * @param name       The name used in generated code.
+	 * @param label      The label used in comments.
+	 * @param inputCount The number of input sockets.
+	 */
+	public GripStep(int index, StepType type, String name, String label, int inputCount) {
+		this.index = index;
+		this.type = type;
+		this.name = name;
+		this.label = label;
+
+		values = new Object[inputCount];
+		inputSteps = new int[inputCount];
+		inputSources = new int[inputCount];
+		for (int i = 0; i < inputCount; i++) {
+			inputSteps[i] = -1;
+			inputSources[i] = -1;
+		}
+
+		consumers = new ArrayList<GripStep>();
+	}
+}
@@ -0,0 +1,915 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.grip;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
+
+/**
+ * This class turns a pipeline saved by GRIP into an optimized pipeline class.
+ * Unlike the code GRIP generates, steps whose output nobody asked for are
+ * removed, neighbouring blur and pixel-wise steps run together on strips of
+ * rows so a strip is still in cache when the next step reads it, intermediate
+ * images that are only used inside a strip shrink to one strip, and the
+ * contour filter reads each contour's points once instead of through per-point
+ * JNI calls.
+ * 
+ * The generated class has the same process method and getters as the GRIP
+ * class for the outputs that are kept, and produces the same outputs.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class PipelineCompiler {
+	// The default number of rows processed at a time by fused steps
+	public static final int DEFAULT_STRIP_HEIGHT = 32;
+
+	private GripPipeline pipeline;
+	private String className;
+	private String packageName;
+	private LinkedHashSet<String> outputs;
+	private int stripHeight;
+
+	// The analysis of each step
+	private boolean[] live;
+	private int[] groups;
+	private boolean[] materialized;
+
+	// The parts of the generated class
+	private TreeSet<String> imports;
+	private StringBuilder constants;
+	private StringBuilder fields;
+	private StringBuilder buffers;
+	private StringBuilder process;
+	private StringBuilder getters;
+	private StringBuilder methods;
+
+	public void setPackageName(String packageName) {
+		this.packageName = packageName;
+	}
+
+	public void setStripHeight(int stripHeight) {
+		this.stripHeight = stripHeight;
+	}
+
+	/**
+	 * This method marks a step and every step it reads as live.
+	 * 
+	 * @param step The step.
+	 */
+	private void markLive(GripStep step) {
+		if (live[step.getIndex()]) {
+			return;
+		}
+
+		live[step.getIndex()] = true;
+
+		for (int socket = 0; socket < step.getInputCount(); socket++) {
+			if (step.getInputStep(socket) != -1) {
+				markLive(pipeline.getSteps().get(step.getInputStep(socket)));
+			}
+		}
+	}
+
+	/**
+	 * This method returns true if a step can run on a strip of rows. A blur only
+	 * can if OpenCV reads the rows around a strip from the full image, which it
+	 * does for the box and gaussian filters.
+	 * 
+	 * @param step The step.
+	 * @return True if the step can run on strips.
+	 */
+	private boolean isStripable(GripStep step) {
+		if (!step.getType().isStripable()) {
+			return false;
+		}
+
+		if (step.getType() == StepType.BLUR) {
+			String blurType = getBlurType(step);
+			return blurType.equals("BOX") || blurType.equals("GAUSSIAN");
+		}
+
+		return true;
+	}
+
+	/**
+	 * This method finds the live steps, groups neighbouring stripable steps and
+	 * decides which outputs need a full size image.
+	 */
+	private void analyze() {
+		ArrayList<GripStep> steps = pipeline.getSteps();
+
+		live = new boolean[steps.size()];
+		for (String output : outputs) {
+			GripStep step = pipeline.getStep(output);
+			if (step == null) {
+				throw new IllegalArgumentException("The pipeline has no output named " + output);
+			}
+
+			markLive(step);
+		}
+
+		groups = new int[steps.size()];
+		Arrays.fill(groups, -1);
+
+		int groupCount = 0;
+		int currentGroup = -1;
+		for (GripStep step : steps) {
+			if (!live[step.getIndex()]) {
+				continue;
+			}
+
+			if (!isStripable(step)) {
+				currentGroup = -1;
+				continue;
+			}
+
+			// A blur needs the rows around the strip, so its input must be complete
+			boolean join = currentGroup != -1;
+			if (join && step.getType() == StepType.BLUR && step.getInputStep(0) != -1
+					&& groups[step.getInputStep(0)] == currentGroup) {
+				join = false;
+			}
+
+			if (!join) {
+				currentGroup = groupCount++;
+			}
+
+			groups[step.getIndex()] = currentGroup;
+		}
+
+		materialized = new boolean[steps.size()];
+		for (GripStep step : steps) {
+			int index = step.getIndex();
+			if (!live[index]) {
+				continue;
+			}
+
+			materialized[index] = groups[index] == -1 || outputs.contains(step.getOutputName());
+			for (GripStep consumer : step.getConsumers()) {
+				if (live[consumer.getIndex()] && groups[consumer.getIndex()] != groups[index]) {
+					materialized[index] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method returns the blur type of a blur step as an enum name.
+	 * 
+	 * @param step The step.
+	 * @return BOX, GAUSSIAN, MEDIAN or BILATERAL.
+	 */
+	private static String getBlurType(GripStep step) {
+		String type = step.getString(1);
+
+		if (type.equals("Box Blur")) {
+			return "BOX";
+		} else if (type.equals("Gaussian Blur")) {
+			return "GAUSSIAN";
+		} else if (type.equals("Median Filter")) {
+			return "MEDIAN";
+		} else if (type.equals("Bilateral Filter")) {
+			return "BILATERAL";
+		}
+
+		return type;
+	}
+
+	/**
+	 * This method returns the blur radius the same way the GRIP blur rounds it.
+	 * 
+	 * @param step The step.
+	 * @return The radius.
+	 */
+	private static int getBlurRadius(GripStep step) {
+		return (int) (step.getDouble(2) + 0.5);
+	}
+
+	/**
+	 * This method returns a double as Java source.
+	 * 
+	 * @param value The value.
+	 * @return The literal.
+	 */
+	private static String literal(double value) {
+		if (value == Double.POSITIVE_INFINITY) {
+			return "Double.POSITIVE_INFINITY";
+		} else if (value == Double.NEGATIVE_INFINITY) {
+			return "Double.NEGATIVE_INFINITY";
+		}
+
+		return Double.toString(value);
+	}
+
+	/**
+	 * This method turns a name like hslThreshold into HSL_THRESHOLD.
+	 * 
+	 * @param name The name.
+	 * @return The constant name.
+	 */
+	private static String constantName(String name) {
+		return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+	}
+
+	private static void line(StringBuilder builder, int indent, String text) {
+		for (int i = 0; i < indent; i++) {
+			builder.append('\t');
+		}
+
+		builder.append(text).append('\n');
+	}
+
+	/**
+	 * This method returns the name of the image connected to a socket outside a
+	 * strip loop.
+	 * 
+	 * @param step   The step.
+	 * @param socket The socket.
+	 * @return The name.
+	 */
+	private String getInputName(GripStep step, int socket) {
+		if (step.getInputSource(socket) != -1) {
+			return "source" + step.getInputSource(socket);
+		}
+
+		if (step.getInputStep(socket) == -1) {
+			throw new IllegalArgumentException(step + " socket " + socket + " is not connected");
+		}
+
+		GripStep producer = pipeline.getSteps().get(step.getInputStep(socket));
+		return materialized[producer.getIndex()] ? producer.getOutputName() : producer.getName() + "Strip";
+	}
+
+	/**
+	 * This method returns the name of the image an output is stored in.
+	 * 
+	 * @param step The step.
+	 * @return The name.
+	 */
+	private String getStorageName(GripStep step) {
+		return materialized[step.getIndex()] ? step.getOutputName() : step.getName() + "Strip";
+	}
+
+	/**
+	 * This method adds the field for an output and, if it was asked for, its
+	 * getter.
+	 * 
+	 * @param step The step.
+	 */
+	private void addOutput(GripStep step) {
+		String type = step.getType().hasContourOutput() ? "ArrayList<MatOfPoint>" : "Mat";
+
+		if (step.getType().hasContourOutput()) {
+			imports.add("java.util.ArrayList");
+			imports.add("org.opencv.core.MatOfPoint");
+			line(fields, 1, "private ArrayList<MatOfPoint> " + step.getOutputName() + " = new ArrayList<MatOfPoint>();");
+		} else if (materialized[step.getIndex()]) {
+			line(fields, 1, "private Mat " + step.getOutputName() + " = new Mat();");
+		} else {
+			line(buffers, 1, "private Mat " + step.getName() + "Strip = new Mat();");
+		}
+
+		if (!outputs.contains(step.getOutputName())) {
+			return;
+		}
+
+		String gripName = step.getType().getGripName().replace(' ', '_');
+		line(getters, 0, "");
+		line(getters, 1, "/**");
+		line(getters, 1, " * This method is a generated getter for the output of a " + gripName + ".");
+		line(getters, 1, " * ");
+		line(getters, 1, " * @return " + type + " output from " + gripName + ".");
+		line(getters, 1, " */");
+		line(getters, 1, "public " + type + " " + step.getOutputName() + "() {");
+		line(getters, 2, "return " + step.getOutputName() + ";");
+		line(getters, 1, "}");
+	}
+
+	/**
+	 * This method emits a group of steps that run together on strips of rows.
+	 * 
+	 * @param group The steps.
+	 */
+	private void emitGroup(ArrayList<GripStep> group) {
+		StringBuilder labels = new StringBuilder();
+		for (int i = 0; i < group.size(); i++) {
+			if (i > 0) {
+				labels.append((i == group.size() - 1) ? " and " : ", ");
+			}
+			labels.append(group.get(i).getLabel());
+		}
+
+		line(process, 0, "");
+		if (group.size() > 1) {
+			line(process, 2, "// Steps " + labels + " run together on strips of rows");
+		} else {
+			line(process, 2, "// Step " + labels + " runs on strips of rows");
+		}
+
+		// Allocate the outputs before the loop
+		for (GripStep step : group) {
+			String input = getInputName(step, 0);
+			String rows = materialized[step.getIndex()] ? "rows" : "STRIP_HEIGHT";
+			String storage = getStorageName(step);
+
+			switch (step.getType()) {
+			case BLUR:
+			case MASK:
+				line(process, 2, storage + ".create(" + rows + ", cols, " + input + ".type());");
+				break;
+			case HSL_THRESHOLD:
+			case HSV_THRESHOLD:
+				line(process, 2, storage + ".create(" + rows + ", cols, CvType.CV_8UC1);");
+				line(process, 2, step.getName() + "Converted.create(STRIP_HEIGHT, cols, CvType.makeType(" + input
+						+ ".depth(), 3));");
+				imports.add("org.opencv.core.CvType");
+				break;
+			default:
+				throw new IllegalStateException(step + " can not run on strips");
+			}
+		}
+
+		line(process, 2, "for (int row = 0; row < rows; row += STRIP_HEIGHT) {");
+		line(process, 3, "int stripRows = Math.min(STRIP_HEIGHT, rows - row);");
+
+		// The row views created in this strip, released at the end of it
+		ArrayList<String> views = new ArrayList<String>();
+		for (GripStep step : group) {
+			line(process, 0, "");
+			line(process, 3, "// Step " + step.getLabel() + ":");
+
+			// Views of the inputs that come from outside the group
+			for (int socket = 0; socket < step.getInputCount(); socket++) {
+				boolean image = step.getInputSource(socket) != -1
+						|| (step.getInputStep(socket) != -1 && groups[step.getInputStep(socket)] != groups[step.getIndex()]);
+				String view = image ? getInputName(step, socket) + "Rows" : null;
+
+				if (view != null && !views.contains(view)) {
+					line(process, 3, "Mat " + view + " = " + getInputName(step, socket) + ".rowRange(row, row + stripRows);");
+					views.add(view);
+				}
+			}
+
+			String output = step.getName() + "Rows";
+			String outputRange = materialized[step.getIndex()] ? "(row, row + stripRows)" : "(0, stripRows)";
+			line(process, 3, "Mat " + output + " = " + getStorageName(step) + ".rowRange" + outputRange + ";");
+			views.add(output);
+
+			String input = getRowsName(step, 0);
+			String constant = constantName(step.getName());
+
+			switch (step.getType()) {
+			case BLUR:
+				int radius = getBlurRadius(step);
+				imports.add("org.opencv.core.Size");
+				imports.add("org.opencv.imgproc.Imgproc");
+
+				if (getBlurType(step).equals("BOX")) {
+					int kernelSize = 2 * radius + 1;
+					line(constants, 1, "private static final Size " + constant + "_SIZE = new Size(" + kernelSize + ", "
+							+ kernelSize + ");");
+					line(process, 3, "Imgproc.blur(" + input + ", " + output + ", " + constant + "_SIZE);");
+				} else {
+					int kernelSize = 6 * radius + 1;
+					line(constants, 1, "private static final Size " + constant + "_SIZE = new Size(" + kernelSize + ", "
+							+ kernelSize + ");");
+					line(process, 3, "Imgproc.GaussianBlur(" + input + ", " + output + ", " + constant + "_SIZE, "
+							+ radius + ");");
+				}
+				break;
+			case HSL_THRESHOLD:
+			case HSV_THRESHOLD:
+				emitThreshold(step, input, output, views);
+				break;
+			case MASK:
+				imports.add("org.opencv.core.Scalar");
+				line(constants, 1, "private static final Scalar " + constant + "_BACKGROUND = Scalar.all(0);");
+				line(process, 3, output + ".setTo(" + constant + "_BACKGROUND);");
+				line(process, 3, input + ".copyTo(" + output + ", " + getRowsName(step, 1) + ");");
+				break;
+			default:
+				break;
+			}
+		}
+
+		line(process, 0, "");
+		for (String view : views) {
+			line(process, 3, view + ".release();");
+		}
+		line(process, 2, "}");
+	}
+
+	/**
+	 * This method returns the name of the row view of a socket inside a strip
+	 * loop.
+	 * 
+	 * @param step   The step.
+	 * @param socket The socket.
+	 * @return The name.
+	 */
+	private String getRowsName(GripStep step, int socket) {
+		if (step.getInputSource(socket) != -1) {
+			return "source" + step.getInputSource(socket) + "Rows";
+		}
+
+		GripStep producer = pipeline.getSteps().get(step.getInputStep(socket));
+		if (groups[producer.getIndex()] == groups[step.getIndex()]) {
+			return producer.getName() + "Rows";
+		}
+
+		return producer.getOutputName() + "Rows";
+	}
+
+	/**
+	 * This method emits an HSL or HSV threshold inside a strip loop.
+	 * 
+	 * @param step   The step.
+	 * @param input  The input rows.
+	 * @param output The output rows.
+	 * @param views  The row views of the strip.
+	 */
+	private void emitThreshold(GripStep step, String input, String output, ArrayList<String> views) {
+		double[] hue = step.getRange(1);
+		double[] saturation = step.getRange(2);
+		double[] third = step.getRange(3);
+
+		String constant = constantName(step.getName());
+		String converted = step.getName() + "ConvertedRows";
+
+		// HLS stores luminance before saturation
+		String lower;
+		String upper;
+		String conversion;
+		if (step.getType() == StepType.HSL_THRESHOLD) {
+			lower = literal(hue[0]) + ", " + literal(third[0]) + ", " + literal(saturation[0]);
+			upper = literal(hue[1]) + ", " + literal(third[1]) + ", " + literal(saturation[1]);
+			conversion = "Imgproc.COLOR_BGR2HLS";
+		} else {
+			lower = literal(hue[0]) + ", " + literal(saturation[0]) + ", " + literal(third[0]);
+			upper = literal(hue[1]) + ", " + literal(saturation[1]) + ", " + literal(third[1]);
+			conversion = "Imgproc.COLOR_BGR2HSV";
+		}
+
+		imports.add("org.opencv.core.Core");
+		imports.add("org.opencv.core.Scalar");
+		imports.add("org.opencv.imgproc.Imgproc");
+
+		line(constants, 1, "private static final Scalar " + constant + "_LOWER = new Scalar(" + lower + ");");
+		line(constants, 1, "private static final Scalar " + constant + "_UPPER = new Scalar(" + upper + ");");
+		line(buffers, 1, "private Mat " + step.getName() + "Converted = new Mat();");
+
+		line(process, 3, "Mat " + converted + " = " + step.getName() + "Converted.rowRange(0, stripRows);");
+		views.add(converted);
+
+		line(process, 3, "Imgproc.cvtColor(" + input + ", " + converted + ", " + conversion + ");");
+		line(process, 3, "Core.inRange(" + converted + ", " + constant + "_LOWER, " + constant + "_UPPER, " + output + ");");
+	}
+
+	/**
+	 * This method emits a step that runs on whole images.
+	 * 
+	 * @param step The step.
+	 */
+	private void emitStep(GripStep step) {
+		line(process, 0, "");
+		line(process, 2, "// Step " + step.getLabel() + ":");
+
+		String output = step.getOutputName();
+		imports.add("org.opencv.imgproc.Imgproc");
+
+		switch (step.getType()) {
+		case BLUR:
+			int kernelSize = 2 * getBlurRadius(step) + 1;
+			if (getBlurType(step).equals("MEDIAN")) {
+				line(process, 2, "Imgproc.medianBlur(" + getInputName(step, 0) + ", " + output + ", " + kernelSize + ");");
+			} else {
+				int radius = getBlurRadius(step);
+				line(process, 2, "Imgproc.bilateralFilter(" + getInputName(step, 0) + ", " + output + ", -1, " + radius
+						+ ", " + radius + ");");
+			}
+			break;
+		case FIND_CONTOURS:
+			String mode = step.getBoolean(1) ? "Imgproc.RETR_EXTERNAL" : "Imgproc.RETR_LIST";
+			line(buffers, 1, "private Mat " + step.getName() + "Hierarchy = new Mat();");
+			line(process, 2, output + ".clear();");
+			line(process, 2, "Imgproc.findContours(" + getInputName(step, 0) + ", " + output + ", " + step.getName()
+					+ "Hierarchy, " + mode + ",");
+			line(process, 4, "Imgproc.CHAIN_APPROX_SIMPLE);");
+			break;
+		case FILTER_CONTOURS:
+			GripStep input = pipeline.getSteps().get(step.getInputStep(0));
+			line(process, 2, step.getName() + "(" + input.getOutputName() + ", " + output + ");");
+			emitFilterContours(step);
+			break;
+		default:
+			throw new IllegalStateException(step + " can not run on whole images");
+		}
+	}
+
+	/**
+	 * This method emits the method for a contour filter with its criteria folded
+	 * in. Checks that can never fail are left out and the cheap ones run first.
+	 * 
+	 * @param step The step.
+	 */
+	private void emitFilterContours(GripStep step) {
+		double minArea = step.getDouble(1);
+		double minPerimeter = step.getDouble(2);
+		double minWidth = step.getDouble(3);
+		double maxWidth = step.getDouble(4);
+		double minHeight = step.getDouble(5);
+		double maxHeight = step.getDouble(6);
+		double[] solidity = step.getRange(7);
+		double maxVertexCount = step.getDouble(8);
+		double minVertexCount = step.getDouble(9);
+		double minRatio = step.getDouble(10);
+		double maxRatio = step.getDouble(11);
+
+		String name = step.getName();
+		imports.add("java.util.List");
+		imports.add("org.opencv.core.MatOfPoint");
+
+		line(buffers, 1, "private int[] " + name + "Points = new int[0];");
+
+		StringBuilder body = new StringBuilder();
+		line(body, 0, "");
+		line(body, 1, "/**");
+		line(body, 1, " * Filters out contours that do not meet the criteria of " + step.getLabel() + ".");
+		line(body, 1, " * ");
+		line(body, 1, " * @param inputContours is the input list of contours");
+		line(body, 1, " * @param output        is the the output list of contours");
+		line(body, 1, " */");
+		line(body, 1, "private void " + name + "(List<MatOfPoint> inputContours, List<MatOfPoint> output) {");
+		line(body, 2, "output.clear();");
+		line(body, 2, "for (int i = 0; i < inputContours.size(); i++) {");
+		line(body, 3, "final MatOfPoint contour = inputContours.get(i);");
+		line(body, 3, "final int vertexCount = contour.rows();");
+		emitRangeCheck(body, "vertexCount", minVertexCount, maxVertexCount);
+
+		line(body, 0, "");
+		line(body, 3, "// Read the points once");
+		line(body, 3, "if (" + name + "Points.length < vertexCount * 2) {");
+		line(body, 4, name + "Points = new int[vertexCount * 4];");
+		line(body, 3, "}");
+		line(body, 3, "final int[] points = " + name + "Points;");
+		line(body, 3, "if (vertexCount > 0) {");
+		line(body, 4, "contour.get(0, 0, points);");
+		line(body, 3, "}");
+
+		line(body, 0, "");
+		line(body, 3, "final int width = getWidth(points, vertexCount);");
+		emitRangeCheck(body, "width", minWidth, maxWidth);
+		line(body, 3, "final int height = getHeight(points, vertexCount);");
+		emitRangeCheck(body, "height", minHeight, maxHeight);
+		if (minRatio > 0 || maxRatio != Double.POSITIVE_INFINITY) {
+			line(body, 3, "final double ratio = width / (double) height;");
+			emitRangeCheck(body, "ratio", minRatio, maxRatio);
+		}
+
+		line(body, 3, "final double area = getArea(points, null, vertexCount);");
+		emitRangeCheck(body, "area", minArea, Double.POSITIVE_INFINITY);
+
+		// The perimeter can not be negative
+		if (minPerimeter > 0) {
+			imports.add("org.opencv.core.CvType");
+			imports.add("org.opencv.core.MatOfPoint2f");
+			imports.add("org.opencv.imgproc.Imgproc");
+			line(buffers, 1, "private MatOfPoint2f " + name + "Perimeter = new MatOfPoint2f();");
+			line(body, 3, "contour.convertTo(" + name + "Perimeter, CvType.CV_32F);");
+			line(body, 3, "if (Imgproc.arcLength(" + name + "Perimeter, true) < " + literal(minPerimeter) + ")");
+			line(body, 4, "continue;");
+		}
+
+		if (solidity[0] > 0 || solidity[1] != Double.POSITIVE_INFINITY) {
+			imports.add("org.opencv.core.MatOfInt");
+			imports.add("org.opencv.imgproc.Imgproc");
+			line(buffers, 1, "private MatOfInt " + name + "Hull = new MatOfInt();");
+			line(buffers, 1, "private int[] " + name + "HullIndices = new int[0];");
+
+			line(body, 0, "");
+			line(body, 3, "// The hull is read as indices into the points already read");
+			line(body, 3, "Imgproc.convexHull(contour, " + name + "Hull);");
+			line(body, 3, "final int hullCount = " + name + "Hull.rows();");
+			line(body, 3, "if (" + name + "HullIndices.length < hullCount) {");
+			line(body, 4, name + "HullIndices = new int[hullCount * 2];");
+			line(body, 3, "}");
+			line(body, 3, "if (hullCount > 0) {");
+			line(body, 4, name + "Hull.get(0, 0, " + name + "HullIndices);");
+			line(body, 3, "}");
+			line(body, 3, "final double solid = 100 * area / getArea(points, " + name + "HullIndices, hullCount);");
+			emitRangeCheck(body, "solid", solidity[0], solidity[1]);
+		}
+
+		line(body, 3, "output.add(contour);");
+		line(body, 2, "}");
+		line(body, 1, "}");
+
+		methods.append(body);
+	}
+
+	/**
+	 * This method emits a range check, leaving out bounds that can never fail
+	 * for a value that is never negative.
+	 * 
+	 * @param body  The method body.
+	 * @param value The value.
+	 * @param min   The minimum.
+	 * @param max   The maximum.
+	 */
+	private static void emitRangeCheck(StringBuilder body, String value, double min, double max) {
+		String condition = null;
+		if (min > 0) {
+			condition = value + " < " + literal(min);
+		}
+
+		if (max != Double.POSITIVE_INFINITY) {
+			String upper = value + " > " + literal(max);
+			condition = (condition == null) ? upper : condition + " || " + upper;
+		}
+
+		if (condition != null) {
+			line(body, 3, "if (" + condition + ")");
+			line(body, 4, "continue;");
+		}
+	}
+
+	/**
+	 * This method emits the helpers used by the contour filters. They give the
+	 * same results as boundingRect and contourArea for integer points.
+	 */
+	private void emitContourHelpers() {
+		line(methods, 0, "");
+		line(methods, 1, "/**");
+		line(methods, 1, " * Returns the width of the bounding box of interleaved x, y points.");
+		line(methods, 1, " */");
+		line(methods, 1, "private static int getWidth(int[] points, int count) {");
+		line(methods, 2, "return getExtent(points, count, 0);");
+		line(methods, 1, "}");
+		line(methods, 0, "");
+		line(methods, 1, "/**");
+		line(methods, 1, " * Returns the height of the bounding box of interleaved x, y points.");
+		line(methods, 1, " */");
+		line(methods, 1, "private static int getHeight(int[] points, int count) {");
+		line(methods, 2, "return getExtent(points, count, 1);");
+		line(methods, 1, "}");
+		line(methods, 0, "");
+		line(methods, 1, "private static int getExtent(int[] points, int count, int axis) {");
+		line(methods, 2, "if (count == 0) {");
+		line(methods, 3, "return 0;");
+		line(methods, 2, "}");
+		line(methods, 0, "");
+		line(methods, 2, "int min = points[axis];");
+		line(methods, 2, "int max = min;");
+		line(methods, 2, "for (int i = 1; i < count; i++) {");
+		line(methods, 3, "int value = points[2 * i + axis];");
+		line(methods, 3, "min = Math.min(min, value);");
+		line(methods, 3, "max = Math.max(max, value);");
+		line(methods, 2, "}");
+		line(methods, 0, "");
+		line(methods, 2, "return max - min + 1;");
+		line(methods, 1, "}");
+		line(methods, 0, "");
+		line(methods, 1, "/**");
+		line(methods, 1, " * Returns the area of a polygon of interleaved x, y points, visiting the points");
+		line(methods, 1, " * in the order of indices if it is not null. The sum is exact for integer");
+		line(methods, 1, " * points, so it matches Imgproc.contourArea.");
+		line(methods, 1, " */");
+		line(methods, 1, "private static double getArea(int[] points, int[] indices, int count) {");
+		line(methods, 2, "if (count == 0) {");
+		line(methods, 3, "return 0;");
+		line(methods, 2, "}");
+		line(methods, 0, "");
+		line(methods, 2, "int last = (indices == null) ? count - 1 : indices[count - 1];");
+		line(methods, 2, "long previousX = points[2 * last];");
+		line(methods, 2, "long previousY = points[2 * last + 1];");
+		line(methods, 0, "");
+		line(methods, 2, "long sum = 0;");
+		line(methods, 2, "for (int i = 0; i < count; i++) {");
+		line(methods, 3, "int index = (indices == null) ? i : indices[i];");
+		line(methods, 3, "long x = points[2 * index];");
+		line(methods, 3, "long y = points[2 * index + 1];");
+		line(methods, 0, "");
+		line(methods, 3, "sum += previousX * y - previousY * x;");
+		line(methods, 3, "previousX = x;");
+		line(methods, 3, "previousY = y;");
+		line(methods, 2, "}");
+		line(methods, 0, "");
+		line(methods, 2, "return Math.abs(sum * 0.5);");
+		line(methods, 1, "}");
+	}
+
+	/**
+	 * This method generates the source of the optimized pipeline.
+	 * 
+	 * @param sourceName The name of the .grip file, used in the class comment.
+	 * @return The source.
+	 */
+	public String compile(String sourceName) {
+		if (pipeline.getSourceCount() != 1) {
+			throw new IllegalArgumentException("Only pipelines with one source are supported");
+		}
+
+		analyze();
+
+		imports = new TreeSet<String>();
+		constants = new StringBuilder();
+		fields = new StringBuilder();
+		buffers = new StringBuilder();
+		process = new StringBuilder();
+		getters = new StringBuilder();
+		methods = new StringBuilder();
+
+		imports.add("org.opencv.core.Core");
+		imports.add("org.opencv.core.Mat");
+
+		ArrayList<GripStep> steps = pipeline.getSteps();
+		ArrayList<String> removed = new ArrayList<String>();
+		ArrayList<String> fused = new ArrayList<String>();
+		boolean contourFilters = false;
+
+		int index = 0;
+		while (index < steps.size()) {
+			GripStep step = steps.get(index);
+			if (!live[index]) {
+				removed.add(step.getLabel());
+				index++;
+				continue;
+			}
+
+			addOutput(step);
+
+			if (groups[index] == -1) {
+				emitStep(step);
+				contourFilters |= step.getType() == StepType.FILTER_CONTOURS;
+				index++;
+				continue;
+			}
+
+			// Collect the rest of the group, skipping removed steps
+			ArrayList<GripStep> group = new ArrayList<GripStep>();
+			group.add(step);
+			index++;
+
+			while (index < steps.size() && (!live[index] || groups[index] == groups[step.getIndex()])) {
+				if (live[index]) {
+					addOutput(steps.get(index));
+					group.add(steps.get(index));
+				} else {
+					removed.add(steps.get(index).getLabel());
+				}
+				index++;
+			}
+
+			if (group.size() > 1) {
+				for (GripStep member : group) {
+					fused.add(member.getLabel());
+				}
+			}
+
+			emitGroup(group);
+		}
+
+		if (contourFilters) {
+			emitContourHelpers();
+		}
+
+		StringBuilder source = new StringBuilder();
+		if (packageName != null) {
+			line(source, 0, "package " + packageName + ";");
+			line(source, 0, "");
+		}
+
+		// Java imports come before the OpenCV imports
+		boolean javaImports = false;
+		for (String name : imports) {
+			if (name.startsWith("java.")) {
+				line(source, 0, "import " + name + ";");
+				javaImports = true;
+			}
+		}
+		if (javaImports) {
+			line(source, 0, "");
+		}
+		for (String name : imports) {
+			if (!name.startsWith("java.")) {
+				line(source, 0, "import " + name + ";");
+			}
+		}
+
+		line(source, 0, "");
+		line(source, 0, "/**");
+		line(source, 0, " * " + className + " class.");
+		line(source, 0, " *");
+		line(source, 0, " * <p>");
+		line(source, 0, " * An OpenCV pipeline compiled from " + sourceName + " by PipelineCompiler.");
+		if (!removed.isEmpty()) {
+			line(source, 0, " * Removed steps nothing reads: " + String.join(", ", removed) + ".");
+		}
+		if (!fused.isEmpty()) {
+			line(source, 0, " * Fused steps: " + String.join(", ", fused) + ".");
+		}
+		line(source, 0, " *");
+		line(source, 0, " * @author GRIP");
+		line(source, 0, " */");
+		line(source, 0, "public class " + className + " {");
+
+		if (process.indexOf("STRIP_HEIGHT") != -1) {
+			line(source, 1, "// The number of rows processed at a time by fused steps");
+			line(source, 1, "private static final int STRIP_HEIGHT = " + stripHeight + ";");
+			line(source, 0, "");
+		}
+
+		if (constants.length() > 0) {
+			line(source, 1, "// Constants");
+			source.append(constants);
+			line(source, 0, "");
+		}
+
+		line(source, 1, "// Outputs");
+		source.append(fields);
+		line(source, 0, "");
+
+		if (buffers.length() > 0) {
+			line(source, 1, "// Reused buffers");
+			source.append(buffers);
+			line(source, 0, "");
+		}
+
+		line(source, 1, "static {");
+		line(source, 2, "System.loadLibrary(Core.NATIVE_LIBRARY_NAME);");
+		line(source, 1, "}");
+		line(source, 0, "");
+		line(source, 1, "/**");
+		line(source, 1, " * This is the primary method that runs the entire pipeline and updates the");
+		line(source, 1, " * outputs.");
+		line(source, 1, " */");
+		line(source, 1, "public void process(Mat source0) {");
+		if (process.indexOf("STRIP_HEIGHT") != -1) {
+			line(source, 2, "int rows = source0.rows();");
+			line(source, 2, "int cols = source0.cols();");
+		}
+		source.append(process);
+		line(source, 1, "}");
+		source.append(getters);
+		source.append(methods);
+		line(source, 0, "}");
+
+		return source.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println(
+					"Usage: PipelineCompiler <pipeline.grip> <class_name> <output_directory> [outputs...] (default: the last step's output)");
+			return;
+		}
+
+		File file = new File(args[0]);
+		GripPipeline pipeline = GripPipeline.load(file);
+
+		LinkedHashSet<String> outputs = new LinkedHashSet<String>();
+		for (int i = 3; i < args.length; i++) {
+			outputs.add(args[i]);
+		}
+		if (outputs.isEmpty()) {
+			ArrayList<GripStep> steps = pipeline.getSteps();
+			outputs.add(steps.get(steps.size() - 1).getOutputName());
+		}
+
+		PipelineCompiler compiler = new PipelineCompiler(pipeline, args[1], outputs);
+		String source = compiler.compile(file.getName());
+
+		File output = new File(args[2], args[1] + ".java");
+		Writer writer = new FileWriter(output);
+		writer.write(source);
+		writer.close();
+
+		System.out.println("Wrote " + output + " keeping " + outputs);
+	}
+
+	/**
+	 * This constructor creates a compiler for a pipeline.
+	 * 
+	 * @param pipeline  The pipeline.
+	 * @param className The name of the generated class.
+	 * @param outputs   The outputs that need getters, everything else is removed
+	 *                  if nothing they need reads it.
+	 */
+	public PipelineCompiler(GripPipeline pipeline, String className, LinkedHashSet<String> outputs) {
+		this.pipeline = pipeline;
+		this.className = className;
+		this.outputs = outputs;
+
+		stripHeight = DEFAULT_STRIP_HEIGHT;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.grip;
+
+/**
+ * This enum is the GRIP operations the pipeline compiler understands.
+ * 
+ * @author Caleb Heydon
+ */
+
+public enum StepType {
+	BLUR("Blur", "blur", false, true),
+	HSL_THRESHOLD("HSL Threshold", "hslThreshold", false, true),
+	HSV_THRESHOLD("HSV Threshold", "hsvThreshold", false, true),
+	FIND_CONTOURS("Find Contours", "findContours", true, false),
+	FILTER_CONTOURS("Filter Contours", "filterContours", true, false),
+	MASK("Mask", "mask", false, true);
+
+	// The name GRIP saves the step as
+	private final String gripName;
+
+	// The name used for the step in generated code
+	private final String javaName;
+
+	// True if the output is a list of contours instead of a mat
+	private final boolean contourOutput;
+
+	// True if the step can run on a strip of rows at a time
+	private final boolean stripable;
+
+	public String getGripName() {
+		return gripName;
+	}
+
+	public String getJavaName() {
+		return javaName;
+	}
+
+	public boolean hasContourOutput() {
+		return contourOutput;
+	}
+
+	public boolean isStripable() {
+		return stripable;
+	}
+
+	/**
+	 * This method finds the type of a step from the name GRIP saved.
+	 * 
+	 * @param gripName The name.
+	 * @return The type.
+	 */
+	public static StepType get(String gripName) {
+		for (StepType type : values()) {
+			if (type.gripName.equals(gripName)) {
+				return type;
+			}
+		}
+
+		throw new IllegalArgumentException("Unsupported GRIP step: " + gripName);
+	}
+
+	StepType(String gripName, String javaName, boolean contourOutput, boolean stripable) {
+		this.gripName = gripName;
+		this.javaName = javaName;
+		this.contourOutput = contourOutput;
+		this.stripable = stripable;
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.api;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationLinear;
+import org.encog.engine.network.activation.ActivationSigmoid;
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+
+/**
+ * This class is a flattened copy of a trained feed forward network. Every
+ * layer's weights are stored in one float array, one row per neuron, and the
+ * activations are allocated once, so running the network does not create any
+ * objects. Many inputs can be run at once, in which case each weight row is
+ * reused for a tile of inputs before moving on.
+ * 
+ * A compiled network is not thread safe, use copy() to get one per thread.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class CompiledNetwork {
+	// The supported activation functions
+	public static final int ACTIVATION_LINEAR = 0;
+	public static final int ACTIVATION_SIGMOID = 1;
+	public static final int ACTIVATION_TANH = 2;
+
+	// The number of inputs run through a layer together
+	public static final int TILE_SIZE = 16;
+
+	// The number of neurons in each layer, layer 0 is the input
+	private int[] layerSizes;
+
+	// The weights of each layer as [neuron * inputs + input] and the biases
+	private float[][] weights;
+	private float[][] biases;
+	private int[] activations;
+
+	// The preallocated values of each layer for one tile
+	private float[][] values;
+
+	/**
+	 * This method returns the number of inputs.
+	 * 
+	 * @return The number of inputs.
+	 */
+	public int getInputCount() {
+		return layerSizes[0];
+	}
+
+	/**
+	 * This method returns the number of outputs.
+	 * 
+	 * @return The number of outputs.
+	 */
+	public int getOutputCount() {
+		return layerSizes[layerSizes.length - 1];
+	}
+
+	/**
+	 * This method runs the network on one input.
+	 * 
+	 * @param input  The input.
+	 * @param output The array the outputs are written to.
+	 */
+	public void compute(double[] input, float[] output) {
+		float[] first = values[0];
+		for (int i = 0; i < input.length; i++) {
+			first[i] = (float) input[i];
+		}
+
+		computeTile(1);
+		System.arraycopy(values[values.length - 1], 0, output, 0, getOutputCount());
+	}
+
+	/**
+	 * This method runs the network on many inputs stored one after another.
+	 * 
+	 * @param inputs  The inputs (count * getInputCount() values).
+	 * @param count   The number of inputs.
+	 * @param outputs The array the outputs are written to (count *
+	 *                getOutputCount() values).
+	 */
+	public void computeBatch(float[] inputs, int count, float[] outputs) {
+		int inputCount = getInputCount();
+		int outputCount = getOutputCount();
+
+		for (int start = 0; start < count; start += TILE_SIZE) {
+			int tileCount = Math.min(TILE_SIZE, count - start);
+
+			System.arraycopy(inputs, start * inputCount, values[0], 0, tileCount * inputCount);
+			computeTile(tileCount);
+			System.arraycopy(values[values.length - 1], 0, outputs, start * outputCount, tileCount * outputCount);
+		}
+	}
+
+	/**
+	 * This method runs the inputs in the first layer's values through the network.
+	 * 
+	 * @param tileCount The number of inputs.
+	 */
+	private void computeTile(int tileCount) {
+		for (int layer = 1; layer < layerSizes.length; layer++) {
+			float[] previous = values[layer - 1];
+			float[] current = values[layer];
+			float[] layerWeights = weights[layer];
+			float[] layerBiases = biases[layer];
+
+			int inputCount = layerSizes[layer - 1];
+			int neuronCount = layerSizes[layer];
+
+			for (int neuron = 0; neuron < neuronCount; neuron++) {
+				int row = neuron * inputCount;
+				float bias = layerBiases[neuron];
+
+				// Reuse the weight row for every input in the tile
+				for (int sample = 0; sample < tileCount; sample++) {
+					int offset = sample * inputCount;
+
+					// Four partial sums so the additions do not wait on each other
+					float sum0 = bias;
+					float sum1 = 0;
+					float sum2 = 0;
+					float sum3 = 0;
+
+					int i = 0;
+					for (; i + 3 < inputCount; i += 4) {
+						sum0 += layerWeights[row + i] * previous[offset + i];
+						sum1 += layerWeights[row + i + 1] * previous[offset + i + 1];
+						sum2 += layerWeights[row + i + 2] * previous[offset + i + 2];
+						sum3 += layerWeights[row + i + 3] * previous[offset + i + 3];
+					}
+
+					for (; i < inputCount; i++) {
+						sum0 += layerWeights[row + i] * previous[offset + i];
+					}
+
+					current[sample * neuronCount + neuron] = (sum0 + sum1) + (sum2 + sum3);
+				}
+			}
+
+			activate(activations[layer], current, tileCount * neuronCount);
+		}
+	}
+
+	/**
+	 * This method applies an activation function in place.
+	 * 
+	 * @param activation The activation function.
+	 * @param values     The values.
+	 * @param count      The number of values.
+	 */
+	private static void activate(int activation, float[] values, int count) {
+		switch (activation) {
+		case ACTIVATION_SIGMOID:
+			for (int i = 0; i < count; i++) {
+				values[i] = (float) (1 / (1 + Math.exp(-values[i])));
+			}
+			break;
+		case ACTIVATION_TANH:
+			for (int i = 0; i < count; i++) {
+				values[i] = (float) Math.tanh(values[i]);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * This method returns a network that shares the weights but has its own
+	 * activations so it can be used on another thread.
+	 * 
+	 * @return The copy.
+	 */
+	public CompiledNetwork copy() {
+		return new CompiledNetwork(layerSizes, weights, biases, activations);
+	}
+
+	/**
+	 * This method returns the activation id of an Encog activation function.
+	 * 
+	 * @param activationFunction The activation function.
+	 * @return The activation id.
+	 */
+	private static int getActivation(ActivationFunction activationFunction) {
+		if (activationFunction instanceof ActivationSigmoid) {
+			return ACTIVATION_SIGMOID;
+		}
+
+		if (activationFunction instanceof ActivationTANH) {
+			return ACTIVATION_TANH;
+		}
+
+		if (activationFunction instanceof ActivationLinear) {
+			return ACTIVATION_LINEAR;
+		}
+
+		throw new IllegalArgumentException("Unsupported activation function: " + activationFunction);
+	}
+
+	/**
+	 * This method flattens a trained Encog network.
+	 * 
+	 * @param network The network.
+	 * @return The compiled network.
+	 */
+	public static CompiledNetwork fromEncog(BasicNetwork network) {
+		int layerCount = network.getLayerCount();
+
+		int[] layerSizes = new int[layerCount];
+		for (int i = 0; i < layerCount; i++) {
+			layerSizes[i] = network.getLayerNeuronCount(i);
+		}
+
+		float[][] weights = new float[layerCount][];
+		float[][] biases = new float[layerCount][];
+		int[] activations = new int[layerCount];
+
+		for (int layer = 1; layer < layerCount; layer++) {
+			int inputCount = layerSizes[layer - 1];
+			int neuronCount = layerSizes[layer];
+
+			weights[layer] = new float[neuronCount * inputCount];
+			biases[layer] = new float[neuronCount];
+			activations[layer] = getActivation(network.getActivation(layer));
+
+			// The bias neuron comes after the other neurons of the previous layer
+			boolean biased = network.isLayerBiased(layer - 1);
+			double biasActivation = biased ? network.getLayerBiasActivation(layer - 1) : 0;
+
+			for (int neuron = 0; neuron < neuronCount; neuron++) {
+				for (int i = 0; i < inputCount; i++) {
+					weights[layer][neuron * inputCount + i] = (float) network.getWeight(layer - 1, i, neuron);
+				}
+
+				if (biased) {
+					biases[layer][neuron] = (float) (network.getWeight(layer - 1, inputCount, neuron)
+							* biasActivation);
+				}
+			}
+		}
+
+		return new CompiledNetwork(layerSizes, weights, biases, activations);
+	}
+
+	/**
+	 * This constructor creates a network from flattened weights.
+	 * 
+	 * @param layerSizes  The number of neurons in each layer.
+	 * @param weights     The weights of each layer after the input.
+	 * @param biases      The biases of each layer after the input.
+	 * @param activations The activation of each layer after the input.
+	 */
+	public CompiledNetwork(int[] layerSizes, float[][] weights, float[][] biases, int[] activations) {
+		this.layerSizes = layerSizes;
+		this.weights = weights;
+		this.biases = biases;
+		this.activations = activations;
+
+		values = new float[layerSizes.length][];
+		for (int i = 0; i < layerSizes.length; i++) {
+			values[i] = new float[TILE_SIZE * layerSizes[i]];
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ */
+
+package org.aluminati3555.vision.api;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataSet;
+
+/**
+ * This program reports the per frame latency of the old image based
+ * preprocessing with Encog and the single pass preprocessor with the compiled
+ * network, and how far the compiled network's outputs are from Encog's.
+ * 
+ * @author Caleb Heydon
+ */
+public class PreprocessBenchmark {
+	public static final int FRAMES = 200;
+
+	/**
+	 * This method copies an image so the old filter can modify it.
+	 * 
+	 * @param image The image.
+	 * @return The copy.
+	 */
+	public static BufferedImage copyImage(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+
+		Graphics graphics = copy.getGraphics();
+		graphics.drawImage(image, 0, 0, null);
+		graphics.dispose();
+
+		return copy;
+	}
+
+	/**
+	 * This method runs the network the way runNetwork used to.
+	 * 
+	 * @param visionAPI The api.
+	 * @param image     The image (it is modified).
+	 * @return The network output.
+	 */
+	public static MLData runOld(VisionAPI visionAPI, BufferedImage image) {
+		visionAPI.filterGreen(image);
+		BufferedImage scaledImage = visionAPI.scaleImage(image);
+
+		double[][] inputs = new double[1][VisionAPI.WIDTH * VisionAPI.HEIGHT];
+		inputs[0] = visionAPI.getImageAsArray(scaledImage);
+
+		MLDataSet dataSet = new BasicMLDataSet(inputs, new double[][] { { 0, 0 } });
+		return visionAPI.getNeuralNetwork().compute(dataSet.get(0).getInput());
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java -jar <jarname> <network_file> <image_file>");
+			System.exit(1);
+		}
+
+		VisionAPI visionAPI = new VisionAPI(args[0]);
+		BufferedImage image = ImageIO.read(new File(args[1]));
+
+		// The old filter modifies the image so every frame needs its own copy
+		BufferedImage[] copies = new BufferedImage[FRAMES];
+		for (int i = 0; i < FRAMES; i++) {
+			copies[i] = copyImage(image);
+		}
+
+		// Warm up both paths
+		for (int i = 0; i < FRAMES; i++) {
+			runOld(visionAPI, copyImage(image));
+			visionAPI.runNetwork(image);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < FRAMES; i++) {
+			runOld(visionAPI, copies[i]);
+		}
+		double oldTime = (System.nanoTime() - start) / 1000000.0 / FRAMES;
+
+		start = System.nanoTime();
+		for (int i = 0; i < FRAMES; i++) {
+			visionAPI.runNetwork(image);
+		}
+		double newTime = (System.nanoTime() - start) / 1000000.0 / FRAMES;
+
+		System.out.println("Image: " + image.getWidth() + "x" + image.getHeight());
+		System.out.println("Before: " + oldTime + " ms per frame");
+		System.out.println("After: " + newTime + " ms per frame");
+		System.out.println("Result: " + visionAPI.runNetwork(image));
+
+		// Compare the compiled network with Encog on the same inputs
+		double[] input = new double[VisionAPI.WIDTH * VisionAPI.HEIGHT];
+		new ImagePreprocessor(VisionAPI.WIDTH, VisionAPI.HEIGHT, VisionAPI.MIN_GREEN).process(image, input);
+
+		MLData expected = visionAPI.getNeuralNetwork().compute(new BasicMLData(input));
+		float[] actual = new float[expected.size()];
+		visionAPI.getCompiledNetwork().compute(input, actual);
+
+		double maxDifference = 0;
+		for (int i = 0; i < actual.length; i++) {
+			maxDifference = Math.max(maxDifference, Math.abs(expected.getData(i) - actual[i]));
+		}
+		System.out.println("Max difference from Encog: " + maxDifference);
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * This class compares the blob labeler with OpenCV's findContours and
+ * boundingRect on masks that look like a filtered frame: a few filled targets
+ * and some scattered noise on an otherwise empty image.
+ * 
+ * @author Caleb Heydon
+ */
+public class BlobBenchmark {
+	private static final int[][] RESOLUTIONS = { { 320, 240 }, { 640, 480 }, { 1280, 720 } };
+	private static final int TARGETS = 4;
+	private static final double NOISE = 0.001;
+	private static final int WARMUP_FRAMES = 50;
+	private static final int FRAMES = 500;
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * This method creates a mask with a few rectangular targets and noise.
+	 * 
+	 * @param width  The width.
+	 * @param height The height.
+	 * @param random The random number generator.
+	 * @return The mask.
+	 */
+	private static byte[] createMask(int width, int height, Random random) {
+		byte[] mask = new byte[width * height];
+
+		for (int i = 0; i < TARGETS; i++) {
+			int targetWidth = width / 20 + random.nextInt(width / 20);
+			int targetHeight = height / 8 + random.nextInt(height / 8);
+			int left = random.nextInt(width - targetWidth);
+			int top = random.nextInt(height - targetHeight);
+
+			for (int y = top; y < top + targetHeight; y++) {
+				for (int x = left; x < left + targetWidth; x++) {
+					mask[y * width + x] = 1;
+				}
+			}
+		}
+
+		for (int i = 0; i < mask.length; i++) {
+			if (random.nextDouble() < NOISE) {
+				mask[i] = 1;
+			}
+		}
+
+		return mask;
+	}
+
+	/**
+	 * This method returns the average time per frame of the blob labeler in
+	 * milliseconds.
+	 * 
+	 * @param mask   The mask.
+	 * @param width  The width.
+	 * @param height The height.
+	 * @return The time.
+	 */
+	private static double timeLabeler(byte[] mask, int width, int height) {
+		BlobLabeler blobLabeler = new BlobLabeler();
+
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			blobLabeler.label(mask, width, height);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < FRAMES; i++) {
+			blobLabeler.label(mask, width, height);
+		}
+
+		return (System.nanoTime() - start) / 1e6 / FRAMES;
+	}
+
+	/**
+	 * This method returns the average time per frame of findContours and
+	 * boundingRect in milliseconds. findContours changes its input, so the mask
+	 * is copied every frame like a pipeline would.
+	 * 
+	 * @param frame The mask.
+	 * @return The time.
+	 */
+	private static double timeContours(Mat frame) {
+		Mat copy = new Mat();
+		Mat hierarchy = new Mat();
+		ArrayList<MatOfPoint> contours = new ArrayList<MatOfPoint>();
+
+		long start = 0;
+		for (int i = 0; i < WARMUP_FRAMES + FRAMES; i++) {
+			if (i == WARMUP_FRAMES) {
+				start = System.nanoTime();
+			}
+
+			frame.copyTo(copy);
+			contours.clear();
+			Imgproc.findContours(copy, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+			for (int j = 0; j < contours.size(); j++) {
+				Rect rect = Imgproc.boundingRect(contours.get(j));
+				rect.area();
+				contours.get(j).release();
+			}
+		}
+
+		double time = (System.nanoTime() - start) / 1e6 / FRAMES;
+
+		copy.release();
+		hierarchy.release();
+		return time;
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(3555);
+
+		for (int i = 0; i < RESOLUTIONS.length; i++) {
+			int width = RESOLUTIONS[i][0];
+			int height = RESOLUTIONS[i][1];
+
+			byte[] mask = createMask(width, height, random);
+			Mat frame = new Mat(height, width, CvType.CV_8UC1);
+			frame.put(0, 0, mask);
+
+			BlobLabeler blobLabeler = new BlobLabeler();
+			blobLabeler.label(mask, width, height);
+
+			double labelerTime = timeLabeler(mask, width, height);
+			double contoursTime = timeContours(frame);
+
+			System.out.println(width + "x" + height + ": blobs = " + blobLabeler.getBlobCount() + ", labeler = "
+					+ labelerTime + " ms, findContours = " + contoursTime + " ms, speedup = "
+					+ (contoursTime / labelerTime));
+
+			frame.release();
+		}
+	}
+}
@@ -0,0 +1,348 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class groups the set pixels of a mask into 8-connected blobs. It labels
+ * runs of pixels instead of single pixels: the first pass joins every run with
+ * the touching runs of the row above using union-find, and the second pass
+ * adds each run to its blob's moments in closed form. The results are kept in
+ * primitive arrays that are reused between frames.
+ * 
+ * @author Caleb Heydon
+ */
+public class BlobLabeler {
+	private RunLengthMask runLengthMask;
+
+	// The union-find parent of each run and the blob each run belongs to
+	private int[] parents;
+	private int[] runBlobs;
+
+	// The results for each blob
+	private int blobCount;
+	private int[] areas;
+	private int[] minX;
+	private int[] minY;
+	private int[] maxX;
+	private int[] maxY;
+	private double[] sumX;
+	private double[] sumY;
+	private double[] sumXX;
+	private double[] sumYY;
+	private double[] sumXY;
+
+	public int getBlobCount() {
+		return blobCount;
+	}
+
+	public int getArea(int blob) {
+		return areas[blob];
+	}
+
+	public int getMinX(int blob) {
+		return minX[blob];
+	}
+
+	public int getMinY(int blob) {
+		return minY[blob];
+	}
+
+	public int getMaxX(int blob) {
+		return maxX[blob];
+	}
+
+	public int getMaxY(int blob) {
+		return maxY[blob];
+	}
+
+	public double getCentroidX(int blob) {
+		return sumX[blob] / areas[blob];
+	}
+
+	public double getCentroidY(int blob) {
+		return sumY[blob] / areas[blob];
+	}
+
+	/**
+	 * This method returns the second central moment in x divided by the area.
+	 * 
+	 * @param blob The blob.
+	 * @return The variance in x.
+	 */
+	public double getMu20(int blob) {
+		double centroidX = getCentroidX(blob);
+		return sumXX[blob] / areas[blob] - centroidX * centroidX;
+	}
+
+	/**
+	 * This method returns the second central moment in y divided by the area.
+	 * 
+	 * @param blob The blob.
+	 * @return The variance in y.
+	 */
+	public double getMu02(int blob) {
+		double centroidY = getCentroidY(blob);
+		return sumYY[blob] / areas[blob] - centroidY * centroidY;
+	}
+
+	/**
+	 * This method returns the second central mixed moment divided by the area.
+	 * 
+	 * @param blob The blob.
+	 * @return The covariance of x and y.
+	 */
+	public double getMu11(int blob) {
+		return sumXY[blob] / areas[blob] - getCentroidX(blob) * getCentroidY(blob);
+	}
+
+	/**
+	 * This method returns the angle of the blob's major axis in degrees.
+	 * 
+	 * @param blob The blob.
+	 * @return The angle.
+	 */
+	public double getAngle(int blob) {
+		return Math.toDegrees(0.5 * Math.atan2(2 * getMu11(blob), getMu20(blob) - getMu02(blob)));
+	}
+
+	/**
+	 * This method labels a byte mask where any non zero value is set.
+	 * 
+	 * @param mask   The mask.
+	 * @param width  The width.
+	 * @param height The height.
+	 */
+	public void label(byte[] mask, int width, int height) {
+		runLengthMask.encode(mask, width, height, width);
+		label(runLengthMask);
+	}
+
+	/**
+	 * This method labels a run-length encoded mask.
+	 * 
+	 * @param mask The mask.
+	 */
+	public void label(RunLengthMask mask) {
+		int runCount = mask.getRunCount();
+		int[] rowStarts = mask.getRowStarts();
+		int[] runStarts = mask.getRunStarts();
+		int[] runEnds = mask.getRunEnds();
+
+		if (parents.length < runCount) {
+			parents = new int[runCount];
+			runBlobs = new int[runCount];
+		}
+
+		// Join each run with the runs it touches in the row above
+		for (int y = 0; y < mask.getHeight(); y++) {
+			int rowStart = rowStarts[y];
+			int rowEnd = rowStarts[y + 1];
+
+			for (int run = rowStart; run < rowEnd; run++) {
+				parents[run] = run;
+			}
+
+			if (y == 0) {
+				continue;
+			}
+
+			int above = rowStarts[y - 1];
+			int aboveEnd = rowStart;
+
+			for (int run = rowStart; run < rowEnd && above < aboveEnd; run++) {
+				int start = runStarts[run] - 1;
+				int end = runEnds[run] + 1;
+
+				// Skip runs above that end before this one starts
+				while (above < aboveEnd && runEnds[above] < start) {
+					above++;
+				}
+
+				// Join every run above that overlaps, including diagonally
+				int touching = above;
+				while (touching < aboveEnd && runStarts[touching] <= end) {
+					union(run, touching);
+					touching++;
+				}
+
+				// The last overlapping run can also touch the next run in this row
+				if (touching > above) {
+					above = touching - 1;
+				}
+			}
+		}
+
+		// Give each set of runs a blob number and add up its moments
+		blobCount = 0;
+		for (int y = 0; y < mask.getHeight(); y++) {
+			for (int run = rowStarts[y]; run < rowStarts[y + 1]; run++) {
+				int root = find(run);
+
+				int blob;
+				if (root == run) {
+					blob = blobCount++;
+					ensureCapacity(blobCount);
+					clearBlob(blob, y);
+				} else {
+					blob = runBlobs[root];
+				}
+				runBlobs[run] = blob;
+
+				addRun(blob, y, runStarts[run], runEnds[run]);
+			}
+		}
+	}
+
+	/**
+	 * This method returns the blobs as Blob objects.
+	 * 
+	 * @param minArea The smallest area that is kept.
+	 * @return The blobs.
+	 */
+	public ArrayList<Blob> getBlobs(int minArea) {
+		ArrayList<Blob> blobs = new ArrayList<Blob>();
+
+		for (int i = 0; i < blobCount; i++) {
+			if (areas[i] >= minArea) {
+				blobs.add(new Blob((int) Math.round(getCentroidX(i)), (int) Math.round(getCentroidY(i)), areas[i]));
+			}
+		}
+
+		return blobs;
+	}
+
+	/**
+	 * This method finds the root of a run and shortens the path on the way.
+	 * 
+	 * @param run The run.
+	 * @return The root.
+	 */
+	private int find(int run) {
+		while (parents[run] != run) {
+			parents[run] = parents[parents[run]];
+			run = parents[run];
+		}
+
+		return run;
+	}
+
+	/**
+	 * This method joins two sets of runs. The smaller index becomes the root so
+	 * every root is the first run of its blob.
+	 * 
+	 * @param a The first run.
+	 * @param b The second run.
+	 */
+	private void union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+
+		if (rootA < rootB) {
+			parents[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parents[rootA] = rootB;
+		}
+	}
+
+	/**
+	 * This method resets a new blob.
+	 * 
+	 * @param blob The blob.
+	 * @param y    The first row of the blob.
+	 */
+	private void clearBlob(int blob, int y) {
+		areas[blob] = 0;
+		minX[blob] = Integer.MAX_VALUE;
+		minY[blob] = y;
+		maxX[blob] = Integer.MIN_VALUE;
+		maxY[blob] = y;
+		sumX[blob] = 0;
+		sumY[blob] = 0;
+		sumXX[blob] = 0;
+		sumYY[blob] = 0;
+		sumXY[blob] = 0;
+	}
+
+	/**
+	 * This method adds a run to a blob. The sums over the run's pixels are
+	 * computed in closed form.
+	 * 
+	 * @param blob  The blob.
+	 * @param y     The row.
+	 * @param start The first pixel.
+	 * @param end   The last pixel.
+	 */
+	private void addRun(int blob, int y, int start, int end) {
+		long length = end - start + 1;
+
+		// Sum of x and x squared from start to end
+		long runSumX = (long) (start + end) * length / 2;
+		long runSumXX = sumOfSquares(end) - sumOfSquares(start - 1);
+
+		areas[blob] += length;
+		minX[blob] = Math.min(minX[blob], start);
+		maxX[blob] = Math.max(maxX[blob], end);
+		maxY[blob] = y;
+
+		sumX[blob] += runSumX;
+		sumY[blob] += (double) y * length;
+		sumXX[blob] += runSumXX;
+		sumYY[blob] += (double) y * y * length;
+		sumXY[blob] += (double) y * runSumX;
+	}
+
+	/**
+	 * This method returns 0^2 + 1^2 + ... + n^2.
+	 * 
+	 * @param n The last value.
+	 * @return The sum.
+	 */
+	private static long sumOfSquares(long n) {
+		if (n <= 0) {
+			return 0;
+		}
+
+		return n * (n + 1) * (2 * n + 1) / 6;
+	}
+
+	/**
+	 * This method grows the result arrays.
+	 * 
+	 * @param count The number of blobs.
+	 */
+	private void ensureCapacity(int count) {
+		if (count <= areas.length) {
+			return;
+		}
+
+		int capacity = Math.max(count, areas.length * 2);
+
+		areas = Arrays.copyOf(areas, capacity);
+		minX = Arrays.copyOf(minX, capacity);
+		minY = Arrays.copyOf(minY, capacity);
+		maxX = Arrays.copyOf(maxX, capacity);
+		maxY = Arrays.copyOf(maxY, capacity);
+		sumX = Arrays.copyOf(sumX, capacity);
+		sumY = Arrays.copyOf(sumY, capacity);
+		sumXX = Arrays.copyOf(sumXX, capacity);
+		sumYY = Arrays.copyOf(sumYY, capacity);
+		sumXY = Arrays.copyOf(sumXY, capacity);
+	}
+
+	public BlobLabeler() {
+		runLengthMask = new RunLengthMask();
+
+		parents = new int[256];
+		runBlobs = new int[256];
+
+		areas = new int[16];
+		minX = new int[16];
+		minY = new int[16];
+		maxX = new int[16];
+		maxY = new int[16];
+		sumX = new double[16];
+		sumY = new double[16];
+		sumXX = new double[16];
+		sumYY = new double[16];
+		sumXY = new double[16];
+	}
+}
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * This class stores a binary mask as horizontal runs of set pixels. Rows with
+ * no set pixels take no space, so empty parts of the frame are skipped. The
+ * arrays are reused when the mask is encoded again.
+ * 
+ * @author Caleb Heydon
+ */
+public class RunLengthMask {
+	private int width;
+	private int height;
+
+	// The runs of row y are rowStarts[y] until rowStarts[y + 1]
+	private int[] rowStarts;
+
+	// The first and last set pixel of each run
+	private int[] runStarts;
+	private int[] runEnds;
+	private int runCount;
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getRunCount() {
+		return runCount;
+	}
+
+	public int[] getRowStarts() {
+		return rowStarts;
+	}
+
+	public int[] getRunStarts() {
+		return runStarts;
+	}
+
+	public int[] getRunEnds() {
+		return runEnds;
+	}
+
+	/**
+	 * This method clears the mask and sets its size.
+	 * 
+	 * @param width  The width.
+	 * @param height The height.
+	 */
+	public void reset(int width, int height) {
+		this.width = width;
+		this.height = height;
+
+		if (rowStarts.length < height + 1) {
+			rowStarts = new int[height + 1];
+		}
+
+		for (int i = 0; i <= height; i++) {
+			rowStarts[i] = 0;
+		}
+
+		runCount = 0;
+	}
+
+	/**
+	 * This method adds a run. Runs must be added in row order and from left to
+	 * right within a row.
+	 * 
+	 * @param y     The row.
+	 * @param start The first set pixel.
+	 * @param end   The last set pixel.
+	 */
+	public void addRun(int y, int start, int end) {
+		if (runCount == runStarts.length) {
+			runStarts = Arrays.copyOf(runStarts, runCount * 2);
+			runEnds = Arrays.copyOf(runEnds, runCount * 2);
+		}
+
+		runStarts[runCount] = start;
+		runEnds[runCount] = end;
+		runCount++;
+
+		// Every later row starts after this run
+		rowStarts[y + 1] = runCount;
+	}
+
+	/**
+	 * This method finishes the row offsets after the last run was added.
+	 */
+	public void finish() {
+		for (int y = 1; y <= height; y++) {
+			if (rowStarts[y] < rowStarts[y - 1]) {
+				rowStarts[y] = rowStarts[y - 1];
+			}
+		}
+	}
+
+	/**
+	 * This method encodes a byte mask where any non zero value is set.
+	 * 
+	 * @param mask   The mask.
+	 * @param width  The width.
+	 * @param height The height.
+	 * @param stride The distance between rows in the mask.
+	 */
+	public void encode(byte[] mask, int width, int height, int stride) {
+		reset(width, height);
+
+		for (int y = 0; y < height; y++) {
+			int row = y * stride;
+			int x = 0;
+
+			while (x < width) {
+				// Skip unset pixels
+				while (x < width && mask[row + x] == 0) {
+					x++;
+				}
+
+				if (x == width) {
+					break;
+				}
+
+				int start = x;
+				while (x < width && mask[row + x] != 0) {
+					x++;
+				}
+
+				addRun(y, start, x - 1);
+			}
+		}
+
+		finish();
+	}
+
+	public RunLengthMask() {
+		rowStarts = new int[1];
+		runStarts = new int[256];
+		runEnds = new int[256];
+	}
+}
@@ -10,6 +10,7 @@ import javax.imageio.ImageIO;
 public class VisionExperiment {
 	public static final int MIN_GREEN = 190;
 	public static final int MAX_WHITE = 160;
+	public static final int MIN_BLOB_AREA = 50;
 	
 	public static void filterWhite(BufferedImage image) {
 		for (int y = 0; y < image.getHeight(); y++) {
@@ -57,6 +58,35 @@ public class VisionExperiment {
 		}
 	}
 	
+	/**
+	 * This method returns a mask of the pixels that pass the green filter, one
+	 * byte per pixel.
+	 * 
+	 * @param image The image.
+	 * @param mask  The mask to write to, or null to create one.
+	 * @return The mask.
+	 */
+	public static byte[] getGreenMask(BufferedImage image, byte[] mask) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		if (mask == null || mask.length < width * height) {
+			mask = new byte[width * height];
+		}
+
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+
+			for (int x = 0; x < width; x++) {
+				int green = (row[x] >> 8) & 0xFF;
+				mask[y * width + x] = (byte) ((green >= MIN_GREEN) ? 1 : 0);
+			}
+		}
+
+		return mask;
+	}
+
 	/**
 	 * This method will scale the training image to a standard size.
 	 * 
@@ -83,5 +113,14 @@ public class VisionExperiment {
 		
 		filterGreen(image);
 		ImageIO.write(image, "png", new File("C:\\Users\\C\\Desktop\\filters\\green_filter.png"));
+
+		// Group the remaining pixels into blobs
+		BlobLabeler blobLabeler = new BlobLabeler();
+		blobLabeler.label(getGreenMask(image, null), image.getWidth(), image.getHeight());
+
+		ArrayList<Blob> blobs = blobLabeler.getBlobs(MIN_BLOB_AREA);
+		for (Blob blob : blobs) {
+			System.out.println("Blob at (" + blob.x + ", " + blob.y + ") with " + blob.pixelCount + " pixels");
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,333 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ * 
+ * @author Caleb Heydon
+ */
+
+package org.aluminati3555.vision.testing;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import org.neuroph.core.Connection;
+import org.neuroph.core.Layer;
+import org.neuroph.core.NeuralNetwork;
+import org.neuroph.core.Neuron;
+import org.neuroph.core.transfer.Linear;
+import org.neuroph.core.transfer.Sigmoid;
+import org.neuroph.core.transfer.Tanh;
+import org.neuroph.core.transfer.TransferFunction;
+import org.neuroph.nnet.comp.neuron.BiasNeuron;
+
+/**
+ * This class is a flattened copy of a trained feed forward network. Every
+ * layer's weights are stored in one float array, one row per neuron, and the
+ * activations are allocated once, so running the network does not create any
+ * objects. Many inputs can be run at once, in which case each weight row is
+ * reused for a tile of inputs before moving on.
+ * 
+ * A compiled network is not thread safe, use copy() to get one per thread.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class CompiledNetwork {
+	// The supported activation functions
+	public static final int ACTIVATION_LINEAR = 0;
+	public static final int ACTIVATION_SIGMOID = 1;
+	public static final int ACTIVATION_TANH = 2;
+
+	// The number of inputs run through a layer together
+	public static final int TILE_SIZE = 16;
+
+	// The number of neurons in each layer, layer 0 is the input
+	private int[] layerSizes;
+
+	// The weights of each layer as [neuron * inputs + input] and the biases
+	private float[][] weights;
+	private float[][] biases;
+	private int[] activations;
+
+	// The preallocated values of each layer for one tile
+	private float[][] values;
+
+	/**
+	 * This method returns the number of inputs.
+	 * 
+	 * @return The number of inputs.
+	 */
+	public int getInputCount() {
+		return layerSizes[0];
+	}
+
+	/**
+	 * This method returns the number of outputs.
+	 * 
+	 * @return The number of outputs.
+	 */
+	public int getOutputCount() {
+		return layerSizes[layerSizes.length - 1];
+	}
+
+	/**
+	 * This method runs the network on one input.
+	 * 
+	 * @param input  The input.
+	 * @param output The array the outputs are written to.
+	 */
+	public void compute(double[] input, float[] output) {
+		float[] first = values[0];
+		for (int i = 0; i < input.length; i++) {
+			first[i] = (float) input[i];
+		}
+
+		computeTile(1);
+		System.arraycopy(values[values.length - 1], 0, output, 0, getOutputCount());
+	}
+
+	/**
+	 * This method runs the network on many inputs stored one after another.
+	 * 
+	 * @param inputs  The inputs (count * getInputCount() values).
+	 * @param count   The number of inputs.
+	 * @param outputs The array the outputs are written to (count *
+	 *                getOutputCount() values).
+	 */
+	public void computeBatch(float[] inputs, int count, float[] outputs) {
+		int inputCount = getInputCount();
+		int outputCount = getOutputCount();
+
+		for (int start = 0; start < count; start += TILE_SIZE) {
+			int tileCount = Math.min(TILE_SIZE, count - start);
+
+			System.arraycopy(inputs, start * inputCount, values[0], 0, tileCount * inputCount);
+			computeTile(tileCount);
+			System.arraycopy(values[values.length - 1], 0, outputs, start * outputCount, tileCount * outputCount);
+		}
+	}
+
+	/**
+	 * This method runs the inputs in the first layer's values through the network.
+	 * 
+	 * @param tileCount The number of inputs.
+	 */
+	private void computeTile(int tileCount) {
+		for (int layer = 1; layer < layerSizes.length; layer++) {
+			float[] previous = values[layer - 1];
+			float[] current = values[layer];
+			float[] layerWeights = weights[layer];
+			float[] layerBiases = biases[layer];
+
+			int inputCount = layerSizes[layer - 1];
+			int neuronCount = layerSizes[layer];
+
+			for (int neuron = 0; neuron < neuronCount; neuron++) {
+				int row = neuron * inputCount;
+				float bias = layerBiases[neuron];
+
+				// Reuse the weight row for every input in the tile
+				for (int sample = 0; sample < tileCount; sample++) {
+					int offset = sample * inputCount;
+
+					// Four partial sums so the additions do not wait on each other
+					float sum0 = bias;
+					float sum1 = 0;
+					float sum2 = 0;
+					float sum3 = 0;
+
+					int i = 0;
+					for (; i + 3 < inputCount; i += 4) {
+						sum0 += layerWeights[row + i] * previous[offset + i];
+						sum1 += layerWeights[row + i + 1] * previous[offset + i + 1];
+						sum2 += layerWeights[row + i + 2] * previous[offset + i + 2];
+						sum3 += layerWeights[row + i + 3] * previous[offset + i + 3];
+					}
+
+					for (; i < inputCount; i++) {
+						sum0 += layerWeights[row + i] * previous[offset + i];
+					}
+
+					current[sample * neuronCount + neuron] = (sum0 + sum1) + (sum2 + sum3);
+				}
+			}
+
+			activate(activations[layer], current, tileCount * neuronCount);
+		}
+	}
+
+	/**
+	 * This method applies an activation function in place.
+	 * 
+	 * @param activation The activation function.
+	 * @param values     The values.
+	 * @param count      The number of values.
+	 */
+	private static void activate(int activation, float[] values, int count) {
+		switch (activation) {
+		case ACTIVATION_SIGMOID:
+			for (int i = 0; i < count; i++) {
+				values[i] = (float) (1 / (1 + Math.exp(-values[i])));
+			}
+			break;
+		case ACTIVATION_TANH:
+			for (int i = 0; i < count; i++) {
+				values[i] = (float) Math.tanh(values[i]);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * This method returns a network that shares the weights but has its own
+	 * activations so it can be used on another thread.
+	 * 
+	 * @return The copy.
+	 */
+	public CompiledNetwork copy() {
+		return new CompiledNetwork(layerSizes, weights, biases, activations);
+	}
+
+	/**
+	 * This method returns the activation id of a Neuroph transfer function.
+	 * 
+	 * @param transferFunction The transfer function.
+	 * @return The activation id.
+	 */
+	private static int getActivation(TransferFunction transferFunction) {
+		if (transferFunction instanceof Sigmoid) {
+			return ACTIVATION_SIGMOID;
+		}
+
+		if (transferFunction instanceof Tanh) {
+			return ACTIVATION_TANH;
+		}
+
+		if (transferFunction instanceof Linear) {
+			return ACTIVATION_LINEAR;
+		}
+
+		throw new IllegalArgumentException("Unsupported transfer function: " + transferFunction);
+	}
+
+	/**
+	 * This method returns the slope of a Neuroph transfer function. The slope is
+	 * folded into the weights.
+	 * 
+	 * @param transferFunction The transfer function.
+	 * @return The slope.
+	 */
+	private static double getSlope(TransferFunction transferFunction) {
+		if (transferFunction instanceof Sigmoid) {
+			return ((Sigmoid) transferFunction).getSlope();
+		}
+
+		if (transferFunction instanceof Tanh) {
+			return ((Tanh) transferFunction).getSlope();
+		}
+
+		return ((Linear) transferFunction).getSlope();
+	}
+
+	/**
+	 * This method returns the neurons of a layer without its bias neuron.
+	 * 
+	 * @param layer The layer.
+	 * @return The neurons.
+	 */
+	private static ArrayList<Neuron> getNeurons(Layer layer) {
+		ArrayList<Neuron> neurons = new ArrayList<Neuron>();
+
+		for (int i = 0; i < layer.getNeuronsCount(); i++) {
+			Neuron neuron = layer.getNeuronAt(i);
+			if (!(neuron instanceof BiasNeuron)) {
+				neurons.add(neuron);
+			}
+		}
+
+		return neurons;
+	}
+
+	/**
+	 * This method flattens a trained Neuroph network. Every neuron of a layer must
+	 * use the same kind of transfer function.
+	 * 
+	 * @param network The network.
+	 * @return The compiled network.
+	 */
+	public static CompiledNetwork fromNeuroph(NeuralNetwork<?> network) {
+		int layerCount = network.getLayersCount();
+
+		ArrayList<ArrayList<Neuron>> neurons = new ArrayList<ArrayList<Neuron>>();
+		int[] layerSizes = new int[layerCount];
+		for (int i = 0; i < layerCount; i++) {
+			neurons.add(getNeurons(network.getLayerAt(i)));
+			layerSizes[i] = neurons.get(i).size();
+		}
+
+		float[][] weights = new float[layerCount][];
+		float[][] biases = new float[layerCount][];
+		int[] activations = new int[layerCount];
+
+		for (int layer = 1; layer < layerCount; layer++) {
+			int inputCount = layerSizes[layer - 1];
+			int neuronCount = layerSizes[layer];
+
+			weights[layer] = new float[neuronCount * inputCount];
+			biases[layer] = new float[neuronCount];
+
+			// Find each input neuron's position in the previous layer
+			IdentityHashMap<Neuron, Integer> inputIndexes = new IdentityHashMap<Neuron, Integer>();
+			for (int i = 0; i < inputCount; i++) {
+				inputIndexes.put(neurons.get(layer - 1).get(i), i);
+			}
+
+			for (int neuron = 0; neuron < neuronCount; neuron++) {
+				TransferFunction transferFunction = neurons.get(layer).get(neuron).getTransferFunction();
+				int activation = getActivation(transferFunction);
+				double slope = getSlope(transferFunction);
+
+				if (neuron > 0 && activation != activations[layer]) {
+					throw new IllegalArgumentException("Layer " + layer + " mixes transfer functions");
+				}
+				activations[layer] = activation;
+
+				for (Connection connection : neurons.get(layer).get(neuron).getInputConnections()) {
+					double weight = connection.getWeight().getValue() * slope;
+					Integer input = inputIndexes.get(connection.getFromNeuron());
+
+					// Connections from outside the previous layer are from the bias neuron
+					if (input == null) {
+						biases[layer][neuron] += (float) (weight * connection.getFromNeuron().getOutput());
+					} else {
+						weights[layer][neuron * inputCount + input] = (float) weight;
+					}
+				}
+			}
+		}
+
+		return new CompiledNetwork(layerSizes, weights, biases, activations);
+	}
+
+	/**
+	 * This constructor creates a network from flattened weights.
+	 * 
+	 * @param layerSizes  The number of neurons in each layer.
+	 * @param weights     The weights of each layer after the input.
+	 * @param biases      The biases of each layer after the input.
+	 * @param activations The activation of each layer after the input.
+	 */
+	public CompiledNetwork(int[] layerSizes, float[][] weights, float[][] biases, int[] activations) {
+		this.layerSizes = layerSizes;
+		this.weights = weights;
+		this.biases = biases;
+		this.activations = activations;
+
+		values = new float[layerSizes.length][];
+		for (int i = 0; i < layerSizes.length; i++) {
+			values[i] = new float[TILE_SIZE * layerSizes[i]];
+		}
+	}
+}
@@ -34,6 +34,9 @@ public class VisionTesting {
 	// This is the neural network that the program is using
 	NeuralNetwork<?> neuralNetwork;
 
+	// The flattened copy of the network used for testing
+	CompiledNetwork compiledNetwork;
+
 	/**
 	 * This method returns the neural network that is currently in use.
 	 * 
@@ -50,6 +53,7 @@ public class VisionTesting {
 	 */
 	public void loadNeuralNetwork(String path) {
 		neuralNetwork = Perceptron.createFromFile(path);
+		compiledNetwork = CompiledNetwork.fromNeuroph(neuralNetwork);
 	}
 
 	/**
@@ -149,6 +153,29 @@ public class VisionTesting {
 		return buffer;
 	}
 
+	/**
+	 * This method preps every image for input into the compiled network.
+	 * 
+	 * @param leftImages  The left images.
+	 * @param rightImages The right images.
+	 * @return The inputs, left images first.
+	 */
+	public float[] getBatchInputs(ArrayList<BufferedImage> leftImages, ArrayList<BufferedImage> rightImages) {
+		int inputCount = WIDTH * HEIGHT;
+		float[] inputs = new float[(leftImages.size() + rightImages.size()) * inputCount];
+
+		for (int i = 0; i < leftImages.size() + rightImages.size(); i++) {
+			BufferedImage image = (i < leftImages.size()) ? leftImages.get(i) : rightImages.get(i - leftImages.size());
+			double[] input = getImageAsArray(image);
+
+			for (int j = 0; j < inputCount; j++) {
+				inputs[i * inputCount + j] = (float) input[j];
+			}
+		}
+
+		return inputs;
+	}
+
 	/**
 	 * This method tests a neural network using the testing images.
 	 * 
@@ -158,42 +185,64 @@ public class VisionTesting {
 	 */
 	public double testNetwork(ArrayList<BufferedImage> leftImages, ArrayList<BufferedImage> rightImages) {
 		// The total number of testing images
-		double total = leftImages.size() + rightImages.size();
+		int total = leftImages.size() + rightImages.size();
 		int count = 0;
 
+		// Run every image through the compiled network at once
+		float[] inputs = getBatchInputs(leftImages, rightImages);
+		float[] outputs = new float[total * 2];
+		compiledNetwork.computeBatch(inputs, total, outputs);
+
 		// Test the left images
 		for (int i = 0; i < leftImages.size(); i++) {
-			// Calculate network
-			double[] inputs = getImageAsArray(leftImages.get(i));
-			neuralNetwork.setInput(inputs);
-			neuralNetwork.calculate();
-
-			double[] outputs = neuralNetwork.getOutput();
-
-			if (outputs[0] > outputs[1]) {
+			if (outputs[i * 2] > outputs[i * 2 + 1]) {
 				count++;
 			}
 		}
 
 		// Test the right images
-		for (int i = 0; i < rightImages.size(); i++) {
-			// Calculate network
-			double[] inputs = getImageAsArray(rightImages.get(i));
-			neuralNetwork.setInput(inputs);
-			neuralNetwork.calculate();
-
-			double[] outputs = neuralNetwork.getOutput();
-
-			if (outputs[0] < outputs[1]) {
+		for (int i = leftImages.size(); i < total; i++) {
+			if (outputs[i * 2] < outputs[i * 2 + 1]) {
 				count++;
 			}
 		}
-		
+
 		// Calculate network accuracy
-		double accuracy = count / total;
+		double accuracy = (double) count / total;
 		return accuracy;
 	}
 
+	/**
+	 * This method returns the largest difference between the outputs of the
+	 * compiled network and the Neuroph network for the testing images.
+	 * 
+	 * @param leftImages  The ArrayList of the left testing images.
+	 * @param rightImages The ArrayList of the right testing images.
+	 * @return The largest difference.
+	 */
+	public double compareNetworks(ArrayList<BufferedImage> leftImages, ArrayList<BufferedImage> rightImages) {
+		int total = leftImages.size() + rightImages.size();
+
+		float[] inputs = getBatchInputs(leftImages, rightImages);
+		float[] outputs = new float[total * 2];
+		compiledNetwork.computeBatch(inputs, total, outputs);
+
+		double maxDifference = 0;
+		for (int i = 0; i < total; i++) {
+			BufferedImage image = (i < leftImages.size()) ? leftImages.get(i) : rightImages.get(i - leftImages.size());
+
+			neuralNetwork.setInput(getImageAsArray(image));
+			neuralNetwork.calculate();
+
+			double[] expected = neuralNetwork.getOutput();
+			for (int j = 0; j < expected.length; j++) {
+				maxDifference = Math.max(maxDifference, Math.abs(expected[j] - outputs[i * 2 + j]));
+			}
+		}
+
+		return maxDifference;
+	}
+
 	/**
 	 * This constructor allows the resource path to be set on initialization.
 	 * 
@@ -237,6 +286,7 @@ public class VisionTesting {
 		System.out.println("Testing neural network...");
 		double accuracy = visionTesting.testNetwork(leftImages, rightImages);
 		System.out.println("Network accuracy: " + accuracy);
+		System.out.println("Max difference from Neuroph: " + visionTesting.compareNetworks(leftImages, rightImages));
 		System.out.println("Done");
 	}
 }
\ No newline at end of file
@@ -0,0 +1,567 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ * 
+ * @author Caleb Heydon
+ */
+
+package org.aluminati3555.vision.training;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This class stores a preprocessed training set in a memory-mapped file. The
+ * images are decoded and turned into network inputs once, after that the
+ * dataset is opened by mapping the file, so reloading does not decode or copy
+ * anything.
+ * 
+ * The file has a 32 byte header followed by every input vector and then every
+ * output vector, all stored as floats.
+ * 
+ * The samples come from the png images in left/ and right/ and from any
+ * shard_*.bin files written by TrainingDataCreator.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class DatasetCache {
+	// The header of a dataset file
+	public static final int MAGIC = 0x41564453;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	// The header of a shard file from TrainingDataCreator
+	public static final int SHARD_MAGIC = 0x41565344;
+	public static final int SHARD_VERSION = 1;
+	public static final int SHARD_HEADER_SIZE = 32;
+
+	// The labels stored in the shards
+	public static final byte LEFT_LABEL = 0;
+	public static final byte RIGHT_LABEL = 1;
+
+	// The outputs for each side
+	public static final float[] LEFT_OUTPUT = { 1, 0 };
+	public static final float[] RIGHT_OUTPUT = { 0, 1 };
+
+	// The mapped file
+	private MappedByteBuffer buffer;
+
+	// The size of the dataset
+	private int sampleCount;
+	private int inputSize;
+	private int outputSize;
+
+	// The stamp of the images the dataset was built from
+	private long sourceStamp;
+
+	/**
+	 * This method returns the number of samples.
+	 * 
+	 * @return The number of samples.
+	 */
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * This method returns the number of inputs per sample.
+	 * 
+	 * @return The input size.
+	 */
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	/**
+	 * This method returns the number of outputs per sample.
+	 * 
+	 * @return The output size.
+	 */
+	public int getOutputSize() {
+		return outputSize;
+	}
+
+	/**
+	 * This method returns the stamp of the images the dataset was built from.
+	 * 
+	 * @return The source stamp.
+	 */
+	public long getSourceStamp() {
+		return sourceStamp;
+	}
+
+	/**
+	 * This method returns a view of every input vector. Sample i starts at float
+	 * i * getInputSize().
+	 * 
+	 * @return The inputs (backed by the file).
+	 */
+	public FloatBuffer getInputs() {
+		ByteBuffer view = buffer.duplicate();
+		view.position(HEADER_SIZE);
+		view.limit(HEADER_SIZE + sampleCount * inputSize * 4);
+
+		return view.slice().asFloatBuffer();
+	}
+
+	/**
+	 * This method returns a view of every output vector. Sample i starts at float
+	 * i * getOutputSize().
+	 * 
+	 * @return The outputs (backed by the file).
+	 */
+	public FloatBuffer getOutputs() {
+		ByteBuffer view = buffer.duplicate();
+		view.position(HEADER_SIZE + sampleCount * inputSize * 4);
+		view.limit(HEADER_SIZE + sampleCount * (inputSize + outputSize) * 4);
+
+		return view.slice().asFloatBuffer();
+	}
+
+	/**
+	 * This method reads one input vector.
+	 * 
+	 * @param sample The sample.
+	 * @param input  The array to fill.
+	 */
+	public void getInput(int sample, double[] input) {
+		int offset = HEADER_SIZE + sample * inputSize * 4;
+
+		for (int i = 0; i < inputSize; i++) {
+			input[i] = buffer.getFloat(offset + i * 4);
+		}
+	}
+
+	/**
+	 * This method reads one output vector.
+	 * 
+	 * @param sample The sample.
+	 * @param output The array to fill.
+	 */
+	public void getOutput(int sample, double[] output) {
+		int offset = HEADER_SIZE + (sampleCount * inputSize + sample * outputSize) * 4;
+
+		for (int i = 0; i < outputSize; i++) {
+			output[i] = buffer.getFloat(offset + i * 4);
+		}
+	}
+
+	/**
+	 * This method returns every input vector as arrays.
+	 * 
+	 * @return The inputs.
+	 */
+	public double[][] getInputArrays() {
+		double[][] inputs = new double[sampleCount][inputSize];
+		for (int i = 0; i < sampleCount; i++) {
+			getInput(i, inputs[i]);
+		}
+
+		return inputs;
+	}
+
+	/**
+	 * This method returns every output vector as arrays.
+	 * 
+	 * @return The outputs.
+	 */
+	public double[][] getOutputArrays() {
+		double[][] outputs = new double[sampleCount][outputSize];
+		for (int i = 0; i < sampleCount; i++) {
+			getOutput(i, outputs[i]);
+		}
+
+		return outputs;
+	}
+
+	/**
+	 * This method returns a stamp for the training images and shards. The stamp
+	 * changes when a file is added, removed, renamed, resized or modified.
+	 * 
+	 * @param resourcePath The path to the training images.
+	 * @return The stamp.
+	 */
+	public static long getSourceStamp(String resourcePath) {
+		return getSourceStamp(getImageFiles(resourcePath + "left/"), getImageFiles(resourcePath + "right/"),
+				getShardFiles(resourcePath));
+	}
+
+	/**
+	 * This method returns a stamp from the count, names, sizes and modification
+	 * times of the source files.
+	 * 
+	 * @param leftFiles  The left images.
+	 * @param rightFiles The right images.
+	 * @param shardFiles The shards.
+	 * @return The stamp.
+	 */
+	private static long getSourceStamp(ArrayList<File> leftFiles, ArrayList<File> rightFiles,
+			ArrayList<File> shardFiles) {
+		long stamp = (leftFiles.size() * 31L + rightFiles.size()) * 31 + shardFiles.size();
+
+		// The counts keep a file moved between left and right from matching
+		ArrayList<File> imageFiles = new ArrayList<File>(leftFiles);
+		imageFiles.addAll(rightFiles);
+		imageFiles.addAll(shardFiles);
+
+		for (int i = 0; i < imageFiles.size(); i++) {
+			File file = imageFiles.get(i);
+
+			stamp = stamp * 31 + file.getName().hashCode();
+			stamp = stamp * 31 + file.length();
+			stamp = stamp * 31 + file.lastModified();
+		}
+
+		return stamp;
+	}
+
+	/**
+	 * This method returns the png files in a directory in name order.
+	 * 
+	 * @param directory The directory.
+	 * @return The image files.
+	 */
+	private static ArrayList<File> getImageFiles(String directory) {
+		ArrayList<File> imageFiles = new ArrayList<File>();
+
+		File[] files = new File(directory).listFiles();
+		if (files == null) {
+			return imageFiles;
+		}
+
+		Arrays.sort(files);
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].isFile() && files[i].getName().toLowerCase().endsWith(".png")) {
+				imageFiles.add(files[i]);
+			}
+		}
+
+		return imageFiles;
+	}
+
+	/**
+	 * This method returns the shard files in a directory in name order.
+	 * 
+	 * @param directory The directory.
+	 * @return The shard files.
+	 */
+	private static ArrayList<File> getShardFiles(String directory) {
+		ArrayList<File> shardFiles = new ArrayList<File>();
+
+		File[] files = new File(directory).listFiles();
+		if (files == null) {
+			return shardFiles;
+		}
+
+		Arrays.sort(files);
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+
+			if (files[i].isFile() && name.startsWith("shard_") && name.endsWith(".bin")) {
+				shardFiles.add(files[i]);
+			}
+		}
+
+		return shardFiles;
+	}
+
+	/**
+	 * This method maps a shard file and checks its header.
+	 * 
+	 * @param file      The shard file.
+	 * @param inputSize The number of inputs per sample.
+	 * @return The shard.
+	 * @throws IOException
+	 */
+	private static MappedByteBuffer mapShard(File file, int inputSize) throws IOException {
+		MappedByteBuffer shard;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			if (randomAccessFile.length() < SHARD_HEADER_SIZE) {
+				throw new IOException("Not a shard: " + file);
+			}
+
+			shard = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		}
+
+		if (shard.getInt(0) != SHARD_MAGIC || shard.getInt(4) != SHARD_VERSION) {
+			throw new IOException("Not a shard: " + file);
+		}
+
+		int sampleCount = shard.getInt(8);
+		if (shard.getInt(12) * shard.getInt(16) != inputSize) {
+			throw new IOException("The samples in " + file + " are not " + VisionTraining.WIDTH + "x"
+					+ VisionTraining.HEIGHT);
+		}
+
+		if (sampleCount < 0 || shard.capacity() != SHARD_HEADER_SIZE + (long) sampleCount * (inputSize + 1)) {
+			throw new IOException("Incomplete shard: " + file);
+		}
+
+		return shard;
+	}
+
+	/**
+	 * This method copies the samples of a shard into the dataset. A green value
+	 * becomes 0.5 and anything else 1, the same as a filtered image.
+	 * 
+	 * @param shard     The shard.
+	 * @param file      The shard file (for errors).
+	 * @param buffer    The dataset.
+	 * @param first     The first sample of the shard in the dataset.
+	 * @param total     The number of samples in the dataset.
+	 * @param inputSize The number of inputs per sample.
+	 * @throws IOException
+	 */
+	private static void importShard(MappedByteBuffer shard, File file, ByteBuffer buffer, int first, int total,
+			int inputSize) throws IOException {
+		int sampleCount = shard.getInt(8);
+		int outputSize = LEFT_OUTPUT.length;
+
+		int offset = SHARD_HEADER_SIZE;
+		for (int i = 0; i < sampleCount; i++) {
+			int sample = first + i;
+
+			byte label = shard.get(offset++);
+			float[] output;
+			if (label == LEFT_LABEL) {
+				output = LEFT_OUTPUT;
+			} else if (label == RIGHT_LABEL) {
+				output = RIGHT_OUTPUT;
+			} else {
+				throw new IOException("Unknown label " + label + " in " + file);
+			}
+
+			int inputOffset = HEADER_SIZE + sample * inputSize * 4;
+			for (int j = 0; j < inputSize; j++) {
+				buffer.putFloat(inputOffset + j * 4, (shard.get(offset++) != 0) ? 0.5f : 1);
+			}
+
+			int outputOffset = HEADER_SIZE + (total * inputSize + sample * outputSize) * 4;
+			for (int j = 0; j < outputSize; j++) {
+				buffer.putFloat(outputOffset + j * 4, output[j]);
+			}
+		}
+	}
+
+	/**
+	 * This method opens a dataset file. Null is returned if the file does not
+	 * exist or was built from different images.
+	 * 
+	 * @param file         The dataset file.
+	 * @param resourcePath The path to the training images.
+	 * @return The dataset or null.
+	 * @throws IOException
+	 */
+	public static DatasetCache open(File file, String resourcePath) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+
+		DatasetCache datasetCache = new DatasetCache(file);
+		if (datasetCache.sampleCount < 0 || datasetCache.sourceStamp != getSourceStamp(resourcePath)) {
+			return null;
+		}
+
+		return datasetCache;
+	}
+
+	/**
+	 * This method decodes every training image, imports every shard and writes the
+	 * dataset file. The images are decoded on every core while the shards are
+	 * copied.
+	 * 
+	 * @param visionTraining The training program (used to preprocess the images).
+	 * @param file           The dataset file.
+	 * @return The dataset.
+	 * @throws IOException
+	 */
+	public static DatasetCache compile(VisionTraining visionTraining, File file) throws IOException {
+		String resourcePath = visionTraining.resourcePath;
+		ArrayList<File> leftFiles = getImageFiles(resourcePath + "left/");
+		ArrayList<File> rightFiles = getImageFiles(resourcePath + "right/");
+
+		ArrayList<File> shardFiles = getShardFiles(resourcePath);
+
+		// Stamp the files that are actually compiled
+		long sourceStamp = getSourceStamp(leftFiles, rightFiles, shardFiles);
+
+		ArrayList<File> imageFiles = new ArrayList<File>(leftFiles);
+		imageFiles.addAll(rightFiles);
+
+		int inputSize = VisionTraining.WIDTH * VisionTraining.HEIGHT;
+		int outputSize = LEFT_OUTPUT.length;
+
+		// The shard samples follow the images
+		MappedByteBuffer[] shards = new MappedByteBuffer[shardFiles.size()];
+		long totalCount = imageFiles.size();
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = mapShard(shardFiles.get(i), inputSize);
+			totalCount += shards[i].getInt(8);
+		}
+
+		long length = HEADER_SIZE + totalCount * (inputSize + outputSize) * 4;
+
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Dataset is too large to map: " + length + " bytes");
+		}
+
+		int sampleCount = (int) totalCount;
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength(length);
+
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+
+			// Write the outputs of the images
+			int outputOffset = HEADER_SIZE + sampleCount * inputSize * 4;
+			for (int i = 0; i < imageFiles.size(); i++) {
+				float[] output = (i < leftFiles.size()) ? LEFT_OUTPUT : RIGHT_OUTPUT;
+
+				for (int j = 0; j < outputSize; j++) {
+					buffer.putFloat(outputOffset + (i * outputSize + j) * 4, output[j]);
+				}
+			}
+
+			// Decode the images in parallel, each thread writes its own samples
+			int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), imageFiles.size()));
+			CompileThread[] threads = new CompileThread[threadCount];
+
+			for (int i = 0; i < threadCount; i++) {
+				threads[i] = new CompileThread(visionTraining, imageFiles, buffer, i, threadCount);
+				threads[i].start();
+			}
+
+			// Copy the shards while the images decode
+			IOException shardError = null;
+			try {
+				int first = imageFiles.size();
+				for (int i = 0; i < shards.length; i++) {
+					importShard(shards[i], shardFiles.get(i), buffer, first, sampleCount, inputSize);
+					first += shards[i].getInt(8);
+				}
+			} catch (IOException e) {
+				shardError = e;
+			}
+
+			for (int i = 0; i < threadCount; i++) {
+				try {
+					threads[i].join();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while compiling the dataset", e);
+				}
+
+				if (threads[i].error != null) {
+					throw threads[i].error;
+				}
+			}
+
+			if (shardError != null) {
+				throw shardError;
+			}
+
+			// Write the header last so a partial file is never accepted
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, sampleCount);
+			buffer.putInt(12, inputSize);
+			buffer.putInt(16, outputSize);
+			buffer.putLong(24, sourceStamp);
+			buffer.force();
+
+			buffer.putInt(0, MAGIC);
+			buffer.force();
+		}
+
+		return new DatasetCache(file);
+	}
+
+	/**
+	 * This constructor maps a dataset file. The sample count is -1 if the file is
+	 * not a complete dataset.
+	 * 
+	 * @param file The dataset file.
+	 * @throws IOException
+	 */
+	public DatasetCache(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		}
+
+		sampleCount = -1;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			return;
+		}
+
+		int sampleCount = buffer.getInt(8);
+		inputSize = buffer.getInt(12);
+		outputSize = buffer.getInt(16);
+		sourceStamp = buffer.getLong(24);
+
+		if (buffer.capacity() == HEADER_SIZE + (long) sampleCount * (inputSize + outputSize) * 4) {
+			this.sampleCount = sampleCount;
+		}
+	}
+
+	/**
+	 * This thread decodes every nth image into the dataset file.
+	 */
+	private static class CompileThread extends Thread {
+		private VisionTraining visionTraining;
+		private ArrayList<File> imageFiles;
+		private ByteBuffer buffer;
+		private int index;
+		private int threadCount;
+
+		private IOException error;
+
+		@Override
+		public void run() {
+			int inputSize = VisionTraining.WIDTH * VisionTraining.HEIGHT;
+			File file = null;
+
+			try {
+				for (int i = index; i < imageFiles.size(); i += threadCount) {
+					file = imageFiles.get(i);
+					BufferedImage image = ImageIO.read(file);
+					if (image == null) {
+						throw new IOException("Unable to decode " + imageFiles.get(i));
+					}
+
+					double[] input = visionTraining.getImageAsArray(image);
+
+					int offset = HEADER_SIZE + i * inputSize * 4;
+					for (int j = 0; j < inputSize; j++) {
+						buffer.putFloat(offset + j * 4, (float) input[j]);
+					}
+				}
+			} catch (IOException e) {
+				error = e;
+			} catch (Throwable throwable) {
+				// Any failure must keep the header from being written
+				error = new IOException("Unable to compile " + file, throwable);
+			}
+		}
+
+		public CompileThread(VisionTraining visionTraining, ArrayList<File> imageFiles, ByteBuffer buffer,
+				int index, int threadCount) {
+			this.visionTraining = visionTraining;
+			this.imageFiles = imageFiles;
+			this.buffer = buffer.duplicate();
+			this.index = index;
+			this.threadCount = threadCount;
+
+			setName("Dataset-Compiler-" + index);
+		}
+	}
+}
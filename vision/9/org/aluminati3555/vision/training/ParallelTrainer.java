@@ -0,0 +1,748 @@
+/**
+ * FRC Team 3555
+ * Deep Space
+ * 
+ * @author Caleb Heydon
+ */
+
+package org.aluminati3555.vision.training;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * This class trains a fully connected sigmoid network with mini-batch gradient
+ * descent on several threads. Each mini-batch is split into shards, every
+ * thread back propagates its shard into its own gradient buffer, and the
+ * buffers are then summed in parallel (each thread owns a slice of the
+ * weights) before the weights are updated. The weights are only written
+ * between batches, so the threads share one copy while computing gradients.
+ * 
+ * Training stops early when the error on a held out validation split has not
+ * improved for a number of epochs, and the best weights are kept.
+ * 
+ * @author Caleb Heydon
+ */
+
+public class ParallelTrainer {
+	// The work the threads do in each phase
+	private static final int TASK_GRADIENT = 0;
+	private static final int TASK_UPDATE = 1;
+	private static final int TASK_VALIDATE = 2;
+	private static final int TASK_STOP = 3;
+
+	// The network layout
+	private int[] layerSizes;
+	private double[] biasInputs;
+	private int[] layerOffsets;
+
+	// The weights, each neuron has one weight per input followed by its bias
+	private double[] weights;
+	private double[] velocities;
+	private double[] bestWeights;
+
+	// Training settings
+	private double learningRate;
+	private double momentum;
+	private int batchSize;
+	private double validationFraction;
+	private int maxEpochs;
+	private int patience;
+	private long seed;
+	private boolean verbose;
+
+	// The threads, thread 0 is the calling thread
+	private int threadCount;
+	private TrainerWorker[] workers;
+	private Thread[] threads;
+
+	// The first error on any thread, it stops training
+	private Throwable failure;
+	private final Object failureLock = new Object();
+
+	// Shared state for the current phase
+	private CyclicBarrier startBarrier;
+	private CyclicBarrier endBarrier;
+	private int task;
+	private int[] order;
+	private int batchStart;
+	private int batchEnd;
+	private FloatBuffer inputs;
+	private FloatBuffer outputs;
+
+	// Results of the last training run
+	private double bestValidationError;
+	private int epochs;
+	private double samplesPerSecond;
+
+	/**
+	 * This method returns the number of layers including the input layer.
+	 * 
+	 * @return The number of layers.
+	 */
+	public int getLayerCount() {
+		return layerSizes.length;
+	}
+
+	/**
+	 * This method returns the number of neurons in a layer (without bias).
+	 * 
+	 * @param layer The layer.
+	 * @return The number of neurons.
+	 */
+	public int getLayerSize(int layer) {
+		return layerSizes[layer];
+	}
+
+	/**
+	 * This method returns a weight. The bias of a neuron is the weight from
+	 * neuron getLayerSize(layer - 1) of the previous layer.
+	 * 
+	 * @param layer      The layer the connection goes to (at least 1).
+	 * @param toNeuron   The neuron in that layer.
+	 * @param fromNeuron The neuron in the previous layer.
+	 * @return The weight.
+	 */
+	public double getWeight(int layer, int toNeuron, int fromNeuron) {
+		return weights[getWeightIndex(layer, toNeuron, fromNeuron)];
+	}
+
+	/**
+	 * This method sets a weight. See getWeight for the bias index.
+	 * 
+	 * @param layer      The layer the connection goes to (at least 1).
+	 * @param toNeuron   The neuron in that layer.
+	 * @param fromNeuron The neuron in the previous layer.
+	 * @param weight     The weight.
+	 */
+	public void setWeight(int layer, int toNeuron, int fromNeuron, double weight) {
+		weights[getWeightIndex(layer, toNeuron, fromNeuron)] = weight;
+	}
+
+	/**
+	 * This method returns the position of a weight in the weight array.
+	 * 
+	 * @param layer      The layer the connection goes to.
+	 * @param toNeuron   The neuron in that layer.
+	 * @param fromNeuron The neuron in the previous layer.
+	 * @return The index.
+	 */
+	private int getWeightIndex(int layer, int toNeuron, int fromNeuron) {
+		return layerOffsets[layer] + toNeuron * (layerSizes[layer - 1] + 1) + fromNeuron;
+	}
+
+	/**
+	 * This method sets the learning rate.
+	 * 
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+
+	/**
+	 * This method sets the momentum of the weight updates.
+	 * 
+	 * @param momentum The momentum.
+	 */
+	public void setMomentum(double momentum) {
+		this.momentum = momentum;
+	}
+
+	/**
+	 * This method sets the number of samples per weight update.
+	 * 
+	 * @param batchSize The mini-batch size.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * This method sets the fraction of samples held out for validation.
+	 * 
+	 * @param validationFraction The fraction.
+	 */
+	public void setValidationFraction(double validationFraction) {
+		this.validationFraction = validationFraction;
+	}
+
+	/**
+	 * This method sets the maximum number of epochs.
+	 * 
+	 * @param maxEpochs The maximum number of epochs.
+	 */
+	public void setMaxEpochs(int maxEpochs) {
+		this.maxEpochs = maxEpochs;
+	}
+
+	/**
+	 * This method sets how many epochs without improvement stop training.
+	 * 
+	 * @param patience The number of epochs.
+	 */
+	public void setPatience(int patience) {
+		this.patience = patience;
+	}
+
+	/**
+	 * This method sets the seed used to split and shuffle the samples.
+	 * 
+	 * @param seed The seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * This method sets if the error is printed every epoch.
+	 * 
+	 * @param verbose If the error is printed.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * This method returns the number of threads used for training.
+	 * 
+	 * @return The number of threads.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * This method returns the best validation error of the last run.
+	 * 
+	 * @return The error.
+	 */
+	public double getBestValidationError() {
+		return bestValidationError;
+	}
+
+	/**
+	 * This method returns the number of epochs the last run took.
+	 * 
+	 * @return The number of epochs.
+	 */
+	public int getEpochs() {
+		return epochs;
+	}
+
+	/**
+	 * This method returns the training throughput of the last run.
+	 * 
+	 * @return The number of training samples processed per second.
+	 */
+	public double getSamplesPerSecond() {
+		return samplesPerSecond;
+	}
+
+	/**
+	 * This method trains the network on a compiled dataset. The inputs are read
+	 * straight from the dataset file.
+	 * 
+	 * @param datasetCache The dataset.
+	 */
+	public void train(DatasetCache datasetCache) {
+		if (datasetCache.getInputSize() != layerSizes[0]
+				|| datasetCache.getOutputSize() != layerSizes[layerSizes.length - 1]) {
+			throw new IllegalArgumentException("The dataset does not match the network");
+		}
+
+		inputs = datasetCache.getInputs();
+		outputs = datasetCache.getOutputs();
+
+		// Split off the validation samples
+		Random random = new Random(seed);
+		int sampleCount = datasetCache.getSampleCount();
+		int[] samples = new int[sampleCount];
+		for (int i = 0; i < sampleCount; i++) {
+			samples[i] = i;
+		}
+		shuffle(samples, sampleCount, random);
+
+		int validationCount = (int) (sampleCount * validationFraction);
+		if (validationCount == sampleCount) {
+			validationCount = 0;
+		}
+		int trainingCount = sampleCount - validationCount;
+
+		int[] trainingOrder = new int[trainingCount];
+		int[] validationOrder = new int[validationCount];
+		System.arraycopy(samples, validationCount, trainingOrder, 0, trainingCount);
+		System.arraycopy(samples, 0, validationOrder, 0, validationCount);
+
+		for (int i = 0; i < velocities.length; i++) {
+			velocities[i] = 0;
+		}
+
+		startWorkers();
+		try {
+			bestValidationError = Double.MAX_VALUE;
+			System.arraycopy(weights, 0, bestWeights, 0, weights.length);
+
+			long trainingTime = 0;
+			long trainedSamples = 0;
+			int epochsWithoutImprovement = 0;
+
+			for (epochs = 1; epochs <= maxEpochs; epochs++) {
+				shuffle(trainingOrder, trainingCount, random);
+
+				// Run the batches
+				long start = System.nanoTime();
+				double trainingError = 0;
+				order = trainingOrder;
+
+				for (int batch = 0; batch < trainingCount; batch += batchSize) {
+					batchStart = batch;
+					batchEnd = Math.min(trainingCount, batch + batchSize);
+
+					trainingError += runPhase(TASK_GRADIENT);
+					runPhase(TASK_UPDATE);
+				}
+
+				trainingTime += System.nanoTime() - start;
+				trainedSamples += trainingCount;
+				trainingError /= trainingCount;
+
+				// Check the validation split (or the training error if there is none)
+				double validationError = trainingError;
+				if (validationCount > 0) {
+					order = validationOrder;
+					batchStart = 0;
+					batchEnd = validationCount;
+					validationError = runPhase(TASK_VALIDATE) / validationCount;
+				}
+
+				if (verbose) {
+					System.out.println("Epoch " + epochs + ": training error " + trainingError
+							+ ", validation error " + validationError);
+				}
+
+				if (validationError < bestValidationError) {
+					bestValidationError = validationError;
+					System.arraycopy(weights, 0, bestWeights, 0, weights.length);
+					epochsWithoutImprovement = 0;
+				} else if (++epochsWithoutImprovement >= patience) {
+					break;
+				}
+			}
+
+			epochs = Math.min(epochs, maxEpochs);
+			samplesPerSecond = trainedSamples / (trainingTime / 1000000000.0);
+		} finally {
+			stopWorkers();
+		}
+
+		// Keep the weights from the best epoch
+		System.arraycopy(bestWeights, 0, weights, 0, weights.length);
+
+		inputs = null;
+		outputs = null;
+		order = null;
+	}
+
+	/**
+	 * This method shuffles the first count values of an array.
+	 * 
+	 * @param values The values.
+	 * @param count  The number of values to shuffle.
+	 * @param random The random number generator.
+	 */
+	private static void shuffle(int[] values, int count, Random random) {
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+
+			int value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+
+	/**
+	 * This method starts the worker threads.
+	 */
+	private void startWorkers() {
+		startBarrier = new CyclicBarrier(threadCount);
+		endBarrier = new CyclicBarrier(threadCount);
+		failure = null;
+
+		threads = new Thread[threadCount];
+		for (int i = 1; i < threadCount; i++) {
+			threads[i] = new Thread(workers[i]);
+			threads[i].setName("Trainer-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * This method stops the worker threads and throws the first error of the
+	 * training run. If a barrier was broken the workers are interrupted instead,
+	 * so no thread is left waiting.
+	 */
+	private void stopWorkers() {
+		task = TASK_STOP;
+
+		if (threadCount > 1) {
+			if (!startBarrier.isBroken() && !endBarrier.isBroken()) {
+				try {
+					await(startBarrier);
+				} catch (IllegalStateException e) {
+					fail(e);
+				}
+			}
+
+			// Stopped workers ignore this, the others leave the barrier they are at
+			if (startBarrier.isBroken() || endBarrier.isBroken()) {
+				for (int i = 1; i < threadCount; i++) {
+					threads[i].interrupt();
+				}
+			}
+		}
+
+		threads = null;
+
+		Throwable failure = getFailure();
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure != null) {
+			throw new IllegalStateException("Training failed", failure);
+		}
+	}
+
+	/**
+	 * This method records an error. Only the first error is kept.
+	 * 
+	 * @param throwable The error.
+	 */
+	private void fail(Throwable throwable) {
+		synchronized (failureLock) {
+			if (failure == null) {
+				failure = throwable;
+			}
+		}
+	}
+
+	/**
+	 * This method returns the first error of the current training run.
+	 * 
+	 * @return The error or null.
+	 */
+	private Throwable getFailure() {
+		synchronized (failureLock) {
+			return failure;
+		}
+	}
+
+	/**
+	 * This method runs one phase on every thread and returns the summed error.
+	 * 
+	 * @param task The task.
+	 * @return The summed squared error of the phase.
+	 */
+	private double runPhase(int task) {
+		this.task = task;
+
+		if (threadCount == 1) {
+			workers[0].runTask();
+			return workers[0].error;
+		}
+
+		// The barriers publish the shared state to the workers and back. Every
+		// thread reaches the end barrier even if its task fails.
+		try {
+			await(startBarrier);
+			workers[0].runTaskSafely();
+			await(endBarrier);
+		} catch (IllegalStateException e) {
+			fail(e);
+		}
+
+		if (getFailure() != null) {
+			throw new IllegalStateException("Training failed", getFailure());
+		}
+
+		double error = 0;
+		for (int i = 0; i < threadCount; i++) {
+			error += workers[i].error;
+		}
+
+		return error;
+	}
+
+	/**
+	 * This method waits on a barrier.
+	 * 
+	 * @param barrier The barrier.
+	 */
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			throw new IllegalStateException("Training was interrupted", e);
+		}
+	}
+
+	/**
+	 * This constructor creates a trainer for a network. The weights start at zero
+	 * and are normally copied from an existing network.
+	 * 
+	 * @param layerSizes  The number of neurons in each layer (without bias).
+	 * @param biased      If each layer except the last feeds a bias into the next.
+	 * @param threadCount The number of threads to train on.
+	 */
+	public ParallelTrainer(int[] layerSizes, boolean[] biased, int threadCount) {
+		this.layerSizes = layerSizes.clone();
+
+		biasInputs = new double[layerSizes.length];
+		layerOffsets = new int[layerSizes.length];
+
+		int weightCount = 0;
+		for (int i = 1; i < layerSizes.length; i++) {
+			biasInputs[i - 1] = biased[i - 1] ? 1 : 0;
+			layerOffsets[i] = weightCount;
+			weightCount += layerSizes[i] * (layerSizes[i - 1] + 1);
+		}
+
+		weights = new double[weightCount];
+		velocities = new double[weightCount];
+		bestWeights = new double[weightCount];
+
+		learningRate = 0.1;
+		momentum = 0.9;
+		batchSize = 32;
+		validationFraction = 0.1;
+		maxEpochs = 1000;
+		patience = 20;
+		seed = 100;
+		verbose = false;
+
+		this.threadCount = Math.max(1, threadCount);
+		workers = new TrainerWorker[this.threadCount];
+		for (int i = 0; i < this.threadCount; i++) {
+			workers[i] = new TrainerWorker(i);
+		}
+	}
+
+	/**
+	 * This class holds one thread's activations and gradients.
+	 */
+	private class TrainerWorker implements Runnable {
+		private int index;
+
+		private double[][] activations;
+		private double[][] deltas;
+		private double[] gradients;
+
+		private double error;
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					await(startBarrier);
+					if (task == TASK_STOP) {
+						return;
+					}
+
+					runTaskSafely();
+					await(endBarrier);
+				}
+			} catch (Throwable throwable) {
+				// The barrier was broken, the caller has its own error
+				fail(throwable);
+			}
+		}
+
+		/**
+		 * This method runs this thread's part of the current phase and records an
+		 * error instead of throwing it, so the thread still reaches the end barrier.
+		 */
+		public void runTaskSafely() {
+			try {
+				runTask();
+			} catch (Throwable throwable) {
+				fail(throwable);
+			}
+		}
+
+		/**
+		 * This method runs this thread's part of the current phase.
+		 */
+		public void runTask() {
+			error = 0;
+
+			if (task == TASK_UPDATE) {
+				update();
+				return;
+			}
+
+			// Take a contiguous shard of the samples
+			int count = batchEnd - batchStart;
+			int start = batchStart + count * index / threadCount;
+			int end = batchStart + count * (index + 1) / threadCount;
+
+			if (task == TASK_GRADIENT) {
+				for (int i = 0; i < gradients.length; i++) {
+					gradients[i] = 0;
+				}
+			}
+
+			for (int i = start; i < end; i++) {
+				int sample = order[i];
+
+				forward(sample);
+				error += computeDeltas(sample);
+
+				if (task == TASK_GRADIENT) {
+					accumulate();
+				}
+			}
+		}
+
+		/**
+		 * This method runs a sample through the network.
+		 * 
+		 * @param sample The sample.
+		 */
+		private void forward(int sample) {
+			double[] input = activations[0];
+			int inputOffset = sample * input.length;
+			for (int i = 0; i < input.length; i++) {
+				input[i] = inputs.get(inputOffset + i);
+			}
+
+			for (int layer = 1; layer < layerSizes.length; layer++) {
+				double[] previous = activations[layer - 1];
+				double[] current = activations[layer];
+				double biasInput = biasInputs[layer - 1];
+				int stride = previous.length + 1;
+				int offset = layerOffsets[layer];
+
+				for (int j = 0; j < current.length; j++) {
+					double sum = weights[offset + previous.length] * biasInput;
+					for (int i = 0; i < previous.length; i++) {
+						sum += weights[offset + i] * previous[i];
+					}
+
+					current[j] = 1 / (1 + Math.exp(-sum));
+					offset += stride;
+				}
+			}
+		}
+
+		/**
+		 * This method back propagates the error of a sample into the deltas.
+		 * 
+		 * @param sample The sample.
+		 * @return The squared error of the sample.
+		 */
+		private double computeDeltas(int sample) {
+			int last = layerSizes.length - 1;
+			double[] output = activations[last];
+			double[] outputDelta = deltas[last];
+			int outputOffset = sample * output.length;
+
+			double squaredError = 0;
+			for (int j = 0; j < output.length; j++) {
+				double difference = output[j] - outputs.get(outputOffset + j);
+				squaredError += difference * difference;
+				outputDelta[j] = difference * output[j] * (1 - output[j]);
+			}
+
+			if (task != TASK_GRADIENT) {
+				return squaredError;
+			}
+
+			for (int layer = last - 1; layer > 0; layer--) {
+				double[] current = activations[layer];
+				double[] delta = deltas[layer];
+				double[] nextDelta = deltas[layer + 1];
+				int stride = current.length + 1;
+				int offset = layerOffsets[layer + 1];
+
+				for (int i = 0; i < current.length; i++) {
+					delta[i] = 0;
+				}
+
+				for (int j = 0; j < nextDelta.length; j++) {
+					double value = nextDelta[j];
+					int row = offset + j * stride;
+
+					for (int i = 0; i < current.length; i++) {
+						delta[i] += weights[row + i] * value;
+					}
+				}
+
+				for (int i = 0; i < current.length; i++) {
+					delta[i] *= current[i] * (1 - current[i]);
+				}
+			}
+
+			return squaredError;
+		}
+
+		/**
+		 * This method adds the gradient of the last sample to this thread's buffer.
+		 */
+		private void accumulate() {
+			for (int layer = 1; layer < layerSizes.length; layer++) {
+				double[] previous = activations[layer - 1];
+				double[] delta = deltas[layer];
+				double biasInput = biasInputs[layer - 1];
+				int stride = previous.length + 1;
+				int offset = layerOffsets[layer];
+
+				for (int j = 0; j < delta.length; j++) {
+					double value = delta[j];
+					for (int i = 0; i < previous.length; i++) {
+						gradients[offset + i] += value * previous[i];
+					}
+
+					gradients[offset + previous.length] += value * biasInput;
+					offset += stride;
+				}
+			}
+		}
+
+		/**
+		 * This method sums every thread's gradients for this thread's slice of the
+		 * weights and updates those weights.
+		 */
+		private void update() {
+			int start = weights.length * index / threadCount;
+			int end = weights.length * (index + 1) / threadCount;
+			double scale = learningRate / (batchEnd - batchStart);
+
+			for (int i = start; i < end; i++) {
+				double gradient = 0;
+				for (int j = 0; j < threadCount; j++) {
+					gradient += workers[j].gradients[i];
+				}
+
+				velocities[i] = momentum * velocities[i] - scale * gradient;
+				weights[i] += velocities[i];
+			}
+		}
+
+		public TrainerWorker(int index) {
+			this.index = index;
+
+			activations = new double[layerSizes.length][];
+			deltas = new double[layerSizes.length][];
+			for (int i = 0; i < layerSizes.length; i++) {
+				activations[i] = new double[layerSizes[i]];
+				deltas[i] = new double[layerSizes[i]];
+			}
+
+			gradients = new double[weights.length];
+		}
+	}
+}
@@ -11,15 +11,20 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import javax.imageio.ImageIO;
 
+import org.neuroph.core.Connection;
 import org.neuroph.core.Layer;
 import org.neuroph.core.NeuralNetwork;
 import org.neuroph.core.Neuron;
+import org.neuroph.core.Weight;
 import org.neuroph.core.data.DataSet;
 import org.neuroph.core.data.DataSetRow;
+import org.neuroph.core.transfer.Sigmoid;
 import org.neuroph.nnet.MultiLayerPerceptron;
+import org.neuroph.nnet.comp.neuron.BiasNeuron;
 import org.neuroph.nnet.learning.BackPropagation;
 import org.neuroph.util.TransferFunctionType;
 
@@ -34,6 +39,9 @@ public class VisionTraining {
 	public static final int WIDTH = 16;
 	public static final int HEIGHT = 16;
 
+	// The compiled dataset in the resource directory
+	public static final String DATASET_FILENAME = "dataset.bin";
+
 	// The working directory for the training images
 	String resourcePath;
 
@@ -46,6 +54,9 @@ public class VisionTraining {
 	// The number of neurons per hidden layer;
 	int neuronsPerLayer;
 
+	// The Neuroph weights behind the last parallel trainer
+	ArrayList<TrainerWeight> trainerWeights;
+
 	/**
 	 * This method returns the neural network that is currently in use.
 	 * 
@@ -236,13 +247,204 @@ public class VisionTraining {
 			dataSet.add(row);
 		}
 
-		// Train network
+		trainNetwork(dataSet);
+	}
+
+	/**
+	 * This method trains the network using a compiled dataset.
+	 * 
+	 * @param datasetCache The dataset.
+	 */
+	public void trainNetwork(DatasetCache datasetCache) {
+		DataSet dataSet = new DataSet(datasetCache.getInputSize(), datasetCache.getOutputSize());
+
+		for (int i = 0; i < datasetCache.getSampleCount(); i++) {
+			double[] input = new double[datasetCache.getInputSize()];
+			double[] output = new double[datasetCache.getOutputSize()];
+
+			datasetCache.getInput(i, input);
+			datasetCache.getOutput(i, output);
+
+			dataSet.add(new DataSetRow(input, output));
+		}
+
+		trainNetwork(dataSet);
+	}
+
+	/**
+	 * This method trains the network with back propagation.
+	 * 
+	 * @param dataSet The dataset.
+	 */
+	public void trainNetwork(DataSet dataSet) {
 		BackPropagation backPropagation = new BackPropagation();
 		backPropagation.setMaxIterations(1000);
 		backPropagation.setNeuralNetwork(neuralNetwork);
 		backPropagation.learn(dataSet);
 	}
 
+	/**
+	 * This method returns the neurons of a layer without its bias neuron.
+	 * 
+	 * @param layer The layer.
+	 * @return The neurons.
+	 */
+	private static ArrayList<Neuron> getNeurons(Layer layer) {
+		ArrayList<Neuron> neurons = new ArrayList<Neuron>();
+
+		for (int i = 0; i < layer.getNeuronsCount(); i++) {
+			Neuron neuron = layer.getNeuronAt(i);
+			if (!(neuron instanceof BiasNeuron)) {
+				neurons.add(neuron);
+			}
+		}
+
+		return neurons;
+	}
+
+	/**
+	 * This method creates a parallel trainer with a copy of the network's weights
+	 * and records which Neuroph weight each trainer weight came from. The network
+	 * must use sigmoid transfer functions after the input layer. The trainer
+	 * only has a slope of 1, so each neuron's slope is folded into its weights,
+	 * which gives the same outputs.
+	 * 
+	 * @param threads The number of threads to train on.
+	 * @return The trainer.
+	 */
+	public ParallelTrainer createTrainer(int threads) {
+		int layerCount = neuralNetwork.getLayersCount();
+
+		ArrayList<ArrayList<Neuron>> neurons = new ArrayList<ArrayList<Neuron>>();
+		int[] layerSizes = new int[layerCount];
+		boolean[] biased = new boolean[layerCount];
+
+		for (int i = 0; i < layerCount; i++) {
+			Layer layer = neuralNetwork.getLayerAt(i);
+
+			neurons.add(getNeurons(layer));
+			layerSizes[i] = neurons.get(i).size();
+			biased[i] = layer.getNeuronsCount() > layerSizes[i];
+		}
+
+		ParallelTrainer parallelTrainer = new ParallelTrainer(layerSizes, biased, threads);
+		trainerWeights = new ArrayList<TrainerWeight>();
+
+		for (int layer = 1; layer < layerCount; layer++) {
+			// Find each input neuron's position in the previous layer
+			IdentityHashMap<Neuron, Integer> fromIndexes = new IdentityHashMap<Neuron, Integer>();
+			for (int i = 0; i < layerSizes[layer - 1]; i++) {
+				fromIndexes.put(neurons.get(layer - 1).get(i), i);
+			}
+
+			for (int to = 0; to < layerSizes[layer]; to++) {
+				Neuron neuron = neurons.get(layer).get(to);
+
+				if (!(neuron.getTransferFunction() instanceof Sigmoid)) {
+					throw new IllegalStateException("Layer " + layer + " does not use a sigmoid transfer function");
+				}
+
+				double slope = ((Sigmoid) neuron.getTransferFunction()).getSlope();
+				if (slope == 0) {
+					throw new IllegalStateException("Layer " + layer + " has a sigmoid with a slope of 0");
+				}
+
+				for (Connection connection : neuron.getInputConnections()) {
+					// The bias neuron comes after the other neurons
+					Integer from = fromIndexes.get(connection.getFromNeuron());
+					if (from == null) {
+						from = layerSizes[layer - 1];
+					}
+
+					parallelTrainer.setWeight(layer, to, from, connection.getWeight().getValue() * slope);
+					trainerWeights.add(new TrainerWeight(layer, to, from, slope, connection.getWeight()));
+				}
+			}
+		}
+
+		return parallelTrainer;
+	}
+
+	/**
+	 * This method copies the weights of a parallel trainer into the network. The
+	 * trainer must be the last one created by createTrainer.
+	 * 
+	 * @param parallelTrainer The trainer.
+	 */
+	public void applyTrainer(ParallelTrainer parallelTrainer) {
+		for (int i = 0; i < trainerWeights.size(); i++) {
+			TrainerWeight trainerWeight = trainerWeights.get(i);
+
+			trainerWeight.weight.setValue(
+					parallelTrainer.getWeight(trainerWeight.layer, trainerWeight.toNeuron, trainerWeight.fromNeuron)
+							/ trainerWeight.slope);
+		}
+	}
+
+	/**
+	 * This method trains the network with mini-batch gradient descent on several
+	 * threads, stopping when the validation error stops improving.
+	 * 
+	 * @param datasetCache The dataset.
+	 * @param threads      The number of threads to train on.
+	 */
+	public void trainNetworkParallel(DatasetCache datasetCache, int threads) {
+		ParallelTrainer parallelTrainer = createTrainer(threads);
+		parallelTrainer.setVerbose(true);
+		parallelTrainer.train(datasetCache);
+		applyTrainer(parallelTrainer);
+
+		System.out.println("Trained " + parallelTrainer.getEpochs() + " epochs on " + threads + " threads at "
+				+ (int) parallelTrainer.getSamplesPerSecond() + " samples/sec, validation error "
+				+ parallelTrainer.getBestValidationError());
+	}
+
+	/**
+	 * This method prints the training throughput from 1 to maxThreads threads.
+	 * Every run starts from the network's current weights, which are not changed.
+	 * 
+	 * @param datasetCache The dataset.
+	 * @param maxThreads   The largest number of threads.
+	 * @param epochs       The number of epochs per run.
+	 */
+	public void reportScaling(DatasetCache datasetCache, int maxThreads, int epochs) {
+		double baseline = 0;
+
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			ParallelTrainer parallelTrainer = createTrainer(threads);
+			parallelTrainer.setMaxEpochs(epochs);
+			parallelTrainer.setPatience(epochs);
+			parallelTrainer.train(datasetCache);
+
+			double samplesPerSecond = parallelTrainer.getSamplesPerSecond();
+			if (threads == 1) {
+				baseline = samplesPerSecond;
+			}
+
+			System.out.println(threads + " threads: " + (int) samplesPerSecond + " samples/sec, speedup "
+					+ (samplesPerSecond / baseline));
+		}
+	}
+
+	/**
+	 * This method opens the compiled dataset, compiling it from the images and
+	 * shards first if it is missing or they have changed.
+	 * 
+	 * @return The dataset.
+	 * @throws IOException
+	 */
+	public DatasetCache loadDataset() throws IOException {
+		File file = new File(resourcePath + DATASET_FILENAME);
+
+		DatasetCache datasetCache = DatasetCache.open(file, resourcePath);
+		if (datasetCache == null) {
+			System.out.println("Compiling dataset...");
+			datasetCache = DatasetCache.compile(this, file);
+		}
+
+		return datasetCache;
+	}
+
 	/**
 	 * This default constructor allows a value for the resource location to be set.
 	 * 
@@ -258,13 +460,14 @@ public class VisionTraining {
 		// Read arguments
 		if (args.length < 4) {
 			System.err.println(
-					"Usage: java -jar <jarname> <resource_directory> <output_filename> <hidden_layers> <neurons_per_layer>");
+					"Usage: java -jar <jarname> <resource_directory> <output_filename> <hidden_layers> <neurons_per_layer> [threads]");
 			System.exit(1);
 		}
 		String resourcePath = args[0];
 		String fileName = args[1];
 		int hiddenLayers = Integer.parseInt(args[2]);
 		int neuronsPerLayer = Integer.parseInt(args[3]);
+		int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
 
 		// Correct input
 		if (!resourcePath.endsWith("/") && !resourcePath.endsWith("\\")) {
@@ -277,23 +480,39 @@ public class VisionTraining {
 		System.out.println("Creating new neural network...");
 		visionTraining.constructNewNeuralNetwork();
 
-		// Load left training images
-		System.out.println("Loading left training images...");
-		ArrayList<BufferedImage> leftImages = visionTraining.loadLeftImages();
-		System.out.println(leftImages.size() + " images loaded");
-
-		// Load right training images
-		System.out.println("Loading right training images...");
-		ArrayList<BufferedImage> rightImages = visionTraining.loadRightImages();
-		System.out.println(rightImages.size() + " images loaded");
+		// Load the compiled dataset
+		System.out.println("Loading dataset...");
+		long start = System.nanoTime();
+		DatasetCache datasetCache = visionTraining.loadDataset();
+		System.out.println(datasetCache.getSampleCount() + " samples loaded in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
 
 		// Train network
 		System.out.println("Training neural network...");
-		visionTraining.trainNetwork(leftImages, rightImages);
+		visionTraining.trainNetworkParallel(datasetCache, threads);
 
 		// Save network
 		System.out.println("Saving neural network...");
 		visionTraining.saveNeuralNetwork(fileName);
 		System.out.println("Done");
 	}
+
+	/**
+	 * This class links a parallel trainer weight to a Neuroph weight.
+	 */
+	private static class TrainerWeight {
+		private int layer;
+		private int toNeuron;
+		private int fromNeuron;
+		private double slope;
+		private Weight weight;
+
+		public TrainerWeight(int layer, int toNeuron, int fromNeuron, double slope, Weight weight) {
+			this.layer = layer;
+			this.toNeuron = toNeuron;
+			this.fromNeuron = fromNeuron;
+			this.slope = slope;
+			this.weight = weight;
+		}
+	}
 }
\ No newline at end of file